@@ -7,6 +7,7 @@ import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.RSAKeyProvider;
 import com.google.gson.*;
+import io.supertokens.ActiveUsers;
 import io.supertokens.Main;
 import io.supertokens.ProcessState;
 import io.supertokens.cronjobs.Cronjobs;
@@ -20,7 +21,6 @@ import io.supertokens.httpRequest.HttpRequest;
 import io.supertokens.httpRequest.HttpResponseException;
 import io.supertokens.multitenancy.Multitenancy;
 import io.supertokens.output.Logging;
-import io.supertokens.pluginInterface.ActiveUsersStorage;
 import io.supertokens.pluginInterface.KeyValueInfo;
 import io.supertokens.pluginInterface.STORAGE_TYPE;
 import io.supertokens.pluginInterface.Storage;
@@ -208,9 +208,10 @@ public class EEFeatureFlag implements io.supertokens.featureflag.EEFeatureFlagIn
         for (Storage storage : storages) {
             totalUserCountWithMoreThanOneLoginMethod += ((AuthRecipeStorage)storage).getUsersCountWithMoreThanOneLoginMethodOrTOTPEnabled(this.appIdentifier);
 
+            int[] mausOfStorage = ActiveUsers.countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(
+                    storage, appIdentifier, today, 30);
             for (int i = 0; i < 30; i++) {
-                long timestamp = today - (i * 24 * 60 * 60 * 1000L);
-                maus[i] += ((ActiveUsersStorage)storage).countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSince(appIdentifier, timestamp);
+                maus[i] += mausOfStorage[i];
             }
         }
 
@@ -299,9 +300,10 @@ public class EEFeatureFlag implements io.supertokens.featureflag.EEFeatureFlagIn
         for (Storage storage : storages) {
             totalUserCountWithMoreThanOneLoginMethod += ((AuthRecipeStorage)storage).getUsersCountWithMoreThanOneLoginMethod(this.appIdentifier);
 
+            int[] mausOfStorage = ActiveUsers.countUsersThatHaveMoreThanOneLoginMethodAndActiveSinceEachDay(
+                    storage, appIdentifier, today, 30);
             for (int i = 0; i < 30; i++) {
-                long timestamp = today - (i * 24 * 60 * 60 * 1000L);
-                maus[i] += ((ActiveUsersStorage)storage).countUsersThatHaveMoreThanOneLoginMethodAndActiveSince(appIdentifier, timestamp);
+                maus[i] += mausOfStorage[i];
             }
         }
 
@@ -312,13 +314,10 @@ public class EEFeatureFlag implements io.supertokens.featureflag.EEFeatureFlagIn
 
     private JsonArray getMAUs() throws StorageQueryException, TenantOrAppNotFoundException {
         JsonArray mauArr = new JsonArray();
-        for (int i = 0; i < 30; i++) {
-            long now = System.currentTimeMillis();
-            long today = now - (now % (24 * 60 * 60 * 1000L));
-            long timestamp = today - (i * 24 * 60 * 60 * 1000L);
-            ActiveUsersStorage activeUsersStorage = (ActiveUsersStorage) StorageLayer.getStorage(
-                    this.appIdentifier.getAsPublicTenantIdentifier(), main);
-            int mau = activeUsersStorage.countUsersActiveSince(this.appIdentifier, timestamp);
+        long now = System.currentTimeMillis();
+        long today = now - (now % (24 * 60 * 60 * 1000L));
+        Storage storage = StorageLayer.getStorage(this.appIdentifier.getAsPublicTenantIdentifier(), main);
+        for (int mau : ActiveUsers.countUsersActiveSinceEachDay(storage, this.appIdentifier, today, 30)) {
             mauArr.add(new JsonPrimitive(mau));
         }
         return mauArr;
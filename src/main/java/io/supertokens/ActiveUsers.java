@@ -1,17 +1,65 @@
 package io.supertokens;
 
+import io.supertokens.pluginInterface.ActiveUsersStorage;
+import io.supertokens.pluginInterface.Storage;
 import io.supertokens.pluginInterface.authRecipe.sqlStorage.AuthRecipeSQLStorage;
 import io.supertokens.pluginInterface.exceptions.StorageQueryException;
 import io.supertokens.pluginInterface.exceptions.StorageTransactionLogicException;
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
 import io.supertokens.pluginInterface.multitenancy.AppIdentifierWithStorage;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
 import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
 import io.supertokens.storageLayer.StorageLayer;
 import org.jetbrains.annotations.TestOnly;
 
-public class ActiveUsers {
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Users are marked as active on every sign in / up and session create / refresh / remove, which for a busy user can
+// be many times a minute. So instead of writing to the db each time, the users are put in a per app buffer which the
+// FlushActiveUsers cronjob (and shutdown) writes to the db. A user that is already in the buffer, or whose last
+// active time was written less than LAST_ACTIVE_GRANULARITY_MS ago, is not written again.
+public class ActiveUsers extends ResourceDistributor.SingletonResource {
+
+    private static final String RESOURCE_KEY = "io.supertokens.ActiveUsers";
+
+    static final long LAST_ACTIVE_GRANULARITY_MS = 60 * 1000;
+    // if an app has more users than this waiting to be written, we write right away instead, so that the buffer
+    // doesn't grow without bound if the db can't keep up
+    static final int MAX_PENDING_USERS_PER_APP = 100000;
+
+    private final Main main;
+    private final Map<AppIdentifier, AppBuffer> buffers = new ConcurrentHashMap<>();
+    private final LongAdder coalescedUpdates = new LongAdder();
+    private final LongAdder writtenUpdates = new LongAdder();
+    private boolean bufferingEnabledForTesting = false;
+
+    private ActiveUsers(Main main) {
+        this.main = main;
+    }
+
+    public static void init(Main main) {
+        main.getResourceDistributor().setResource(TenantIdentifier.BASE_TENANT, RESOURCE_KEY, new ActiveUsers(main));
+    }
+
+    public static ActiveUsers getInstance(Main main) {
+        try {
+            return (ActiveUsers) main.getResourceDistributor().getResource(TenantIdentifier.BASE_TENANT,
+                    RESOURCE_KEY);
+        } catch (TenantOrAppNotFoundException e) {
+            // not initialised yet, so updates are written right away
+            return null;
+        }
+    }
 
     public static void updateLastActive(AppIdentifierWithStorage appIdentifierWithStorage, Main main, String userId)
             throws TenantOrAppNotFoundException {
+        ActiveUsers instance = getInstance(main);
+        if (instance != null && instance.addToBuffer(appIdentifierWithStorage, userId)) {
+            return;
+        }
         try {
             appIdentifierWithStorage.getActiveUsersStorage().updateLastActive(appIdentifierWithStorage, userId);
         } catch (StorageQueryException ignored) {
@@ -28,6 +76,137 @@ public class ActiveUsers {
         }
     }
 
+    // returns false if the update was not buffered, and must be written right away
+    private boolean addToBuffer(AppIdentifier appIdentifier, String userId) {
+        if (Main.isTesting && !bufferingEnabledForTesting) {
+            // tests expect the last active time to be written right away, unless they test the buffering
+            return false;
+        }
+        AppBuffer buffer = buffers.computeIfAbsent(
+                new AppIdentifier(appIdentifier.getConnectionUriDomain(), appIdentifier.getAppId()),
+                k -> new AppBuffer());
+        long now = System.currentTimeMillis();
+        Long lastWritten = buffer.lastWritten.get(userId);
+        if (buffer.pending.containsKey(userId) ||
+                (lastWritten != null && now - lastWritten < LAST_ACTIVE_GRANULARITY_MS)) {
+            coalescedUpdates.increment();
+            return true;
+        }
+        if (buffer.pending.size() >= MAX_PENDING_USERS_PER_APP) {
+            return false;
+        }
+        if (buffer.pending.putIfAbsent(userId, now) != null) {
+            coalescedUpdates.increment();
+        }
+        return true;
+    }
+
+    // Writes the last active time of all the buffered users. This is called by the FlushActiveUsers cronjob and
+    // when the core shuts down.
+    public static void flush(Main main) {
+        ActiveUsers instance = getInstance(main);
+        if (instance != null) {
+            instance.flush();
+        }
+    }
+
+    private synchronized void flush() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<AppIdentifier, AppBuffer> entry : buffers.entrySet()) {
+            AppIdentifier appIdentifier = entry.getKey();
+            AppBuffer buffer = entry.getValue();
+
+            // users that were written more than the granularity ago can be written again
+            buffer.lastWritten.values().removeIf(lastWritten -> now - lastWritten >= LAST_ACTIVE_GRANULARITY_MS);
+            buffer.deleted.values().removeIf(deletedAt -> now - deletedAt >= LAST_ACTIVE_GRANULARITY_MS);
+
+            if (buffer.pending.isEmpty()) {
+                continue;
+            }
+
+            AppIdentifierWithStorage appIdentifierWithStorage;
+            try {
+                appIdentifierWithStorage = appIdentifier.withStorage(
+                        StorageLayer.getStorage(appIdentifier.getAsPublicTenantIdentifier(), main));
+            } catch (TenantOrAppNotFoundException e) {
+                // the app has been deleted
+                buffers.remove(appIdentifier, buffer);
+                continue;
+            }
+
+            Iterator<String> pendingUsers = buffer.pending.keySet().iterator();
+            while (pendingUsers.hasNext()) {
+                String userId = pendingUsers.next();
+                // we mark the user as written before removing it from pending, so that an update that comes in
+                // between is not buffered again
+                buffer.lastWritten.put(userId, now);
+                pendingUsers.remove();
+                try {
+                    appIdentifierWithStorage.getActiveUsersStorage().updateLastActive(appIdentifierWithStorage,
+                            userId);
+                    writtenUpdates.increment();
+                    if (buffer.deleted.containsKey(userId)) {
+                        // the user was deleted while we were writing it, and the delete may have committed before
+                        // our write, so we remove the row again
+                        removeActiveUser(appIdentifierWithStorage, userId);
+                    }
+                } catch (StorageQueryException ignored) {
+                    // same as when the update was written right away
+                }
+            }
+        }
+    }
+
+    // Removes a user that is waiting to be written, so that it's not added back to the db after being deleted. This
+    // must be called before the user's last active time is deleted from the db, since a flush that is already
+    // writing the user checks for it afterwards.
+    public static void removeBufferedUser(Main main, AppIdentifier appIdentifier, String userId) {
+        ActiveUsers instance = getInstance(main);
+        if (instance == null) {
+            return;
+        }
+        AppBuffer buffer = instance.buffers.get(
+                new AppIdentifier(appIdentifier.getConnectionUriDomain(), appIdentifier.getAppId()));
+        if (buffer != null) {
+            buffer.deleted.put(userId, System.currentTimeMillis());
+            buffer.pending.remove(userId);
+            buffer.lastWritten.remove(userId);
+        }
+    }
+
+    // The number of updates that were not written to the db because the user was already waiting to be written,
+    // or was written recently
+    public long getCoalescedUpdateCount() {
+        return coalescedUpdates.sum();
+    }
+
+    // The number of buffered updates that were written to the db
+    public long getWrittenUpdateCount() {
+        return writtenUpdates.sum();
+    }
+
+    public int getPendingUpdateCount() {
+        int count = 0;
+        for (AppBuffer buffer : buffers.values()) {
+            count += buffer.pending.size();
+        }
+        return count;
+    }
+
+    @TestOnly
+    public void setBufferingEnabledForTesting(boolean enabled) {
+        this.bufferingEnabledForTesting = enabled;
+    }
+
+    private static class AppBuffer {
+        // user id -> when it was first marked as active since the last flush
+        final Map<String, Long> pending = new ConcurrentHashMap<>();
+        // user id -> when its last active time was last written
+        final Map<String, Long> lastWritten = new ConcurrentHashMap<>();
+        // user id -> when it was deleted
+        final Map<String, Long> deleted = new ConcurrentHashMap<>();
+    }
+
     public static int countUsersActiveSince(AppIdentifierWithStorage appIdentifierWithStorage, Main main, long time)
             throws StorageQueryException, TenantOrAppNotFoundException {
         return appIdentifierWithStorage.getActiveUsersStorage().countUsersActiveSince(appIdentifierWithStorage, time);
@@ -40,6 +219,73 @@ public class ActiveUsers {
                 time);
     }
 
+    // For each of the last `days` days, the number of users active since the start of that day, with index 0 being
+    // today (which must be the start of the current day)
+    public static int[] countUsersActiveSinceEachDay(Storage storage, AppIdentifier appIdentifier, long today,
+                                                     int days) throws StorageQueryException {
+        if (storage instanceof DailyActiveUsersStorage) {
+            return ((DailyActiveUsersStorage) storage).countUsersActiveSinceEachDay(appIdentifier, today, days);
+        }
+        return countSinceEachDay(today, days,
+                time -> ((ActiveUsersStorage) storage).countUsersActiveSince(appIdentifier, time));
+    }
+
+    public static int[] countUsersThatHaveMoreThanOneLoginMethodAndActiveSinceEachDay(Storage storage,
+                                                                                      AppIdentifier appIdentifier,
+                                                                                      long today, int days)
+            throws StorageQueryException {
+        if (storage instanceof DailyActiveUsersStorage) {
+            return ((DailyActiveUsersStorage) storage).countUsersThatHaveMoreThanOneLoginMethodAndActiveSinceEachDay(
+                    appIdentifier, today, days);
+        }
+        return countSinceEachDay(today, days,
+                time -> ((ActiveUsersStorage) storage).countUsersThatHaveMoreThanOneLoginMethodAndActiveSince(
+                        appIdentifier, time));
+    }
+
+    public static int[] countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(
+            Storage storage, AppIdentifier appIdentifier, long today, int days) throws StorageQueryException {
+        if (storage instanceof DailyActiveUsersStorage) {
+            return ((DailyActiveUsersStorage) storage)
+                    .countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(appIdentifier, today,
+                            days);
+        }
+        return countSinceEachDay(today, days,
+                time -> ((ActiveUsersStorage) storage)
+                        .countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSince(appIdentifier, time));
+    }
+
+    private static int[] countSinceEachDay(long today, int days, CountSince countSince)
+            throws StorageQueryException {
+        int[] counts = new int[days];
+        for (int i = 0; i < days; i++) {
+            counts[i] = countSince.count(today - (i * 24 * 60 * 60 * 1000L));
+        }
+        return counts;
+    }
+
+    private interface CountSince {
+        int count(long time) throws StorageQueryException;
+    }
+
+    /**
+     * A storage that can count the users active since the start of each of the last few days in one pass over the
+     * last active table, instead of one query per day. This is not a part of the plugin interface, so for storages
+     * that don't implement it, we query each day separately.
+     */
+    public interface DailyActiveUsersStorage {
+        int[] countUsersActiveSinceEachDay(AppIdentifier appIdentifier, long today, int days)
+                throws StorageQueryException;
+
+        int[] countUsersThatHaveMoreThanOneLoginMethodAndActiveSinceEachDay(AppIdentifier appIdentifier, long today,
+                                                                           int days)
+                throws StorageQueryException;
+
+        int[] countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(AppIdentifier appIdentifier,
+                                                                                         long today, int days)
+                throws StorageQueryException;
+    }
+
     public static void removeActiveUser(AppIdentifierWithStorage appIdentifierWithStorage, String userId)
             throws StorageQueryException {
         try {
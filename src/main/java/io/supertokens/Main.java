@@ -27,6 +27,7 @@ import io.supertokens.cronjobs.deleteExpiredPasswordResetTokens.DeleteExpiredPas
 import io.supertokens.cronjobs.deleteExpiredPasswordlessDevices.DeleteExpiredPasswordlessDevices;
 import io.supertokens.cronjobs.deleteExpiredSessions.DeleteExpiredSessions;
 import io.supertokens.cronjobs.deleteExpiredTotpTokens.DeleteExpiredTotpTokens;
+import io.supertokens.cronjobs.flushActiveUsers.FlushActiveUsers;
 import io.supertokens.cronjobs.syncCoreConfigWithDb.SyncCoreConfigWithDb;
 import io.supertokens.cronjobs.telemetry.Telemetry;
 import io.supertokens.emailpassword.PasswordHashing;
@@ -56,7 +57,7 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -206,7 +207,7 @@ public class Main {
 
         try {
             // load all configs for each of the tenants.
-            MultitenancyHelper.getInstance(this).loadConfig(new ArrayList<>());
+            MultitenancyHelper.getInstance(this).loadConfig(new HashSet<>());
 
             // init storage layers for each unique db connection based on unique (user pool ID, connection pool ID).
             MultitenancyHelper.getInstance(this).loadStorageLayer();
@@ -215,11 +216,11 @@ public class Main {
         }
 
         // load feature flag for all loaded apps
-        MultitenancyHelper.getInstance(this).loadFeatureFlag(new ArrayList<>());
+        MultitenancyHelper.getInstance(this).loadFeatureFlag(new HashSet<>());
 
         // init signing keys
         try {
-            MultitenancyHelper.getInstance(this).loadSigningKeys(new ArrayList<>());
+            MultitenancyHelper.getInstance(this).loadSigningKeys(new HashSet<>());
         } catch (UnsupportedJWTSigningAlgorithmException e) {
             throw new QuitProgramException(e);
         }
@@ -254,6 +255,10 @@ public class Main {
         // starts DeleteExpiredAccessTokenSigningKeys cronjob if the access token signing keys can change
         Cronjobs.addCronjob(this, DeleteExpiredAccessTokenSigningKeys.init(this, uniqueUserPoolIdsTenants));
 
+        // buffers the last active time of users, which is written to the db by the FlushActiveUsers cronjob
+        ActiveUsers.init(this);
+        Cronjobs.addCronjob(this, FlushActiveUsers.init(this));
+
         // this is to ensure tenantInfos are in sync for the new cron job as well
         MultitenancyHelper.getInstance(this).refreshCronjobs();
 
@@ -417,6 +422,8 @@ public class Main {
             Logging.info(this, TenantIdentifier.BASE_TENANT, "Stopping SuperTokens...", true);
             Webserver.getInstance(this).stop();
             Cronjobs.shutdownAndAwaitTermination(this);
+            // the webserver and cronjobs have stopped, so no more users are marked as active after this
+            ActiveUsers.flush(this);
             StorageLayer.close(this);
             removeDotStartedFileForThisProcess();
             Logging.stopLogging(this);
@@ -23,31 +23,57 @@ import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoun
 import org.jetbrains.annotations.TestOnly;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 // the purpose of this class is to tie singleton classes to s specific main instance. So that
 // when the main instance dies, those singleton classes die too.
+//
+// Resources are looked up on every request (often many times per request), so lookups don't take any lock. They
+// read the current map, which is never modified once it's published. Writes are synchronized, and replace the map
+// with a modified copy. Writes done inside withResourceDistributorLock (like when tenants are reloaded) are made to
+// a single copy which is published when the outermost call returns, so other threads see all the changes at once,
+// while the thread doing them sees them right away.
+//
+// If a tenant is not found even after checking the db for new tenants, we remember that for a short while, so that
+// more requests for a tenant that doesn't exist don't check the db again.
 
 public class ResourceDistributor {
-    private final Map<KeyClass, SingletonResource> resources = new HashMap<>(1);
+    private volatile Map<KeyClass, SingletonResource> resources = new HashMap<>(1);
+    // only used by the thread that holds the lock on this object
+    private Map<KeyClass, SingletonResource> pendingResources = null;
+    private int lockDepth = 0;
     private final Main main;
 
+    private static final long UNKNOWN_TENANT_TTL_MS = 5000;
+    // if there are more unknown tenants than this within the TTL, we forget all of them and start over
+    static final int MAX_UNKNOWN_TENANTS = 10000;
+
+    // tenant -> time until which we don't check the db for it again. Cleared whenever changed resources are
+    // published, since that happens when tenants are loaded.
+    private final Map<TenantIdentifier, Long> unknownTenants = new ConcurrentHashMap<>();
+    private final AtomicLong suppressedTenantRefreshes = new AtomicLong(0);
+    private final LongAdder lookups = new LongAdder();
+    private Long unknownTenantTtlForTesting = null;
+    private volatile ConnectionUriDomains connectionUriDomains = null;
+
     public ResourceDistributor(Main main) {
         this.main = main;
     }
 
-    public synchronized SingletonResource getResource(AppIdentifier appIdentifier, @Nonnull String key)
+    public SingletonResource getResource(AppIdentifier appIdentifier, @Nonnull String key)
             throws TenantOrAppNotFoundException {
         return getResource(appIdentifier.getAsPublicTenantIdentifier(), key);
     }
 
-    public synchronized SingletonResource getResource(TenantIdentifier tenantIdentifier, @Nonnull String key)
+    public SingletonResource getResource(TenantIdentifier tenantIdentifier, @Nonnull String key)
             throws TenantOrAppNotFoundException {
+        lookups.increment();
         // first we do exact match
-        SingletonResource resource = resources.get(new KeyClass(tenantIdentifier, key));
+        SingletonResource resource = getResourcesForRead().get(new KeyClass(tenantIdentifier, key));
         if (resource != null) {
             return resource;
         }
@@ -58,9 +84,20 @@ public class ResourceDistributor {
             throw new TenantOrAppNotFoundException(tenantIdentifier);
         }
 
-        MultitenancyHelper.getInstance(main).refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
+        // this only reads all the tenants from the db if they changed since they were last read, so that requests
+        // for tenants that don't exist don't each cause a full reload
+        // the tenant is only remembered as unknown after checking the db, so that lookups within the TTL don't keep
+        // pushing its expiry forward
+        boolean checkedDb = false;
+        if (isRecentlyUnknownTenant(tenantIdentifier)) {
+            suppressedTenantRefreshes.incrementAndGet();
+        } else {
+            MultitenancyHelper.getInstance(main).refreshTenantsInCoreIfChangedInDb();
+            checkedDb = true;
+        }
 
         // we try again..
+        Map<KeyClass, SingletonResource> resources = getResourcesForRead();
         resource = resources.get(new KeyClass(tenantIdentifier, key));
         if (resource != null) {
             return resource;
@@ -68,11 +105,11 @@ public class ResourceDistributor {
 
         // then we see if the user has configured anything to do with connectionUriDomain, and if they have,
         // then we must return null cause the user has not specifically added tenantId to it
-        for (KeyClass currKey : resources.keySet()) {
-            if (currKey.getTenantIdentifier().getConnectionUriDomain()
-                    .equals(tenantIdentifier.getConnectionUriDomain())) {
-                throw new TenantOrAppNotFoundException(tenantIdentifier);
+        if (getConnectionUriDomains(resources).contains(tenantIdentifier.getConnectionUriDomain())) {
+            if (checkedDb) {
+                rememberUnknownTenant(tenantIdentifier, resources);
             }
+            throw new TenantOrAppNotFoundException(tenantIdentifier);
         }
 
         // if it comes here, it means that the user has not configured anything to do with
@@ -85,32 +122,144 @@ public class ResourceDistributor {
             return resource;
         }
 
+        if (checkedDb) {
+            rememberUnknownTenant(tenantIdentifier, resources);
+        }
         throw new TenantOrAppNotFoundException(tenantIdentifier);
     }
 
+    private long getUnknownTenantTtlMs() {
+        if (Main.isTesting) {
+            // tests create tenants directly in the db and then expect them to be found, so this is off unless a
+            // test turns it on
+            return unknownTenantTtlForTesting == null ? 0 : unknownTenantTtlForTesting;
+        }
+        return UNKNOWN_TENANT_TTL_MS;
+    }
+
     @TestOnly
-    public synchronized SingletonResource getResource(@Nonnull String key) {
-        return resources.get(new KeyClass(new TenantIdentifier(null, null, null), key));
+    public void setUnknownTenantTtlForTesting(long ttlMs) {
+        this.unknownTenantTtlForTesting = ttlMs;
+    }
+
+    private boolean isRecentlyUnknownTenant(TenantIdentifier tenantIdentifier) {
+        Long expiry = unknownTenants.get(tenantIdentifier);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry > System.currentTimeMillis()) {
+            return true;
+        }
+        unknownTenants.remove(tenantIdentifier, expiry);
+        return false;
+    }
+
+    // resourcesSeen is the version of the resources in which the tenant was not found
+    private void rememberUnknownTenant(TenantIdentifier tenantIdentifier,
+                                       Map<KeyClass, SingletonResource> resourcesSeen) {
+        long ttl = getUnknownTenantTtlMs();
+        if (ttl <= 0) {
+            return;
+        }
+        if (unknownTenants.size() >= MAX_UNKNOWN_TENANTS) {
+            // the entries expire soon anyway, so this is cheaper than finding the oldest ones
+            unknownTenants.clear();
+        }
+        Long expiry = System.currentTimeMillis() + ttl;
+        unknownTenants.put(tenantIdentifier, expiry);
+        if (this.resources != resourcesSeen) {
+            // new resources were published (and the unknown tenants cleared) since we looked, and the tenant may be
+            // in them
+            unknownTenants.remove(tenantIdentifier, expiry);
+        }
+    }
+
+    // The number of lookups for tenants that were recently not found, for which we didn't check the db again
+    public long getSuppressedTenantRefreshCount() {
+        return suppressedTenantRefreshes.get();
+    }
+
+    // The number of times a resource, or all resources with a key, were looked up. This is used to see how many
+    // lookups something does.
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    // The connectionUriDomains that resources exist for, computed once per version of the resources map
+    private Set<String> getConnectionUriDomains(Map<KeyClass, SingletonResource> resources) {
+        ConnectionUriDomains cached = this.connectionUriDomains;
+        if (cached != null && cached.resources == resources) {
+            return cached.connectionUriDomains;
+        }
+        Set<String> result = new HashSet<>();
+        for (KeyClass currKey : resources.keySet()) {
+            result.add(currKey.getTenantIdentifier().getConnectionUriDomain());
+        }
+        if (resources != this.pendingResources) {
+            // the pending map can still change, so we don't cache it
+            this.connectionUriDomains = new ConnectionUriDomains(resources, result);
+        }
+        return result;
+    }
+
+    private static class ConnectionUriDomains {
+        final Map<KeyClass, SingletonResource> resources;
+        final Set<String> connectionUriDomains;
+
+        ConnectionUriDomains(Map<KeyClass, SingletonResource> resources, Set<String> connectionUriDomains) {
+            this.resources = resources;
+            this.connectionUriDomains = connectionUriDomains;
+        }
+    }
+
+    private Map<KeyClass, SingletonResource> getResourcesForRead() {
+        Map<KeyClass, SingletonResource> pending = this.pendingResources;
+        if (pending != null && Thread.holdsLock(this)) {
+            // this thread is in the middle of a batch of writes
+            return pending;
+        }
+        return resources;
+    }
+
+    private synchronized void updateResources(Consumer<Map<KeyClass, SingletonResource>> update) {
+        if (lockDepth > 0) {
+            if (pendingResources == null) {
+                pendingResources = new HashMap<>(resources);
+            }
+            update.accept(pendingResources);
+        } else {
+            Map<KeyClass, SingletonResource> copy = new HashMap<>(resources);
+            update.accept(copy);
+            resources = copy;
+            unknownTenants.clear();
+        }
+    }
+
+    @TestOnly
+    public SingletonResource getResource(@Nonnull String key) {
+        return getResourcesForRead().get(new KeyClass(new TenantIdentifier(null, null, null), key));
     }
 
     public synchronized SingletonResource setResource(TenantIdentifier tenantIdentifier,
                                                       @Nonnull String key,
                                                       SingletonResource resource) {
-        SingletonResource alreadyExists = resources.get(new KeyClass(tenantIdentifier, key));
+        KeyClass keyClass = new KeyClass(tenantIdentifier, key);
+        SingletonResource alreadyExists = getResourcesForRead().get(keyClass);
         if (alreadyExists != null) {
             return alreadyExists;
         }
-        resources.put(new KeyClass(tenantIdentifier, key), resource);
+        updateResources(resources -> resources.put(keyClass, resource));
         return resource;
     }
 
     public synchronized SingletonResource removeResource(TenantIdentifier tenantIdentifier,
                                                       @Nonnull String key) {
-        SingletonResource singletonResource = resources.get(new KeyClass(tenantIdentifier, key));
+        KeyClass keyClass = new KeyClass(tenantIdentifier, key);
+        SingletonResource singletonResource = getResourcesForRead().get(keyClass);
         if (singletonResource == null) {
             return null;
         }
-        resources.remove(new KeyClass(tenantIdentifier, key));
+        updateResources(resources -> resources.remove(keyClass));
         return singletonResource;
     }
 
@@ -127,19 +276,25 @@ public class ResourceDistributor {
 
     public synchronized void clearAllResourcesWithResourceKey(String inputKey) {
         List<KeyClass> toRemove = new ArrayList<>();
-        resources.forEach((key, value) -> {
+        getResourcesForRead().forEach((key, value) -> {
             if (key.key.equals(inputKey)) {
                 toRemove.add(key);
             }
         });
-        for (KeyClass keyClass : toRemove) {
-            resources.remove(keyClass);
+        if (toRemove.isEmpty()) {
+            return;
         }
+        updateResources(resources -> {
+            for (KeyClass keyClass : toRemove) {
+                resources.remove(keyClass);
+            }
+        });
     }
 
-    public synchronized Map<KeyClass, SingletonResource> getAllResourcesWithResourceKey(String inputKey) {
+    public Map<KeyClass, SingletonResource> getAllResourcesWithResourceKey(String inputKey) {
+        lookups.increment();
         Map<KeyClass, SingletonResource> result = new HashMap<>();
-        resources.forEach((key, value) -> {
+        getResourcesForRead().forEach((key, value) -> {
             if (key.key.equals(inputKey)) {
                 result.put(key, value);
             }
@@ -158,7 +313,12 @@ public class ResourceDistributor {
     }
 
     public synchronized <T> T withResourceDistributorLock(Func<T> func) throws FuncException {
-        return func.performTask();
+        lockDepth++;
+        try {
+            return func.performTask();
+        } finally {
+            endBatch();
+        }
     }
 
     public interface FuncWithReturn<T> {
@@ -166,7 +326,25 @@ public class ResourceDistributor {
     }
 
     public synchronized <T> T withResourceDistributorLockWithReturn(FuncWithReturn<T> func) throws FuncException {
-        return func.performTask();
+        lockDepth++;
+        try {
+            return func.performTask();
+        } finally {
+            endBatch();
+        }
+    }
+
+    // Publishes the writes done in withResourceDistributorLock once the outermost call is done. We do this even if
+    // the task failed, since the writes that it did were already visible to it.
+    private void endBatch() {
+        lockDepth--;
+        if (lockDepth == 0 && pendingResources != null) {
+            resources = pendingResources;
+            pendingResources = null;
+            // the unknown tenants are cleared only once the new resources are visible, so that a lookup can't
+            // remember a tenant that is being loaded as unknown
+            unknownTenants.clear();
+        }
     }
 
     public static class FuncException extends Exception {
@@ -185,14 +363,25 @@ public class ResourceDistributor {
 
         private final TenantIdentifier tenantIdentifier;
 
+        // keys are created for every lookup, so we compute this once, and without building a string
+        private final int hashCode;
+
         public KeyClass(TenantIdentifier tenantIdentifier, @Nonnull String key) {
             this.key = key;
             this.tenantIdentifier = tenantIdentifier;
+            this.hashCode = computeHashCode(tenantIdentifier, key);
         }
 
         public KeyClass(AppIdentifier appIdentifier, @Nonnull String key) {
-            this.key = key;
-            this.tenantIdentifier = appIdentifier.getAsPublicTenantIdentifier();
+            this(appIdentifier.getAsPublicTenantIdentifier(), key);
+        }
+
+        private static int computeHashCode(TenantIdentifier tenantIdentifier, String key) {
+            int result = Objects.hashCode(tenantIdentifier.getTenantId());
+            result = 31 * result + Objects.hashCode(tenantIdentifier.getConnectionUriDomain());
+            result = 31 * result + Objects.hashCode(tenantIdentifier.getAppId());
+            result = 31 * result + key.hashCode();
+            return result;
         }
 
         public TenantIdentifier getTenantIdentifier() {
@@ -203,18 +392,15 @@ public class ResourceDistributor {
         public boolean equals(Object other) {
             if (other instanceof KeyClass) {
                 KeyClass otherKeyClass = (KeyClass) other;
-                return otherKeyClass.getTenantIdentifier().equals(this.getTenantIdentifier()) &&
-                        otherKeyClass.key.equals(key);
+                return otherKeyClass.hashCode == this.hashCode && otherKeyClass.key.equals(key) &&
+                        otherKeyClass.getTenantIdentifier().equals(this.getTenantIdentifier());
             }
             return false;
         }
 
         @Override
         public int hashCode() {
-            return (this.getTenantIdentifier().getTenantId() + "|" +
-                    this.getTenantIdentifier().getConnectionUriDomain() + "|" +
-                    this.getTenantIdentifier().getAppId() + "|" +
-                    this.key).hashCode();
+            return this.hashCode;
         }
     }
 
@@ -16,6 +16,7 @@
 
 package io.supertokens.authRecipe;
 
+import io.supertokens.ActiveUsers;
 import io.supertokens.Main;
 import io.supertokens.authRecipe.exception.AccountInfoAlreadyAssociatedWithAnotherPrimaryUserIdException;
 import io.supertokens.authRecipe.exception.InputUserIdIsNotAPrimaryUserException;
@@ -36,6 +37,7 @@ import io.supertokens.pluginInterface.dashboard.DashboardSearchTags;
 import io.supertokens.pluginInterface.emailpassword.exceptions.UnknownUserIdException;
 import io.supertokens.pluginInterface.exceptions.StorageQueryException;
 import io.supertokens.pluginInterface.exceptions.StorageTransactionLogicException;
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
 import io.supertokens.pluginInterface.multitenancy.AppIdentifierWithStorage;
 import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
 import io.supertokens.pluginInterface.multitenancy.TenantIdentifierWithStorage;
@@ -44,6 +46,7 @@ import io.supertokens.pluginInterface.session.sqlStorage.SessionSQLStorage;
 import io.supertokens.pluginInterface.sqlStorage.TransactionConnection;
 import io.supertokens.pluginInterface.useridmapping.UserIdMapping;
 import io.supertokens.session.Session;
+import io.supertokens.session.SessionRevocationIndex;
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.useridmapping.UserIdType;
 import org.jetbrains.annotations.TestOnly;
@@ -72,8 +75,15 @@ public class AuthRecipe {
                                          String recipeUserId)
             throws StorageQueryException, UnknownUserIdException, InputUserIdIsNotAPrimaryUserException {
         AuthRecipeSQLStorage storage = (AuthRecipeSQLStorage) appIdentifierWithStorage.getAuthRecipeStorage();
+        Map<String, String[]> sessionHandlesOfUsers =
+                getEnabledSessionRevocationIndex(main, appIdentifierWithStorage) == null ? null :
+                        getSessionHandlesOfUsersThatMayBeDeleted(main, appIdentifierWithStorage, recipeUserId,
+                                io.supertokens.useridmapping.UserIdMapping.getUserIdMapping(
+                                        appIdentifierWithStorage, recipeUserId, UserIdType.SUPERTOKENS));
+        List<String> usersWithDeletedSessions = new ArrayList<>();
         try {
             UnlinkResult res = storage.startTransaction(con -> {
+                usersWithDeletedSessions.clear();
                 AuthRecipeUserInfo primaryUser = storage.getPrimaryUserById_Transaction(appIdentifierWithStorage, con,
                         recipeUserId);
                 if (primaryUser == null) {
@@ -100,7 +110,8 @@ public class AuthRecipe {
                         // The delete will also cause the automatic unlinking.
                         // We need to make sure that it only deletes sessions for recipeUserId and not other linked
                         // users who have their sessions for primaryUserId (that is equal to the recipeUserId)
-                        deleteUserHelper(con, appIdentifierWithStorage, recipeUserId, false, mappingResult);
+                        deleteUserHelper(con, appIdentifierWithStorage, main, recipeUserId, false, mappingResult,
+                                usersWithDeletedSessions);
                         return new UnlinkResult(mappingResult == null ? recipeUserId : mappingResult.externalUserId, true);
                     }
                 } else {
@@ -108,6 +119,8 @@ public class AuthRecipe {
                     return new UnlinkResult(mappingResult == null ? recipeUserId : mappingResult.externalUserId, false);
                 }
             });
+            markSessionsOfDeletedUsersAsRevoked(main, appIdentifierWithStorage, sessionHandlesOfUsers,
+                    usersWithDeletedSessions);
             Session.revokeAllSessionsForUser(main, appIdentifierWithStorage, res.userId, false);
             return res.wasLinked;
         } catch (StorageTransactionLogicException e) {
@@ -745,29 +758,104 @@ public class AuthRecipe {
     }
 
     @TestOnly
-    public static void deleteUser(AppIdentifierWithStorage appIdentifierWithStorage, String userId,
+    public static void deleteUser(AppIdentifierWithStorage appIdentifierWithStorage, Main main, String userId,
                                   UserIdMapping userIdMapping)
             throws StorageQueryException, StorageTransactionLogicException {
-        deleteUser(appIdentifierWithStorage, userId, true, userIdMapping);
+        deleteUser(appIdentifierWithStorage, main, userId, true, userIdMapping);
     }
 
-    public static void deleteUser(AppIdentifierWithStorage appIdentifierWithStorage, String userId,
+    public static void deleteUser(AppIdentifierWithStorage appIdentifierWithStorage, Main main, String userId,
                                   boolean removeAllLinkedAccounts,
                                   UserIdMapping userIdMapping)
             throws StorageQueryException, StorageTransactionLogicException {
         AuthRecipeSQLStorage storage = (AuthRecipeSQLStorage) appIdentifierWithStorage.getAuthRecipeStorage();
 
+        Map<String, String[]> sessionHandlesOfUsers = getSessionHandlesOfUsersThatMayBeDeleted(main,
+                appIdentifierWithStorage, userId, userIdMapping);
+        List<String> usersWithDeletedSessions = new ArrayList<>();
         storage.startTransaction(con -> {
-            deleteUserHelper(con, appIdentifierWithStorage, userId, removeAllLinkedAccounts, userIdMapping);
+            usersWithDeletedSessions.clear();
+            deleteUserHelper(con, appIdentifierWithStorage, main, userId, removeAllLinkedAccounts, userIdMapping,
+                    usersWithDeletedSessions);
             storage.commitTransaction(con);
             return null;
         });
+        markSessionsOfDeletedUsersAsRevoked(main, appIdentifierWithStorage, sessionHandlesOfUsers,
+                usersWithDeletedSessions);
+    }
+
+    // If the session revocation index of the app is enabled, this returns the session handles of the user and its
+    // linked accounts (by user id, and by external user id if they have one), so that the ones whose sessions are
+    // deleted can be marked as revoked after the delete is committed. Returns null otherwise.
+    @Nullable
+    private static Map<String, String[]> getSessionHandlesOfUsersThatMayBeDeleted(Main main,
+                                                                                  AppIdentifierWithStorage
+                                                                                          appIdentifierWithStorage,
+                                                                                  String userId,
+                                                                                  @Nullable UserIdMapping userIdMapping)
+            throws StorageQueryException {
+        if (getEnabledSessionRevocationIndex(main, appIdentifierWithStorage) == null) {
+            return null;
+        }
+        Set<String> userIds = new HashSet<>();
+        userIds.add(userId);
+        String superTokensUserId = userId;
+        if (userIdMapping != null) {
+            userIds.add(userIdMapping.superTokensUserId);
+            userIds.add(userIdMapping.externalUserId);
+            superTokensUserId = userIdMapping.superTokensUserId;
+        }
+        AuthRecipeUserInfo user = appIdentifierWithStorage.getAuthRecipeStorage()
+                .getPrimaryUserById(appIdentifierWithStorage, superTokensUserId);
+        if (user != null) {
+            for (LoginMethod lM : user.loginMethods) {
+                userIds.add(lM.getSupertokensUserId());
+                UserIdMapping mapping = io.supertokens.useridmapping.UserIdMapping.getUserIdMapping(
+                        appIdentifierWithStorage, lM.getSupertokensUserId(), UserIdType.SUPERTOKENS);
+                if (mapping != null) {
+                    userIds.add(mapping.externalUserId);
+                }
+            }
+        }
+        Map<String, String[]> sessionHandlesOfUsers = new HashMap<>();
+        for (String currUserId : userIds) {
+            sessionHandlesOfUsers.put(currUserId, Session.getAllNonExpiredSessionHandlesForUser(main,
+                    appIdentifierWithStorage, currUserId, false));
+        }
+        return sessionHandlesOfUsers;
+    }
+
+    private static void markSessionsOfDeletedUsersAsRevoked(Main main, AppIdentifier appIdentifier,
+                                                            @Nullable Map<String, String[]> sessionHandlesOfUsers,
+                                                            List<String> usersWithDeletedSessions) {
+        SessionRevocationIndex revocationIndex = getEnabledSessionRevocationIndex(main, appIdentifier);
+        if (sessionHandlesOfUsers == null || revocationIndex == null) {
+            return;
+        }
+        for (String userId : usersWithDeletedSessions) {
+            String[] sessionHandles = sessionHandlesOfUsers.get(userId);
+            if (sessionHandles != null) {
+                revocationIndex.markRevoked(sessionHandles);
+            }
+        }
+    }
+
+    @Nullable
+    private static SessionRevocationIndex getEnabledSessionRevocationIndex(Main main, AppIdentifier appIdentifier) {
+        try {
+            SessionRevocationIndex revocationIndex = SessionRevocationIndex.getInstance(appIdentifier, main);
+            return revocationIndex.isEnabled() ? revocationIndex : null;
+        } catch (TenantOrAppNotFoundException e) {
+            // the app was deleted, so there are no sessions of it to verify anymore
+            return null;
+        }
     }
 
     private static void deleteUserHelper(TransactionConnection con, AppIdentifierWithStorage appIdentifierWithStorage,
-                                         String userId,
+                                         Main main, String userId,
                                          boolean removeAllLinkedAccounts,
-                                         UserIdMapping userIdMapping)
+                                         UserIdMapping userIdMapping,
+                                         List<String> usersWithDeletedSessions)
             throws StorageQueryException {
         AuthRecipeSQLStorage storage = (AuthRecipeSQLStorage) appIdentifierWithStorage.getAuthRecipeStorage();
 
@@ -863,11 +951,13 @@ public class AuthRecipe {
                     !userIdToDeleteForAuthRecipe.equals(userToDelete.getSupertokensUserId()));
 
             if (userIdToDeleteForNonAuthRecipeForRecipeUserId != null) {
-                deleteNonAuthRecipeUser(con, appIdentifierWithStorage, userIdToDeleteForNonAuthRecipeForRecipeUserId);
+                deleteNonAuthRecipeUser(con, appIdentifierWithStorage, main,
+                        userIdToDeleteForNonAuthRecipeForRecipeUserId, usersWithDeletedSessions);
             }
 
             if (primaryUserIdToDeleteNonAuthRecipe != null) {
-                deleteNonAuthRecipeUser(con, appIdentifierWithStorage, primaryUserIdToDeleteNonAuthRecipe);
+                deleteNonAuthRecipeUser(con, appIdentifierWithStorage, main, primaryUserIdToDeleteNonAuthRecipe,
+                        usersWithDeletedSessions);
 
                 // this is only done to also delete the user ID mapping in case it exists, since we do not delete in the
                 // previous call to deleteAuthRecipeUser above.
@@ -882,7 +972,8 @@ public class AuthRecipe {
                                 con,
                                 appIdentifierWithStorage,
                                 lM.getSupertokensUserId(), UserIdType.SUPERTOKENS);
-                deleteUserHelper(con, appIdentifierWithStorage, lM.getSupertokensUserId(), false, mappingResult);
+                deleteUserHelper(con, appIdentifierWithStorage, main, lM.getSupertokensUserId(), false,
+                        mappingResult, usersWithDeletedSessions);
             }
         }
     }
@@ -896,7 +987,7 @@ public class AuthRecipe {
         UserIdMapping mapping = io.supertokens.useridmapping.UserIdMapping.getUserIdMapping(appIdentifier,
                 userId, UserIdType.ANY);
 
-        deleteUser(appIdentifier, userId, removeAllLinkedAccounts, mapping);
+        deleteUser(appIdentifier, main, userId, removeAllLinkedAccounts, mapping);
     }
 
     @TestOnly
@@ -908,30 +999,33 @@ public class AuthRecipe {
         UserIdMapping mapping = io.supertokens.useridmapping.UserIdMapping.getUserIdMapping(appIdentifier,
                 userId, UserIdType.ANY);
 
-        deleteUser(appIdentifier, userId, mapping);
+        deleteUser(appIdentifier, main, userId, mapping);
     }
 
     @TestOnly
-    public static void deleteUser(AppIdentifierWithStorage appIdentifierWithStorage, String userId)
+    public static void deleteUser(AppIdentifierWithStorage appIdentifierWithStorage, Main main, String userId)
             throws StorageQueryException, StorageTransactionLogicException {
         Storage storage = appIdentifierWithStorage.getStorage();
         UserIdMapping mapping = io.supertokens.useridmapping.UserIdMapping.getUserIdMapping(appIdentifierWithStorage,
                 userId, UserIdType.ANY);
 
-        deleteUser(appIdentifierWithStorage, userId, mapping);
+        deleteUser(appIdentifierWithStorage, main, userId, mapping);
     }
 
     private static void deleteNonAuthRecipeUser(TransactionConnection con, AppIdentifierWithStorage
-            appIdentifierWithStorage, String userId)
+            appIdentifierWithStorage, Main main, String userId, List<String> usersWithDeletedSessions)
             throws StorageQueryException {
         appIdentifierWithStorage.getUserMetadataStorage()
                 .deleteUserMetadata_Transaction(con, appIdentifierWithStorage, userId);
         ((SessionSQLStorage) appIdentifierWithStorage.getSessionStorage())
                 .deleteSessionsOfUser_Transaction(con, appIdentifierWithStorage, userId);
+        usersWithDeletedSessions.add(userId);
         appIdentifierWithStorage.getEmailVerificationStorage()
                 .deleteEmailVerificationUserInfo_Transaction(con, appIdentifierWithStorage, userId);
         appIdentifierWithStorage.getUserRolesStorage()
                 .deleteAllRolesForUser_Transaction(con, appIdentifierWithStorage, userId);
+        // so that the user's last active time, if it has not been written yet, is not added back to the db
+        ActiveUsers.removeBufferedUser(main, appIdentifierWithStorage, userId);
         appIdentifierWithStorage.getActiveUsersStorage()
                 .deleteUserActive_Transaction(con, appIdentifierWithStorage, userId);
     }
@@ -949,8 +1043,8 @@ public class AuthRecipe {
                 .deletePasswordlessUser_Transaction(con, appIdentifierWithStorage, userId, deleteFromUserIdToAppIdTableToo);
     }
 
-    public static boolean deleteNonAuthRecipeUser(TenantIdentifierWithStorage
-                                                          tenantIdentifierWithStorage, String userId)
+    public static boolean deleteNonAuthRecipeUser(Main main, TenantIdentifierWithStorage
+            tenantIdentifierWithStorage, String userId)
             throws StorageQueryException {
 
         // UserMetadata is per app, so nothing to delete
@@ -958,9 +1052,16 @@ public class AuthRecipe {
         boolean finalDidExist = false;
         boolean didExist = false;
 
+        SessionRevocationIndex revocationIndex = getEnabledSessionRevocationIndex(main,
+                tenantIdentifierWithStorage.toAppIdentifier());
+        String[] sessionHandles = revocationIndex == null ? null : tenantIdentifierWithStorage.getSessionStorage()
+                .getAllNonExpiredSessionHandlesForUser(tenantIdentifierWithStorage, userId);
         didExist = tenantIdentifierWithStorage.getSessionStorage()
                 .deleteSessionsOfUser(tenantIdentifierWithStorage, userId);
         finalDidExist = finalDidExist || didExist;
+        if (sessionHandles != null) {
+            revocationIndex.markRevoked(sessionHandles);
+        }
 
         didExist = tenantIdentifierWithStorage.getEmailVerificationStorage()
                 .deleteEmailVerificationUserInfo(tenantIdentifierWithStorage, userId);
@@ -35,12 +35,10 @@ import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.utils.ConfigMapper;
 import org.jetbrains.annotations.TestOnly;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class Config extends ResourceDistributor.SingletonResource {
 
@@ -104,17 +102,18 @@ public class Config extends ResourceDistributor.SingletonResource {
     @TestOnly
     public static void loadAllTenantConfig(Main main, TenantConfig[] tenants)
             throws IOException, InvalidConfigException {
-        loadAllTenantConfig(main, tenants, new ArrayList<>());
+        loadAllTenantConfig(main, tenants, new HashSet<>());
     }
 
-    public static void loadAllTenantConfig(Main main, TenantConfig[] tenants, List<TenantIdentifier> tenantsThatChanged)
+    // The config of a tenant is only created again if it is in tenantsThatChanged, or if it was not loaded before.
+    // Only those tenants are normalised and validated here, so that adding or changing one tenant doesn't have to
+    // redo the work for all the others.
+    public static void loadAllTenantConfig(Main main, TenantConfig[] tenants, Set<TenantIdentifier> tenantsThatChanged)
             throws IOException, InvalidConfigException {
         ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.LOADING_ALL_TENANT_CONFIG, null);
-        Map<ResourceDistributor.KeyClass, JsonObject> normalisedConfigs = getNormalisedConfigsForAllTenants(
-                tenants,
-                getBaseConfigAsJsonObject(main));
-
-        assertAllTenantConfigsAreValid(main, normalisedConfigs, tenants);
+        JsonObject baseConfigJson = getBaseConfigAsJsonObject(main);
+        Map<ResourceDistributor.KeyClass, JsonObject> normalisedConfigs = assertTenantConfigsAreValid(main,
+                tenants, tenantsThatChanged, baseConfigJson);
 
         // At this point, we know that all configs are valid.
         try {
@@ -124,20 +123,25 @@ public class Config extends ResourceDistributor.SingletonResource {
                             main.getResourceDistributor()
                                     .getAllResourcesWithResourceKey(RESOURCE_KEY);
                     main.getResourceDistributor().clearAllResourcesWithResourceKey(RESOURCE_KEY);
-                    for (ResourceDistributor.KeyClass key : normalisedConfigs.keySet()) {
-                        ResourceDistributor.SingletonResource resource = existingResources.get(
-                                new ResourceDistributor.KeyClass(
-                                        key.getTenantIdentifier(),
-                                        RESOURCE_KEY));
-                        if (resource != null && !tenantsThatChanged.contains(key.getTenantIdentifier())) {
+                    for (TenantIdentifier tenantIdentifier : getTenantIdentifiersWithBaseTenant(tenants)) {
+                        ResourceDistributor.KeyClass key = new ResourceDistributor.KeyClass(tenantIdentifier,
+                                RESOURCE_KEY);
+                        ResourceDistributor.SingletonResource resource = existingResources.get(key);
+                        if (resource != null && !tenantsThatChanged.contains(tenantIdentifier)) {
                             main.getResourceDistributor()
-                                    .setResource(key.getTenantIdentifier(),
+                                    .setResource(tenantIdentifier,
                                             RESOURCE_KEY,
                                             resource);
                         } else {
+                            JsonObject normalisedConfig = normalisedConfigs.get(key);
+                            if (normalisedConfig == null) {
+                                // the config was removed by someone else after we validated the configs above
+                                normalisedConfig = getNormalisedConfigsForTenants(tenants, baseConfigJson,
+                                        Collections.singleton(tenantIdentifier)).get(key);
+                            }
                             main.getResourceDistributor()
-                                    .setResource(key.getTenantIdentifier(), RESOURCE_KEY,
-                                            new Config(main, normalisedConfigs.get(key)));
+                                    .setResource(tenantIdentifier, RESOURCE_KEY,
+                                            new Config(main, normalisedConfig));
 
                         }
                     }
@@ -154,14 +158,54 @@ public class Config extends ResourceDistributor.SingletonResource {
         }
     }
 
-    // this function will check for conflicting configs across all tenants, including the base config.
-    public static void assertAllTenantConfigsAreValid(Main main,
-                                                      Map<ResourceDistributor.KeyClass, JsonObject> normalisedConfigs,
-                                                      TenantConfig[] tenants)
+    // This function will check for conflicting configs across all tenants, including the base config. Only the
+    // tenants in tenantsThatChanged, and the ones that are not loaded yet, are checked fully (which creates a new
+    // storage instance for each of them). The other tenants were checked when they were loaded, so we use their
+    // loaded config and storage to check that the changed tenants don't conflict with them.
+    // Returns the normalised configs of the tenants that were checked fully.
+    public static Map<ResourceDistributor.KeyClass, JsonObject> assertTenantConfigsAreValid(Main main,
+                                                                                          TenantConfig[] tenants,
+                                                                                          Set<TenantIdentifier> tenantsThatChanged,
+                                                                                          JsonObject baseConfigJson)
             throws InvalidConfigException, IOException {
+        Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> loadedConfigs =
+                main.getResourceDistributor().getAllResourcesWithResourceKey(RESOURCE_KEY);
+        Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> loadedStorages =
+                main.getResourceDistributor().getAllResourcesWithResourceKey(StorageLayer.RESOURCE_KEY);
+
+        Set<TenantIdentifier> tenantsToCheck = new HashSet<>();
+        List<TenantIdentifier> unchangedTenants = new ArrayList<>();
+        for (TenantIdentifier tenantIdentifier : getTenantIdentifiersWithBaseTenant(tenants)) {
+            if (tenantsThatChanged.contains(tenantIdentifier)
+                    || !loadedConfigs.containsKey(new ResourceDistributor.KeyClass(tenantIdentifier, RESOURCE_KEY))
+                    || !loadedStorages.containsKey(
+                    new ResourceDistributor.KeyClass(tenantIdentifier, StorageLayer.RESOURCE_KEY))) {
+                tenantsToCheck.add(tenantIdentifier);
+            } else {
+                unchangedTenants.add(tenantIdentifier);
+            }
+        }
+
+        Map<ResourceDistributor.KeyClass, JsonObject> normalisedConfigs = getNormalisedConfigsForTenants(tenants,
+                baseConfigJson, tenantsToCheck);
+
         Map<String, Storage> userPoolToStorage = new HashMap<>();
         Map<String, Config> appIdToConfigMap = new HashMap<>();
         Map<String, String> userPoolIdToConnectionUriDomain = new HashMap<>();
+
+        for (TenantIdentifier tenantIdentifier : unchangedTenants) {
+            Storage storage = ((StorageLayer) loadedStorages.get(
+                    new ResourceDistributor.KeyClass(tenantIdentifier, StorageLayer.RESOURCE_KEY)))
+                    .getUnderlyingStorage();
+            Config config = (Config) loadedConfigs.get(new ResourceDistributor.KeyClass(tenantIdentifier,
+                    RESOURCE_KEY));
+            userPoolIdToConnectionUriDomain.putIfAbsent(storage.getUserPoolId(),
+                    tenantIdentifier.getConnectionUriDomain());
+            userPoolToStorage.putIfAbsent(storage.getUserPoolId(), storage);
+            appIdToConfigMap.putIfAbsent(
+                    tenantIdentifier.getConnectionUriDomain() + "|" + tenantIdentifier.getAppId(), config);
+        }
+
         for (ResourceDistributor.KeyClass key : normalisedConfigs.keySet()) {
             JsonObject currentConfig = normalisedConfigs.get(key);
             // this also checks for the validity of the config from the db's point
@@ -215,14 +259,66 @@ public class Config extends ResourceDistributor.SingletonResource {
         }
 
         for (TenantConfig t : tenants) {
-            // here we check that non base config doesn't have settings that are only applicable per core.
-            CoreConfig.assertThatCertainConfigIsNotSetForAppOrTenants(t.coreConfig);
+            if (tenantsToCheck.contains(t.tenantIdentifier)) {
+                // here we check that non base config doesn't have settings that are only applicable per core.
+                CoreConfig.assertThatCertainConfigIsNotSetForAppOrTenants(t.coreConfig);
+            }
         }
+        return normalisedConfigs;
+    }
+
+    private static List<TenantIdentifier> getTenantIdentifiersWithBaseTenant(TenantConfig[] tenants) {
+        List<TenantIdentifier> result = new ArrayList<>(tenants.length + 1);
+        boolean hasBaseTenant = false;
+        for (TenantConfig tenant : tenants) {
+            result.add(tenant.tenantIdentifier);
+            hasBaseTenant = hasBaseTenant || tenant.tenantIdentifier.equals(TenantIdentifier.BASE_TENANT);
+        }
+        if (!hasBaseTenant) {
+            result.add(TenantIdentifier.BASE_TENANT);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tenants whose normalised config depends on the core config of any of the given tenants. The
+     * normalised config of a tenant is made from its own core config, the one of its app, the one of its connection
+     * uri domain, and the base config (see {@link #getNormalisedConfigsForTenants}).
+     */
+    public static Set<TenantIdentifier> getTenantsAffectedByChangesIn(TenantConfig[] tenants,
+                                                                      Set<TenantIdentifier> tenantsThatChanged) {
+        Set<TenantIdentifier> result = new HashSet<>();
+        if (tenantsThatChanged.isEmpty()) {
+            return result;
+        }
+        for (TenantConfig tenant : tenants) {
+            TenantIdentifier tenantIdentifier = tenant.tenantIdentifier;
+            if (tenantsThatChanged.contains(tenantIdentifier)
+                    || tenantsThatChanged.contains(new TenantIdentifier(tenantIdentifier.getConnectionUriDomain(),
+                    tenantIdentifier.getAppId(), null))
+                    || tenantsThatChanged.contains(
+                    new TenantIdentifier(tenantIdentifier.getConnectionUriDomain(), null, null))) {
+                result.add(tenantIdentifier);
+            }
+        }
+        return result;
     }
 
     public static Map<ResourceDistributor.KeyClass, JsonObject> getNormalisedConfigsForAllTenants(
             TenantConfig[] tenants,
             JsonObject baseConfigJson) {
+        return getNormalisedConfigsForTenants(tenants, baseConfigJson, null);
+    }
+
+    /**
+     * Same as {@link #getNormalisedConfigsForAllTenants}, but only returns the configs of the tenants in
+     * tenantsToNormalise (all tenants if it is null). The base tenant is only included if it is in
+     * tenantsToNormalise, or if tenantsToNormalise is null.
+     */
+    public static Map<ResourceDistributor.KeyClass, JsonObject> getNormalisedConfigsForTenants(
+            TenantConfig[] tenants,
+            JsonObject baseConfigJson,
+            @Nullable Set<TenantIdentifier> tenantsToNormalise) {
         Map<ResourceDistributor.KeyClass, JsonObject> result = new HashMap<>();
         Map<ResourceDistributor.KeyClass, JsonObject> jsonConfigs = new HashMap<>();
 
@@ -236,6 +332,9 @@ public class Config extends ResourceDistributor.SingletonResource {
                 // this refers to the base tenant's config which is in the config.yaml file.
                 continue;
             }
+            if (tenantsToNormalise != null && !tenantsToNormalise.contains(tenant.tenantIdentifier)) {
+                continue;
+            }
             JsonObject finalJson = new JsonObject();
 
             JsonObject fetchedConfig = jsonConfigs.get(
@@ -287,8 +386,10 @@ public class Config extends ResourceDistributor.SingletonResource {
                     finalJson);
         }
 
-        result.put(new ResourceDistributor.KeyClass(new TenantIdentifier(null, null, null), RESOURCE_KEY),
-                baseConfigJson);
+        if (tenantsToNormalise == null || tenantsToNormalise.contains(new TenantIdentifier(null, null, null))) {
+            result.put(new ResourceDistributor.KeyClass(new TenantIdentifier(null, null, null), RESOURCE_KEY),
+                    baseConfigJson);
+        }
 
         return result;
     }
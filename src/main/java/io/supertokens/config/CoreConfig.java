@@ -31,13 +31,13 @@ import io.supertokens.pluginInterface.LOG_LEVEL;
 import io.supertokens.pluginInterface.exceptions.InvalidConfigException;
 import io.supertokens.utils.SemVer;
 import io.supertokens.webserver.WebserverAPI;
-import org.apache.catalina.filters.RemoteAddrFilter;
 import org.jetbrains.annotations.TestOnly;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -47,6 +47,8 @@ public class CoreConfig {
     public static final String[] PROTECTED_CONFIGS = new String[]{
             "ip_allow_regex",
             "ip_deny_regex",
+            "ip_allow_cidr",
+            "ip_deny_cidr",
     };
 
     @IgnoreForAnnotationCheck
@@ -109,6 +111,18 @@ public class CoreConfig {
     @JsonAlias({"access_token_dynamic_signing_key_update_interval", "access_token_signing_key_update_interval"})
     private double access_token_dynamic_signing_key_update_interval = 168; // in hours
 
+    @NotConflictingInApp
+    @JsonProperty
+    private int access_token_verification_cache_size = 0;
+
+    @NotConflictingInApp
+    @JsonProperty
+    private int access_token_verification_cache_max_memory_mb = 32;
+
+    @NotConflictingInApp
+    @JsonProperty
+    private boolean session_revocation_index_enabled = false;
+
     @ConfigYamlOnly
     @JsonProperty
     private int port = 3567;
@@ -133,6 +147,10 @@ public class CoreConfig {
     @JsonProperty
     private String password_hashing_alg = "BCRYPT";
 
+    @NotConflictingInApp
+    @JsonProperty
+    private boolean password_rehash_on_sign_in_enabled = false;
+
     @ConfigYamlOnly
     @JsonProperty
     private int argon2_iterations = 1;
@@ -157,6 +175,24 @@ public class CoreConfig {
     @JsonProperty
     private int bcrypt_log_rounds = 11;
 
+    @ConfigYamlOnly
+    @JsonProperty
+    private int bcrypt_hashing_pool_size = Runtime.getRuntime().availableProcessors();
+
+    @ConfigYamlOnly
+    @JsonProperty
+    private long password_hashing_max_wait_time_ms = 0;
+
+    // only used for storages that implement BatchDeletionStorage. Other storages delete all expired rows in one query
+    @ConfigYamlOnly
+    @JsonProperty
+    private int expired_rows_deletion_batch_size = 1000;
+
+    // only used for storages that implement BatchDeletionStorage
+    @ConfigYamlOnly
+    @JsonProperty
+    private long expired_rows_deletion_batch_pause_ms = 100;
+
     // TODO: add https in later version
     // # (OPTIONAL) boolean value (true or false). Set to true if you want to enable
     // https requests to SuperTokens.
@@ -177,6 +213,18 @@ public class CoreConfig {
     @JsonProperty
     private String log_level = "INFO";
 
+    @ConfigYamlOnly
+    @JsonProperty
+    private boolean log_async_enabled = false;
+
+    @ConfigYamlOnly
+    @JsonProperty
+    private int log_async_queue_size = 8192;
+
+    @ConfigYamlOnly
+    @JsonProperty
+    private String log_async_drop_policy = "DROP_INFO_AND_DEBUG";
+
     @NotConflictingInApp
     @JsonProperty
     private String firebase_password_hashing_signer_key = null;
@@ -189,6 +237,14 @@ public class CoreConfig {
     @JsonProperty
     private String ip_deny_regex = null;
 
+    @IgnoreForAnnotationCheck
+    @JsonProperty
+    private String ip_allow_cidr = null;
+
+    @IgnoreForAnnotationCheck
+    @JsonProperty
+    private String ip_deny_cidr = null;
+
     @ConfigYamlOnly
     @JsonProperty
     private String supertokens_saas_secret = null;
@@ -203,6 +259,10 @@ public class CoreConfig {
     @IgnoreForAnnotationCheck
     private boolean isNormalizedAndValid = false;
 
+    // compiled from the ip_* configs in normalizeAndValidate, so that it's not done for each request
+    @IgnoreForAnnotationCheck
+    private transient IpAccessRules ipAccessRules = null;
+
     public static Set<String> getValidFields() {
         CoreConfig coreConfig = new CoreConfig();
         JsonObject coreConfigObj = new GsonBuilder().serializeNulls().create().toJsonTree(coreConfig).getAsJsonObject();
@@ -225,6 +285,18 @@ public class CoreConfig {
         return ip_deny_regex;
     }
 
+    public String getIpAllowCidr() {
+        return ip_allow_cidr;
+    }
+
+    public String getIpDenyCidr() {
+        return ip_deny_cidr;
+    }
+
+    public IpAccessRules getIpAccessRules() {
+        return ipAccessRules;
+    }
+
     public Set<LOG_LEVEL> getLogLevels(Main main) {
         if (allowedLogLevels != null) {
             return allowedLogLevels;
@@ -266,6 +338,35 @@ public class CoreConfig {
         return firebase_password_hashing_pool_size;
     }
 
+    public int getBcryptHashingPoolSize() {
+        return bcrypt_hashing_pool_size;
+    }
+
+    // 0 means that there is no limit
+    public long getPasswordHashingMaxWaitTimeMs() {
+        return password_hashing_max_wait_time_ms;
+    }
+
+    public boolean getLogAsyncEnabled() {
+        return log_async_enabled;
+    }
+
+    public int getLogAsyncQueueSize() {
+        return log_async_queue_size;
+    }
+
+    public String getLogAsyncDropPolicy() {
+        return log_async_drop_policy.toUpperCase();
+    }
+
+    public int getExpiredRowsDeletionBatchSize() {
+        return expired_rows_deletion_batch_size;
+    }
+
+    public long getExpiredRowsDeletionBatchPauseMs() {
+        return expired_rows_deletion_batch_pause_ms;
+    }
+
     public int getArgon2Iterations() {
         return argon2_iterations;
     }
@@ -293,6 +394,10 @@ public class CoreConfig {
         return PASSWORD_HASHING_ALG.valueOf(password_hashing_alg.toUpperCase());
     }
 
+    public boolean getPasswordRehashOnSignInEnabled() {
+        return password_rehash_on_sign_in_enabled;
+    }
+
     @TestOnly
     public void setPasswordHashingAlg(PASSWORD_HASHING_ALG algo) {
         this.password_hashing_alg = algo.toString();
@@ -361,6 +466,18 @@ public class CoreConfig {
         return (long) (access_token_dynamic_signing_key_update_interval);
     }
 
+    public int getAccessTokenVerificationCacheSize() {
+        return access_token_verification_cache_size;
+    }
+
+    public long getAccessTokenVerificationCacheMaxMemoryBytes() {
+        return access_token_verification_cache_max_memory_mb * 1024L * 1024L;
+    }
+
+    public boolean getSessionRevocationIndexEnabled() {
+        return session_revocation_index_enabled;
+    }
+
     public String[] getAPIKeys() {
         if (api_keys == null) {
             return null;
@@ -433,6 +550,14 @@ public class CoreConfig {
             }
         }
 
+        if (access_token_verification_cache_size < 0) {
+            throw new InvalidConfigException("'access_token_verification_cache_size' must be >= 0");
+        }
+
+        if (access_token_verification_cache_max_memory_mb <= 0) {
+            throw new InvalidConfigException("'access_token_verification_cache_max_memory_mb' must be > 0");
+        }
+
         if (password_reset_token_lifetime <= 0) {
             throw new InvalidConfigException("'password_reset_token_lifetime' must be >= 0");
         }
@@ -549,23 +674,65 @@ public class CoreConfig {
                     "'log_level' config must be one of \"NONE\",\"DEBUG\", \"INFO\", \"WARN\" or \"ERROR\".");
         }
 
+        if (log_async_queue_size <= 0) {
+            throw new InvalidConfigException("'log_async_queue_size' must be >= 1");
+        }
+
+        if (!log_async_drop_policy.equalsIgnoreCase("drop")
+                && !log_async_drop_policy.equalsIgnoreCase("drop_info_and_debug")
+                && !log_async_drop_policy.equalsIgnoreCase("block")) {
+            throw new InvalidConfigException(
+                    "'log_async_drop_policy' config must be one of \"DROP\", \"DROP_INFO_AND_DEBUG\" or \"BLOCK\".");
+        }
+
+        if (password_hashing_max_wait_time_ms < 0) {
+            throw new InvalidConfigException("'password_hashing_max_wait_time_ms' must be >= 0");
+        }
+
+        if (expired_rows_deletion_batch_size <= 0) {
+            throw new InvalidConfigException("'expired_rows_deletion_batch_size' must be >= 1");
+        }
+
+        if (expired_rows_deletion_batch_pause_ms < 0) {
+            throw new InvalidConfigException("'expired_rows_deletion_batch_pause_ms' must be >= 0");
+        }
+
         {
             // IP Filter validation
-            RemoteAddrFilter filter = new RemoteAddrFilter();
+            ip_allow_regex = normalizeIpConfig(ip_allow_regex);
+            ip_deny_regex = normalizeIpConfig(ip_deny_regex);
+            ip_allow_cidr = normalizeIpConfig(ip_allow_cidr);
+            ip_deny_cidr = normalizeIpConfig(ip_deny_cidr);
+
+            Pattern allowRegex = null;
+            Pattern denyRegex = null;
             if (ip_allow_regex != null) {
                 try {
-                    filter.setAllow(ip_allow_regex);
+                    allowRegex = Pattern.compile(ip_allow_regex);
                 } catch (PatternSyntaxException e) {
                     throw new InvalidConfigException("Provided regular expression is invalid for ip_allow_regex config");
                 }
             }
             if (ip_deny_regex != null) {
                 try {
-                    filter.setDeny(ip_deny_regex);
+                    denyRegex = Pattern.compile(ip_deny_regex);
                 } catch (PatternSyntaxException e) {
                     throw new InvalidConfigException("Provided regular expression is invalid for ip_deny_regex config");
                 }
             }
+            List<IpAccessRules.CidrBlock> allowCidrs;
+            List<IpAccessRules.CidrBlock> denyCidrs;
+            try {
+                allowCidrs = IpAccessRules.parseCidrList(ip_allow_cidr);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidConfigException("Invalid ip_allow_cidr config: " + e.getMessage());
+            }
+            try {
+                denyCidrs = IpAccessRules.parseCidrList(ip_deny_cidr);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidConfigException("Invalid ip_deny_cidr config: " + e.getMessage());
+            }
+            ipAccessRules = new IpAccessRules(allowRegex, denyRegex, allowCidrs, denyCidrs);
         }
 
         if (supertokens_max_cdi_version != null) {
@@ -581,19 +748,6 @@ public class CoreConfig {
         }
 
         // Normalize
-        if (ip_allow_regex != null) {
-            ip_allow_regex = ip_allow_regex.trim();
-            if (ip_allow_regex.equals("")) {
-                ip_allow_regex = null;
-            }
-        }
-        if (ip_deny_regex != null) {
-            ip_deny_regex = ip_deny_regex.trim();
-            if (ip_deny_regex.equals("")) {
-                ip_deny_regex = null;
-            }
-        }
-
         if (log_level != null) {
             log_level = log_level.trim().toUpperCase();
         }
@@ -648,6 +802,8 @@ public class CoreConfig {
 
         firebase_password_hashing_pool_size = Math.max(1, firebase_password_hashing_pool_size);
 
+        bcrypt_hashing_pool_size = Math.max(1, bcrypt_hashing_pool_size);
+
         if (api_keys != null) {
             String[] apiKeys = api_keys.trim().replaceAll("\\s", "").split(",");
             Arrays.sort(apiKeys);
@@ -698,6 +854,17 @@ public class CoreConfig {
         }
     }
 
+    private static String normalizeIpConfig(String value) {
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        if (value.equals("")) {
+            return null;
+        }
+        return value;
+    }
+
     static void assertThatCertainConfigIsNotSetForAppOrTenants(JsonObject config) throws InvalidConfigException {
         // these are all configs that are per core. So we do not allow the developer to set these dynamically.
         for (Field field : CoreConfig.class.getDeclaredFields()) {
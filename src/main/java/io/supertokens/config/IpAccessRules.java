@@ -0,0 +1,213 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.config;
+
+import javax.annotation.Nullable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The IP allow / deny rules of a tenant, compiled once when its config is loaded (see
+ * {@link CoreConfig#getIpAccessRules()}). A request is denied if its IP address matches a deny rule. Otherwise, it is
+ * allowed if it matches an allow rule, or if there are no allow rules. This is the same as what tomcat's
+ * RemoteAddrFilter does for the regexes, with the CIDR lists added to it.
+ */
+public class IpAccessRules {
+
+    @Nullable
+    private final Pattern allowRegex;
+    @Nullable
+    private final Pattern denyRegex;
+    private final CidrBlock[] allowCidrs;
+    private final CidrBlock[] denyCidrs;
+
+    IpAccessRules(@Nullable Pattern allowRegex, @Nullable Pattern denyRegex, List<CidrBlock> allowCidrs,
+                  List<CidrBlock> denyCidrs) {
+        this.allowRegex = allowRegex;
+        this.denyRegex = denyRegex;
+        this.allowCidrs = allowCidrs.toArray(new CidrBlock[0]);
+        this.denyCidrs = denyCidrs.toArray(new CidrBlock[0]);
+    }
+
+    public boolean isEmpty() {
+        return allowRegex == null && denyRegex == null && allowCidrs.length == 0 && denyCidrs.length == 0;
+    }
+
+    public boolean isAllowed(String remoteAddr) {
+        if (isEmpty()) {
+            return true;
+        }
+        // we only parse the address if there is a CIDR rule to check it against
+        byte[] address = allowCidrs.length == 0 && denyCidrs.length == 0 ? null : parseAddress(remoteAddr);
+
+        if (denyRegex != null && denyRegex.matcher(remoteAddr).matches()) {
+            return false;
+        }
+        if (address != null && matchesAny(denyCidrs, address)) {
+            return false;
+        }
+        if (allowRegex != null && allowRegex.matcher(remoteAddr).matches()) {
+            return true;
+        }
+        if (address != null && matchesAny(allowCidrs, address)) {
+            return true;
+        }
+        return allowRegex == null && allowCidrs.length == 0;
+    }
+
+    private static boolean matchesAny(CidrBlock[] blocks, byte[] address) {
+        for (CidrBlock block : blocks) {
+            if (block.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a comma separated list of IPv4 / IPv6 CIDR blocks, like "10.0.0.0/8, 192.168.1.7, ::1/128". An address
+     * without a prefix length matches only that address.
+     *
+     * @throws IllegalArgumentException if any of the blocks is not valid
+     */
+    static List<CidrBlock> parseCidrList(@Nullable String value) {
+        List<CidrBlock> result = new ArrayList<>();
+        if (value == null) {
+            return result;
+        }
+        for (String block : value.split(",")) {
+            block = block.trim();
+            if (block.isEmpty()) {
+                continue;
+            }
+            result.add(CidrBlock.parse(block));
+        }
+        return result;
+    }
+
+    // Returns null if remoteAddr is not an IP address, so that we never do a DNS lookup here.
+    @Nullable
+    private static byte[] parseAddress(String remoteAddr) {
+        if (remoteAddr == null || remoteAddr.isEmpty()) {
+            return null;
+        }
+        if (remoteAddr.indexOf(':') < 0) {
+            return parseIPv4Address(remoteAddr);
+        }
+        for (int i = 0; i < remoteAddr.length(); i++) {
+            char c = remoteAddr.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '.' ||
+                    c == ':')) {
+                return null;
+            }
+        }
+        try {
+            return InetAddress.getByName(remoteAddr).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    // Most requests come from IPv4 addresses, so we parse them ourselves, which is much faster than InetAddress
+    @Nullable
+    private static byte[] parseIPv4Address(String address) {
+        byte[] result = new byte[4];
+        int part = 0;
+        int value = -1;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value < 0 ? c - '0' : value * 10 + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && value >= 0 && part < 3) {
+                result[part++] = (byte) value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (part != 3 || value < 0) {
+            return null;
+        }
+        result[3] = (byte) value;
+        return result;
+    }
+
+    static class CidrBlock {
+        private final byte[] network;
+        private final int prefixLength;
+
+        private CidrBlock(byte[] network, int prefixLength) {
+            this.network = network;
+            this.prefixLength = prefixLength;
+        }
+
+        static CidrBlock parse(String block) {
+            int slash = block.indexOf('/');
+            String addressPart = slash < 0 ? block : block.substring(0, slash);
+            byte[] network = parseAddress(addressPart);
+            if (network == null) {
+                throw new IllegalArgumentException("'" + block + "' is not a valid IP address or CIDR block");
+            }
+            int prefixLength = network.length * 8;
+            if (slash >= 0) {
+                try {
+                    prefixLength = Integer.parseInt(block.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("'" + block + "' is not a valid IP address or CIDR block");
+                }
+                if (prefixLength < 0 || prefixLength > network.length * 8) {
+                    throw new IllegalArgumentException(
+                            "Prefix length of '" + block + "' must be between 0 and " + (network.length * 8));
+                }
+            }
+            // we clear the host bits, so that contains only needs to mask the address being checked
+            for (int i = 0; i < network.length; i++) {
+                network[i] &= mask(i, prefixLength);
+            }
+            return new CidrBlock(network, prefixLength);
+        }
+
+        boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                // IPv4 and IPv6 addresses never match each other
+                return false;
+            }
+            int fullBytes = prefixLength / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            if (fullBytes < network.length) {
+                return (address[fullBytes] & mask(fullBytes, prefixLength)) == network[fullBytes];
+            }
+            return true;
+        }
+
+        // the bits of byte i that are part of the prefix
+        private static byte mask(int i, int prefixLength) {
+            int bits = Math.max(0, Math.min(8, prefixLength - i * 8));
+            return (byte) (0xff << (8 - bits));
+        }
+    }
+}
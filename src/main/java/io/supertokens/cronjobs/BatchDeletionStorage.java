@@ -0,0 +1,39 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.cronjobs;
+
+import io.supertokens.pluginInterface.exceptions.StorageQueryException;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
+
+/**
+ * A storage that can delete expired rows a limited number at a time, so that the cleanup cronjobs can delete them in
+ * batches (see {@link CronTask#deleteInBatches}). This is not a part of the plugin interface, so for storages that
+ * don't implement it, the cronjobs delete all the expired rows in one query. Each function deletes at most limit rows,
+ * and returns the number of rows it deleted.
+ */
+public interface BatchDeletionStorage {
+    int deleteExpiredSessions(int limit) throws StorageQueryException;
+
+    int deleteExpiredPasswordResetTokens(int limit) throws StorageQueryException;
+
+    int deleteExpiredEmailVerificationTokens(int limit) throws StorageQueryException;
+
+    int deleteExpiredDashboardSessions(int limit) throws StorageQueryException;
+
+    int removeExpiredTotpCodes(TenantIdentifier tenantIdentifier, long expiredBefore, int limit)
+            throws StorageQueryException;
+}
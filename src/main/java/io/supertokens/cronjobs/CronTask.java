@@ -19,6 +19,7 @@ package io.supertokens.cronjobs;
 import io.supertokens.Main;
 import io.supertokens.ProcessState;
 import io.supertokens.ResourceDistributor;
+import io.supertokens.config.Config;
 import io.supertokens.exceptions.QuitProgramException;
 import io.supertokens.output.Logging;
 import io.supertokens.pluginInterface.Storage;
@@ -27,14 +28,20 @@ import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
 import io.supertokens.storageLayer.StorageLayer;
 import org.jetbrains.annotations.TestOnly;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class CronTask extends ResourceDistributor.SingletonResource implements Runnable {
 
@@ -50,6 +57,25 @@ public abstract class CronTask extends ResourceDistributor.SingletonResource imp
 
     private final boolean isPerApp;
 
+    // the number of apps of the same user pool that a per app task runs at the same time
+    static final int MAX_CONCURRENT_APPS_PER_STORAGE = 2;
+
+    // jobs of this task that are running on the worker pool
+    private final AtomicInteger jobsInProgress = new AtomicInteger(0);
+    private final AtomicLong runCount = new AtomicLong(0);
+    private final AtomicLong skippedRunCount = new AtomicLong(0);
+    private final AtomicLong totalRunDurationMs = new AtomicLong(0);
+    private volatile long lastRunDurationMs = -1;
+
+    // apps of a per app task that the previous run didn't finish before it timed out. These are run first in the next
+    // run, so that the same apps are not left out of every run that times out
+    private volatile Set<AppIdentifier> appsNotDoneInLastRun = Collections.emptySet();
+
+    // for tasks that delete expired rows (see deleteInBatches)
+    private final LongAdder deletedRowCount = new LongAdder();
+    private final LongAdder deletionBatchCount = new LongAdder();
+    private final LongAdder deletionTimeMs = new LongAdder();
+
     protected CronTask(String jobName, Main main, List<List<TenantIdentifier>> tenantsInfo, boolean isPerApp) {
         this.jobName = jobName;
         this.main = main;
@@ -75,7 +101,16 @@ public abstract class CronTask extends ResourceDistributor.SingletonResource imp
 
     @Override
     public void run() {
+        if (jobsInProgress.get() > 0) {
+            // the previous run timed out while waiting for its work, and some of it is still going on
+            skippedRunCount.incrementAndGet();
+            Logging.info(main, this.targetTenant, "Cronjob skipped since its previous run is still going on: " + jobName,
+                    false);
+            return;
+        }
+
         Logging.info(main, this.targetTenant, "Cronjob started: " + jobName, false);
+        long startTime = System.currentTimeMillis();
 
         if (this.targetTenant != null) {
             try {
@@ -95,77 +130,178 @@ public abstract class CronTask extends ResourceDistributor.SingletonResource imp
                 copied = new ArrayList<>(tenantsInfo);
             }
 
+            AtomicBoolean threwQuitProgramException = new AtomicBoolean(false);
+            AtomicBoolean runIsOver = new AtomicBoolean(false);
+            List<AppIdentifier> apps = new ArrayList<>();
+            Set<AppIdentifier> appsDone = ConcurrentHashMap.newKeySet();
+            List<Runnable> jobs = this.isPerApp ?
+                    getPerAppJobs(copied, apps, appsDone, threwQuitProgramException, runIsOver) :
+                    getPerStorageJobs(copied, threwQuitProgramException);
+            runJobsAndWait(jobs);
+            runIsOver.set(true);
             if (this.isPerApp) {
-                // we extract all apps..
-                List<AppIdentifier> apps = new ArrayList<>();
-                Set<AppIdentifier> appsSet = new HashSet<>();
-                for (List<TenantIdentifier> t : copied) {
-                    for (TenantIdentifier tenant : t) {
-                        if (appsSet.contains(tenant.toAppIdentifier())) {
-                            continue;
-                        }
-                        appsSet.add(tenant.toAppIdentifier());
-                        apps.add(tenant.toAppIdentifier());
+                Set<AppIdentifier> appsNotDone = new HashSet<>(apps);
+                appsNotDone.removeAll(appsDone);
+                appsNotDoneInLastRun = appsNotDone;
+            }
+            if (threwQuitProgramException.get()) {
+                main.wakeUpMainThreadToShutdown();
+            }
+        }
+
+        lastRunDurationMs = System.currentTimeMillis() - startTime;
+        totalRunDurationMs.addAndGet(lastRunDurationMs);
+        runCount.incrementAndGet();
+        Logging.info(main, this.targetTenant, "Cronjob finished: " + jobName, false);
+    }
+
+    // one job per user pool, which runs the task for the storage and then for each of its tenants
+    private List<Runnable> getPerStorageJobs(List<List<TenantIdentifier>> tenantsInfo,
+                                             AtomicBoolean threwQuitProgramException) {
+        List<Runnable> jobs = new ArrayList<>();
+        for (List<TenantIdentifier> t : tenantsInfo) {
+            jobs.add(() -> {
+                try {
+                    doTaskPerStorage(StorageLayer.getStorage(t.get(0), main));
+                } catch (Exception e) {
+                    ProcessState.getInstance(main)
+                            .addState(ProcessState.PROCESS_STATE.CRON_TASK_ERROR_LOGGING, e);
+                    Logging.error(main, t.get(0), "Cronjob threw an exception: " + this.jobName, Main.isTesting, e);
+                    if (e instanceof QuitProgramException) {
+                        threwQuitProgramException.set(true);
                     }
                 }
 
-                for (AppIdentifier app : apps) {
+                for (TenantIdentifier tenant : t) {
                     try {
-                        doTaskPerApp(app);
+                        doTaskPerTenant(tenant);
                     } catch (Exception e) {
-                        ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.CRON_TASK_ERROR_LOGGING, e);
-                        Logging.error(main, app.getAsPublicTenantIdentifier(), "Cronjob threw an exception: " + this.jobName, Main.isTesting, e);
+                        ProcessState.getInstance(main)
+                                .addState(ProcessState.PROCESS_STATE.CRON_TASK_ERROR_LOGGING, e);
+                        Logging.error(main, tenant, "Cronjob threw an exception: " + this.jobName, Main.isTesting, e);
                         if (e instanceof QuitProgramException) {
-                            main.wakeUpMainThreadToShutdown();
+                            threwQuitProgramException.set(true);
                         }
                     }
                 }
-            } else {
-                // we create one thread per unique storage and run the query based on that.
-                ExecutorService service = Executors.newFixedThreadPool(copied.size());
-                AtomicBoolean threwQuitProgramException = new AtomicBoolean(false);
-                for (List<TenantIdentifier> t : copied) {
-                    service.execute(() -> {
+            });
+        }
+        return jobs;
+    }
+
+    // The apps are grouped by the user pool of their public tenant, and at most MAX_CONCURRENT_APPS_PER_STORAGE
+    // apps of the same user pool are run at the same time, so that many apps don't all query the same db at once.
+    // The apps of this run are added to `apps`, and the ones that finish are added to `appsDone`.
+    private List<Runnable> getPerAppJobs(List<List<TenantIdentifier>> tenantsInfo, List<AppIdentifier> apps,
+                                         Set<AppIdentifier> appsDone, AtomicBoolean threwQuitProgramException,
+                                         AtomicBoolean runIsOver) {
+        Map<TenantIdentifier, Integer> userPoolOfTenant = new HashMap<>();
+        for (int i = 0; i < tenantsInfo.size(); i++) {
+            for (TenantIdentifier tenant : tenantsInfo.get(i)) {
+                userPoolOfTenant.putIfAbsent(tenant, i);
+            }
+        }
+
+        List<List<AppIdentifier>> appsPerUserPool = new ArrayList<>();
+        for (int i = 0; i < tenantsInfo.size(); i++) {
+            appsPerUserPool.add(new ArrayList<>());
+        }
+        Set<AppIdentifier> appsSet = new HashSet<>();
+        for (int i = 0; i < tenantsInfo.size(); i++) {
+            for (TenantIdentifier tenant : tenantsInfo.get(i)) {
+                AppIdentifier app = tenant.toAppIdentifier();
+                if (appsSet.add(app)) {
+                    Integer userPool = userPoolOfTenant.get(app.getAsPublicTenantIdentifier());
+                    appsPerUserPool.get(userPool == null ? i : userPool).add(app);
+                    apps.add(app);
+                }
+            }
+        }
+
+        Set<AppIdentifier> appsNotDoneInLastRun = this.appsNotDoneInLastRun;
+        List<Runnable> jobs = new ArrayList<>();
+        for (List<AppIdentifier> appsOfUserPool : appsPerUserPool) {
+            // the apps that the last run didn't get to go first (the sort is stable, so the order is otherwise kept)
+            appsOfUserPool.sort(Comparator.comparing(app -> !appsNotDoneInLastRun.contains(app)));
+            Queue<AppIdentifier> queue = new ConcurrentLinkedQueue<>(appsOfUserPool);
+            int numberOfJobs = Math.min(MAX_CONCURRENT_APPS_PER_STORAGE, queue.size());
+            for (int i = 0; i < numberOfJobs; i++) {
+                jobs.add(() -> {
+                    AppIdentifier app;
+                    // once the run has timed out, the apps that are left are run first in the next run
+                    while (!runIsOver.get() && (app = queue.poll()) != null) {
                         try {
-                            doTaskPerStorage(StorageLayer.getStorage(t.get(0), main));
+                            doTaskPerApp(app);
+                            appsDone.add(app);
                         } catch (Exception e) {
                             ProcessState.getInstance(main)
                                     .addState(ProcessState.PROCESS_STATE.CRON_TASK_ERROR_LOGGING, e);
-                            Logging.error(main, t.get(0), "Cronjob threw an exception: " + this.jobName, Main.isTesting, e);
+                            Logging.error(main, app.getAsPublicTenantIdentifier(),
+                                    "Cronjob threw an exception: " + this.jobName, Main.isTesting, e);
                             if (e instanceof QuitProgramException) {
                                 threwQuitProgramException.set(true);
                             }
                         }
+                    }
+                });
+            }
+        }
+        return jobs;
+    }
 
-                        for (TenantIdentifier tenant : t) {
-                            try {
-                                doTaskPerTenant(tenant);
-                            } catch (Exception e) {
-                                ProcessState.getInstance(main)
-                                        .addState(ProcessState.PROCESS_STATE.CRON_TASK_ERROR_LOGGING, e);
-                                Logging.error(main, tenant, "Cronjob threw an exception: " + this.jobName, Main.isTesting, e);
-                                if (e instanceof QuitProgramException) {
-                                    threwQuitProgramException.set(true);
-                                }
-                            }
+    // Runs the jobs on the worker pool shared by all cron tasks, using at most Cronjobs.MAX_WORKERS_PER_TASK of its
+    // workers so that a slow task can't hold all of them, and waits for them for at most the interval of this task,
+    // counted from when the task gets its first worker (so time spent waiting for other tasks to free up the workers
+    // doesn't count). Jobs that haven't finished by then are cancelled (which interrupts the ones that have started),
+    // and until the ones that have started finish, runs of this task are skipped.
+    private void runJobsAndWait(List<Runnable> jobs) {
+        ExecutorService workers = Cronjobs.getInstance(main).workers;
+        Queue<Runnable> queue = new ConcurrentLinkedQueue<>(jobs);
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        CountDownLatch gotAWorker = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            int numberOfWorkers = Math.min(Cronjobs.MAX_WORKERS_PER_TASK, jobs.size());
+            for (int i = 0; i < numberOfWorkers; i++) {
+                futures.add(workers.submit(() -> {
+                    jobsInProgress.incrementAndGet();
+                    gotAWorker.countDown();
+                    try {
+                        Runnable job;
+                        while (!timedOut.get() && (job = queue.poll()) != null) {
+                            job.run();
                         }
-                    });
-                }
-                service.shutdown();
-                boolean didShutdown = false;
+                    } finally {
+                        jobsInProgress.decrementAndGet();
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            // the core is shutting down
+        }
+        if (futures.isEmpty()) {
+            return;
+        }
+
+        try {
+            gotAWorker.await();
+            long deadline = System.currentTimeMillis() + this.getIntervalTimeSeconds() * 1000L;
+            for (Future<?> future : futures) {
                 try {
-                    didShutdown = service.awaitTermination(this.getIntervalTimeSeconds(), TimeUnit.SECONDS);
-                } catch (InterruptedException ignored) {
-                }
-                if (!didShutdown) {
-                    service.shutdownNow();
-                }
-                if (threwQuitProgramException.get()) {
-                    main.wakeUpMainThreadToShutdown();
+                    future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (ExecutionException ignored) {
+                    // the jobs log their own exceptions
                 }
             }
+        } catch (TimeoutException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timedOut.set(true);
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
         }
-        Logging.info(main, this.targetTenant, "Cronjob finished: " + jobName, false);
     }
 
     public void setTenantsInfo(List<List<TenantIdentifier>> tenantsInfo) {
@@ -193,6 +329,87 @@ public abstract class CronTask extends ResourceDistributor.SingletonResource imp
         return this.tenantsInfo;
     }
 
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    // The number of times this task was not run because its previous run was still going on
+    public long getSkippedRunCount() {
+        return skippedRunCount.get();
+    }
+
+    // -1 if this task hasn't run yet
+    public long getLastRunDurationMs() {
+        return lastRunDurationMs;
+    }
+
+    public long getTotalRunDurationMs() {
+        return totalRunDurationMs.get();
+    }
+
+    public long getDeletedRowCount() {
+        return deletedRowCount.sum();
+    }
+
+    public long getDeletionBatchCount() {
+        return deletionBatchCount.sum();
+    }
+
+    public long getDeletionTimeMs() {
+        return deletionTimeMs.sum();
+    }
+
+    /**
+     * Deletes rows in batches of at most expired_rows_deletion_batch_size rows, with a pause of
+     * expired_rows_deletion_batch_pause_ms between batches, so that deleting a large number of expired rows doesn't
+     * hold the write locks of a table for long. It stops once a batch deletes fewer rows than the batch size.
+     *
+     * @return the total number of rows deleted
+     */
+    protected long deleteInBatches(TenantIdentifier tenantIdentifier, String rowsName, BatchDeletion deletion)
+            throws Exception {
+        int batchSize = Config.getBaseConfig(main).getExpiredRowsDeletionBatchSize();
+        long total = 0;
+        while (true) {
+            long startTime = System.currentTimeMillis();
+            int deleted = deletion.deleteBatch(batchSize);
+            recordDeletionBatch(tenantIdentifier, rowsName, deleted, System.currentTimeMillis() - startTime);
+            total += deleted;
+            if (deleted < batchSize || !pauseBetweenDeletionBatches()) {
+                return total;
+            }
+        }
+    }
+
+    protected void recordDeletionBatch(TenantIdentifier tenantIdentifier, String rowsName, int deleted,
+                                       long timeTakenMs) {
+        deletedRowCount.add(deleted);
+        deletionBatchCount.increment();
+        deletionTimeMs.add(timeTakenMs);
+        Logging.debug(main, tenantIdentifier,
+                "Cron " + jobName + " deleted " + deleted + " " + rowsName + " in " + timeTakenMs + "ms");
+    }
+
+    // returns false if the run was cancelled (it timed out, or the core is shutting down) during the pause
+    protected boolean pauseBetweenDeletionBatches() {
+        long pauseMs = Config.getBaseConfig(main).getExpiredRowsDeletionBatchPauseMs();
+        if (pauseMs > 0) {
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    @FunctionalInterface
+    protected interface BatchDeletion {
+        // deletes at most limit rows, and returns the number of rows deleted
+        int deleteBatch(int limit) throws Exception;
+    }
+
     // the list belongs to tenants that are a part of the same user pool ID
     protected void doTaskPerStorage(Storage storage) throws Exception {
 
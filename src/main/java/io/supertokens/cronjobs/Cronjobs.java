@@ -25,6 +25,7 @@ import org.jetbrains.annotations.TestOnly;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -34,10 +35,19 @@ public class Cronjobs extends ResourceDistributor.SingletonResource {
     private static final String RESOURCE_KEY = "io.supertokens.cronjobs.Cronjobs";
     final Object lock = new Object();
     private final ScheduledExecutorService executor;
+    // The threads that the cron tasks run their per storage / per app work on. They are shared by all the tasks, so
+    // that the number of threads doesn't grow with the number of user pools, and aren't created again on each run.
+    final ExecutorService workers;
     private List<CronTask> tasks = new ArrayList<>();
 
+    public static final int NUMBER_OF_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    // the number of workers that one run of a task can use at the same time, so that a slow task (for example, one
+    // that deletes a lot of expired rows in many user pools) leaves workers for the others
+    public static final int MAX_WORKERS_PER_TASK = Math.max(1, NUMBER_OF_WORKERS / 2);
+
     private Cronjobs() {
         this.executor = Executors.newScheduledThreadPool(5);
+        this.workers = Executors.newFixedThreadPool(NUMBER_OF_WORKERS);
     }
 
     public static Cronjobs getInstance(Main main) {
@@ -65,6 +75,9 @@ public class Cronjobs extends ResourceDistributor.SingletonResource {
             try {
                 instance.executor.shutdown();
                 instance.executor.awaitTermination(10, TimeUnit.SECONDS);
+                // the tasks that were running have waited for (or cancelled) their work by now
+                instance.workers.shutdown();
+                instance.workers.awaitTermination(10, TimeUnit.SECONDS);
             } catch (Exception e) {
                 // ignore any error as app is shutting down.
             }
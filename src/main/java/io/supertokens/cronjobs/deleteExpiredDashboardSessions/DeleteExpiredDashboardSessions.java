@@ -17,6 +17,7 @@
 package io.supertokens.cronjobs.deleteExpiredDashboardSessions;
 
 import io.supertokens.Main;
+import io.supertokens.cronjobs.BatchDeletionStorage;
 import io.supertokens.cronjobs.CronTask;
 import io.supertokens.cronjobs.CronTaskTest;
 import io.supertokens.pluginInterface.STORAGE_TYPE;
@@ -59,7 +60,12 @@ public class DeleteExpiredDashboardSessions extends CronTask {
         if (storage.getType() != STORAGE_TYPE.SQL) {
             return;
         }
-        ((DashboardSQLStorage) storage).revokeExpiredSessions();
+        if (storage instanceof BatchDeletionStorage) {
+            deleteInBatches(null, "expired dashboard sessions",
+                    limit -> ((BatchDeletionStorage) storage).deleteExpiredDashboardSessions(limit));
+        } else {
+            ((DashboardSQLStorage) storage).revokeExpiredSessions();
+        }
     }
 
     @Override
@@ -17,6 +17,7 @@
 package io.supertokens.cronjobs.deleteExpiredEmailVerificationTokens;
 
 import io.supertokens.Main;
+import io.supertokens.cronjobs.BatchDeletionStorage;
 import io.supertokens.cronjobs.CronTask;
 import io.supertokens.cronjobs.CronTaskTest;
 import io.supertokens.pluginInterface.STORAGE_TYPE;
@@ -59,7 +60,12 @@ public class DeleteExpiredEmailVerificationTokens extends CronTask {
         if (storage.getType() != STORAGE_TYPE.SQL) {
             return;
         }
-        ((EmailVerificationSQLStorage) storage).deleteExpiredEmailVerificationTokens();
+        if (storage instanceof BatchDeletionStorage) {
+            deleteInBatches(null, "expired email verification tokens",
+                    limit -> ((BatchDeletionStorage) storage).deleteExpiredEmailVerificationTokens(limit));
+        } else {
+            ((EmailVerificationSQLStorage) storage).deleteExpiredEmailVerificationTokens();
+        }
     }
 
     @Override
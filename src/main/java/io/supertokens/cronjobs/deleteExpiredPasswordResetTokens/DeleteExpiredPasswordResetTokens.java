@@ -17,6 +17,7 @@
 package io.supertokens.cronjobs.deleteExpiredPasswordResetTokens;
 
 import io.supertokens.Main;
+import io.supertokens.cronjobs.BatchDeletionStorage;
 import io.supertokens.cronjobs.CronTask;
 import io.supertokens.cronjobs.CronTaskTest;
 import io.supertokens.pluginInterface.STORAGE_TYPE;
@@ -53,7 +54,12 @@ public class DeleteExpiredPasswordResetTokens extends CronTask {
         if (storage.getType() != STORAGE_TYPE.SQL) {
             return;
         }
-        ((EmailPasswordSQLStorage) storage).deleteExpiredPasswordResetTokens();
+        if (storage instanceof BatchDeletionStorage) {
+            deleteInBatches(null, "expired password reset tokens",
+                    limit -> ((BatchDeletionStorage) storage).deleteExpiredPasswordResetTokens(limit));
+        } else {
+            ((EmailPasswordSQLStorage) storage).deleteExpiredPasswordResetTokens();
+        }
     }
 
     @Override
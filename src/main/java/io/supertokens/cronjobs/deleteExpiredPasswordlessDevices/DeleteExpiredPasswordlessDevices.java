@@ -28,8 +28,8 @@ import io.supertokens.pluginInterface.passwordless.sqlStorage.PasswordlessSQLSto
 import io.supertokens.storageLayer.StorageLayer;
 import org.jetbrains.annotations.TestOnly;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -65,25 +65,43 @@ public class DeleteExpiredPasswordlessDevices extends CronTask {
         long codeExpirationCutoff = System.currentTimeMillis() -
                 Config.getConfig(tenantIdentifier, main).getPasswordlessCodeLifetime();
         PasswordlessCode[] expiredCodes = storage.getCodesBefore(tenantIdentifier, codeExpirationCutoff);
-        Set<String> uniqueDevicesIdHashes = Stream.of(expiredCodes).map(code -> code.deviceIdHash)
-                .collect(Collectors.toSet());
-
-        for (String deviceIdHash : uniqueDevicesIdHashes) {
-            storage.startTransaction(con -> {
-                PasswordlessDevice device = storage.getDevice_Transaction(tenantIdentifier, con, deviceIdHash);
-                if (device == null) {
-                    return null;
-                }
-                PasswordlessCode[] codes = storage.getCodesOfDevice_Transaction(tenantIdentifier, con, deviceIdHash);
-
-                if (Stream.of(codes).allMatch(code -> code.createdAt < codeExpirationCutoff)) {
-                    storage.deleteDevice_Transaction(tenantIdentifier, con, deviceIdHash);
+        List<String> uniqueDevicesIdHashes = new ArrayList<>(Stream.of(expiredCodes).map(code -> code.deviceIdHash)
+                .collect(Collectors.toSet()));
+
+        // Each device is deleted in its own transaction, and we pause after every batch of devices so that a large
+        // number of expired devices doesn't keep the passwordless tables busy.
+        int batchSize = Config.getBaseConfig(main).getExpiredRowsDeletionBatchSize();
+        for (int batchStart = 0; batchStart < uniqueDevicesIdHashes.size(); batchStart += batchSize) {
+            if (batchStart > 0 && !pauseBetweenDeletionBatches()) {
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            int deleted = 0;
+            for (String deviceIdHash : uniqueDevicesIdHashes.subList(batchStart,
+                    Math.min(batchStart + batchSize, uniqueDevicesIdHashes.size()))) {
+                boolean wasDeleted = storage.startTransaction(con -> {
+                    PasswordlessDevice device = storage.getDevice_Transaction(tenantIdentifier, con, deviceIdHash);
+                    if (device == null) {
+                        return false;
+                    }
+                    PasswordlessCode[] codes = storage.getCodesOfDevice_Transaction(tenantIdentifier, con,
+                            deviceIdHash);
+
+                    if (Stream.of(codes).allMatch(code -> code.createdAt < codeExpirationCutoff)) {
+                        storage.deleteDevice_Transaction(tenantIdentifier, con, deviceIdHash);
+                        return true;
+                    }
+                    // We don't delete expired codes without the device because we want to detect if the submitted
+                    // user input code belongs to an expired code or if it's just incorrect.
+
+                    return false;
+                });
+                if (wasDeleted) {
+                    deleted++;
                 }
-                // We don't delete expired codes without the device because we want to detect if the submitted
-                // user input code belongs to an expired code or if it's just incorrect.
-
-                return null;
-            });
+            }
+            recordDeletionBatch(tenantIdentifier, "expired passwordless devices", deleted,
+                    System.currentTimeMillis() - startTime);
         }
     }
 
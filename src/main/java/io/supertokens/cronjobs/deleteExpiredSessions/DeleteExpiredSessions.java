@@ -17,6 +17,7 @@
 package io.supertokens.cronjobs.deleteExpiredSessions;
 
 import io.supertokens.Main;
+import io.supertokens.cronjobs.BatchDeletionStorage;
 import io.supertokens.cronjobs.CronTask;
 import io.supertokens.cronjobs.CronTaskTest;
 import io.supertokens.pluginInterface.Storage;
@@ -53,7 +54,12 @@ public class DeleteExpiredSessions extends CronTask {
 
     @Override
     protected void doTaskPerStorage(Storage storage) throws Exception {
-        ((SessionStorage) storage).deleteAllExpiredSessions();
+        if (storage instanceof BatchDeletionStorage) {
+            deleteInBatches(null, "expired sessions",
+                    limit -> ((BatchDeletionStorage) storage).deleteExpiredSessions(limit));
+        } else {
+            ((SessionStorage) storage).deleteAllExpiredSessions();
+        }
     }
 
     @Override
@@ -2,6 +2,7 @@ package io.supertokens.cronjobs.deleteExpiredTotpTokens;
 
 import io.supertokens.Main;
 import io.supertokens.config.Config;
+import io.supertokens.cronjobs.BatchDeletionStorage;
 import io.supertokens.cronjobs.CronTask;
 import io.supertokens.cronjobs.CronTaskTest;
 import io.supertokens.output.Logging;
@@ -49,8 +50,14 @@ public class DeleteExpiredTotpTokens extends CronTask {
         // than rate limiting duration. This ensures that this DB query
         // doesn't delete totp codes that keep the rate limiting active for
         // the expected cooldown duration.
-        int deletedCount = storage.removeExpiredCodes(tenantIdentifier, expiredBefore);
-        Logging.debug(this.main, tenantIdentifier, "Cron DeleteExpiredTotpTokens deleted " + deletedCount + " expired TOTP codes");
+        if (storage instanceof BatchDeletionStorage) {
+            deleteInBatches(tenantIdentifier, "expired TOTP codes",
+                    limit -> ((BatchDeletionStorage) storage).removeExpiredTotpCodes(tenantIdentifier, expiredBefore,
+                            limit));
+        } else {
+            int deletedCount = storage.removeExpiredCodes(tenantIdentifier, expiredBefore);
+            Logging.debug(this.main, tenantIdentifier, "Cron DeleteExpiredTotpTokens deleted " + deletedCount + " expired TOTP codes");
+        }
     }
 
     @Override
@@ -0,0 +1,73 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.cronjobs.flushActiveUsers;
+
+import io.supertokens.ActiveUsers;
+import io.supertokens.Main;
+import io.supertokens.cronjobs.CronTask;
+import io.supertokens.cronjobs.CronTaskTest;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
+import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
+import org.jetbrains.annotations.TestOnly;
+
+// Writes the buffered last active times of users (see ActiveUsers). This runs once for all apps, since the buffer
+// only has the apps in which users were active.
+public class FlushActiveUsers extends CronTask {
+
+    public static final String RESOURCE_KEY = "io.supertokens.cronjobs.flushActiveUsers.FlushActiveUsers";
+
+    private FlushActiveUsers(Main main) {
+        super("FlushActiveUsers", main, TenantIdentifier.BASE_TENANT);
+    }
+
+    public static FlushActiveUsers init(Main main) {
+        return (FlushActiveUsers) main.getResourceDistributor()
+                .setResource(TenantIdentifier.BASE_TENANT, RESOURCE_KEY, new FlushActiveUsers(main));
+    }
+
+    @TestOnly
+    public static FlushActiveUsers getInstance(Main main) {
+        try {
+            return (FlushActiveUsers) main.getResourceDistributor()
+                    .getResource(TenantIdentifier.BASE_TENANT, RESOURCE_KEY);
+        } catch (TenantOrAppNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void doTaskForTargetTenant(TenantIdentifier targetTenant) throws Exception {
+        ActiveUsers.flush(main);
+    }
+
+    @Override
+    public int getIntervalTimeSeconds() {
+        if (Main.isTesting) {
+            Integer interval = CronTaskTest.getInstance(main).getIntervalInSeconds(RESOURCE_KEY);
+            if (interval != null) {
+                return interval;
+            }
+        }
+        return 10;
+    }
+
+    // nothing is buffered when the core starts
+    @Override
+    public int getInitialWaitTimeSeconds() {
+        return getIntervalTimeSeconds();
+    }
+}
@@ -64,6 +64,6 @@ public class SyncCoreConfigWithDb extends CronTask {
 
     @Override
     protected void doTaskForTargetTenant(TenantIdentifier targetTenant) throws Exception {
-        MultitenancyHelper.getInstance(main).refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
+        MultitenancyHelper.getInstance(main).refreshTenantsInCoreIfChangedInDb();
     }
 }
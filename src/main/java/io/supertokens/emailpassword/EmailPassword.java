@@ -21,6 +21,7 @@ import io.supertokens.authRecipe.AuthRecipe;
 import io.supertokens.config.Config;
 import io.supertokens.config.CoreConfig;
 import io.supertokens.emailpassword.exceptions.EmailChangeNotAllowedException;
+import io.supertokens.emailpassword.exceptions.PasswordHashingOverloadedException;
 import io.supertokens.emailpassword.exceptions.ResetPasswordInvalidTokenException;
 import io.supertokens.emailpassword.exceptions.UnsupportedPasswordHashingFormatException;
 import io.supertokens.emailpassword.exceptions.WrongCredentialsException;
@@ -263,7 +264,7 @@ public class EmailPassword {
                             lM.passwordHash)) {
                 throw new WrongCredentialsException();
             }
-        } catch (WrongCredentialsException e) {
+        } catch (WrongCredentialsException | PasswordHashingOverloadedException e) {
             throw e;
         } catch (IllegalStateException e) {
             if (e.getMessage().equals("'firebase_password_hashing_signer_key' cannot be null")) {
@@ -275,9 +276,42 @@ public class EmailPassword {
             throw new WrongCredentialsException();
         }
 
+        AppIdentifierWithStorage appIdentifierWithStorage = tenantIdentifierWithStorage.toAppIdentifierWithStorage();
+        String userId = lM.getSupertokensUserId();
+        String passwordHash = lM.passwordHash;
+        PasswordHashing.getInstance(main).onSignIn(appIdentifierWithStorage, userId, password, passwordHash,
+                newHash -> replacePasswordHashIfUnchanged(appIdentifierWithStorage, userId, passwordHash, newHash));
+
         return user;
     }
 
+    // This is a compare-and-set of the password hash, so that a rehash on sign in never overwrites a password that
+    // was changed after the user signed in.
+    private static boolean replacePasswordHashIfUnchanged(AppIdentifierWithStorage appIdentifierWithStorage,
+                                                          String userId, String oldHash, String newHash)
+            throws StorageQueryException, StorageTransactionLogicException {
+        EmailPasswordSQLStorage storage = appIdentifierWithStorage.getEmailPasswordStorage();
+        AuthRecipeSQLStorage authRecipeStorage = (AuthRecipeSQLStorage) appIdentifierWithStorage.getAuthRecipeStorage();
+        return storage.startTransaction(transaction -> {
+            AuthRecipeUserInfo user = authRecipeStorage.getPrimaryUserById_Transaction(appIdentifierWithStorage,
+                    transaction, userId);
+            if (user == null) {
+                return false;
+            }
+            for (LoginMethod lm : user.loginMethods) {
+                if (lm.recipeId == RECIPE_ID.EMAIL_PASSWORD && lm.getSupertokensUserId().equals(userId)) {
+                    if (!oldHash.equals(lm.passwordHash)) {
+                        return false;
+                    }
+                    storage.updateUsersPassword_Transaction(appIdentifierWithStorage, transaction, userId, newHash);
+                    storage.commitTransaction(transaction);
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
     @TestOnly
     public static String generatePasswordResetTokenBeforeCdi4_0(Main main, String userId)
             throws InvalidKeySpecException, NoSuchAlgorithmException, StorageQueryException, UnknownUserIdException {
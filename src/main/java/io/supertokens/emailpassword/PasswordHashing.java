@@ -23,6 +23,8 @@ import io.supertokens.ProcessState;
 import io.supertokens.ResourceDistributor;
 import io.supertokens.config.Config;
 import io.supertokens.config.CoreConfig;
+import io.supertokens.output.Logging;
+import io.supertokens.emailpassword.exceptions.PasswordHashingOverloadedException;
 import io.supertokens.emailpassword.exceptions.UnsupportedPasswordHashingFormatException;
 import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
 import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
@@ -30,24 +32,62 @@ import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoun
 import org.jetbrains.annotations.TestOnly;
 import org.mindrot.jbcrypt.BCrypt;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class PasswordHashing extends ResourceDistributor.SingletonResource {
 
     private static final String RESOURCE_KEY = "io.supertokens.emailpassword.PasswordHashing";
     final static int ARGON2_SALT_LENGTH = 16;
     final static int ARGON2_HASH_LENGTH = 32;
-    final BlockingQueue<Object> argon2BoundedQueue;
-    final BlockingQueue<Object> firebaseSCryptBoundedQueue;
+    final HashingPool bcryptPool;
+    final HashingPool argon2Pool;
+    final HashingPool firebaseSCryptPool;
     final Main main;
 
+    // the max number of rehashes waiting to be done. Rehashes on sign in beyond this are dropped, and are tried
+    // again the next time the user signs in. Each pending rehash holds the plain text password in memory, so this is
+    // kept small.
+    static final int MAX_PENDING_REHASHES = 100;
+
+    // Passwords are rehashed on this thread, so that the sign in request doesn't wait for it. It only exists while
+    // there are rehashes to be done.
+    private final ThreadPoolExecutor rehashExecutor;
+
+    // the max number of users tracked in usersWithLegacyHash, so that an app with many imported users doesn't keep
+    // all of their ids in memory
+    static final int MAX_TRACKED_USERS_WITH_LEGACY_HASH = 10000;
+
+    private final LongAdder currentHashSignInEvents = new LongAdder();
+    private final LongAdder legacyHashSignInEvents = new LongAdder();
+    // users that signed in with a legacy hash, and whose hash has not been replaced since. The key is the app and the
+    // user id.
+    private final Set<String> usersWithLegacyHash = ConcurrentHashMap.newKeySet();
+    private final LongAdder rehashedCount = new LongAdder();
+    private final LongAdder rehashConflictCount = new LongAdder();
+    private final LongAdder rehashDroppedCount = new LongAdder();
+    private final LongAdder rehashFailedCount = new LongAdder();
+
     private PasswordHashing(Main main) {
-        this.argon2BoundedQueue = new LinkedBlockingQueue<>(
-                Config.getBaseConfig(main).getArgon2HashingPoolSize());
-        this.firebaseSCryptBoundedQueue = new LinkedBlockingQueue<>(
-                Config.getBaseConfig(main).getFirebaseSCryptPasswordHashingPoolSize());
+        CoreConfig config = Config.getBaseConfig(main);
+        this.bcryptPool = new HashingPool(config.getBcryptHashingPoolSize(), config.getPasswordHashingMaxWaitTimeMs());
+        this.argon2Pool = new HashingPool(config.getArgon2HashingPoolSize(), config.getPasswordHashingMaxWaitTimeMs());
+        this.firebaseSCryptPool = new HashingPool(config.getFirebaseSCryptPasswordHashingPoolSize(),
+                config.getPasswordHashingMaxWaitTimeMs());
         this.main = main;
+        this.rehashExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_REHASHES), r -> {
+            Thread thread = new Thread(r, "PasswordRehashing");
+            thread.setDaemon(true);
+            return thread;
+        }, (r, executor) -> rehashDroppedCount.increment());
+        this.rehashExecutor.allowCoreThreadTimeOut(true);
     }
 
     // argon2 instances are thread safe: https://github.com/phxql/argon2-jvm/issues/35
@@ -90,16 +130,16 @@ public class PasswordHashing extends ResourceDistributor.SingletonResource {
         if (Config.getConfig(tenantIdentifier, main).getPasswordHashingAlg() ==
                 CoreConfig.PASSWORD_HASHING_ALG.BCRYPT) {
             ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.PASSWORD_HASH_BCRYPT, null);
-            passwordHash = BCrypt.hashpw(password,
-                    BCrypt.gensalt(Config.getConfig(tenantIdentifier, main).getBcryptLogRounds()));
+            passwordHash = this.bcryptPool.run(() -> BCrypt.hashpw(password,
+                    BCrypt.gensalt(Config.getConfig(tenantIdentifier, main).getBcryptLogRounds())));
         } else if (Config.getConfig(tenantIdentifier, main).getPasswordHashingAlg() ==
                 CoreConfig.PASSWORD_HASHING_ALG.ARGON2) {
             ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.PASSWORD_HASH_ARGON, null);
-            passwordHash = withConcurrencyLimited(
+            passwordHash = this.argon2Pool.run(
                     () -> argon2id.hash(Config.getConfig(tenantIdentifier, main).getArgon2Iterations(),
                             Config.getConfig(tenantIdentifier, main).getArgon2MemoryKb(),
                             Config.getConfig(tenantIdentifier, main).getArgon2Parallelism(),
-                            password.toCharArray()), this.argon2BoundedQueue);
+                            password.toCharArray()));
         }
 
         try {
@@ -115,22 +155,85 @@ public class PasswordHashing extends ResourceDistributor.SingletonResource {
         T op() throws TenantOrAppNotFoundException;
     }
 
-    private <T> T withConcurrencyLimited(Func<T> func, BlockingQueue<Object> blockingQueue)
-            throws TenantOrAppNotFoundException {
-        Object waiter = new Object();
-        try {
-            while (!blockingQueue.contains(waiter)) {
-                try {
-                    // put will wait for there to be an empty slot in the queue and return
-                    // only when there is a slot for waiter
-                    blockingQueue.put(waiter);
-                } catch (InterruptedException ignored) {
+    /**
+     * Limits the number of passwords of one algorithm that are hashed / verified at the same time, so that a burst of
+     * sign ins can't take up all the CPU (and, for argon2, memory) that other requests need. The hashing is done on
+     * the calling thread once it gets a slot, and the slots are given out in the order in which they were asked for.
+     * If password_hashing_max_wait_time_ms is set, a request that can't get a slot within that time fails with a
+     * {@link PasswordHashingOverloadedException} instead of waiting longer.
+     */
+    public static class HashingPool {
+        private final Semaphore slots;
+        private final int size;
+        private final long maxWaitTimeMs;
+
+        private final AtomicInteger waiting = new AtomicInteger(0);
+        private final LongAdder hashCount = new LongAdder();
+        private final LongAdder rejectedCount = new LongAdder();
+        private final LongAdder totalWaitTimeMs = new LongAdder();
+        private final LongAdder totalHashTimeMs = new LongAdder();
+
+        HashingPool(int size, long maxWaitTimeMs) {
+            this.slots = new Semaphore(size, true);
+            this.size = size;
+            this.maxWaitTimeMs = maxWaitTimeMs;
+        }
+
+        <T> T run(Func<T> func) throws TenantOrAppNotFoundException {
+            long waitStartTime = System.nanoTime();
+            waiting.incrementAndGet();
+            try {
+                if (maxWaitTimeMs <= 0) {
+                    slots.acquire();
+                } else if (!slots.tryAcquire(maxWaitTimeMs, TimeUnit.MILLISECONDS)) {
+                    rejectedCount.increment();
+                    throw new PasswordHashingOverloadedException(
+                            "Could not start password hashing within " + maxWaitTimeMs + "ms");
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // this must not be reported as wrong credentials, so we don't throw an IllegalStateException here
+                rejectedCount.increment();
+                throw new PasswordHashingOverloadedException("Interrupted while waiting to start password hashing",
+                        e);
+            } finally {
+                waiting.decrementAndGet();
+                totalWaitTimeMs.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStartTime));
+            }
+
+            long hashStartTime = System.nanoTime();
+            try {
+                return func.op();
+            } finally {
+                slots.release();
+                hashCount.increment();
+                totalHashTimeMs.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - hashStartTime));
             }
+        }
+
+        // the number of requests waiting for a slot
+        public int getQueueDepth() {
+            return waiting.get();
+        }
+
+        public int getInProgressCount() {
+            return size - slots.availablePermits();
+        }
+
+        public long getHashCount() {
+            return hashCount.sum();
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount.sum();
+        }
+
+        public long getTotalWaitTimeMs() {
+            return totalWaitTimeMs.sum();
+        }
 
-            return func.op();
-        } finally {
-            blockingQueue.remove(waiter);
+        public long getTotalHashTimeMs() {
+            return totalHashTimeMs.sum();
         }
     }
 
@@ -149,43 +252,172 @@ public class PasswordHashing extends ResourceDistributor.SingletonResource {
         if (PasswordHashingUtils.isInputHashInArgon2Format(hash)) {
             ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.PASSWORD_VERIFY_ARGON, null);
             if (hash.startsWith("$argon2id")) {
-                return withConcurrencyLimited(() -> argon2id.verify(hash, password.toCharArray()),
-                        this.argon2BoundedQueue);
+                return this.argon2Pool.run(() -> argon2id.verify(hash, password.toCharArray()));
             }
 
             if (hash.startsWith("$argon2i")) {
-                return withConcurrencyLimited(() -> argon2i.verify(hash, password.toCharArray()),
-                        this.argon2BoundedQueue);
+                return this.argon2Pool.run(() -> argon2i.verify(hash, password.toCharArray()));
             }
 
             if (hash.startsWith("$argon2d")) {
-                return withConcurrencyLimited(() -> argon2d.verify(hash, password.toCharArray()),
-                        this.argon2BoundedQueue);
+                return this.argon2Pool.run(() -> argon2d.verify(hash, password.toCharArray()));
             }
         } else if (PasswordHashingUtils.isInputHashInBcryptFormat(hash)) {
             ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.PASSWORD_VERIFY_BCRYPT, null);
             String bCryptPasswordHash = PasswordHashingUtils
                     .replaceUnsupportedIdentifierForBcryptPasswordHashVerification(hash);
-            return BCrypt.checkpw(password, bCryptPasswordHash);
+            return this.bcryptPool.run(() -> BCrypt.checkpw(password, bCryptPasswordHash));
         } else if (ParsedFirebaseSCryptResponse.fromHashString(hash) != null) {
             ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.PASSWORD_VERIFY_FIREBASE_SCRYPT, null);
-            return withConcurrencyLimited(
+            return this.firebaseSCryptPool.run(
                     () -> PasswordHashingUtils.verifyFirebaseSCryptPasswordHash(password, hash,
                             Config.getConfig(appIdentifier.getAsPublicTenantIdentifier(), main)
-                                    .getFirebase_password_hashing_signer_key()),
-                    this.firebaseSCryptBoundedQueue);
+                                    .getFirebase_password_hashing_signer_key()));
         }
 
         return false;
     }
 
+    public HashingPool getBcryptPool() {
+        return this.bcryptPool;
+    }
+
+    public HashingPool getArgon2Pool() {
+        return this.argon2Pool;
+    }
+
+    public HashingPool getFirebaseSCryptPool() {
+        return this.firebaseSCryptPool;
+    }
+
+    /**
+     * Checks if a hash uses the hashing algorithm, and the parameters of it, that the app is configured with. Hashes
+     * that don't (imported firebase scrypt hashes, bcrypt hashes with a different number of rounds, etc) can be
+     * replaced with a new hash of the password when the user signs in (see password_rehash_on_sign_in_enabled).
+     */
+    public boolean isHashUsingCurrentConfig(AppIdentifier appIdentifier, String hash)
+            throws TenantOrAppNotFoundException {
+        CoreConfig config = Config.getConfig(appIdentifier.getAsPublicTenantIdentifier(), main);
+        try {
+            if (config.getPasswordHashingAlg() == CoreConfig.PASSWORD_HASHING_ALG.BCRYPT) {
+                // $2a$<2 digit log rounds>$<salt + hash>
+                return PasswordHashingUtils.isInputHashInBcryptFormat(hash)
+                        && Integer.parseInt(hash.substring(4, 6)) == config.getBcryptLogRounds();
+            }
+            if (config.getPasswordHashingAlg() == CoreConfig.PASSWORD_HASHING_ALG.ARGON2) {
+                // $argon2id$v=19$m=<memory kb>,t=<iterations>,p=<parallelism>$<salt>$<hash>
+                if (!hash.startsWith("$argon2id$")) {
+                    return false;
+                }
+                String[] parts = hash.split("\\$");
+                return parts.length == 6 && parts[3].equals("m=" + config.getArgon2MemoryKb() + ",t="
+                        + config.getArgon2Iterations() + ",p=" + config.getArgon2Parallelism());
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return false;
+        }
+        // we don't create hashes with any other algorithm
+        return true;
+    }
+
+    public interface PasswordHashReplacer {
+        // replaces the stored hash with newHash, but only if the stored hash is still the one that was rehashed.
+        // Returns false if it was not replaced.
+        boolean replaceIfUnchanged(String newHash) throws Exception;
+    }
+
+    /**
+     * Called after a successful sign in. If the hash of the password doesn't use the app's current hashing config
+     * and password_rehash_on_sign_in_enabled is true, the password is hashed again in the background, and the new
+     * hash is saved using hashReplacer.
+     * <p>
+     * Note that the plain text password is kept in memory until the rehash is done, which can take a while if there
+     * are other rehashes pending (at most MAX_PENDING_REHASHES of them).
+     */
+    public void onSignIn(AppIdentifier appIdentifier, String userId, String password, String hash,
+                         PasswordHashReplacer hashReplacer)
+            throws TenantOrAppNotFoundException {
+        String userKey = appIdentifier.getConnectionUriDomain() + "|" + appIdentifier.getAppId() + "|" + userId;
+        if (isHashUsingCurrentConfig(appIdentifier, hash)) {
+            currentHashSignInEvents.increment();
+            usersWithLegacyHash.remove(userKey);
+            return;
+        }
+        legacyHashSignInEvents.increment();
+        if (usersWithLegacyHash.size() < MAX_TRACKED_USERS_WITH_LEGACY_HASH) {
+            // the check and the add are not atomic, so the limit can be exceeded by a few concurrent sign ins
+            usersWithLegacyHash.add(userKey);
+        }
+
+        if (!Config.getConfig(appIdentifier.getAsPublicTenantIdentifier(), main)
+                .getPasswordRehashOnSignInEnabled()) {
+            return;
+        }
+        rehashExecutor.execute(() -> {
+            try {
+                String newHash = createHashWithSalt(appIdentifier, password);
+                boolean replaced = hashReplacer.replaceIfUnchanged(newHash);
+                // either way, the user no longer has the legacy hash
+                usersWithLegacyHash.remove(userKey);
+                if (replaced) {
+                    rehashedCount.increment();
+                } else {
+                    // the password was changed, or the user was deleted, after the user signed in
+                    rehashConflictCount.increment();
+                }
+            } catch (Exception e) {
+                rehashFailedCount.increment();
+                Logging.error(main, appIdentifier.getAsPublicTenantIdentifier(), "Password rehashing failed", false,
+                        e);
+            }
+        });
+    }
+
+    // The number of successful sign ins whose password hash used the app's current hashing config. These count sign
+    // in events, not users: a user that signs in ten times is counted ten times.
+    public long getCurrentHashSignInEventCount() {
+        return currentHashSignInEvents.sum();
+    }
+
+    public long getLegacyHashSignInEventCount() {
+        return legacyHashSignInEvents.sum();
+    }
+
+    // The number of distinct users that signed in with a legacy hash since the core started, and whose hash has not
+    // been replaced yet. This is capped at MAX_TRACKED_USERS_WITH_LEGACY_HASH, and users that never sign in are not
+    // counted at all, so it is a lower bound of the users still on legacy hashes.
+    public int getUsersWithLegacyHashNotRehashedCount() {
+        return usersWithLegacyHash.size();
+    }
+
+    public long getRehashedCount() {
+        return rehashedCount.sum();
+    }
+
+    public long getRehashConflictCount() {
+        return rehashConflictCount.sum();
+    }
+
+    public long getRehashDroppedCount() {
+        return rehashDroppedCount.sum();
+    }
+
+    public long getRehashFailedCount() {
+        return rehashFailedCount.sum();
+    }
+
+    // the number of rehashes that are waiting or in progress
+    public int getPendingRehashCount() {
+        return rehashExecutor.getQueue().size() + rehashExecutor.getActiveCount();
+    }
+
     @TestOnly
     public int getArgon2BlockedQueueSize() {
-        return this.argon2BoundedQueue.size();
+        return this.argon2Pool.getInProgressCount();
     }
 
     @TestOnly
     public int getFirebaseSCryptBlockedQueueSize() {
-        return this.firebaseSCryptBoundedQueue.size();
+        return this.firebaseSCryptPool.getInProgressCount();
     }
 }
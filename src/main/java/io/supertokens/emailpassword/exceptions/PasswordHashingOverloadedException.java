@@ -0,0 +1,32 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.emailpassword.exceptions;
+
+// Thrown when a password could not be hashed / verified within password_hashing_max_wait_time_ms, because all the
+// hashing slots of its algorithm were in use, or because the thread was interrupted while waiting for a slot.
+public class PasswordHashingOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingOverloadedException(String msg) {
+        super(msg);
+    }
+
+    public PasswordHashingOverloadedException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
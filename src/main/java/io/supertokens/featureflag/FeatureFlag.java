@@ -38,6 +38,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
 
 public class FeatureFlag extends ResourceDistributor.SingletonResource {
 
@@ -124,7 +125,7 @@ public class FeatureFlag extends ResourceDistributor.SingletonResource {
     }
 
     public static void loadForAllTenants(Main main, List<AppIdentifier> apps,
-                                         List<TenantIdentifier> tenantsThatChanged) {
+                                         Set<TenantIdentifier> tenantsThatChanged) {
         try {
             main.getResourceDistributor().withResourceDistributorLock(() -> {
                 Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> existingResources =
@@ -16,25 +16,65 @@
 
 package io.supertokens.inmemorydb;
 
+import io.supertokens.inmemorydb.config.Config;
 import org.sqlite.SQLiteConfig;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * A fixed number of connections to the shared in memory db that are opened when the storage is initialised and
+ * reused across queries and transactions. Each of them keeps its prepared statements (see
+ * {@link PooledConnection}), so running the same query again doesn't have to compile it again.
+ * <p>
+ * A transaction can run queries that get a connection of their own while it holds one, so if all the connections
+ * are in use for longer than MAX_CHECKOUT_WAIT_MS, we open a temporary connection instead of waiting forever. Such
+ * connections are closed when they are released and are counted in getOverflowConnectionCount, which means that
+ * the pool size is too small.
+ */
 public class ConnectionPool extends ResourceDistributor.SingletonResource {
 
     private static final String RESOURCE_KEY = "io.supertokens.inmemorydb.ConnectionPool";
     private static String URL = "jdbc:sqlite:file::memory:?cache=shared";
 
+    static final long MAX_CHECKOUT_WAIT_MS = 1000;
+
     // we use this to keep all the information in memory across requests.
     private Connection alwaysAlive = null;
     private Lock lock = new Lock();
 
-    public ConnectionPool() throws SQLException {
+    private final int poolSize;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private volatile boolean closed = false;
+
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder waitedCheckouts = new LongAdder();
+    private final LongAdder totalCheckoutWaitNanos = new LongAdder();
+    private final AtomicLong maxCheckoutWaitNanos = new AtomicLong(0);
+    private final LongAdder overflowConnections = new LongAdder();
+    private final AtomicInteger connectionsInUse = new AtomicInteger(0);
+    private final AtomicInteger maxConnectionsInUse = new AtomicInteger(0);
+    final LongAdder statementCacheHits = new LongAdder();
+    final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(int poolSize) throws SQLException {
+        this.alwaysAlive = openConnection();
+        this.poolSize = poolSize;
+        for (int i = 0; i < poolSize; i++) {
+            idleConnections.add(new PooledConnection(openConnection(), true, this));
+        }
+    }
+
+    private static Connection openConnection() throws SQLException {
         SQLiteConfig config = new SQLiteConfig();
         config.enforceForeignKeys(true);
-        this.alwaysAlive = DriverManager.getConnection(URL, config.toProperties());
+        return DriverManager.getConnection(URL, config.toProperties());
     }
 
     static boolean isAlreadyInitialised(Start start) {
@@ -43,30 +83,83 @@ public class ConnectionPool extends ResourceDistributor.SingletonResource {
 
     static void initPool(Start start, boolean ignored) throws SQLException {
         start.getResourceDistributor()
-                .setResource(RESOURCE_KEY, new ConnectionPool());
+                .setResource(RESOURCE_KEY, new ConnectionPool(Config.getConfig(start).getConnectionPoolSize()));
     }
 
     public static Connection getConnection(Start start) throws SQLException {
         if (!start.enabled) {
             throw new SQLException("Storage layer disabled");
         }
-        SQLiteConfig config = new SQLiteConfig();
-        config.enforceForeignKeys(true);
-        return new ConnectionWithLocks(DriverManager.getConnection(URL, config.toProperties()),
-                ConnectionPool.getInstance(start));
+        ConnectionPool pool = ConnectionPool.getInstance(start);
+        return new ConnectionWithLocks(pool.checkout(), pool);
+    }
+
+    private PooledConnection checkout() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been closed");
+        }
+        checkouts.increment();
+        PooledConnection connection = idleConnections.pollFirst();
+        if (connection == null) {
+            long waitStart = System.nanoTime();
+            try {
+                connection = idleConnections.pollFirst(MAX_CHECKOUT_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(e);
+            }
+            long waitNanos = System.nanoTime() - waitStart;
+            waitedCheckouts.increment();
+            totalCheckoutWaitNanos.add(waitNanos);
+            maxCheckoutWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            if (connection == null) {
+                overflowConnections.increment();
+                connection = new PooledConnection(openConnection(), false, this);
+            }
+        }
+        maxConnectionsInUse.accumulateAndGet(connectionsInUse.incrementAndGet(), Math::max);
+        return connection;
     }
 
-    private static ConnectionPool getInstance(Start start) {
+    void release(PooledConnection connection) {
+        connectionsInUse.decrementAndGet();
+        if (!connection.isPooled() || closed) {
+            connection.closeQuietly();
+            return;
+        }
+        try {
+            connection.resetForReuse();
+        } catch (SQLException e) {
+            // we don't know what state the connection is in, so we replace it with a new one
+            connection.closeQuietly();
+            try {
+                connection = new PooledConnection(openConnection(), true, this);
+            } catch (SQLException ignored) {
+                // the pool has one less connection now, and checkout will open temporary ones if needed
+                return;
+            }
+        }
+        // we put it in the front so that the most recently used connections (and their statements) stay in use
+        idleConnections.offerFirst(connection);
+    }
+
+    public static ConnectionPool getInstance(Start start) {
         return (ConnectionPool) start.getResourceDistributor()
                 .getResource(RESOURCE_KEY);
     }
 
     static void close(Start start) {
-        if (getInstance(start) == null) {
+        ConnectionPool pool = getInstance(start);
+        if (pool == null) {
             return;
         }
+        pool.closed = true;
+        PooledConnection connection;
+        while ((connection = pool.idleConnections.pollFirst()) != null) {
+            connection.closeQuietly();
+        }
         try {
-            getInstance(start).alwaysAlive.close();
+            pool.alwaysAlive.close();
         } catch (Exception ignored) {
         }
     }
@@ -79,4 +172,57 @@ public class ConnectionPool extends ResourceDistributor.SingletonResource {
         this.lock.unlock(key);
     }
 
+    // For reading the lock contention metrics of this storage
+    public static Lock getLock(Start start) {
+        return getInstance(start).lock;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public long getCheckoutCount() {
+        return checkouts.sum();
+    }
+
+    // Number of checkouts that found no idle connection and had to wait for one
+    public long getWaitedCheckoutCount() {
+        return waitedCheckouts.sum();
+    }
+
+    public long getTotalCheckoutWaitTimeNanos() {
+        return totalCheckoutWaitNanos.sum();
+    }
+
+    public long getMaxCheckoutWaitTimeNanos() {
+        return maxCheckoutWaitNanos.get();
+    }
+
+    // Number of temporary connections that were opened because the pool was exhausted for MAX_CHECKOUT_WAIT_MS
+    public long getOverflowConnectionCount() {
+        return overflowConnections.sum();
+    }
+
+    public int getConnectionsInUse() {
+        return connectionsInUse.get();
+    }
+
+    public int getMaxConnectionsInUse() {
+        return maxConnectionsInUse.get();
+    }
+
+    // Fraction of the pooled connections that are in use right now. This can be above 1 while temporary connections
+    // are open.
+    public double getUtilisation() {
+        return poolSize == 0 ? 0 : (double) connectionsInUse.get() / poolSize;
+    }
+
+    public long getStatementCacheHitCount() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMissCount() {
+        return statementCacheMisses.sum();
+    }
+
 }
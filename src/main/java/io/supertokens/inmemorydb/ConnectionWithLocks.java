@@ -26,8 +26,10 @@ import java.util.concurrent.Executor;
 public class ConnectionWithLocks implements Connection {
 
     private Connection con;
+    private PooledConnection pooledConnection;
     private ConnectionPool connectionPool;
     private Set<String> lockedKeys = new HashSet<String>();
+    private boolean closed = false;
 
     public synchronized void lock(String key) {
         if (!this.lockedKeys.contains(key)) {
@@ -43,11 +45,21 @@ public class ConnectionWithLocks implements Connection {
         this.lockedKeys.clear();
     }
 
-    public ConnectionWithLocks(Connection con, ConnectionPool connectionPool) {
-        this.con = con;
+    ConnectionWithLocks(PooledConnection pooledConnection, ConnectionPool connectionPool) {
+        this.con = pooledConnection.con;
+        this.pooledConnection = pooledConnection;
         this.connectionPool = connectionPool;
     }
 
+    // See PooledConnection.borrowStatement
+    PreparedStatement borrowStatement(String sql) throws SQLException {
+        return pooledConnection.borrowStatement(sql);
+    }
+
+    void returnStatement(String sql, PreparedStatement statement, boolean discard) {
+        pooledConnection.returnStatement(sql, statement, discard);
+    }
+
     @Override
     public Statement createStatement() throws SQLException {
         return con.createStatement();
@@ -98,8 +110,15 @@ public class ConnectionWithLocks implements Connection {
 
     @Override
     public void close() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
         try {
-            con.close();
+            // this gives the connection back to the pool, which rolls back anything that was not committed
+            pooledConnection.release();
         } finally {
             this.unlockAllLocks();
         }
@@ -107,7 +126,7 @@ public class ConnectionWithLocks implements Connection {
 
     @Override
     public boolean isClosed() throws SQLException {
-        return con.isClosed();
+        return closed || con.isClosed();
     }
 
     @Override
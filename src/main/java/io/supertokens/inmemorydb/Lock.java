@@ -16,35 +16,168 @@
 
 package io.supertokens.inmemorydb;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-class Lock {
+/**
+ * Row level locks for the in memory db, which SQLite does not have. Keys are spread across stripes, each with its
+ * own mutex, so locking and unlocking unrelated keys doesn't contend. Threads waiting for a key are queued per key
+ * and the key is handed to the first of them on unlock, so only that thread is woken up, and waiters get the key in
+ * the order they asked for it.
+ */
+public class Lock {
 
-    private Set<String> lockedKeys = new HashSet<>();
-    private final Object waitMutex = new Object();
+    private static final int NUMBER_OF_STRIPES = 64;
 
-    void lock(String name) {
-        synchronized (this.waitMutex) {
-            while (true) {
-                if (!this.lockedKeys.contains(name)) {
-                    this.lockedKeys.add(name);
-                    return;
-                }
+    // We only keep contention counts for this many keys, so that this doesn't grow with the number of rows
+    static final int MAX_TRACKED_CONTENDED_KEYS = 1000;
+
+    private final Stripe[] stripes = new Stripe[NUMBER_OF_STRIPES];
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong(0);
+    private final AtomicInteger waitingThreads = new AtomicInteger(0);
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+    private final Map<String, LongAdder> contentionByKey = new ConcurrentHashMap<>();
+
+    public Lock() {
+        for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
 
-                try {
-                    this.waitMutex.wait();
-                } catch (InterruptedException ignored) {
+    public void lock(String name) {
+        Stripe stripe = getStripe(name);
+        stripe.mutex.lock();
+        try {
+            acquisitions.increment();
+            Deque<Waiter> waiters = stripe.lockedKeys.get(name);
+            if (waiters == null) {
+                // the key is free. The presence of the key in the map means that it's locked.
+                stripe.lockedKeys.put(name, new ArrayDeque<>());
+                return;
+            }
+
+            Waiter waiter = new Waiter(stripe.mutex.newCondition());
+            waiters.addLast(waiter);
+            maxQueueDepth.accumulateAndGet(waiters.size(), Math::max);
+            waitingThreads.incrementAndGet();
+            long waitStart = System.nanoTime();
+            try {
+                // until unlock hands the key to us, any wake up is spurious
+                while (!waiter.granted) {
+                    waiter.turn.awaitUninterruptibly();
                 }
+            } finally {
+                waitingThreads.decrementAndGet();
             }
+            recordWait(name, System.nanoTime() - waitStart);
+        } finally {
+            stripe.mutex.unlock();
+        }
+    }
+
+    public void unlock(String name) {
+        Stripe stripe = getStripe(name);
+        stripe.mutex.lock();
+        try {
+            Deque<Waiter> waiters = stripe.lockedKeys.get(name);
+            if (waiters == null) {
+                return;
+            }
+            Waiter next = waiters.pollFirst();
+            if (next == null) {
+                stripe.lockedKeys.remove(name);
+            } else {
+                // the key stays locked and now belongs to the next waiter
+                next.granted = true;
+                next.turn.signal();
+            }
+        } finally {
+            stripe.mutex.unlock();
+        }
+    }
+
+    private Stripe getStripe(String name) {
+        int hash = name.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[(hash & 0x7fffffff) % NUMBER_OF_STRIPES];
+    }
+
+    private void recordWait(String name, long waitNanos) {
+        contendedAcquisitions.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        LongAdder count = contentionByKey.get(name);
+        if (count == null && contentionByKey.size() < MAX_TRACKED_CONTENDED_KEYS) {
+            count = contentionByKey.computeIfAbsent(name, k -> new LongAdder());
+        }
+        if (count != null) {
+            count.increment();
         }
     }
 
-    void unlock(String name) {
-        synchronized (this.waitMutex) {
-            this.lockedKeys.remove(name);
-            this.waitMutex.notifyAll();
+    public long getAcquisitionCount() {
+        return acquisitions.sum();
+    }
+
+    // Number of times a thread had to wait for a key that was locked by another one
+    public long getContendedAcquisitionCount() {
+        return contendedAcquisitions.sum();
+    }
+
+    public long getTotalWaitTimeNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    public long getMaxWaitTimeNanos() {
+        return maxWaitNanos.get();
+    }
+
+    // Number of threads currently waiting for a key
+    public int getWaitingThreadCount() {
+        return waitingThreads.get();
+    }
+
+    // The most threads that were waiting for the same key at once
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Returns up to limit keys that threads had to wait for the most often, with the number of times that
+     * happened, most contended first.
+     */
+    public List<Map.Entry<String, Long>> getHottestKeys(int limit) {
+        List<Map.Entry<String, Long>> result = new ArrayList<>();
+        for (Map.Entry<String, LongAdder> entry : contentionByKey.entrySet()) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
         }
+        result.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
     }
 
+    private static class Stripe {
+        final ReentrantLock mutex = new ReentrantLock();
+        // locked key -> threads waiting for it, in the order they started waiting
+        final Map<String, Deque<Waiter>> lockedKeys = new HashMap<>();
+    }
+
+    // Only accessed while holding the mutex of the stripe
+    private static class Waiter {
+        final Condition turn;
+        boolean granted = false;
+
+        Waiter(Condition turn) {
+            this.turn = turn;
+        }
+    }
 }
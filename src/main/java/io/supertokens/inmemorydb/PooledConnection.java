@@ -0,0 +1,156 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.inmemorydb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A JDBC connection owned by {@link ConnectionPool}, along with the statements prepared on it. Statements are cached
+ * by their SQL text, so that queries that are run often are only compiled once per connection. A connection is only
+ * used by one thread at a time (the one that checked it out), but the methods are synchronized anyway since a
+ * transaction connection can be handed to other threads by the logic running in it.
+ */
+class PooledConnection {
+
+    static final int MAX_CACHED_STATEMENTS = 256;
+
+    final Connection con;
+    private final boolean pooled;
+    private final ConnectionPool pool;
+
+    // SQL -> statement, in least recently used order
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() <= MAX_CACHED_STATEMENTS) {
+                return false;
+            }
+            // if it's being used, it's closed when it's returned, since it's no longer in the cache then
+            if (!eldest.getValue().inUse) {
+                closeQuietly(eldest.getValue().statement);
+            }
+            return true;
+        }
+    };
+
+    PooledConnection(Connection con, boolean pooled, ConnectionPool pool) {
+        this.con = con;
+        this.pooled = pooled;
+        this.pool = pool;
+    }
+
+    boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Returns a prepared statement for the sql from the cache (preparing it if needed), or null if the cached
+     * statement for this sql is already being used (for example by a query that is run while iterating over the
+     * result of the same query), in which case the caller should prepare a statement of its own.
+     * The statement must be given back with {@link #returnStatement}, and must not be closed by the caller.
+     */
+    synchronized PreparedStatement borrowStatement(String sql) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null) {
+            if (cached.inUse) {
+                return null;
+            }
+            pool.statementCacheHits.increment();
+            cached.inUse = true;
+            return cached.statement;
+        }
+        pool.statementCacheMisses.increment();
+        cached = new CachedStatement(con.prepareStatement(sql));
+        cached.inUse = true;
+        statements.put(sql, cached);
+        return cached.statement;
+    }
+
+    /**
+     * @param discard if true, the statement is closed and removed from the cache, for example because running it
+     *                failed and we don't know what state it is in
+     */
+    synchronized void returnStatement(String sql, PreparedStatement statement, boolean discard) {
+        CachedStatement cached = statements.get(sql);
+        if (cached == null || cached.statement != statement) {
+            // it was evicted while it was being used
+            closeQuietly(statement);
+            return;
+        }
+        cached.inUse = false;
+        if (discard) {
+            statements.remove(sql);
+            closeQuietly(statement);
+            return;
+        }
+        try {
+            statement.clearParameters();
+        } catch (SQLException e) {
+            statements.remove(sql);
+            closeQuietly(statement);
+        }
+    }
+
+    /**
+     * Makes sure that nothing from the last checkout carries over to the next one.
+     */
+    synchronized void resetForReuse() throws SQLException {
+        if (con.isClosed()) {
+            throw new SQLException("Connection is closed");
+        }
+        if (!con.getAutoCommit()) {
+            con.rollback();
+            con.setAutoCommit(true);
+        }
+        con.clearWarnings();
+    }
+
+    synchronized void closeQuietly() {
+        for (CachedStatement cached : statements.values()) {
+            closeQuietly(cached.statement);
+        }
+        statements.clear();
+        try {
+            con.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    void release() {
+        pool.release(this);
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+}
@@ -36,6 +36,21 @@ public interface QueryExecutorTemplate {
             ResultSetValueExtractor<T> mapper) throws SQLException, StorageQueryException {
         if (setter == null)
             setter = PreparedStatementValueSetter.NO_OP_SETTER;
+        PreparedStatement cached = borrowCachedStatement(con, QUERY);
+        if (cached != null) {
+            boolean succeeded = false;
+            try {
+                setter.setValues(cached);
+                T value;
+                try (ResultSet result = cached.executeQuery()) {
+                    value = mapper.extract(result);
+                }
+                succeeded = true;
+                return value;
+            } finally {
+                ((ConnectionWithLocks) con).returnStatement(QUERY, cached, !succeeded);
+            }
+        }
         try (PreparedStatement pst = con.prepareStatement(QUERY)) {
             setter.setValues(pst);
             try (ResultSet result = pst.executeQuery()) {
@@ -53,10 +68,30 @@ public interface QueryExecutorTemplate {
 
     public static int update(Connection con, String QUERY, PreparedStatementValueSetter setter)
             throws SQLException, StorageQueryException {
+        PreparedStatement cached = borrowCachedStatement(con, QUERY);
+        if (cached != null) {
+            boolean succeeded = false;
+            try {
+                setter.setValues(cached);
+                int value = cached.executeUpdate();
+                succeeded = true;
+                return value;
+            } finally {
+                ((ConnectionWithLocks) con).returnStatement(QUERY, cached, !succeeded);
+            }
+        }
         try (PreparedStatement pst = con.prepareStatement(QUERY)) {
             setter.setValues(pst);
             return pst.executeUpdate();
         }
     }
 
+    // Returns null if the statement can't be cached, in which case the caller prepares (and closes) its own
+    private static PreparedStatement borrowCachedStatement(Connection con, String QUERY) throws SQLException {
+        if (con instanceof ConnectionWithLocks) {
+            return ((ConnectionWithLocks) con).borrowStatement(QUERY);
+        }
+        return null;
+    }
+
 }
@@ -17,8 +17,10 @@
 package io.supertokens.inmemorydb;
 
 import com.google.gson.JsonObject;
+import io.supertokens.ActiveUsers;
 import io.supertokens.Main;
 import io.supertokens.ProcessState;
+import io.supertokens.cronjobs.BatchDeletionStorage;
 import io.supertokens.inmemorydb.config.Config;
 import io.supertokens.inmemorydb.config.SQLiteConfig;
 import io.supertokens.inmemorydb.queries.*;
@@ -106,7 +108,8 @@ public class Start
         implements SessionSQLStorage, EmailPasswordSQLStorage, EmailVerificationSQLStorage, ThirdPartySQLStorage,
         JWTRecipeSQLStorage, PasswordlessSQLStorage, UserMetadataSQLStorage, UserRolesSQLStorage, UserIdMappingStorage,
         UserIdMappingSQLStorage, MultitenancyStorage, MultitenancySQLStorage, TOTPSQLStorage, ActiveUsersStorage,
-        ActiveUsersSQLStorage, DashboardSQLStorage, AuthRecipeSQLStorage {
+        ActiveUsersSQLStorage, DashboardSQLStorage, AuthRecipeSQLStorage, ActiveUsers.DailyActiveUsersStorage,
+        BatchDeletionStorage {
 
     private static final Object appenderLock = new Object();
     private static final String APP_ID_KEY_NAME = "app_id";
@@ -150,9 +153,9 @@ public class Start
     }
 
     @Override
-    public void loadConfig(JsonObject ignored, Set<LOG_LEVEL> logLevel, TenantIdentifier tenantIdentifier)
+    public void loadConfig(JsonObject configJson, Set<LOG_LEVEL> logLevel, TenantIdentifier tenantIdentifier)
             throws InvalidConfigException {
-        Config.loadConfig(this);
+        Config.loadConfig(this, configJson);
     }
 
     @Override
@@ -592,6 +595,15 @@ public class Start
         }
     }
 
+    @Override
+    public int deleteExpiredSessions(int limit) throws StorageQueryException {
+        try {
+            return SessionQueries.deleteExpiredSessions(this, limit);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
     @Override
     public SessionInfo getSession(String s) throws StorageQueryException {
         return null;
@@ -1202,6 +1214,15 @@ public class Start
         }
     }
 
+    @Override
+    public int deleteExpiredEmailVerificationTokens(int limit) throws StorageQueryException {
+        try {
+            return EmailVerificationQueries.deleteExpiredEmailVerificationTokens(this, limit);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
     @Override
     public EmailVerificationTokenInfo[] getAllEmailVerificationTokenInfoForUser(String s, String s1) throws StorageQueryException {
         return new EmailVerificationTokenInfo[0];
@@ -1392,6 +1413,15 @@ public class Start
         }
     }
 
+    @Override
+    public int deleteExpiredPasswordResetTokens(int limit) throws StorageQueryException {
+        try {
+            return EmailPasswordQueries.deleteExpiredPasswordResetTokens(this, limit);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
     @Override
     public UserInfo getUserInfoUsingId_Transaction(TransactionConnection transactionConnection, String s, String s1) throws StorageQueryException {
         return null;
@@ -1560,6 +1590,39 @@ public class Start
         return 0;
     }
 
+    @Override
+    public int[] countUsersActiveSinceEachDay(AppIdentifier appIdentifier, long today, int days)
+            throws StorageQueryException {
+        try {
+            return ActiveUsersQueries.countUsersActiveSinceEachDay(this, appIdentifier, today, days);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
+    @Override
+    public int[] countUsersThatHaveMoreThanOneLoginMethodAndActiveSinceEachDay(AppIdentifier appIdentifier,
+                                                                               long today, int days)
+            throws StorageQueryException {
+        try {
+            return ActiveUsersQueries.countUsersActiveSinceEachDayAndHasMoreThanOneLoginMethod(this, appIdentifier,
+                    today, days);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
+    @Override
+    public int[] countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(
+            AppIdentifier appIdentifier, long today, int days) throws StorageQueryException {
+        try {
+            return ActiveUsersQueries.countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(this,
+                    appIdentifier, today, days);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
     @Override
     public void deleteUserActive_Transaction(TransactionConnection con, AppIdentifier appIdentifier, String userId)
             throws StorageQueryException {
@@ -3084,6 +3147,15 @@ public class Start
         }
     }
 
+    @Override
+    public int deleteExpiredDashboardSessions(int limit) throws StorageQueryException {
+        try {
+            return DashboardQueries.deleteExpiredSessions(this, limit);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
     // TOTP recipe:
     @Override
     public void createDevice(AppIdentifier appIdentifier, TOTPDevice device)
@@ -3284,6 +3356,16 @@ public class Start
         }
     }
 
+    @Override
+    public int removeExpiredTotpCodes(TenantIdentifier tenantIdentifier, long expiredBefore, int limit)
+            throws StorageQueryException {
+        try {
+            return TOTPQueries.removeExpiredCodes(this, tenantIdentifier, expiredBefore, limit);
+        } catch (SQLException e) {
+            throw new StorageQueryException(e);
+        }
+    }
+
     @Override
     public Set<String> getValidFieldsInConfig() {
         return SQLiteConfig.getValidFields();
@@ -16,13 +16,44 @@
 
 package io.supertokens.inmemorydb.config;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.supertokens.pluginInterface.exceptions.InvalidConfigException;
+
 import java.util.HashSet;
 import java.util.Set;
 
 public class SQLiteConfig {
 
+    static final String CONNECTION_POOL_SIZE_KEY = "sqlite_connection_pool_size";
+
+    // Number of connections to the in memory db that are kept open and reused across queries
+    private int connectionPoolSize = 10;
+
+    static SQLiteConfig fromJson(JsonObject configJson) throws InvalidConfigException {
+        SQLiteConfig config = new SQLiteConfig();
+        JsonElement poolSize = configJson == null ? null : configJson.get(CONNECTION_POOL_SIZE_KEY);
+        if (poolSize != null && !poolSize.isJsonNull()) {
+            try {
+                config.connectionPoolSize = poolSize.getAsInt();
+            } catch (NumberFormatException | UnsupportedOperationException | IllegalStateException e) {
+                throw new InvalidConfigException("'" + CONNECTION_POOL_SIZE_KEY + "' must be an integer");
+            }
+            if (config.connectionPoolSize <= 0) {
+                throw new InvalidConfigException("'" + CONNECTION_POOL_SIZE_KEY + "' must be > 0");
+            }
+        }
+        return config;
+    }
+
     public static Set<String> getValidFields() {
-        return new HashSet<>();
+        Set<String> validFields = new HashSet<>();
+        validFields.add(CONNECTION_POOL_SIZE_KEY);
+        return validFields;
+    }
+
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
     }
 
     public String getKeyValueTable() {
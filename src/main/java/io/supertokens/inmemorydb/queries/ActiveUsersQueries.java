@@ -1,6 +1,7 @@
 package io.supertokens.inmemorydb.queries;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import io.supertokens.inmemorydb.config.Config;
@@ -12,6 +13,13 @@ import static io.supertokens.inmemorydb.QueryExecutorTemplate.execute;
 import static io.supertokens.inmemorydb.QueryExecutorTemplate.update;
 
 public class ActiveUsersQueries {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    // The number of days before today that last_active_time is in: 0 if it's on or after today (which is the start
+    // of the current day), 1 if it's on or after today - 1 day, and so on. Takes today as the first two parameters.
+    private static final String DAYS_AGO = "(CASE WHEN last_active_time >= ? THEN 0 ELSE (? - last_active_time + "
+            + (DAY - 1) + ") / " + DAY + " END)";
+
     static String getQueryToCreateUserLastActiveTable(Start start) {
         return "CREATE TABLE IF NOT EXISTS " + Config.getConfig(start).getUserLastActiveTable() + " ("
                 + "app_id VARCHAR(64) DEFAULT 'public',"
@@ -146,4 +154,86 @@ public class ActiveUsersQueries {
             return result.next() ? result.getInt("c") : 0;
         });
     }
+
+    // The queries below return, for each of the last `days` days, the number of users active since the start of that
+    // day, with index 0 being today. Since a user has one row in the last active table, this is done by counting the
+    // users by the day they were last active on, and adding up the counts from today backwards. So it is one pass
+    // over the table instead of a query per day.
+
+    public static int[] countUsersActiveSinceEachDay(Start start, AppIdentifier appIdentifier, long today, int days)
+            throws SQLException, StorageQueryException {
+        String QUERY = "SELECT " + DAYS_AGO + " AS days_ago, COUNT(*) AS total FROM "
+                + Config.getConfig(start).getUserLastActiveTable()
+                + " WHERE app_id = ? AND last_active_time >= ? GROUP BY days_ago";
+
+        return execute(start, QUERY, pst -> {
+            pst.setLong(1, today);
+            pst.setLong(2, today);
+            pst.setString(3, appIdentifier.getAppId());
+            pst.setLong(4, today - (days - 1) * DAY);
+        }, result -> toCountsSinceEachDay(result, days));
+    }
+
+    public static int[] countUsersActiveSinceEachDayAndHasMoreThanOneLoginMethod(Start start,
+                                                                                 AppIdentifier appIdentifier,
+                                                                                 long today, int days)
+            throws SQLException, StorageQueryException {
+        // TODO: Active users are present only on public tenant and MFA users may be present on different storages
+        String QUERY = "SELECT " + DAYS_AGO + " AS days_ago, COUNT(*) AS total FROM "
+                + Config.getConfig(start).getUserLastActiveTable()
+                + " WHERE app_id = ? AND last_active_time >= ? AND user_id IN ("
+                + "  SELECT primary_or_recipe_user_id FROM " + Config.getConfig(start).getUsersTable()
+                + "  WHERE app_id = ?"
+                + "  GROUP BY app_id, primary_or_recipe_user_id"
+                + "  HAVING COUNT(user_id) > 1"
+                + ") GROUP BY days_ago";
+
+        return execute(start, QUERY, pst -> {
+            pst.setLong(1, today);
+            pst.setLong(2, today);
+            pst.setString(3, appIdentifier.getAppId());
+            pst.setLong(4, today - (days - 1) * DAY);
+            pst.setString(5, appIdentifier.getAppId());
+        }, result -> toCountsSinceEachDay(result, days));
+    }
+
+    public static int[] countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(Start start,
+                                                                                                   AppIdentifier appIdentifier,
+                                                                                                   long today,
+                                                                                                   int days)
+            throws SQLException, StorageQueryException {
+        // TODO: Active users are present only on public tenant and MFA users may be present on different storages
+        String QUERY = "SELECT " + DAYS_AGO + " AS days_ago, COUNT(*) AS total FROM "
+                + Config.getConfig(start).getUserLastActiveTable()
+                + " WHERE app_id = ? AND last_active_time >= ? AND user_id IN ("
+                + "  " // users with more than one login method
+                + "    SELECT primary_or_recipe_user_id FROM " + Config.getConfig(start).getAppIdToUserIdTable()
+                + "    WHERE app_id = ?"
+                + "    GROUP BY app_id, primary_or_recipe_user_id"
+                + "    HAVING COUNT(user_id) > 1"
+                + "  UNION" // TOTP users
+                + "    SELECT user_id FROM " + Config.getConfig(start).getTotpUsersTable()
+                + "    WHERE app_id = ?"
+                + ") GROUP BY days_ago";
+
+        return execute(start, QUERY, pst -> {
+            pst.setLong(1, today);
+            pst.setLong(2, today);
+            pst.setString(3, appIdentifier.getAppId());
+            pst.setLong(4, today - (days - 1) * DAY);
+            pst.setString(5, appIdentifier.getAppId());
+            pst.setString(6, appIdentifier.getAppId());
+        }, result -> toCountsSinceEachDay(result, days));
+    }
+
+    private static int[] toCountsSinceEachDay(ResultSet result, int days) throws SQLException {
+        int[] counts = new int[days];
+        while (result.next()) {
+            counts[result.getInt("days_ago")] += result.getInt("total");
+        }
+        for (int i = 1; i < days; i++) {
+            counts[i] += counts[i - 1];
+        }
+        return counts;
+    }
 }
@@ -99,6 +99,18 @@ public class EmailPasswordQueries {
         update(start, QUERY, pst -> pst.setLong(1, currentTimeMillis()));
     }
 
+    public static int deleteExpiredPasswordResetTokens(Start start, int limit)
+            throws SQLException, StorageQueryException {
+        String QUERY = "DELETE FROM " + getConfig(start).getPasswordResetTokensTable()
+                + " WHERE rowid IN (SELECT rowid FROM " + getConfig(start).getPasswordResetTokensTable()
+                + " WHERE token_expiry < ? LIMIT ?)";
+
+        return update(start, QUERY, pst -> {
+            pst.setLong(1, currentTimeMillis());
+            pst.setInt(2, limit);
+        });
+    }
+
     public static void updateUsersPassword_Transaction(Start start, Connection con, AppIdentifier appIdentifier,
                                                        String userId, String newPassword)
             throws SQLException, StorageQueryException {
@@ -292,6 +292,16 @@ public class SessionQueries {
         update(start, QUERY, pst -> pst.setLong(1, currentTimeMillis()));
     }
 
+    public static int deleteExpiredSessions(Start start, int limit) throws SQLException, StorageQueryException {
+        String QUERY = "DELETE FROM " + getConfig(start).getSessionInfoTable() + " WHERE rowid IN (SELECT rowid FROM "
+                + getConfig(start).getSessionInfoTable() + " WHERE expires_at <= ? LIMIT ?)";
+
+        return update(start, QUERY, pst -> {
+            pst.setLong(1, currentTimeMillis());
+            pst.setInt(2, limit);
+        });
+    }
+
     public static int updateSession(Start start, TenantIdentifier tenantIdentifier, String sessionHandle,
                                     @Nullable JsonObject sessionData,
                                     @Nullable JsonObject jwtPayload) throws SQLException, StorageQueryException {
@@ -26,20 +26,16 @@ import io.supertokens.Main;
 import io.supertokens.jwt.exceptions.UnsupportedJWTSigningAlgorithmException;
 import io.supertokens.pluginInterface.exceptions.StorageQueryException;
 import io.supertokens.pluginInterface.exceptions.StorageTransactionLogicException;
-import io.supertokens.pluginInterface.jwt.JWTAsymmetricSigningKeyInfo;
 import io.supertokens.pluginInterface.jwt.JWTSigningKeyInfo;
 import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
 import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
 import io.supertokens.signingkeys.JWTSigningKey;
+import io.supertokens.signingkeys.ParsedSigningKey;
 import io.supertokens.signingkeys.SigningKeys;
 import io.supertokens.utils.Utils;
 import org.jetbrains.annotations.TestOnly;
 
 import java.security.NoSuchAlgorithmException;
-import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Date;
 import java.util.HashMap;
@@ -98,27 +94,38 @@ public class JWTSigningFunctions {
         long issued = System.currentTimeMillis();
         long expires = System.currentTimeMillis() + (jwtValidityInSeconds * 1000);
 
+        SigningKeys signingKeys = SigningKeys.getInstance(appIdentifier, main);
         JWTSigningKeyInfo keyToUse;
         if (useDynamicKey) {
-            keyToUse = Utils.getJWTSigningKeyInfoFromKeyInfo(
-                    SigningKeys.getInstance(appIdentifier, main).getLatestIssuedDynamicKey());
+            keyToUse = Utils.getJWTSigningKeyInfoFromKeyInfo(signingKeys.getLatestIssuedDynamicKey());
         } else {
-            keyToUse = SigningKeys.getInstance(appIdentifier, main)
-                    .getStaticKeyForAlgorithm(JWTSigningKey.SupportedAlgorithms.RS256);
+            keyToUse = signingKeys.getStaticKeyForAlgorithm(JWTSigningKey.SupportedAlgorithms.RS256);
         }
 
-        return createJWTToken(supportedAlgorithm, new HashMap<>(), payload, jwksDomain, expires, issued, keyToUse);
+        return createJWTToken(supportedAlgorithm, new HashMap<>(), payload, jwksDomain, expires, issued,
+                signingKeys.getParsedSigningKey(keyToUse));
     }
 
-    @SuppressWarnings("unchecked")
     public static String createJWTToken(JWTSigningKey.SupportedAlgorithms supportedAlgorithm,
                                         Map<String, Object> headerClaims, JsonObject payload, String jwksDomain,
                                         long jwtExpiryInMs, long jwtIssuedAtInMs, JWTSigningKeyInfo keyToUse)
             throws StorageQueryException, StorageTransactionLogicException, NoSuchAlgorithmException,
             InvalidKeySpecException, JWTCreationException, UnsupportedJWTSigningAlgorithmException,
             TenantOrAppNotFoundException {
+        return createJWTToken(supportedAlgorithm, headerClaims, payload, jwksDomain, jwtExpiryInMs, jwtIssuedAtInMs,
+                ParsedSigningKey.fromKeyInfo(keyToUse));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String createJWTToken(JWTSigningKey.SupportedAlgorithms supportedAlgorithm,
+                                        Map<String, Object> headerClaims, JsonObject payload, String jwksDomain,
+                                        long jwtExpiryInMs, long jwtIssuedAtInMs, ParsedSigningKey parsedKeyToUse)
+            throws StorageQueryException, StorageTransactionLogicException, NoSuchAlgorithmException,
+            InvalidKeySpecException, JWTCreationException, UnsupportedJWTSigningAlgorithmException,
+            TenantOrAppNotFoundException {
         // Get an instance of auth0's Algorithm which is needed when signing using auth0's package
-        Algorithm signingAlgorithm = getAuth0Algorithm(supportedAlgorithm, keyToUse);
+        Algorithm signingAlgorithm = getAuth0Algorithm(supportedAlgorithm, parsedKeyToUse);
+        JWTSigningKeyInfo keyToUse = parsedKeyToUse.keyInfo;
 
         // Create the claims for the JWT header
         headerClaims.put("alg", supportedAlgorithm.name().toUpperCase()); // All examples in the RFC have the algorithm
@@ -145,17 +152,13 @@ public class JWTSigningFunctions {
         return builder.sign(signingAlgorithm);
     }
 
-    private static Algorithm getAuth0Algorithm(JWTSigningKey.SupportedAlgorithms algorithm, JWTSigningKeyInfo keyToUse)
-            throws NoSuchAlgorithmException, InvalidKeySpecException, UnsupportedJWTSigningAlgorithmException {
+    private static Algorithm getAuth0Algorithm(JWTSigningKey.SupportedAlgorithms algorithm,
+                                               ParsedSigningKey keyToUse)
+            throws UnsupportedJWTSigningAlgorithmException {
         // TODO: Abstract this away from the main package to avoid a direct dependency on auth0s package
         if (algorithm.equalsString("rs256")) {
-            PublicKey publicKey = Utils.getPublicKeyFromString(((JWTAsymmetricSigningKeyInfo) keyToUse).publicKey,
-                    algorithm);
-            PrivateKey privateKey = Utils.getPrivateKeyFromString(((JWTAsymmetricSigningKeyInfo) keyToUse).privateKey,
-                    algorithm);
-
-            if (publicKey instanceof RSAPublicKey && privateKey instanceof RSAPrivateKey) {
-                return Algorithm.RSA256((RSAPublicKey) publicKey, (RSAPrivateKey) privateKey);
+            if (keyToUse.publicKey != null && keyToUse.privateKey != null) {
+                return Algorithm.RSA256(keyToUse.publicKey, keyToUse.privateKey);
             }
         }
 
@@ -236,10 +236,12 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
                 existingTenants[existingTenants.length - 1] = targetTenantConfig;
             }
 
-            Map<ResourceDistributor.KeyClass, JsonObject> normalisedConfigs = Config.getNormalisedConfigsForAllTenants(
-                    existingTenants,
+            // only the target tenant, and the tenants that inherit its config, need to be checked again. The
+            // others are checked against it using their loaded config and storage.
+            Set<TenantIdentifier> tenantsThatChanged = Config.getTenantsAffectedByChangesIn(existingTenants,
+                    Collections.singleton(targetTenantConfig.tenantIdentifier));
+            Config.assertTenantConfigsAreValid(main, existingTenants, tenantsThatChanged,
                     Config.getBaseConfigAsJsonObject(main));
-            Config.assertAllTenantConfigsAreValid(main, normalisedConfigs, existingTenants);
         }
 
         // validate third party config
@@ -295,6 +297,7 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
         try {
             StorageLayer.getMultitenancyStorage(main).createTenant(newTenant);
             creationInSharedDbSucceeded = true;
+            MultitenancyHelper.getInstance(main).updateTenantConfigVersion();
             // we do not want to refresh the resources for this new tenant here cause
             // it will cause creation of signing keys in the key_value table, which depends on
             // the tenant being there in the tenants table. But that insertion is done in the addTenantIdInUserPool
@@ -315,6 +318,7 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
             if (!creationInSharedDbSucceeded) {
                 try {
                     StorageLayer.getMultitenancyStorage(main).overwriteTenantConfig(newTenant);
+                    MultitenancyHelper.getInstance(main).updateTenantConfigVersion();
                     tenantsThatChanged = MultitenancyHelper.getInstance(main)
                             .refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(false);
 
@@ -369,6 +373,9 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
             // but not from the main table.
         }
         boolean didExist = StorageLayer.getMultitenancyStorage(main).deleteTenantInfoInBaseStorage(tenantIdentifier);
+        if (didExist) {
+            MultitenancyHelper.getInstance(main).updateTenantConfigVersion();
+        }
         MultitenancyHelper.getInstance(main).refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
         return didExist;
     }
@@ -391,6 +398,9 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
             // but not from the main table.
         }
         boolean didExist = StorageLayer.getMultitenancyStorage(main).deleteAppInfoInBaseStorage(appIdentifier);
+        if (didExist) {
+            MultitenancyHelper.getInstance(main).updateTenantConfigVersion();
+        }
         MultitenancyHelper.getInstance(main).refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
         return didExist;
     }
@@ -428,6 +438,9 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
         }
         boolean didExist = StorageLayer.getMultitenancyStorage(main)
                 .deleteConnectionUriDomainInfoInBaseStorage(connectionUriDomain);
+        if (didExist) {
+            MultitenancyHelper.getInstance(main).updateTenantConfigVersion();
+        }
         MultitenancyHelper.getInstance(main).refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
         return didExist;
     }
@@ -577,7 +590,7 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
         }
 
         boolean finalDidExist = false;
-        boolean didExist = AuthRecipe.deleteNonAuthRecipeUser(tenantIdentifierWithStorage,
+        boolean didExist = AuthRecipe.deleteNonAuthRecipeUser(main, tenantIdentifierWithStorage,
                 externalUserId == null ? userId : externalUserId);
         finalDidExist = finalDidExist || didExist;
 
@@ -592,32 +605,13 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
         // we do not refresh the tenant list here cause this function is called
         // often from all the APIs and anyway, we have a cronjob that refreshes this list
         // regularly.
-        TenantConfig[] tenants = MultitenancyHelper.getInstance(main).getAllTenants();
-        for (TenantConfig t : tenants) {
-            if (t.tenantIdentifier.equals(tenantIdentifier)) {
-                return t;
-            }
-        }
-        return null;
+        return MultitenancyHelper.getInstance(main).getTenantRegistry().getTenant(tenantIdentifier);
     }
 
     public static TenantConfig[] getAllTenantsForApp(AppIdentifier appIdentifier, Main main) {
         MultitenancyHelper.getInstance(main).refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
-        TenantConfig[] tenants = MultitenancyHelper.getInstance(main).getAllTenants();
-        List<TenantConfig> tenantList = new ArrayList<>();
-
-        for (TenantConfig t : tenants) {
-            if (!t.tenantIdentifier.toAppIdentifier().equals(appIdentifier)) {
-                continue;
-            }
-            tenantList.add(t);
-        }
-
-        TenantConfig[] finalResult = new TenantConfig[tenantList.size()];
-        for (int i = 0; i < tenantList.size(); i++) {
-            finalResult[i] = tenantList.get(i);
-        }
-        return finalResult;
+        return MultitenancyHelper.getInstance(main).getTenantRegistry().getTenantsForApp(appIdentifier)
+                .toArray(new TenantConfig[0]);
     }
 
     public static TenantConfig[] getAllAppsAndTenantsForConnectionUriDomain(String connectionUriDomain, Main main) {
@@ -625,21 +619,8 @@ public class Multitenancy extends ResourceDistributor.SingletonResource {
             connectionUriDomain = TenantIdentifier.DEFAULT_CONNECTION_URI;
         }
         MultitenancyHelper.getInstance(main).refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
-        TenantConfig[] tenants = MultitenancyHelper.getInstance(main).getAllTenants();
-        List<TenantConfig> tenantList = new ArrayList<>();
-
-        for (TenantConfig t : tenants) {
-            if (!t.tenantIdentifier.getConnectionUriDomain().equals(connectionUriDomain)) {
-                continue;
-            }
-            tenantList.add(t);
-        }
-
-        TenantConfig[] finalResult = new TenantConfig[tenantList.size()];
-        for (int i = 0; i < tenantList.size(); i++) {
-            finalResult[i] = tenantList.get(i);
-        }
-        return finalResult;
+        return MultitenancyHelper.getInstance(main).getTenantRegistry()
+                .getTenantsForConnectionUriDomain(connectionUriDomain).toArray(new TenantConfig[0]);
     }
 
     public static TenantConfig[] getAllTenants(Main main) {
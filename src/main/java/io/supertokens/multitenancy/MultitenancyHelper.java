@@ -28,18 +28,24 @@ import io.supertokens.jwt.exceptions.UnsupportedJWTSigningAlgorithmException;
 import io.supertokens.multitenancy.exception.BadPermissionException;
 import io.supertokens.multitenancy.exception.CannotModifyBaseConfigException;
 import io.supertokens.output.Logging;
+import io.supertokens.pluginInterface.KeyValueInfo;
 import io.supertokens.pluginInterface.STORAGE_TYPE;
 import io.supertokens.pluginInterface.exceptions.InvalidConfigException;
 import io.supertokens.pluginInterface.exceptions.StorageQueryException;
 import io.supertokens.pluginInterface.multitenancy.*;
 import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
+import io.supertokens.session.SessionRevocationIndex;
+import io.supertokens.session.accessToken.VerifiedAccessTokenCache;
 import io.supertokens.session.refreshToken.RefreshTokenKey;
 import io.supertokens.signingkeys.AccessTokenSigningKey;
 import io.supertokens.signingkeys.JWTSigningKey;
 import io.supertokens.signingkeys.SigningKeys;
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.thirdparty.InvalidProviderConfigException;
+import io.supertokens.utils.Utils;
+import org.jetbrains.annotations.TestOnly;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.*;
 
@@ -48,12 +54,31 @@ import static io.supertokens.multitenancy.Multitenancy.getTenantInfo;
 public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
 
     public static final String RESOURCE_KEY = "io.supertokens.multitenancy.Multitenancy";
+
+    // A random value in the base tenant's key value table, which a core changes every time that it adds, updates or
+    // deletes a tenant. By reading just this value, a core can know if it needs to read all the tenants again.
+    public static final String TENANT_CONFIG_VERSION_DB_KEY = "TENANT_CONFIG_VERSION";
+
+    // Tenants can also be changed in the db without going through a core (which doesn't change the version), so
+    // we read all the tenants at least this often anyway.
+    private static final long FULL_REFRESH_INTERVAL_MS = 10 * 60 * 1000;
+
     private Main main;
-    private TenantConfig[] tenantConfigs;
+    // replaced (inside the resource distributor lock) when the tenants in the db change, and read without any lock
+    private volatile TenantRegistry tenantRegistry;
+
+    // the tenant config version when the tenants were last read from the db, and when that was. These are only
+    // written inside the resource distributor lock.
+    @Nullable
+    private volatile String lastRefreshedTenantConfigVersion = null;
+    private volatile long lastRefreshTime = 0;
+
+    @Nullable
+    private Long fullRefreshIntervalForTesting = null;
 
     private MultitenancyHelper(Main main) throws StorageQueryException {
         this.main = main;
-        this.tenantConfigs = getAllTenantsFromDb();
+        this.tenantRegistry = new TenantRegistry(getAllTenantsFromDb());
     }
 
     public static MultitenancyHelper getInstance(Main main) {
@@ -86,6 +111,11 @@ public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
                 throw new IllegalStateException(e);
             }
         }
+        if (getInstance(main).getTenantConfigVersionFromDb() == null) {
+            // the tenants were created by an older version of the core, so we set a version for other cores to
+            // compare against
+            getInstance(main).updateTenantConfigVersion();
+        }
     }
 
     private TenantConfig[] getAllTenantsFromDb() throws StorageQueryException {
@@ -103,20 +133,106 @@ public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
         return StorageLayer.getMultitenancyStorage(main).getAllTenants();
     }
 
+    @Nullable
+    private String getTenantConfigVersionFromDb() throws StorageQueryException {
+        if (StorageLayer.getBaseStorage(main).getType() != STORAGE_TYPE.SQL) {
+            return null;
+        }
+        KeyValueInfo version = StorageLayer.getBaseStorage(main)
+                .getKeyValue(TenantIdentifier.BASE_TENANT, TENANT_CONFIG_VERSION_DB_KEY);
+        return version == null ? null : version.value;
+    }
+
+    /**
+     * Changes the tenant config version in the db, so that all cores (including this one) read the tenants from the
+     * db the next time they check for changes. This must be called after a tenant is added, updated or deleted.
+     */
+    public void updateTenantConfigVersion() throws StorageQueryException {
+        if (StorageLayer.getBaseStorage(main).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+        try {
+            StorageLayer.getBaseStorage(main).setKeyValue(TenantIdentifier.BASE_TENANT, TENANT_CONFIG_VERSION_DB_KEY,
+                    new KeyValueInfo(Utils.getUUID()));
+        } catch (TenantOrAppNotFoundException e) {
+            // the base tenant always exists
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long getFullRefreshIntervalMs() {
+        if (Main.isTesting) {
+            // tests expect changes made directly in the db to be picked up as soon as the tenants are refreshed,
+            // unless they set an interval
+            return fullRefreshIntervalForTesting == null ? 0 : fullRefreshIntervalForTesting;
+        }
+        return FULL_REFRESH_INTERVAL_MS;
+    }
+
+    @TestOnly
+    public void setFullRefreshIntervalForTesting(long intervalMs) {
+        this.fullRefreshIntervalForTesting = intervalMs;
+    }
+
+    /**
+     * Reads all the tenants from the db and reloads the ones that changed (see
+     * {@link #refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged}), but only if the tenant config
+     * version in the db changed since they were last read, or if they were last read more than
+     * FULL_REFRESH_INTERVAL_MS ago. Checking the version is a single key value lookup.
+     *
+     * @return true if the tenants were read from the db
+     */
+    public boolean refreshTenantsInCoreIfChangedInDb() {
+        try {
+            String version = getTenantConfigVersionFromDb();
+            if (version != null && version.equals(this.lastRefreshedTenantConfigVersion)
+                    && System.currentTimeMillis() - this.lastRefreshTime < getFullRefreshIntervalMs()) {
+                return false;
+            }
+        } catch (StorageQueryException e) {
+            Logging.error(main, TenantIdentifier.BASE_TENANT, e.getMessage(), false, e);
+        }
+        refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(true);
+        return true;
+    }
+
     public List<TenantIdentifier> refreshTenantsInCoreBasedOnChangesInCoreConfigOrIfTenantListChanged(
             boolean reloadAllResources) {
         try {
             return main.getResourceDistributor().withResourceDistributorLock(() -> {
                 try {
+                    // we read the version before the tenants, so that if they are changed while we read them, the
+                    // version will be different the next time we check it
+                    long refreshTime = System.currentTimeMillis();
+                    String version = getTenantConfigVersionFromDb();
                     TenantConfig[] tenantsFromDb = getAllTenantsFromDb();
+                    TenantRegistry tenantRegistryFromDb = new TenantRegistry(tenantsFromDb);
+                    TenantConfig[] tenantsInMemory = this.tenantRegistry.toArray();
+
+                    // The normalised config of a tenant only changes if its core config, or the one of its app or
+                    // connection uri domain changes. So we first find the tenants whose core config was changed,
+                    // added or removed, and then only normalise the configs of the tenants that depend on them.
+                    Set<TenantIdentifier> tenantsWithChangedCoreConfig = new HashSet<>();
+                    for (TenantConfig tenantFromDb : tenantsFromDb) {
+                        TenantConfig tenantInMemory = this.tenantRegistry.getTenant(tenantFromDb.tenantIdentifier);
+                        if (tenantInMemory == null || !tenantFromDb.coreConfig.equals(tenantInMemory.coreConfig)) {
+                            tenantsWithChangedCoreConfig.add(tenantFromDb.tenantIdentifier);
+                        }
+                    }
+                    for (TenantConfig tenantInMemory : tenantsInMemory) {
+                        if (tenantRegistryFromDb.getTenant(tenantInMemory.tenantIdentifier) == null) {
+                            tenantsWithChangedCoreConfig.add(tenantInMemory.tenantIdentifier);
+                        }
+                    }
+                    Set<TenantIdentifier> tenantsToCompare = Config.getTenantsAffectedByChangesIn(tenantsInMemory,
+                            tenantsWithChangedCoreConfig);
 
+                    JsonObject baseConfigJson = Config.getBaseConfigAsJsonObject(main);
                     Map<ResourceDistributor.KeyClass, JsonObject> normalizedTenantsFromDb =
-                            Config.getNormalisedConfigsForAllTenants(
-                            tenantsFromDb, Config.getBaseConfigAsJsonObject(main));
+                            Config.getNormalisedConfigsForTenants(tenantsFromDb, baseConfigJson, tenantsToCompare);
 
                     Map<ResourceDistributor.KeyClass, JsonObject> normalizedTenantsFromMemory =
-                            Config.getNormalisedConfigsForAllTenants(
-                            this.tenantConfigs, Config.getBaseConfigAsJsonObject(main));
+                            Config.getNormalisedConfigsForTenants(tenantsInMemory, baseConfigJson, tenantsToCompare);
 
                     List<TenantIdentifier> tenantsThatChanged = new ArrayList<>();
 
@@ -130,9 +246,16 @@ public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
                         }
                     }
 
-                    boolean sameNumberOfTenants = tenantsFromDb.length == this.tenantConfigs.length;
+                    boolean sameNumberOfTenants = tenantsFromDb.length == this.tenantRegistry.size();
+
+                    this.lastRefreshedTenantConfigVersion = version;
+                    this.lastRefreshTime = refreshTime;
 
-                    this.tenantConfigs = tenantsFromDb;
+                    // tenantsThatChanged only covers the core config, but other parts of a tenant (like its third
+                    // party providers) can change too
+                    if (!this.tenantRegistry.hasSameTenantsAs(tenantsFromDb)) {
+                        this.tenantRegistry = tenantRegistryFromDb;
+                    }
                     if (tenantsThatChanged.size() == 0 && sameNumberOfTenants) {
                         return tenantsThatChanged;
                     }
@@ -147,7 +270,7 @@ public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
                     } else {
                         // we do these two here cause they don't really depend on any table in the db, and these
                         // two are required for allocating any further resource for this tenant
-                        loadConfig(tenantsThatChanged);
+                        loadConfig(new HashSet<>(tenantsThatChanged));
                         loadStorageLayer();
                     }
                     return tenantsThatChanged;
@@ -165,10 +288,12 @@ public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
         try {
             main.getResourceDistributor().withResourceDistributorLock(() -> {
                 try {
-                    loadConfig(tenantsThatChanged);
+                    // the loaders look up every app in this, so we use a set
+                    Set<TenantIdentifier> changed = new HashSet<>(tenantsThatChanged);
+                    loadConfig(changed);
                     loadStorageLayer();
-                    loadFeatureFlag(tenantsThatChanged);
-                    loadSigningKeys(tenantsThatChanged);
+                    loadFeatureFlag(changed);
+                    loadSigningKeys(changed);
                     refreshCronjobs();
                 } catch (Exception e) {
                     Logging.error(main, TenantIdentifier.BASE_TENANT, e.getMessage(), false, e);
@@ -180,42 +305,28 @@ public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
         }
     }
 
-    public void loadConfig(List<TenantIdentifier> tenantsThatChanged) throws IOException, InvalidConfigException {
-        Config.loadAllTenantConfig(main, this.tenantConfigs, tenantsThatChanged);
+    public void loadConfig(Set<TenantIdentifier> tenantsThatChanged) throws IOException, InvalidConfigException {
+        Config.loadAllTenantConfig(main, this.tenantRegistry.toArray(), tenantsThatChanged);
     }
 
     public void loadStorageLayer() throws IOException, InvalidConfigException {
-        StorageLayer.loadAllTenantStorage(main, this.tenantConfigs);
+        StorageLayer.loadAllTenantStorage(main, this.tenantRegistry.toArray());
     }
 
-    public void loadFeatureFlag(List<TenantIdentifier> tenantsThatChanged) {
-        List<AppIdentifier> apps = new ArrayList<>();
-        Set<AppIdentifier> appsSet = new HashSet<>();
-        for (TenantConfig t : tenantConfigs) {
-            if (appsSet.contains(t.tenantIdentifier.toAppIdentifier())) {
-                continue;
-            }
-            apps.add(t.tenantIdentifier.toAppIdentifier());
-            appsSet.add(t.tenantIdentifier.toAppIdentifier());
-        }
+    public void loadFeatureFlag(Set<TenantIdentifier> tenantsThatChanged) {
+        List<AppIdentifier> apps = new ArrayList<>(this.tenantRegistry.getApps());
         FeatureFlag.loadForAllTenants(main, apps, tenantsThatChanged);
     }
 
-    public void loadSigningKeys(List<TenantIdentifier> tenantsThatChanged)
+    public void loadSigningKeys(Set<TenantIdentifier> tenantsThatChanged)
             throws UnsupportedJWTSigningAlgorithmException {
-        List<AppIdentifier> apps = new ArrayList<>();
-        Set<AppIdentifier> appsSet = new HashSet<>();
-        for (TenantConfig t : tenantConfigs) {
-            if (appsSet.contains(t.tenantIdentifier.toAppIdentifier())) {
-                continue;
-            }
-            apps.add(t.tenantIdentifier.toAppIdentifier());
-            appsSet.add(t.tenantIdentifier.toAppIdentifier());
-        }
+        List<AppIdentifier> apps = new ArrayList<>(this.tenantRegistry.getApps());
         AccessTokenSigningKey.loadForAllTenants(main, apps, tenantsThatChanged);
         RefreshTokenKey.loadForAllTenants(main, apps, tenantsThatChanged);
         JWTSigningKey.loadForAllTenants(main, apps, tenantsThatChanged);
         SigningKeys.loadForAllTenants(main, apps, tenantsThatChanged);
+        VerifiedAccessTokenCache.loadForAllTenants(main, apps, tenantsThatChanged);
+        SessionRevocationIndex.loadForAllTenants(main, apps, tenantsThatChanged);
     }
 
     public void refreshCronjobs() {
@@ -223,20 +334,15 @@ public class MultitenancyHelper extends ResourceDistributor.SingletonResource {
         Cronjobs.getInstance(main).setTenantsInfo(list);
     }
 
+    // The returned array is a copy, but the configs in it are shared, and must not be modified
     public TenantConfig[] getAllTenants() {
-        try {
-            return main.getResourceDistributor().withResourceDistributorLockWithReturn(() -> {
-                // Returning a deep copy of the tenantConfigs array so that the functions consuming it
-                // do not modify the original array
-                TenantConfig[] tenantConfigs = new TenantConfig[this.tenantConfigs.length];
+        return this.tenantRegistry.toArray();
+    }
 
-                for (int i = 0; i < this.tenantConfigs.length; i++) {
-                    tenantConfigs[i] = new TenantConfig(this.tenantConfigs[i]);
-                }
-                return tenantConfigs;
-            });
-        } catch (ResourceDistributor.FuncException e) {
-            throw new IllegalStateException(e);
-        }
+    /**
+     * The tenants that are currently loaded in the core. This does not refresh them from the db.
+     */
+    public TenantRegistry getTenantRegistry() {
+        return this.tenantRegistry;
     }
 }
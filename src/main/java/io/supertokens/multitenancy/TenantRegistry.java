@@ -0,0 +1,102 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.multitenancy;
+
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
+import io.supertokens.pluginInterface.multitenancy.TenantConfig;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of the tenants that are loaded in the core, indexed by tenant, app and connectionUriDomain so
+ * that looking up a tenant doesn't need to go through all of them. A new one is created by {@link MultitenancyHelper}
+ * when the tenants in the db change.
+ * <p>
+ * The lists returned by this class cannot be modified, and the TenantConfig objects in them are shared with all
+ * callers, so they must not be modified either.
+ */
+public final class TenantRegistry {
+
+    private final TenantConfig[] tenants;
+    private final List<TenantConfig> tenantList;
+    private final Map<TenantIdentifier, TenantConfig> tenantsByIdentifier;
+    private final Map<AppIdentifier, List<TenantConfig>> tenantsByApp;
+    private final Map<String, List<TenantConfig>> tenantsByConnectionUriDomain;
+    private final List<AppIdentifier> apps;
+
+    TenantRegistry(TenantConfig[] tenants) {
+        this.tenants = tenants.clone();
+        this.tenantList = Collections.unmodifiableList(Arrays.asList(this.tenants));
+
+        Map<TenantIdentifier, TenantConfig> byIdentifier = new HashMap<>();
+        Map<AppIdentifier, List<TenantConfig>> byApp = new LinkedHashMap<>();
+        Map<String, List<TenantConfig>> byConnectionUriDomain = new HashMap<>();
+        for (TenantConfig tenant : this.tenants) {
+            // if the same tenant appears more than once, the first one wins, like it did with a linear search
+            byIdentifier.putIfAbsent(tenant.tenantIdentifier, tenant);
+            byApp.computeIfAbsent(tenant.tenantIdentifier.toAppIdentifier(), k -> new ArrayList<>()).add(tenant);
+            byConnectionUriDomain.computeIfAbsent(tenant.tenantIdentifier.getConnectionUriDomain(),
+                    k -> new ArrayList<>()).add(tenant);
+        }
+        byApp.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        byConnectionUriDomain.replaceAll((k, v) -> Collections.unmodifiableList(v));
+
+        this.tenantsByIdentifier = byIdentifier;
+        this.tenantsByApp = byApp;
+        this.tenantsByConnectionUriDomain = byConnectionUriDomain;
+        this.apps = Collections.unmodifiableList(new ArrayList<>(byApp.keySet()));
+    }
+
+    /**
+     * Returns null if the tenant is not loaded in the core.
+     */
+    public TenantConfig getTenant(TenantIdentifier tenantIdentifier) {
+        return tenantsByIdentifier.get(tenantIdentifier);
+    }
+
+    public List<TenantConfig> getTenantsForApp(AppIdentifier appIdentifier) {
+        return tenantsByApp.getOrDefault(appIdentifier, Collections.emptyList());
+    }
+
+    public List<TenantConfig> getTenantsForConnectionUriDomain(String connectionUriDomain) {
+        return tenantsByConnectionUriDomain.getOrDefault(connectionUriDomain, Collections.emptyList());
+    }
+
+    // All the tenants, in the order they were read from the db
+    public List<TenantConfig> getAllTenants() {
+        return tenantList;
+    }
+
+    // All the apps that have at least one tenant, in the order they were first seen
+    public List<AppIdentifier> getApps() {
+        return apps;
+    }
+
+    public int size() {
+        return tenants.length;
+    }
+
+    boolean hasSameTenantsAs(TenantConfig[] other) {
+        return Arrays.equals(this.tenants, other);
+    }
+
+    // A new array (with the same configs in it), for the functions that take an array
+    public TenantConfig[] toArray() {
+        return tenants.clone();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.output;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands log events to a bounded queue, which a single background thread drains into the file or console appender,
+ * so that the thread that logs doesn't wait for the appender's lock or for the disk. What happens when the queue is
+ * full depends on the {@link DropPolicy}.
+ */
+class AsyncLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    enum DropPolicy {
+        // drop any event that doesn't fit in the queue
+        DROP,
+        // drop debug and info events that don't fit in the queue, and wait for space for warn and error events
+        DROP_INFO_AND_DEBUG,
+        // always wait for space in the queue
+        BLOCK
+    }
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    private final Appender<ILoggingEvent> delegate;
+    private final BlockingQueue<ILoggingEvent> queue;
+    private final DropPolicy dropPolicy;
+    private final Thread worker;
+    private volatile boolean stopping = false;
+
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+
+    AsyncLogAppender(Appender<ILoggingEvent> delegate, int queueSize, DropPolicy dropPolicy) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.dropPolicy = dropPolicy;
+        this.worker = new Thread(this::drain, "AsyncLogAppender-" + delegate.getName());
+        this.worker.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        worker.start();
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // the layout needs the caller data and the formatted message, which can only be computed on the thread that
+        // logged the event
+        event.prepareForDeferredProcessing();
+        event.getCallerData();
+
+        if (queue.offer(event)) {
+            queuedCount.increment();
+            return;
+        }
+        if (dropPolicy == DropPolicy.DROP
+                || (dropPolicy == DropPolicy.DROP_INFO_AND_DEBUG && !event.getLevel().isGreaterOrEqual(Level.WARN))) {
+            droppedCount.increment();
+            return;
+        }
+        try {
+            queue.put(event);
+            queuedCount.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCount.increment();
+        }
+    }
+
+    private void drain() {
+        while (!stopping || !queue.isEmpty()) {
+            ILoggingEvent event;
+            try {
+                event = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // we only get interrupted if stop timed out, in which case the remaining events are lost
+                return;
+            }
+            if (event != null) {
+                delegate.doAppend(event);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        stopping = true;
+        try {
+            worker.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            worker.interrupt();
+        }
+        delegate.stop();
+    }
+
+    long getQueuedCount() {
+        return queuedCount.sum();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+}
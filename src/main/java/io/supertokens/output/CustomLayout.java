@@ -21,12 +21,18 @@ import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.LayoutBase;
 import io.supertokens.Main;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 class CustomLayout extends LayoutBase<ILoggingEvent> {
 
+    // unlike SimpleDateFormat, this is thread safe, so we don't need to create one for each log line
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter
+            .ofPattern("dd MMM yyyy HH:mm:ss:SSS Z", Locale.getDefault(Locale.Category.FORMAT))
+            .withZone(ZoneId.systemDefault());
+
     private String processID;
     private String coreVersion;
 
@@ -40,8 +46,7 @@ class CustomLayout extends LayoutBase<ILoggingEvent> {
     public String doLayout(ILoggingEvent event) {
         StringBuilder sbuf = new StringBuilder();
 
-        DateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy HH:mm:ss:SSS Z");
-        sbuf.append(dateFormat.format(new Date(event.getTimeStamp())));
+        DATE_FORMATTER.formatTo(Instant.ofEpochMilli(event.getTimeStamp()), sbuf);
         sbuf.append(" | ");
 
         sbuf.append(event.getLevel());
@@ -51,7 +56,8 @@ class CustomLayout extends LayoutBase<ILoggingEvent> {
         sbuf.append(this.processID);
         sbuf.append(" | ");
 
-        sbuf.append("v" + coreVersion);
+        sbuf.append('v');
+        sbuf.append(coreVersion);
         sbuf.append(" | ");
 
         sbuf.append("[");
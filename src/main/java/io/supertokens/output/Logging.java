@@ -19,11 +19,13 @@ package io.supertokens.output;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.ConsoleAppender;
 import ch.qos.logback.core.FileAppender;
 import io.supertokens.Main;
 import io.supertokens.ResourceDistributor;
 import io.supertokens.config.Config;
+import io.supertokens.config.CoreConfig;
 import io.supertokens.pluginInterface.LOG_LEVEL;
 import io.supertokens.pluginInterface.Storage;
 import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
@@ -34,11 +36,21 @@ import io.supertokens.version.Version;
 import io.supertokens.webserver.Webserver;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
 public class Logging extends ResourceDistributor.SingletonResource {
 
     private static final String RESOURCE_ID = "io.supertokens.output.Logging";
     private final Logger infoLogger;
     private final Logger errorLogger;
+    // log_level can only be set in config.yaml, so we copy the log levels here once instead of getting the config
+    // for each log call
+    private final Set<LOG_LEVEL> logLevels;
+    private final List<AsyncLogAppender> asyncAppenders = new ArrayList<>();
 
     public static final String ANSI_RESET = "\u001B[0m";
     public static final String ANSI_BLACK = "\u001B[30m";
@@ -51,6 +63,8 @@ public class Logging extends ResourceDistributor.SingletonResource {
     public static final String ANSI_WHITE = "\u001B[37m";
 
     private Logging(Main main) {
+        this.logLevels = EnumSet.noneOf(LOG_LEVEL.class);
+        this.logLevels.addAll(Config.getBaseConfig(main).getLogLevels(main));
         this.infoLogger = Config.getBaseConfig(main).getInfoLogPath(main).equals("null")
                 ? createLoggerForConsole(main, "io.supertokens.Info")
                 : createLoggerForFile(main, Config.getBaseConfig(main).getInfoLogPath(main),
@@ -91,33 +105,56 @@ public class Logging extends ResourceDistributor.SingletonResource {
         if (tenantIdentifier == null) {
             tenantIdentifier = TenantIdentifier.BASE_TENANT;
         }
-        return "Tenant(" +
-                tenantIdentifier.getConnectionUriDomain() +
-                ", " +
-                tenantIdentifier.getAppId() +
-                ", " +
-                tenantIdentifier.getTenantId() +
-                ") | " +
-                msg;
+        return new StringBuilder(msg.length() + 64)
+                .append("Tenant(")
+                .append(tenantIdentifier.getConnectionUriDomain())
+                .append(", ")
+                .append(tenantIdentifier.getAppId())
+                .append(", ")
+                .append(tenantIdentifier.getTenantId())
+                .append(") | ")
+                .append(msg)
+                .toString();
+    }
+
+    private static boolean isEnabled(Main main, Logging instance, LOG_LEVEL level) {
+        if (instance != null) {
+            return instance.logLevels.contains(level);
+        }
+        // logging has not been initialised yet (or has been stopped), so we check the config
+        return Config.getBaseConfig(main).getLogLevels(main).contains(level);
     }
 
     public static void debug(Main main, TenantIdentifier tenantIdentifier, String msg) {
-        if (!Config.getBaseConfig(main).getLogLevels(main).contains(LOG_LEVEL.DEBUG)) {
+        Logging instance = getInstance(main);
+        if (!isEnabled(main, instance, LOG_LEVEL.DEBUG)) {
             return;
         }
         try {
             msg = msg.trim();
             msg = prependTenantIdentifierToMessage(tenantIdentifier, msg);
-            if (getInstance(main) != null) {
-                getInstance(main).infoLogger.debug(msg);
+            if (instance != null) {
+                instance.infoLogger.debug(msg);
             }
         } catch (NullPointerException e) {
             // sometimes logger.debug throws a null pointer exception...
         }
     }
 
+    /**
+     * Same as {@link #debug(Main, TenantIdentifier, String)}, but the message is only built if debug logs are
+     * enabled.
+     */
+    public static void debug(Main main, TenantIdentifier tenantIdentifier, Supplier<String> msg) {
+        if (!isEnabled(main, getInstance(main), LOG_LEVEL.DEBUG)) {
+            return;
+        }
+        debug(main, tenantIdentifier, msg.get());
+    }
+
     public static void info(Main main, TenantIdentifier tenantIdentifier, String msg, boolean toConsoleAsWell) {
-        if (!Config.getBaseConfig(main).getLogLevels(main).contains(LOG_LEVEL.INFO)) {
+        Logging instance = getInstance(main);
+        if (!isEnabled(main, instance, LOG_LEVEL.INFO)) {
             return;
         }
         try {
@@ -130,22 +167,35 @@ public class Logging extends ResourceDistributor.SingletonResource {
                 }
             }
             msg = prependTenantIdentifierToMessage(tenantIdentifier, msg);
-            if (getInstance(main) != null) {
-                getInstance(main).infoLogger.info(msg);
+            if (instance != null) {
+                instance.infoLogger.info(msg);
             }
         } catch (NullPointerException ignored) {
         }
     }
 
+    /**
+     * Same as {@link #info(Main, TenantIdentifier, String, boolean)}, but the message is only built if info logs are
+     * enabled.
+     */
+    public static void info(Main main, TenantIdentifier tenantIdentifier, Supplier<String> msg,
+                            boolean toConsoleAsWell) {
+        if (!isEnabled(main, getInstance(main), LOG_LEVEL.INFO)) {
+            return;
+        }
+        info(main, tenantIdentifier, msg.get(), toConsoleAsWell);
+    }
+
     public static void warn(Main main, TenantIdentifier tenantIdentifier, String msg) {
-        if (!Config.getBaseConfig(main).getLogLevels(main).contains(LOG_LEVEL.WARN)) {
+        Logging instance = getInstance(main);
+        if (!isEnabled(main, instance, LOG_LEVEL.WARN)) {
             return;
         }
         try {
             msg = msg.trim();
             msg = prependTenantIdentifierToMessage(tenantIdentifier, msg);
-            if (getInstance(main) != null) {
-                getInstance(main).errorLogger.warn(msg);
+            if (instance != null) {
+                instance.errorLogger.warn(msg);
             }
         } catch (NullPointerException ignored) {
         }
@@ -233,22 +283,51 @@ public class Logging extends ResourceDistributor.SingletonResource {
         StorageLayer.stopLogging(main);
     }
 
+    /**
+     * The number of log events that were handed to the background thread since logging was initialised. This is
+     * always 0 if log_async_enabled is false.
+     */
+    public static long getQueuedLogEventCount(Main main) {
+        Logging instance = getInstance(main);
+        if (instance == null) {
+            return 0;
+        }
+        long count = 0;
+        for (AsyncLogAppender appender : instance.asyncAppenders) {
+            count += appender.getQueuedCount();
+        }
+        return count;
+    }
+
+    /**
+     * The number of log events that were dropped because the queue of the background thread was full (see
+     * log_async_drop_policy).
+     */
+    public static long getDroppedLogEventCount(Main main) {
+        Logging instance = getInstance(main);
+        if (instance == null) {
+            return 0;
+        }
+        long count = 0;
+        for (AsyncLogAppender appender : instance.asyncAppenders) {
+            count += appender.getDroppedCount();
+        }
+        return count;
+    }
+
     private Logger createLoggerForFile(Main main, String file, String name) {
         LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
         LayoutWrappingEncoder ple = new LayoutWrappingEncoder(main.getProcessId(), Version.getVersion(main).getCoreVersion());
         ple.setContext(lc);
         ple.start();
         FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setName(name);
         fileAppender.setFile(file);
         fileAppender.setEncoder(ple);
         fileAppender.setContext(lc);
         fileAppender.start();
 
-        Logger logger = (Logger) LoggerFactory.getLogger(name);
-        logger.addAppender(fileAppender);
-        logger.setAdditive(false); /* set to true if root should log too */
-
-        return logger;
+        return createLogger(main, lc, name, fileAppender);
     }
 
     private Logger createLoggerForConsole(Main main, String name) {
@@ -257,12 +336,28 @@ public class Logging extends ResourceDistributor.SingletonResource {
         ple.setContext(lc);
         ple.start();
         ConsoleAppender<ILoggingEvent> logConsoleAppender = new ConsoleAppender<>();
+        logConsoleAppender.setName(name);
         logConsoleAppender.setEncoder(ple);
         logConsoleAppender.setContext(lc);
         logConsoleAppender.start();
 
+        return createLogger(main, lc, name, logConsoleAppender);
+    }
+
+    private Logger createLogger(Main main, LoggerContext lc, String name, Appender<ILoggingEvent> appender) {
+        CoreConfig config = Config.getBaseConfig(main);
+        if (config.getLogAsyncEnabled()) {
+            AsyncLogAppender asyncAppender = new AsyncLogAppender(appender, config.getLogAsyncQueueSize(),
+                    AsyncLogAppender.DropPolicy.valueOf(config.getLogAsyncDropPolicy()));
+            asyncAppender.setName(name + ".Async");
+            asyncAppender.setContext(lc);
+            asyncAppender.start();
+            asyncAppenders.add(asyncAppender);
+            appender = asyncAppender;
+        }
+
         Logger logger = (Logger) LoggerFactory.getLogger(name);
-        logger.addAppender(logConsoleAppender);
+        logger.addAppender(appender);
         logger.setAdditive(false); /* set to true if root should log too */
 
         return logger;
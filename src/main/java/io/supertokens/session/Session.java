@@ -42,6 +42,7 @@ import io.supertokens.session.accessToken.AccessToken;
 import io.supertokens.session.accessToken.AccessToken.AccessTokenInfo;
 import io.supertokens.session.info.SessionInfo;
 import io.supertokens.session.info.SessionInformationHolder;
+import io.supertokens.session.info.SessionVerificationResult;
 import io.supertokens.session.info.TokenInfo;
 import io.supertokens.session.jwt.JWT;
 import io.supertokens.session.refreshToken.RefreshToken;
@@ -60,9 +61,27 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class Session {
 
+    private static final int BATCH_VERIFICATION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ThreadPoolExecutor BATCH_VERIFICATION_EXECUTOR;
+
+    static {
+        BATCH_VERIFICATION_EXECUTOR = new ThreadPoolExecutor(BATCH_VERIFICATION_THREADS, BATCH_VERIFICATION_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "SessionBatchVerification");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BATCH_VERIFICATION_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     @TestOnly
     public static SessionInformationHolder createNewSession(TenantIdentifierWithStorage tenantIdentifierWithStorage,
                                                             Main main,
@@ -216,7 +235,7 @@ public class Session {
                 accessToken.sessionHandle);
         JsonObject newJWTUserPayload = userDataInJWT == null ? sessionInfo.userDataInJWT
                 : userDataInJWT;
-        updateSession(tenantIdentifierWithStorage, accessToken.sessionHandle, null, newJWTUserPayload,
+        updateSession(main, tenantIdentifierWithStorage, accessToken.sessionHandle, null, newJWTUserPayload,
                 accessToken.version);
 
         // if the above succeeds but the below fails, it's OK since the client will get server error and will try
@@ -264,7 +283,7 @@ public class Session {
                 accessToken.sessionHandle);
         JsonObject newJWTUserPayload = userDataInJWT == null ? sessionInfo.userDataInJWT
                 : userDataInJWT;
-        updateSessionBeforeCDI2_21(
+        updateSessionBeforeCDI2_21(main,
                 tenantIdentifierWithStorage,
                 accessToken.sessionHandle, null, newJWTUserPayload);
 
@@ -318,24 +337,204 @@ public class Session {
             StorageTransactionLogicException, TryRefreshTokenException, UnauthorisedException,
             UnsupportedJWTSigningAlgorithmException, AccessTokenPayloadError, TenantOrAppNotFoundException {
 
-        AccessTokenInfo accessToken = AccessToken.getInfoFromAccessToken(appIdentifier, main, token,
-                doAntiCsrfCheck && enableAntiCsrf);
+        AccessTokenInfo accessToken = verifyAccessTokenAndAntiCsrf(appIdentifier, main, token, antiCsrfToken,
+                enableAntiCsrf, doAntiCsrfCheck);
         TenantIdentifierWithStorage tenantIdentifierWithStorage = accessToken.tenantIdentifier.withStorage(
                 StorageLayer.getStorage(accessToken.tenantIdentifier, main));
 
-        if (enableAntiCsrf && doAntiCsrfCheck
-                && (antiCsrfToken == null || !antiCsrfToken.equals(accessToken.antiCsrfToken))) {
-            throw new TryRefreshTokenException("anti-csrf check failed");
-        }
+        boolean checkSessionInDb = checkDatabase && isSessionFromDbNeeded(
+                SessionRevocationIndex.getInstance(appIdentifier, main), accessToken);
 
         io.supertokens.pluginInterface.session.SessionInfo sessionInfoForBlacklisting = null;
-        if (checkDatabase) {
+        if (checkSessionInDb) {
             sessionInfoForBlacklisting = tenantIdentifierWithStorage.getSessionStorage()
                     .getSession(tenantIdentifierWithStorage, accessToken.sessionHandle);
-            if (sessionInfoForBlacklisting == null) {
+        }
+
+        return getSessionForVerifiedAccessToken(main, accessToken, tenantIdentifierWithStorage, checkSessionInDb,
+                sessionInfoForBlacklisting);
+    }
+
+    /**
+     * Returns if the session has to be fetched from the db to know whether it has been revoked. This is always the
+     * case unless session_revocation_index_enabled is true, in which case {@link SessionRevocationIndex} can answer
+     * this for sessions that were not recently updated.
+     *
+     * @throws UnauthorisedException if the index knows that the session was revoked
+     */
+    private static boolean isSessionFromDbNeeded(SessionRevocationIndex revocationIndex, AccessTokenInfo accessToken)
+            throws UnauthorisedException {
+        if (!revocationIndex.isEnabled()) {
+            return true;
+        }
+        switch (revocationIndex.getStatus(accessToken.sessionHandle, accessToken.getTimeCreated())) {
+            case REVOKED:
                 throw new UnauthorisedException("Either the session has ended or has been blacklisted");
+            case CHECK_STORAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void markSessionNeedsStorageCheck(Main main, AppIdentifier appIdentifier, String sessionHandle) {
+        try {
+            SessionRevocationIndex.getInstance(appIdentifier, main).markNeedsStorageCheck(sessionHandle);
+        } catch (TenantOrAppNotFoundException ignored) {
+            // the app was deleted, so there are no sessions of it to verify anymore
+        }
+    }
+
+    /**
+     * Verifies many access tokens of an app at once. The signatures are checked in parallel, and if checkDatabase
+     * is true, every distinct session is only fetched from the db once for the whole batch. Errors that are about
+     * a specific token (TryRefreshTokenException, UnauthorisedException and AccessTokenPayloadError) are returned
+     * in the result of that token, any other error fails the whole batch.
+     *
+     * @param antiCsrfTokens The anti-csrf token for each of the access tokens (the list can contain nulls)
+     */
+    public static List<SessionVerificationResult> getSessions(AppIdentifier appIdentifier, Main main,
+                                                              @Nonnull List<String> tokens,
+                                                              @Nonnull List<String> antiCsrfTokens,
+                                                              boolean enableAntiCsrf, boolean doAntiCsrfCheck,
+                                                              boolean checkDatabase)
+            throws StorageQueryException, StorageTransactionLogicException, UnsupportedJWTSigningAlgorithmException,
+            TenantOrAppNotFoundException {
+        if (tokens.size() != antiCsrfTokens.size()) {
+            throw new IllegalArgumentException("tokens and antiCsrfTokens must have the same length");
+        }
+
+        int count = tokens.size();
+        AccessTokenInfo[] verifiedAccessTokens = new AccessTokenInfo[count];
+        Exception[] errors = new Exception[count];
+
+        // Verifying a token is CPU bound, but it can block on the storage if the signing keys have to be refreshed, so
+        // we verify them in parallel on a dedicated pool instead of the common ForkJoinPool
+        CompletableFuture<?>[] verifications = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            verifications[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    verifiedAccessTokens[index] = verifyAccessTokenAndAntiCsrf(appIdentifier, main, tokens.get(index),
+                            antiCsrfTokens.get(index), enableAntiCsrf, doAntiCsrfCheck);
+                } catch (Exception e) {
+                    errors[index] = e;
+                }
+            }, BATCH_VERIFICATION_EXECUTOR);
+        }
+        CompletableFuture.allOf(verifications).join();
+
+        for (Exception error : errors) {
+            throwIfNotTokenSpecificError(error);
+        }
+
+        SessionRevocationIndex revocationIndex = SessionRevocationIndex.getInstance(appIdentifier, main);
+        boolean[] checkSessionInDb = new boolean[count];
+
+        Map<TenantIdentifier, TenantIdentifierWithStorage> tenantsWithStorage = new HashMap<>();
+        Map<TenantIdentifier, Map<String, io.supertokens.pluginInterface.session.SessionInfo>> sessionsFromDb =
+                new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            AccessTokenInfo accessToken = verifiedAccessTokens[i];
+            if (accessToken == null) {
+                continue;
+            }
+            if (checkDatabase) {
+                try {
+                    checkSessionInDb[i] = isSessionFromDbNeeded(revocationIndex, accessToken);
+                } catch (UnauthorisedException e) {
+                    verifiedAccessTokens[i] = null;
+                    errors[i] = e;
+                    continue;
+                }
+            }
+            TenantIdentifierWithStorage tenantIdentifierWithStorage = tenantsWithStorage.get(
+                    accessToken.tenantIdentifier);
+            if (tenantIdentifierWithStorage == null) {
+                tenantIdentifierWithStorage = accessToken.tenantIdentifier.withStorage(
+                        StorageLayer.getStorage(accessToken.tenantIdentifier, main));
+                tenantsWithStorage.put(accessToken.tenantIdentifier, tenantIdentifierWithStorage);
+                sessionsFromDb.put(accessToken.tenantIdentifier, new HashMap<>());
+            }
+
+            // The session storage interface can only fetch one session at a time, so the best we can do here is to
+            // fetch each distinct session once
+            Map<String, io.supertokens.pluginInterface.session.SessionInfo> sessionsOfTenant = sessionsFromDb.get(
+                    accessToken.tenantIdentifier);
+            if (checkSessionInDb[i] && !sessionsOfTenant.containsKey(accessToken.sessionHandle)) {
+                sessionsOfTenant.put(accessToken.sessionHandle, tenantIdentifierWithStorage.getSessionStorage()
+                        .getSession(tenantIdentifierWithStorage, accessToken.sessionHandle));
+            }
+        }
+
+        List<SessionVerificationResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            AccessTokenInfo accessToken = verifiedAccessTokens[i];
+            if (accessToken == null) {
+                results.add(SessionVerificationResult.ofError(errors[i]));
+                continue;
+            }
+            try {
+                results.add(SessionVerificationResult.ofSession(getSessionForVerifiedAccessToken(main, accessToken,
+                        tenantsWithStorage.get(accessToken.tenantIdentifier), checkSessionInDb[i],
+                        checkSessionInDb[i] ? sessionsFromDb.get(accessToken.tenantIdentifier)
+                                .get(accessToken.sessionHandle) : null)));
+            } catch (UnauthorisedException | AccessTokenPayloadError e) {
+                results.add(SessionVerificationResult.ofError(e));
             }
         }
+        return results;
+    }
+
+    private static void throwIfNotTokenSpecificError(@Nullable Exception error)
+            throws StorageQueryException, StorageTransactionLogicException, UnsupportedJWTSigningAlgorithmException,
+            TenantOrAppNotFoundException {
+        if (error == null || error instanceof TryRefreshTokenException) {
+            return;
+        }
+        if (error instanceof StorageQueryException) {
+            throw (StorageQueryException) error;
+        }
+        if (error instanceof StorageTransactionLogicException) {
+            throw (StorageTransactionLogicException) error;
+        }
+        if (error instanceof UnsupportedJWTSigningAlgorithmException) {
+            throw (UnsupportedJWTSigningAlgorithmException) error;
+        }
+        if (error instanceof TenantOrAppNotFoundException) {
+            throw (TenantOrAppNotFoundException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        throw new IllegalStateException(error);
+    }
+
+    private static AccessTokenInfo verifyAccessTokenAndAntiCsrf(AppIdentifier appIdentifier, Main main,
+                                                                @Nonnull String token,
+                                                                @Nullable String antiCsrfToken,
+                                                                boolean enableAntiCsrf, boolean doAntiCsrfCheck)
+            throws StorageQueryException, StorageTransactionLogicException, TryRefreshTokenException,
+            UnsupportedJWTSigningAlgorithmException, TenantOrAppNotFoundException {
+        AccessTokenInfo accessToken = AccessToken.getInfoFromAccessToken(appIdentifier, main, token,
+                doAntiCsrfCheck && enableAntiCsrf);
+
+        if (enableAntiCsrf && doAntiCsrfCheck
+                && (antiCsrfToken == null || !antiCsrfToken.equals(accessToken.antiCsrfToken))) {
+            throw new TryRefreshTokenException("anti-csrf check failed");
+        }
+        return accessToken;
+    }
+
+    private static SessionInformationHolder getSessionForVerifiedAccessToken(
+            Main main, AccessTokenInfo accessToken, TenantIdentifierWithStorage tenantIdentifierWithStorage,
+            boolean checkDatabase,
+            @Nullable io.supertokens.pluginInterface.session.SessionInfo sessionInfoForBlacklisting)
+            throws StorageQueryException, StorageTransactionLogicException, UnauthorisedException,
+            UnsupportedJWTSigningAlgorithmException, AccessTokenPayloadError, TenantOrAppNotFoundException {
+        if (checkDatabase && sessionInfoForBlacklisting == null) {
+            throw new UnauthorisedException("Either the session has ended or has been blacklisted");
+        }
 
         boolean JWTPayloadNeedsUpdating = sessionInfoForBlacklisting != null
                 && !accessToken.userData.equals(sessionInfoForBlacklisting.userDataInJWT);
@@ -353,24 +552,29 @@ public class Session {
 
         if (tenantIdentifierWithStorage.getSessionStorage().getType() == STORAGE_TYPE.SQL) {
             SessionSQLStorage storage = (SessionSQLStorage) tenantIdentifierWithStorage.getSessionStorage();
+            io.supertokens.pluginInterface.session.SessionInfo sessionInfo;
             try {
                 CoreConfig config = Config.getConfig(tenantIdentifierWithStorage, main);
-                return storage.startTransaction(con -> {
+                // This returns null if we don't need to create a new access token. The new access token is created
+                // after the transaction, so that we don't hold a connection while signing it.
+                sessionInfo = storage.startTransaction(con -> {
                     try {
 
-                        io.supertokens.pluginInterface.session.SessionInfo sessionInfo = storage
+                        io.supertokens.pluginInterface.session.SessionInfo sessionInfoFromDb = storage
                                 .getSessionInfo_Transaction(tenantIdentifierWithStorage, con,
                                         accessToken.sessionHandle);
 
-                        if (sessionInfo == null) {
+                        if (sessionInfoFromDb == null) {
                             storage.commitTransaction(con);
                             throw new UnauthorisedException("Session missing in db");
                         }
 
-                        boolean promote = accessToken.parentRefreshTokenHash1 != null && sessionInfo.refreshTokenHash2
+                        boolean promote = accessToken.parentRefreshTokenHash1 != null
+                                && sessionInfoFromDb.refreshTokenHash2
                                 .equals(Utils.hashSHA256(accessToken.parentRefreshTokenHash1));
                         if (promote
-                                || sessionInfo.refreshTokenHash2.equals(Utils.hashSHA256(accessToken.refreshTokenHash1))
+                                || sessionInfoFromDb.refreshTokenHash2.equals(
+                                Utils.hashSHA256(accessToken.refreshTokenHash1))
                                 || JWTPayloadNeedsUpdating) {
                             if (promote) {
                                 storage.updateSessionInfo_Transaction(tenantIdentifierWithStorage, con,
@@ -380,58 +584,60 @@ public class Session {
                                                 config.getRefreshTokenValidity());
                             }
                             storage.commitTransaction(con);
-
-                            TokenInfo newAccessToken;
-                            if (AccessToken.getAccessTokenVersion(accessToken) == AccessToken.VERSION.V1) {
-                                newAccessToken = AccessToken.createNewAccessTokenV1(tenantIdentifierWithStorage,
-                                        main,
-                                        accessToken.sessionHandle,
-                                        accessToken.recipeUserId, accessToken.refreshTokenHash1, null,
-                                        sessionInfo.userDataInJWT, accessToken.antiCsrfToken);
-                            } else {
-                                newAccessToken = AccessToken.createNewAccessToken(tenantIdentifierWithStorage, main,
-                                        accessToken.sessionHandle,
-                                        accessToken.recipeUserId, accessToken.primaryUserId,
-                                        accessToken.refreshTokenHash1, null,
-                                        sessionInfo.userDataInJWT, accessToken.antiCsrfToken, null, accessToken.version,
-                                        sessionInfo.useStaticKey);
-                            }
-
-                            return new SessionInformationHolder(
-                                    new SessionInfo(accessToken.sessionHandle, accessToken.primaryUserId,
-                                            accessToken.recipeUserId,
-                                            sessionInfo.userDataInJWT, tenantIdentifierWithStorage.getTenantId()),
-                                    new TokenInfo(newAccessToken.token, newAccessToken.expiry,
-                                            newAccessToken.createdTime),
-                                    null, null, null);
+                            return sessionInfoFromDb;
                         }
 
                         storage.commitTransaction(con);
-                        return new SessionInformationHolder(
-                                new SessionInfo(accessToken.sessionHandle, accessToken.primaryUserId,
-                                        accessToken.recipeUserId, accessToken.userData,
-                                        tenantIdentifierWithStorage.getTenantId()),
-                                // here we purposely use accessToken.userData instead of sessionInfo.userDataInJWT
-                                // because we are not returning a new access token
-                                null, null, null, null);
-                    } catch (UnauthorisedException | NoSuchAlgorithmException |
-                             InvalidKeyException | InvalidKeySpecException | SignatureException |
-                             UnsupportedJWTSigningAlgorithmException | AccessTokenPayloadError |
-                             TenantOrAppNotFoundException e) {
+                        return null;
+                    } catch (UnauthorisedException | NoSuchAlgorithmException e) {
                         throw new StorageTransactionLogicException(e);
                     }
                 }, SQLStorage.TransactionIsolationLevel.REPEATABLE_READ);
             } catch (StorageTransactionLogicException e) {
                 if (e.actualException instanceof UnauthorisedException) {
                     throw (UnauthorisedException) e.actualException;
-                } else if (e.actualException instanceof TenantOrAppNotFoundException) {
-                    throw (TenantOrAppNotFoundException) e.actualException;
-                }
-                if (e.actualException instanceof AccessTokenPayloadError) {
-                    throw (AccessTokenPayloadError) e.actualException;
                 }
                 throw e;
             }
+
+            if (sessionInfo == null) {
+                return new SessionInformationHolder(
+                        new SessionInfo(accessToken.sessionHandle, accessToken.primaryUserId,
+                                accessToken.recipeUserId, accessToken.userData,
+                                tenantIdentifierWithStorage.getTenantId()),
+                        // here we purposely use accessToken.userData instead of sessionInfo.userDataInJWT
+                        // because we are not returning a new access token
+                        null, null, null, null);
+            }
+
+            try {
+                TokenInfo newAccessToken;
+                if (AccessToken.getAccessTokenVersion(accessToken) == AccessToken.VERSION.V1) {
+                    newAccessToken = AccessToken.createNewAccessTokenV1(tenantIdentifierWithStorage,
+                            main,
+                            accessToken.sessionHandle,
+                            accessToken.recipeUserId, accessToken.refreshTokenHash1, null,
+                            sessionInfo.userDataInJWT, accessToken.antiCsrfToken);
+                } else {
+                    newAccessToken = AccessToken.createNewAccessToken(tenantIdentifierWithStorage, main,
+                            accessToken.sessionHandle,
+                            accessToken.recipeUserId, accessToken.primaryUserId,
+                            accessToken.refreshTokenHash1, null,
+                            sessionInfo.userDataInJWT, accessToken.antiCsrfToken, null, accessToken.version,
+                            sessionInfo.useStaticKey);
+                }
+
+                return new SessionInformationHolder(
+                        new SessionInfo(accessToken.sessionHandle, accessToken.primaryUserId,
+                                accessToken.recipeUserId,
+                                sessionInfo.userDataInJWT, tenantIdentifierWithStorage.getTenantId()),
+                        new TokenInfo(newAccessToken.token, newAccessToken.expiry,
+                                newAccessToken.createdTime),
+                        null, null, null);
+            } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidKeySpecException |
+                     SignatureException e) {
+                throw new StorageTransactionLogicException(e);
+            }
         } else if (tenantIdentifierWithStorage.getSessionStorage().getType() ==
                 STORAGE_TYPE.NOSQL_1) {
             SessionNoSQLStorage_1 storage = (SessionNoSQLStorage_1) tenantIdentifierWithStorage.getSessionStorage();
@@ -553,73 +759,53 @@ public class Session {
         //////////////////////////////////////////////////////////////////////////////////////////////
         if (tenantIdentifierWithStorage.getSessionStorage().getType() == STORAGE_TYPE.SQL) {
             SessionSQLStorage storage = (SessionSQLStorage) tenantIdentifierWithStorage.getSessionStorage();
+            io.supertokens.pluginInterface.session.SessionInfo sessionInfo;
             try {
                 CoreConfig config = Config.getConfig(tenantIdentifierWithStorage, main);
-                return storage.startTransaction(con -> {
+                // The transaction only checks the refresh token against refreshTokenHash2 and moves it forward if
+                // needed. The new tokens are created after it's done, so that we don't hold a connection (and the
+                // lock on the session row) while doing the crypto.
+                sessionInfo = storage.startTransaction(con -> {
                     try {
                         String sessionHandle = refreshTokenInfo.sessionHandle;
-                        io.supertokens.pluginInterface.session.SessionInfo sessionInfo = storage
+                        io.supertokens.pluginInterface.session.SessionInfo sessionInfoFromDb = storage
                                 .getSessionInfo_Transaction(tenantIdentifierWithStorage, con, sessionHandle);
 
-                        if (sessionInfo == null || sessionInfo.expiry < System.currentTimeMillis()) {
+                        if (sessionInfoFromDb == null || sessionInfoFromDb.expiry < System.currentTimeMillis()) {
                             storage.commitTransaction(con);
                             throw new UnauthorisedException("Session missing in db or has expired");
                         }
 
-                        if (sessionInfo.refreshTokenHash2.equals(Utils.hashSHA256(Utils.hashSHA256(refreshToken)))) {
+                        if (sessionInfoFromDb.refreshTokenHash2.equals(
+                                Utils.hashSHA256(Utils.hashSHA256(refreshToken)))) {
                             // at this point, the input refresh token is the parent one.
                             storage.commitTransaction(con);
-
-                            String antiCsrfToken = enableAntiCsrf ? UUID.randomUUID().toString() : null;
-                            final TokenInfo newRefreshToken = RefreshToken.createNewRefreshToken(
-                                    tenantIdentifierWithStorage, main, sessionHandle,
-                                    sessionInfo.recipeUserId, Utils.hashSHA256(refreshToken), antiCsrfToken);
-
-                            TokenInfo newAccessToken = AccessToken.createNewAccessToken(tenantIdentifierWithStorage,
-                                    main, sessionHandle,
-                                    sessionInfo.recipeUserId, sessionInfo.userId,
-                                    Utils.hashSHA256(newRefreshToken.token),
-                                    Utils.hashSHA256(refreshToken), sessionInfo.userDataInJWT, antiCsrfToken,
-                                    null, accessTokenVersion, sessionInfo.useStaticKey);
-
-                            TokenInfo idRefreshToken = new TokenInfo(UUID.randomUUID().toString(),
-                                    newRefreshToken.expiry, newRefreshToken.createdTime);
-
-                            return new SessionInformationHolder(
-                                    new SessionInfo(sessionHandle, sessionInfo.userId, sessionInfo.recipeUserId,
-                                            sessionInfo.userDataInJWT,
-                                            tenantIdentifierWithStorage.getTenantId()),
-                                    newAccessToken, newRefreshToken, idRefreshToken, antiCsrfToken);
+                            return sessionInfoFromDb;
                         }
 
                         if ((refreshTokenInfo.type == RefreshToken.TYPE.FREE
                                 && refreshTokenInfo.parentRefreshTokenHash2 != null
-                                && refreshTokenInfo.parentRefreshTokenHash2.equals(sessionInfo.refreshTokenHash2))
+                                && refreshTokenInfo.parentRefreshTokenHash2.equals(
+                                sessionInfoFromDb.refreshTokenHash2))
                                 || (refreshTokenInfo.parentRefreshTokenHash1 != null
                                 && Utils.hashSHA256(refreshTokenInfo.parentRefreshTokenHash1)
-                                .equals(sessionInfo.refreshTokenHash2))) {
+                                .equals(sessionInfoFromDb.refreshTokenHash2))) {
+                            // the input refresh token is the child of the one in the db, so we make it the parent.
+                            // After this, it's the same as the case above.
                             storage.updateSessionInfo_Transaction(tenantIdentifierWithStorage, con, sessionHandle,
                                     Utils.hashSHA256(Utils.hashSHA256(refreshToken)),
                                     System.currentTimeMillis() + config.getRefreshTokenValidity());
 
                             storage.commitTransaction(con);
-
-                            return refreshSessionHelper(tenantIdentifierWithStorage, main, refreshToken,
-                                    refreshTokenInfo, enableAntiCsrf,
-                                    accessTokenVersion);
+                            return sessionInfoFromDb;
                         }
 
                         storage.commitTransaction(con);
 
-                        throw new TokenTheftDetectedException(sessionHandle, sessionInfo.recipeUserId,
-                                sessionInfo.userId);
+                        throw new TokenTheftDetectedException(sessionHandle, sessionInfoFromDb.recipeUserId,
+                                sessionInfoFromDb.userId);
 
-                    } catch (UnauthorisedException | NoSuchAlgorithmException | InvalidKeyException
-                             | AccessTokenPayloadError | TokenTheftDetectedException | InvalidKeySpecException
-                             | SignatureException | NoSuchPaddingException | InvalidAlgorithmParameterException
-                             | IllegalBlockSizeException | BadPaddingException |
-                             UnsupportedJWTSigningAlgorithmException |
-                             TenantOrAppNotFoundException e) {
+                    } catch (UnauthorisedException | NoSuchAlgorithmException | TokenTheftDetectedException e) {
                         throw new StorageTransactionLogicException(e);
                     }
                 });
@@ -627,15 +813,23 @@ public class Session {
                 if (e.actualException instanceof UnauthorisedException) {
                     throw (UnauthorisedException) e.actualException;
                 } else if (e.actualException instanceof TokenTheftDetectedException) {
+                    markSessionNeedsStorageCheck(main, tenantIdentifierWithStorage.toAppIdentifier(),
+                            refreshTokenInfo.sessionHandle);
                     throw (TokenTheftDetectedException) e.actualException;
-                } else if (e.actualException instanceof AccessTokenPayloadError) {
-                    throw (AccessTokenPayloadError) e.actualException;
-                } else if (e.actualException instanceof TenantOrAppNotFoundException) {
-                    throw (TenantOrAppNotFoundException) e.actualException;
                 }
                 throw e;
             }
 
+            try {
+                return createNewTokensForRefreshedSession(tenantIdentifierWithStorage, main, refreshToken,
+                        refreshTokenInfo.sessionHandle, sessionInfo.userId, sessionInfo.recipeUserId,
+                        sessionInfo.userDataInJWT, sessionInfo.useStaticKey, enableAntiCsrf, accessTokenVersion);
+            } catch (NoSuchAlgorithmException | InvalidKeyException
+                     | InvalidKeySpecException | SignatureException | NoSuchPaddingException
+                     | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                throw new StorageTransactionLogicException(e);
+            }
+
             ////////////////////////////////////////// NOSQL_1/////////////////////////////////////////////
             //////////////////////////////////////////////////////////////////////////////////////////////
             //////////////////////////////////////////////////////////////////////////////////////////////
@@ -657,25 +851,10 @@ public class Session {
 
                     if (sessionInfo.refreshTokenHash2.equals(Utils.hashSHA256(Utils.hashSHA256(refreshToken)))) {
                         // at this point, the input refresh token is the parent one.
-                        String antiCsrfToken = enableAntiCsrf ? UUID.randomUUID().toString() : null;
-
-                        final TokenInfo newRefreshToken = RefreshToken.createNewRefreshToken(
-                                tenantIdentifierWithStorage, main, sessionHandle,
-                                sessionInfo.recipeUserId, Utils.hashSHA256(refreshToken), antiCsrfToken);
-                        TokenInfo newAccessToken = AccessToken.createNewAccessToken(tenantIdentifierWithStorage, main,
-                                sessionHandle,
-                                sessionInfo.recipeUserId, sessionInfo.userId, Utils.hashSHA256(newRefreshToken.token),
-                                Utils.hashSHA256(refreshToken), sessionInfo.userDataInJWT, antiCsrfToken,
-                                null, accessTokenVersion, sessionInfo.useStaticKey);
-
-                        TokenInfo idRefreshToken = new TokenInfo(UUID.randomUUID().toString(), newRefreshToken.expiry,
-                                newRefreshToken.createdTime);
-
-                        return new SessionInformationHolder(
-                                new SessionInfo(sessionHandle, sessionInfo.userId, sessionInfo.recipeUserId,
-                                        sessionInfo.userDataInJWT,
-                                        tenantIdentifierWithStorage.getTenantId()),
-                                newAccessToken, newRefreshToken, idRefreshToken, antiCsrfToken);
+                        return createNewTokensForRefreshedSession(tenantIdentifierWithStorage, main, refreshToken,
+                                sessionHandle, sessionInfo.userId, sessionInfo.recipeUserId,
+                                sessionInfo.userDataInJWT, sessionInfo.useStaticKey, enableAntiCsrf,
+                                accessTokenVersion);
                     }
 
                     if ((refreshTokenInfo.type == RefreshToken.TYPE.FREE
@@ -692,11 +871,14 @@ public class Session {
                         if (!success) {
                             continue;
                         }
-                        return refreshSessionHelper(tenantIdentifierWithStorage, main, refreshToken, refreshTokenInfo,
-                                enableAntiCsrf,
+                        // the update succeeded, so the input refresh token is now the parent one.
+                        return createNewTokensForRefreshedSession(tenantIdentifierWithStorage, main, refreshToken,
+                                sessionHandle, sessionInfo.userId, sessionInfo.recipeUserId,
+                                sessionInfo.userDataInJWT, sessionInfo.useStaticKey, enableAntiCsrf,
                                 accessTokenVersion);
                     }
 
+                    markSessionNeedsStorageCheck(main, tenantIdentifierWithStorage.toAppIdentifier(), sessionHandle);
                     throw new TokenTheftDetectedException(sessionHandle, sessionInfo.recipeUserId, sessionInfo.userId);
 
                 } catch (NoSuchAlgorithmException | InvalidKeyException
@@ -711,6 +893,38 @@ public class Session {
         }
     }
 
+    // Creates the tokens returned by refreshSession, once the input refresh token is the parent refresh token of
+    // the session.
+    private static SessionInformationHolder createNewTokensForRefreshedSession(
+            TenantIdentifierWithStorage tenantIdentifierWithStorage, Main main, String refreshToken,
+            String sessionHandle, String userId, String recipeUserId, JsonObject userDataInJWT,
+            boolean useStaticKey, boolean enableAntiCsrf, AccessToken.VERSION accessTokenVersion)
+            throws NoSuchAlgorithmException, StorageQueryException, NoSuchPaddingException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException, StorageTransactionLogicException,
+            InvalidAlgorithmParameterException, InvalidKeySpecException, TenantOrAppNotFoundException,
+            SignatureException, UnsupportedJWTSigningAlgorithmException, AccessTokenPayloadError {
+        String antiCsrfToken = enableAntiCsrf ? UUID.randomUUID().toString() : null;
+        final TokenInfo newRefreshToken = RefreshToken.createNewRefreshToken(
+                tenantIdentifierWithStorage, main, sessionHandle,
+                recipeUserId, Utils.hashSHA256(refreshToken), antiCsrfToken);
+
+        TokenInfo newAccessToken = AccessToken.createNewAccessToken(tenantIdentifierWithStorage,
+                main, sessionHandle,
+                recipeUserId, userId,
+                Utils.hashSHA256(newRefreshToken.token),
+                Utils.hashSHA256(refreshToken), userDataInJWT, antiCsrfToken,
+                null, accessTokenVersion, useStaticKey);
+
+        TokenInfo idRefreshToken = new TokenInfo(UUID.randomUUID().toString(),
+                newRefreshToken.expiry, newRefreshToken.createdTime);
+
+        return new SessionInformationHolder(
+                new SessionInfo(sessionHandle, userId, recipeUserId,
+                        userDataInJWT,
+                        tenantIdentifierWithStorage.getTenantId()),
+                newAccessToken, newRefreshToken, idRefreshToken, antiCsrfToken);
+    }
+
     @TestOnly
     public static String[] revokeSessionUsingSessionHandles(Main main,
                                                             String[] sessionHandles)
@@ -761,7 +975,13 @@ public class Session {
             revokedSessionHandles.addAll(Arrays.asList(sessionHandlesRevokedForTenant));
         }
 
-        return revokedSessionHandles.toArray(new String[0]);
+        String[] result = revokedSessionHandles.toArray(new String[0]);
+        try {
+            SessionRevocationIndex.getInstance(appIdentifierWithStorage, main).markRevoked(result);
+        } catch (TenantOrAppNotFoundException ignored) {
+            // the app was deleted, so there are no sessions of it to verify anymore
+        }
+        return result;
     }
 
     private static String[] revokeSessionUsingSessionHandles(TenantIdentifierWithStorage tenantIdentifierWithStorage,
@@ -977,11 +1197,11 @@ public class Session {
                                      AccessToken.VERSION version)
             throws StorageQueryException, UnauthorisedException, AccessTokenPayloadError {
         Storage storage = StorageLayer.getStorage(main);
-        updateSession(new TenantIdentifierWithStorage(null, null, null, storage),
+        updateSession(main, new TenantIdentifierWithStorage(null, null, null, storage),
                 sessionHandle, sessionData, jwtData, version);
     }
 
-    public static void updateSession(TenantIdentifierWithStorage tenantIdentifierWithStorage,
+    public static void updateSession(Main main, TenantIdentifierWithStorage tenantIdentifierWithStorage,
                                      String sessionHandle, @Nullable JsonObject sessionData,
                                      @Nullable JsonObject jwtData, AccessToken.VERSION version)
             throws StorageQueryException, UnauthorisedException, AccessTokenPayloadError {
@@ -1002,10 +1222,14 @@ public class Session {
         if (numberOfRowsAffected != 1) {
             throw new UnauthorisedException("Session does not exist.");
         }
+        if (jwtData != null) {
+            // access tokens created before this have the old payload, so they need to be checked against the db
+            markSessionNeedsStorageCheck(main, tenantIdentifierWithStorage.toAppIdentifier(), sessionHandle);
+        }
     }
 
     @Deprecated
-    public static void updateSessionBeforeCDI2_21(TenantIdentifierWithStorage tenantIdentifierWithStorage,
+    public static void updateSessionBeforeCDI2_21(Main main, TenantIdentifierWithStorage tenantIdentifierWithStorage,
                                                   String sessionHandle, @Nullable JsonObject sessionData,
                                                   @Nullable JsonObject jwtData)
             throws StorageQueryException, UnauthorisedException {
@@ -1023,6 +1247,10 @@ public class Session {
         if (numberOfRowsAffected != 1) {
             throw new UnauthorisedException("Session does not exist.");
         }
+        if (jwtData != null) {
+            // access tokens created before this have the old payload, so they need to be checked against the db
+            markSessionNeedsStorageCheck(main, tenantIdentifierWithStorage.toAppIdentifier(), sessionHandle);
+        }
     }
 
     public static String getTenantIdFromSessionHandle(String sessionHandle) {
@@ -0,0 +1,281 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.session;
+
+import io.supertokens.Main;
+import io.supertokens.ResourceDistributor;
+import io.supertokens.config.Config;
+import io.supertokens.config.CoreConfig;
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
+import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
+import org.jetbrains.annotations.TestOnly;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the sessions of an app that were revoked (or whose JWT payload was changed) through this core instance,
+ * so that verifying a session with checkDatabase / access_token_blacklisting can be answered without querying the
+ * db. It is only used if session_revocation_index_enabled is set to true.
+ * <p>
+ * An entry only needs to live for as long as an access token created before the change can still be valid, so
+ * every entry expires access_token_validity after it was added. After that, such an access token fails verification
+ * on its own.
+ * <p>
+ * When enabled, a session verification that needs to check the db does the following:
+ * - If the session is in the index as revoked, it is unauthorised without querying the db.
+ * - If the session is in the index because its JWT payload changed or token theft was detected for it, the db is
+ * queried as before.
+ * - Otherwise, if the access token was created after the index, the session is treated as not revoked, and the db
+ * is only queried if a new access token needs to be created anyway (i.e. the access token's parent refresh token has
+ * to be promoted).
+ * - Access tokens created before the index are always checked in the db. The index starts empty when the core starts
+ * (or when it is enabled for the app), so it doesn't know about sessions that were revoked before that. Since access
+ * tokens are valid for access_token_validity, this only applies for that long after the core starts.
+ * <p>
+ * Consistency model: the index is local to this core instance and is not shared with other instances. This means
+ * that if multiple core instances serve the same app, a session revoked (or updated) through one instance is only
+ * seen as revoked by that instance. The others keep accepting access tokens of that session until they expire, which
+ * is at most access_token_validity, the same guarantee as verifying without checkDatabase. Sessions removed by
+ * deleting a user, or removing a user from a tenant, through this instance are marked as revoked as well, but the
+ * same applies to sessions removed in other ways (for example by deleting the tenant, or directly in the db). If
+ * revocations must be seen immediately by all instances, this should be kept disabled.
+ */
+public class SessionRevocationIndex extends ResourceDistributor.SingletonResource {
+    private static final String RESOURCE_KEY = "io.supertokens.session.SessionRevocationIndex";
+
+    // The handles are spread across shards so that purging expired entries only ever walks a small part of the index
+    static final int NUMBER_OF_SHARDS = 16;
+
+    private final boolean enabled;
+    private final long entryTTL;
+    // Access tokens created before this may belong to sessions that were revoked before the index existed
+    private long trackingSince;
+    private final Shard[] shards = new Shard[NUMBER_OF_SHARDS];
+
+    private final AtomicLong revokedHits = new AtomicLong(0);
+    private final AtomicLong storageChecks = new AtomicLong(0);
+    private final AtomicLong storageQueriesSkipped = new AtomicLong(0);
+
+    private SessionRevocationIndex(boolean enabled, long entryTTL) {
+        this.enabled = enabled;
+        this.entryTTL = entryTTL;
+        this.trackingSince = System.currentTimeMillis();
+        for (int i = 0; i < NUMBER_OF_SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    public static SessionRevocationIndex getInstance(AppIdentifier appIdentifier, Main main)
+            throws TenantOrAppNotFoundException {
+        return (SessionRevocationIndex) main.getResourceDistributor()
+                .getResource(appIdentifier, RESOURCE_KEY);
+    }
+
+    @TestOnly
+    public static SessionRevocationIndex getInstance(Main main) {
+        try {
+            return getInstance(new AppIdentifier(null, null), main);
+        } catch (TenantOrAppNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, Set<TenantIdentifier> tenantsThatChanged) {
+        try {
+            main.getResourceDistributor().withResourceDistributorLock(() -> {
+                Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> existingResources =
+                        main.getResourceDistributor()
+                                .getAllResourcesWithResourceKey(RESOURCE_KEY);
+                main.getResourceDistributor().clearAllResourcesWithResourceKey(RESOURCE_KEY);
+                for (AppIdentifier app : apps) {
+                    ResourceDistributor.SingletonResource resource = existingResources.get(
+                            new ResourceDistributor.KeyClass(app, RESOURCE_KEY));
+                    if (resource != null && !tenantsThatChanged.contains(app.getAsPublicTenantIdentifier())) {
+                        main.getResourceDistributor().setResource(app, RESOURCE_KEY,
+                                resource);
+                    } else {
+                        CoreConfig config = Config.getConfig(app.getAsPublicTenantIdentifier(), main);
+                        SessionRevocationIndex index = new SessionRevocationIndex(
+                                config.getSessionRevocationIndexEnabled(), config.getAccessTokenValidity());
+                        if (resource != null && ((SessionRevocationIndex) resource).isEnabled()) {
+                            // we keep what we already know, since revocations don't stop applying because the
+                            // config of the app changed
+                            index.copyEntriesFrom((SessionRevocationIndex) resource);
+                        }
+                        main.getResourceDistributor().setResource(app, RESOURCE_KEY, index);
+                    }
+                }
+                return null;
+            });
+        } catch (ResourceDistributor.FuncException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void markRevoked(@Nonnull String[] sessionHandles) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String sessionHandle : sessionHandles) {
+            getShard(sessionHandle).put(sessionHandle, new Entry(true, now + entryTTL), now);
+        }
+    }
+
+    /**
+     * Makes verifications of this session query the db until access tokens created before now have expired. This is
+     * used when the JWT payload of the session changed, so that older access tokens get the new payload, and when
+     * token theft was detected for the session.
+     */
+    public void markNeedsStorageCheck(@Nonnull String sessionHandle) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // an entry for a revoked session stays as is, since that's a stronger statement
+        getShard(sessionHandle).putIfNotRevoked(sessionHandle, new Entry(false, now + entryTTL), now);
+    }
+
+    /**
+     * @param accessTokenTimeCreated when the access token being verified was created. If that's before the index
+     *                               started tracking revocations, the db has to be checked.
+     */
+    public STATUS getStatus(@Nonnull String sessionHandle, long accessTokenTimeCreated) {
+        Entry entry = getShard(sessionHandle).get(sessionHandle, System.currentTimeMillis());
+        if (entry == null) {
+            // timeCreated of an access token is rounded down to the second, so a token created in the same second
+            // as the index is checked in the db as well
+            if (accessTokenTimeCreated <= trackingSince) {
+                storageChecks.incrementAndGet();
+                return STATUS.CHECK_STORAGE;
+            }
+            storageQueriesSkipped.incrementAndGet();
+            return STATUS.NOT_REVOKED;
+        }
+        if (entry.revoked) {
+            revokedHits.incrementAndGet();
+            return STATUS.REVOKED;
+        }
+        storageChecks.incrementAndGet();
+        return STATUS.CHECK_STORAGE;
+    }
+
+    private Shard getShard(String sessionHandle) {
+        return shards[(sessionHandle.hashCode() & 0x7fffffff) % NUMBER_OF_SHARDS];
+    }
+
+    @TestOnly
+    public STATUS getStatus(@Nonnull String sessionHandle) {
+        return getStatus(sessionHandle, Long.MAX_VALUE);
+    }
+
+    private void copyEntriesFrom(SessionRevocationIndex other) {
+        trackingSince = other.trackingSince;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < NUMBER_OF_SHARDS; i++) {
+            for (Map.Entry<String, Entry> entry : other.shards[i].entries.entrySet()) {
+                if (entry.getValue().expiresAt > now) {
+                    shards[i].entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    // Verifications answered as unauthorised from the index
+    public long getRevokedHitCount() {
+        return revokedHits.get();
+    }
+
+    // Verifications that had to query the db because of an entry in the index, or because the access token is older
+    // than the index
+    public long getStorageCheckCount() {
+        return storageChecks.get();
+    }
+
+    // Verifications that did not need to query the db to know that the session was not revoked
+    public long getStorageQueriesSkippedCount() {
+        return storageQueriesSkipped.get();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.entries.size();
+        }
+        return size;
+    }
+
+    public enum STATUS {
+        REVOKED, CHECK_STORAGE, NOT_REVOKED
+    }
+
+    private static class Entry {
+        final boolean revoked;
+        final long expiresAt;
+
+        Entry(boolean revoked, long expiresAt) {
+            this.revoked = revoked;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Shard {
+        // how often we walk the shard to remove expired entries that are never looked up again
+        private static final long PURGE_INTERVAL_MS = 60 * 1000;
+
+        final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private volatile long nextPurgeAt = 0;
+
+        Entry get(String sessionHandle, long now) {
+            Entry entry = entries.get(sessionHandle);
+            if (entry != null && entry.expiresAt <= now) {
+                entries.remove(sessionHandle, entry);
+                return null;
+            }
+            return entry;
+        }
+
+        void put(String sessionHandle, Entry entry, long now) {
+            entries.put(sessionHandle, entry);
+            purgeIfNeeded(now);
+        }
+
+        void putIfNotRevoked(String sessionHandle, Entry entry, long now) {
+            entries.merge(sessionHandle, entry,
+                    (existing, added) -> existing.revoked && existing.expiresAt > now ? existing : added);
+            purgeIfNeeded(now);
+        }
+
+        private void purgeIfNeeded(long now) {
+            if (now < nextPurgeAt) {
+                return;
+            }
+            nextPurgeAt = now + PURGE_INTERVAL_MS;
+            entries.values().removeIf(entry -> entry.expiresAt <= now);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package io.supertokens.session.accessToken;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.supertokens.Main;
 import io.supertokens.ProcessState;
 import io.supertokens.ProcessState.PROCESS_STATE;
@@ -28,7 +29,6 @@ import io.supertokens.jwt.JWTSigningFunctions;
 import io.supertokens.jwt.exceptions.UnsupportedJWTSigningAlgorithmException;
 import io.supertokens.pluginInterface.exceptions.StorageQueryException;
 import io.supertokens.pluginInterface.exceptions.StorageTransactionLogicException;
-import io.supertokens.pluginInterface.jwt.JWTAsymmetricSigningKeyInfo;
 import io.supertokens.pluginInterface.jwt.JWTSigningKeyInfo;
 import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
 import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
@@ -37,7 +37,9 @@ import io.supertokens.session.info.TokenInfo;
 import io.supertokens.session.jwt.JWT;
 import io.supertokens.session.jwt.JWT.JWTException;
 import io.supertokens.signingkeys.JWTSigningKey;
+import io.supertokens.signingkeys.ParsedSigningKey;
 import io.supertokens.signingkeys.SigningKeys;
+import io.supertokens.signingkeys.SigningKeysSnapshot;
 import io.supertokens.utils.SemVer;
 import io.supertokens.utils.Utils;
 import org.jetbrains.annotations.TestOnly;
@@ -60,12 +62,19 @@ public class AccessToken {
 
     private static AccessTokenInfo getInfoFromAccessToken(AppIdentifier appIdentifier,
                                                           @Nonnull Main main, @Nonnull String token, boolean retry,
-                                                          boolean doAntiCsrfCheck)
+                                                          boolean doAntiCsrfCheck,
+                                                          @Nullable VerifiedAccessTokenCache cache,
+                                                          @Nullable String cacheKey)
             throws StorageQueryException, StorageTransactionLogicException, TryRefreshTokenException,
             TenantOrAppNotFoundException, UnsupportedJWTSigningAlgorithmException {
-        List<JWTSigningKeyInfo> keyInfoList = SigningKeys.getInstance(appIdentifier, main).getAllKeys();
+        SigningKeys signingKeys = SigningKeys.getInstance(appIdentifier, main);
+        // We use a single snapshot of the keys for the whole verification
+        SigningKeysSnapshot signingKeysSnapshot = signingKeys.getSnapshot();
+        List<JWTSigningKeyInfo> keyInfoList = signingKeysSnapshot.allKeys;
         Exception error = null;
         JWT.JWTInfo jwtInfo = null;
+        // The id of the key the token was verified with, we use this to invalidate cache entries
+        String verifiedWithKeyId = null;
         JWT.JWTPreParseInfo preParseJWTInfo = null;
         try {
             preParseJWTInfo = JWT.preParseJWTInfo(token);
@@ -77,18 +86,19 @@ public class AccessToken {
         if (preParseJWTInfo.version != VERSION.V1 && preParseJWTInfo.version != VERSION.V2) {
             String kid = preParseJWTInfo.kid;
 
-            JWTSigningKeyInfo keyInfo = SigningKeys.getInstance(appIdentifier, main).getSigningKeyById(kid);
+            JWTSigningKeyInfo keyInfo = signingKeysSnapshot.getKeyById(kid);
 
             if (keyInfo == null) {
                 error = new TryRefreshTokenException("Key not found");
             } else {
                 try {
                     jwtInfo = JWT.verifyJWTAndGetPayload(preParseJWTInfo,
-                            ((JWTAsymmetricSigningKeyInfo) keyInfo).publicKey);
+                            signingKeys.getParsedSigningKey(keyInfo).publicKey);
+                    verifiedWithKeyId = keyInfo.keyId;
                 } catch (NoSuchAlgorithmException e) {
                     // This basically should never happen, but it means, that can't verify any tokens, no need to retry
                     throw new TryRefreshTokenException(e);
-                } catch (JWTException e) {
+                } catch (JWTException | InvalidKeySpecException e) {
                     // This basically should never happen, but it means, that the token structure is wrong, can't verify
                     throw new TryRefreshTokenException(e);
                 } catch (InvalidKeyException e) {
@@ -100,13 +110,14 @@ public class AccessToken {
             for (JWTSigningKeyInfo keyInfo : keyInfoList) {
                 try {
                     jwtInfo = JWT.verifyJWTAndGetPayload(preParseJWTInfo,
-                            ((JWTAsymmetricSigningKeyInfo) keyInfo).publicKey);
+                            signingKeys.getParsedSigningKey(keyInfo).publicKey);
+                    verifiedWithKeyId = keyInfo.keyId;
                     error = null;
                     break;
                 } catch (NoSuchAlgorithmException e) {
                     // This basically should never happen, but it means, that can't verify any tokens, no need to retry
                     throw new TryRefreshTokenException(e);
-                } catch (KeyException | JWTException e) {
+                } catch (KeyException | JWTException | InvalidKeySpecException e) {
                     /*
                      * There are a couple of reasons the verification could fail:
                      * 1) The access token is "corrupted" - this is a rare scenario since it probably means
@@ -141,8 +152,9 @@ public class AccessToken {
                 ProcessState.getInstance(main).addState(PROCESS_STATE.RETRYING_ACCESS_TOKEN_JWT_VERIFICATION, error);
 
                 // remove key from memory and retry
-                SigningKeys.getInstance(appIdentifier, main).updateKeyCacheIfNotChanged(keyInfoList);
-                return AccessToken.getInfoFromAccessToken(appIdentifier, main, token, false, doAntiCsrfCheck);
+                signingKeys.updateKeyCacheIfNotChanged(keyInfoList);
+                return AccessToken.getInfoFromAccessToken(appIdentifier, main, token, false, doAntiCsrfCheck,
+                        cache, cacheKey);
             }
             throw new TryRefreshTokenException(error);
         }
@@ -157,6 +169,10 @@ public class AccessToken {
                     "Access token does not contain all the information. Maybe the structure has changed?");
         }
 
+        if (cache != null && cacheKey != null) {
+            cache.put(cacheKey, tokenInfo, verifiedWithKeyId, token.length());
+        }
+
         return tokenInfo;
     }
 
@@ -165,7 +181,32 @@ public class AccessToken {
                                                          boolean doAntiCsrfCheck)
             throws StorageQueryException, StorageTransactionLogicException, TryRefreshTokenException,
             TenantOrAppNotFoundException, UnsupportedJWTSigningAlgorithmException {
-        return getInfoFromAccessToken(appIdentifier, main, token, true, doAntiCsrfCheck);
+        VerifiedAccessTokenCache cache = VerifiedAccessTokenCache.getInstance(appIdentifier, main);
+        if (!cache.isEnabled()) {
+            return getInfoFromAccessToken(appIdentifier, main, token, true, doAntiCsrfCheck, null, null);
+        }
+
+        String cacheKey;
+        try {
+            cacheKey = VerifiedAccessTokenCache.getCacheKey(token);
+        } catch (NoSuchAlgorithmException e) {
+            // This should never happen, but if it does, we just verify the token without the cache
+            return getInfoFromAccessToken(appIdentifier, main, token, true, doAntiCsrfCheck, null, null);
+        }
+
+        // If the key that verified the token was removed since, the entry is dropped and we verify it again
+        SigningKeysSnapshot signingKeysSnapshot = SigningKeys.getInstance(appIdentifier, main).getSnapshot();
+        AccessTokenInfo cachedTokenInfo = cache.get(cacheKey, System.currentTimeMillis(),
+                keyId -> signingKeysSnapshot.getKeyById(keyId) != null);
+        if (cachedTokenInfo == null) {
+            return getInfoFromAccessToken(appIdentifier, main, token, true, doAntiCsrfCheck, cache, cacheKey);
+        }
+
+        if (doAntiCsrfCheck && cachedTokenInfo.antiCsrfToken == null) {
+            throw new TryRefreshTokenException(
+                    "Access token does not contain all the information. Maybe the structure has changed?");
+        }
+        return cachedTokenInfo;
     }
 
     @TestOnly
@@ -229,8 +270,6 @@ public class AccessToken {
             NoSuchAlgorithmException, TenantOrAppNotFoundException, InvalidKeySpecException, SignatureException,
             AccessTokenPayloadError, UnsupportedJWTSigningAlgorithmException {
 
-        Utils.PubPriKey signingKey;
-
         long now = System.currentTimeMillis();
         long expires;
         if (expiryTime != null) {
@@ -242,24 +281,23 @@ public class AccessToken {
                 expires,
                 parentRefreshTokenHash1, userData, antiCsrfToken, now, version, tenantIdentifier);
 
+        SigningKeys signingKeys = SigningKeys.getInstance(tenantIdentifier.toAppIdentifier(), main);
         JWTSigningKeyInfo keyToUse;
         if (useStaticKey) {
-            keyToUse = SigningKeys.getInstance(tenantIdentifier.toAppIdentifier(), main)
-                    .getStaticKeyForAlgorithm(JWTSigningKey.SupportedAlgorithms.RS256);
+            keyToUse = signingKeys.getStaticKeyForAlgorithm(JWTSigningKey.SupportedAlgorithms.RS256);
         } else {
-            keyToUse = Utils.getJWTSigningKeyInfoFromKeyInfo(
-                    SigningKeys.getInstance(tenantIdentifier.toAppIdentifier(), main).getLatestIssuedDynamicKey());
+            keyToUse = Utils.getJWTSigningKeyInfoFromKeyInfo(signingKeys.getLatestIssuedDynamicKey());
         }
+        ParsedSigningKey parsedKeyToUse = signingKeys.getParsedSigningKey(keyToUse);
 
         String token;
         if (version != VERSION.V1 && version != VERSION.V2) {
             HashMap<String, Object> headers = new HashMap<>();
             headers.put("version", getVersionStringFromAccessTokenVersion(version));
             token = JWTSigningFunctions.createJWTToken(JWTSigningKey.SupportedAlgorithms.RS256, headers,
-                    accessToken.toJSON(), null, expires, now, keyToUse);
+                    accessToken.toJSON(), null, expires, now, parsedKeyToUse);
         } else {
-            signingKey = new Utils.PubPriKey(keyToUse.keyString);
-            token = JWT.createAndSignLegacyAccessToken(accessToken.toJSON(), signingKey.privateKey, version);
+            token = JWT.createAndSignLegacyAccessToken(accessToken.toJSON(), parsedKeyToUse.privateKey, version);
         }
 
         return new TokenInfo(token, accessToken.expiryTime, accessToken.timeCreated);
@@ -292,8 +330,9 @@ public class AccessToken {
             NoSuchAlgorithmException, InvalidKeySpecException, SignatureException,
             TenantOrAppNotFoundException, UnsupportedJWTSigningAlgorithmException, AccessTokenPayloadError {
 
-        Utils.PubPriKey signingKey = new Utils.PubPriKey(
-                SigningKeys.getInstance(tenantIdentifier.toAppIdentifier(), main).getLatestIssuedDynamicKey().value);
+        SigningKeys signingKeys = SigningKeys.getInstance(tenantIdentifier.toAppIdentifier(), main);
+        ParsedSigningKey signingKey = signingKeys.getParsedSigningKey(
+                Utils.getJWTSigningKeyInfoFromKeyInfo(signingKeys.getLatestIssuedDynamicKey()));
         long now = System.currentTimeMillis();
         AccessTokenInfo accessToken;
 
@@ -423,6 +462,19 @@ public class AccessToken {
             this.tenantIdentifier = tenantIdentifier;
         }
 
+        public long getTimeCreated() {
+            return timeCreated;
+        }
+
+        // used by VerifiedAccessTokenCache, so that requests don't share the (mutable) userData. The gson version we
+        // use has no public deepCopy, so we copy it by parsing it again, which is still much cheaper than verifying
+        // the token.
+        AccessTokenInfo copy() {
+            JsonObject userDataCopy = new JsonParser().parse(userData.toString()).getAsJsonObject();
+            return new AccessTokenInfo(sessionHandle, recipeUserId, primaryUserId, refreshTokenHash1, expiryTime,
+                    parentRefreshTokenHash1, userDataCopy, antiCsrfToken, timeCreated, version, tenantIdentifier);
+        }
+
         static AccessTokenInfo fromJSON(AppIdentifier appIdentifier, JsonObject payload, VERSION version)
                 throws TryRefreshTokenException {
             JsonElement parentRefreshTokenHash = payload.get("parentRefreshTokenHash1");
@@ -0,0 +1,263 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.session.accessToken;
+
+import io.supertokens.Main;
+import io.supertokens.ResourceDistributor;
+import io.supertokens.config.Config;
+import io.supertokens.config.CoreConfig;
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
+import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
+import io.supertokens.session.accessToken.AccessToken.AccessTokenInfo;
+import io.supertokens.utils.Utils;
+import org.jetbrains.annotations.TestOnly;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the result of verifying an access token, so that verifying the same token again (which SDKs do on every
+ * request during the lifetime of the token) skips the signature check and payload parsing.
+ * <p>
+ * Entries are keyed by a hash of the token and are only returned while the token has not expired and the key that
+ * verified it is still one of the signing keys of the app. The cache is bounded both by number of entries
+ * (access_token_verification_cache_size, 0 disables it) and by an estimate of the memory they use
+ * (access_token_verification_cache_max_memory_mb). When either bound is reached, the oldest entries are evicted.
+ * <p>
+ * The cache stores and returns copies of the {@link AccessTokenInfo} objects, so that a request modifying its
+ * userData doesn't change what other requests get.
+ */
+public class VerifiedAccessTokenCache extends ResourceDistributor.SingletonResource {
+    private static final String RESOURCE_KEY = "io.supertokens.session.accessToken.VerifiedAccessTokenCache";
+
+    // Rough size of an entry without the token payload: the map node, the key, the entry and AccessTokenInfo objects
+    static final long ENTRY_OVERHEAD_BYTES = 512;
+
+    private final int maxEntries;
+    private final long maxMemoryBytes;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Entries in insertion order. This can contain entries that are no longer in the map (because the token expired,
+    // or the entry was replaced by a newer one for the same key). Those are skipped when evicting, and removed once
+    // the queue gets much bigger than the map.
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    // approximate, only used to decide when to remove stale entries from insertionOrder
+    private final AtomicInteger insertionOrderSize = new AtomicInteger(0);
+    private final AtomicBoolean removingStaleEntries = new AtomicBoolean(false);
+    private final AtomicLong estimatedMemoryBytes = new AtomicLong(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong invalidations = new AtomicLong(0);
+
+    private VerifiedAccessTokenCache(int maxEntries, long maxMemoryBytes) {
+        this.maxEntries = maxEntries;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    public static VerifiedAccessTokenCache getInstance(AppIdentifier appIdentifier, Main main)
+            throws TenantOrAppNotFoundException {
+        return (VerifiedAccessTokenCache) main.getResourceDistributor()
+                .getResource(appIdentifier, RESOURCE_KEY);
+    }
+
+    @TestOnly
+    public static VerifiedAccessTokenCache getInstance(Main main) {
+        try {
+            return getInstance(new AppIdentifier(null, null), main);
+        } catch (TenantOrAppNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, Set<TenantIdentifier> tenantsThatChanged) {
+        try {
+            main.getResourceDistributor().withResourceDistributorLock(() -> {
+                Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> existingResources =
+                        main.getResourceDistributor()
+                                .getAllResourcesWithResourceKey(RESOURCE_KEY);
+                main.getResourceDistributor().clearAllResourcesWithResourceKey(RESOURCE_KEY);
+                for (AppIdentifier app : apps) {
+                    ResourceDistributor.SingletonResource resource = existingResources.get(
+                            new ResourceDistributor.KeyClass(app, RESOURCE_KEY));
+                    if (resource != null && !tenantsThatChanged.contains(app.getAsPublicTenantIdentifier())) {
+                        main.getResourceDistributor().setResource(app, RESOURCE_KEY,
+                                resource);
+                    } else {
+                        // the config of the app may have changed, so we start with an empty cache that uses the
+                        // new bounds
+                        CoreConfig config = Config.getConfig(app.getAsPublicTenantIdentifier(), main);
+                        main.getResourceDistributor()
+                                .setResource(app, RESOURCE_KEY,
+                                        new VerifiedAccessTokenCache(config.getAccessTokenVerificationCacheSize(),
+                                                config.getAccessTokenVerificationCacheMaxMemoryBytes()));
+                    }
+                }
+                return null;
+            });
+        } catch (ResourceDistributor.FuncException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    static String getCacheKey(@Nonnull String token) throws NoSuchAlgorithmException {
+        return Utils.hashSHA256Base64(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the cached info of the token if it was verified before, it has not expired and the key that verified
+     * it is still in use, according to isKeyStillInUse.
+     */
+    @Nullable
+    AccessTokenInfo get(@Nonnull String cacheKey, long now, @Nonnull KeyChecker isKeyStillInUse) {
+        Entry entry = entries.get(cacheKey);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.tokenInfo.expiryTime < now || !isKeyStillInUse.isInUse(entry.keyId)) {
+            if (remove(cacheKey, entry)) {
+                invalidations.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.tokenInfo.copy();
+    }
+
+    void put(@Nonnull String cacheKey, @Nonnull AccessTokenInfo tokenInfo, @Nonnull String keyId,
+             int tokenLength) {
+        if (!isEnabled()) {
+            return;
+        }
+        Entry entry = new Entry(cacheKey, tokenInfo.copy(), keyId, ENTRY_OVERHEAD_BYTES + 2L * tokenLength);
+        if (entry.estimatedSizeBytes > maxMemoryBytes) {
+            return;
+        }
+        Entry previous = entries.put(cacheKey, entry);
+        if (previous != null) {
+            estimatedMemoryBytes.addAndGet(-previous.estimatedSizeBytes);
+        }
+        estimatedMemoryBytes.addAndGet(entry.estimatedSizeBytes);
+        insertionOrder.add(entry);
+        if (insertionOrderSize.incrementAndGet() > 2L * maxEntries) {
+            removeStaleEntriesFromInsertionOrder();
+        }
+
+        while (entries.size() > maxEntries || estimatedMemoryBytes.get() > maxMemoryBytes) {
+            Entry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            insertionOrderSize.decrementAndGet();
+            // this does nothing if the entry is stale, so a key that was just put again is not evicted because of
+            // its older entry
+            if (remove(oldest.cacheKey, oldest)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void removeStaleEntriesFromInsertionOrder() {
+        if (!removingStaleEntries.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            insertionOrder.removeIf(queued -> entries.get(queued.cacheKey) != queued);
+            insertionOrderSize.set(insertionOrder.size());
+        } finally {
+            removingStaleEntries.set(false);
+        }
+    }
+
+    private boolean remove(String cacheKey, Entry entry) {
+        if (entries.remove(cacheKey, entry)) {
+            estimatedMemoryBytes.addAndGet(-entry.estimatedSizeBytes);
+            return true;
+        }
+        return false;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    // Entries removed to stay within the configured bounds
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    // Entries removed because the token expired or its signing key is no longer in use
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getEstimatedMemoryBytes() {
+        return estimatedMemoryBytes.get();
+    }
+
+    @TestOnly
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+        insertionOrderSize.set(0);
+        estimatedMemoryBytes.set(0);
+    }
+
+    interface KeyChecker {
+        boolean isInUse(String keyId);
+    }
+
+    private static class Entry {
+        final String cacheKey;
+        final AccessTokenInfo tokenInfo;
+        final String keyId;
+        final long estimatedSizeBytes;
+
+        Entry(String cacheKey, AccessTokenInfo tokenInfo, String keyId, long estimatedSizeBytes) {
+            this.cacheKey = cacheKey;
+            this.tokenInfo = tokenInfo;
+            this.keyId = keyId;
+            this.estimatedSizeBytes = estimatedSizeBytes;
+        }
+    }
+}
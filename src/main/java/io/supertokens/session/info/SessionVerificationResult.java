@@ -0,0 +1,46 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.session.info;
+
+import javax.annotation.Nullable;
+
+/**
+ * The outcome of verifying one of the access tokens passed to
+ * {@link io.supertokens.session.Session#getSessions}. Exactly one of sessionInfo and error is set.
+ */
+public class SessionVerificationResult {
+
+    @Nullable
+    public final SessionInformationHolder sessionInfo;
+
+    // One of TryRefreshTokenException, UnauthorisedException or AccessTokenPayloadError
+    @Nullable
+    public final Exception error;
+
+    private SessionVerificationResult(@Nullable SessionInformationHolder sessionInfo, @Nullable Exception error) {
+        this.sessionInfo = sessionInfo;
+        this.error = error;
+    }
+
+    public static SessionVerificationResult ofSession(SessionInformationHolder sessionInfo) {
+        return new SessionVerificationResult(sessionInfo, null);
+    }
+
+    public static SessionVerificationResult ofError(Exception error) {
+        return new SessionVerificationResult(null, error);
+    }
+}
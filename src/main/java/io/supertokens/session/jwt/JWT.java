@@ -21,14 +21,21 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import io.supertokens.session.accessToken.AccessToken;
+import io.supertokens.signingkeys.JWTSigningKey;
 import io.supertokens.utils.Utils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 
 public class JWT {
     private static String HEADERv1 = null;
@@ -54,6 +61,13 @@ public class JWT {
     public static String createAndSignLegacyAccessToken(JsonElement jsonObj, String privateSigningKey,
                                                         AccessToken.VERSION version)
             throws InvalidKeyException, NoSuchAlgorithmException, InvalidKeySpecException, SignatureException {
+        return createAndSignLegacyAccessToken(jsonObj,
+                Utils.getPrivateKeyFromString(privateSigningKey, JWTSigningKey.SupportedAlgorithms.RS256), version);
+    }
+
+    public static String createAndSignLegacyAccessToken(JsonElement jsonObj, PrivateKey privateSigningKey,
+                                                        AccessToken.VERSION version)
+            throws InvalidKeyException, NoSuchAlgorithmException, SignatureException {
         initHeader();
         String payload;
         String header;
@@ -66,20 +80,26 @@ public class JWT {
 
     public static JWTPreParseInfo preParseJWTInfo(String jwt) throws JWTException {
         initHeader();
-        String[] splittedInput = jwt.split("\\.");
-        if (splittedInput.length != 3) {
+        // None of the parts can contain a '.', so we find the parts by looking for the dots in the token, without
+        // copying it.
+        int firstDot = jwt.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : jwt.indexOf('.', firstDot + 1);
+        if (secondDot == -1 || firstDot == 0 || secondDot == firstDot + 1 || secondDot == jwt.length() - 1
+                || jwt.indexOf('.', secondDot + 1) != -1) {
             throw new JWTException("Invalid JWT");
         }
 
-        if (splittedInput[0].equals(JWT.HEADERv1)) {
-            return new JWTPreParseInfo(splittedInput, AccessToken.VERSION.V1, null);
+        String header = jwt.substring(0, firstDot);
+
+        if (header.equals(JWT.HEADERv1)) {
+            return new JWTPreParseInfo(jwt, firstDot, secondDot, header, AccessToken.VERSION.V1, null);
         }
 
-        if (splittedInput[0].equals(JWT.HEADERv2)) {
-            return new JWTPreParseInfo(splittedInput, AccessToken.VERSION.V2, null);
+        if (header.equals(JWT.HEADERv2)) {
+            return new JWTPreParseInfo(jwt, firstDot, secondDot, header, AccessToken.VERSION.V2, null);
         }
 
-        JsonObject parsedHeader = new JsonParser().parse(Utils.convertFromBase64(splittedInput[0])).getAsJsonObject();
+        JsonObject parsedHeader = new JsonParser().parse(Utils.convertFromBase64(header)).getAsJsonObject();
 
         if (parsedHeader.get("typ") == null) {
             throw new JWTException("JWT header missing - typ");
@@ -117,27 +137,96 @@ public class JWT {
         if (!kid.isString()) {
             throw new JWTException("JWT header mismatch - kid");
         }
-        return new JWTPreParseInfo(splittedInput, AccessToken.getVersionFromString(versionString), kid.getAsString());
+        return new JWTPreParseInfo(jwt, firstDot, secondDot, header,
+                AccessToken.getVersionFromString(versionString), kid.getAsString());
     }
 
     public static JWTInfo verifyJWTAndGetPayload(JWTPreParseInfo jwt, String publicSigningKey)
             throws InvalidKeyException, NoSuchAlgorithmException, JWTException {
+        PublicKey publicKey;
+        try {
+            publicKey = Utils.getPublicKeyFromString(publicSigningKey, JWTSigningKey.SupportedAlgorithms.RS256);
+        } catch (InvalidKeySpecException e) {
+            throw new JWTException("JWT verification failed");
+        }
+        return verifyJWTAndGetPayload(jwt, publicKey);
+    }
+
+    public static JWTInfo verifyJWTAndGetPayload(JWTPreParseInfo jwt, PublicKey publicSigningKey)
+            throws InvalidKeyException, NoSuchAlgorithmException, JWTException {
 
         try {
-            if (!Utils.verifyWithPublicKey(jwt.header + "." + jwt.payload, jwt.signature, publicSigningKey,
+            // The signed content is everything before the second dot, so we verify that part of the token directly
+            // instead of concatenating the header and payload again.
+            if (!Utils.verifyWithPublicKey(jwt.token, jwt.secondDot, jwt.signature, publicSigningKey,
                     jwt.version != AccessToken.VERSION.V1 && jwt.version != AccessToken.VERSION.V2)) {
                 throw new JWTException("JWT verification failed");
             }
-        } catch (InvalidKeySpecException | SignatureException e) {
+        } catch (SignatureException e) {
             throw new JWTException("JWT verification failed");
         }
-        return new JWTInfo(new JsonParser().parse(Utils.convertFromBase64(jwt.payload)).getAsJsonObject(), jwt.version);
+        return new JWTInfo(parsePayload(jwt), jwt.version);
     }
 
     public static JWTInfo getPayloadWithoutVerifying(String jwt) throws JWTException {
         JWTPreParseInfo jwtInfo = preParseJWTInfo(jwt);
-        return new JWTInfo(new JsonParser().parse(Utils.convertFromBase64(jwtInfo.payload)).getAsJsonObject(),
-                jwtInfo.version);
+        return new JWTInfo(parsePayload(jwtInfo), jwtInfo.version);
+    }
+
+    private static JsonObject parsePayload(JWTPreParseInfo jwt) {
+        // Same as Utils.convertFromBase64 (accepting both B64 and B64URL), but decoding straight from the token, and
+        // parsing the JSON from the decoded bytes.
+        byte[] decodedPayload = decodeBase64(jwt.token, jwt.firstDot + 1, jwt.secondDot);
+        return new JsonParser().parse(
+                new InputStreamReader(new ByteArrayInputStream(decodedPayload), StandardCharsets.UTF_8))
+                .getAsJsonObject();
+    }
+
+    // value of each base64 character, for both the B64 and B64URL alphabets. -1 for other characters.
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = i;
+        }
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['_'] = 63;
+    }
+
+    // Decodes the base64 (or base64url) characters of str between start and end, with or without padding. Throws
+    // an IllegalArgumentException if they are not valid base64, like Base64.Decoder does.
+    private static byte[] decodeBase64(String str, int start, int end) {
+        // up to two padding characters
+        if (end > start && str.charAt(end - 1) == '=') {
+            end--;
+            if (end > start && str.charAt(end - 1) == '=') {
+                end--;
+            }
+        }
+        int length = end - start;
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid base64 length");
+        }
+        byte[] result = new byte[length / 4 * 3 + Math.max(0, length % 4 - 1)];
+        int bits = 0;
+        int bitCount = 0;
+        int resultIndex = 0;
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            int value = c < 128 ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(c, 16));
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                result[resultIndex++] = (byte) (bits >> bitCount);
+            }
+        }
+        return result;
     }
 
     public static class JWTException extends Exception {
@@ -153,8 +242,6 @@ public class JWT {
         @Nonnull
         public final String header;
         @Nonnull
-        public final String payload;
-        @Nonnull
         public final String signature;
 
         @Nonnull
@@ -163,18 +250,30 @@ public class JWT {
         @Nullable
         public final String kid;
 
-        public JWTPreParseInfo(String[] splittedInput, AccessToken.VERSION version, String kid) throws JWTException {
-            if (splittedInput.length != 3) {
-                throw new JWTException("Invalid JWT");
-            }
+        // The whole token, and the positions of the two dots in it. The payload is decoded from the token when it's
+        // needed, so we don't keep it as a separate string.
+        final String token;
+        final int firstDot;
+        final int secondDot;
+
+        private JWTPreParseInfo(String token, int firstDot, int secondDot, String header,
+                                AccessToken.VERSION version, String kid) {
+            this.token = token;
+            this.firstDot = firstDot;
+            this.secondDot = secondDot;
 
-            this.header = splittedInput[0];
-            this.payload = splittedInput[1];
-            this.signature = splittedInput[2];
+            this.header = header;
+            this.signature = token.substring(secondDot + 1);
 
             this.version = version;
             this.kid = kid;
         }
+
+        // not used when verifying a token, so it's only created if asked for
+        @Nonnull
+        public String getPayload() {
+            return token.substring(firstDot + 1, secondDot);
+        }
     }
 
     public static class JWTInfo {
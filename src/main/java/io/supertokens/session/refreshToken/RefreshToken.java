@@ -34,6 +34,7 @@ import javax.annotation.Nullable;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -56,18 +57,24 @@ public class RefreshToken {
                                                            @Nonnull Main main, @Nonnull String token)
             throws UnauthorisedException, StorageQueryException, StorageTransactionLogicException,
             TenantOrAppNotFoundException {
-        String key = RefreshTokenKey.getInstance(appIdentifier, main).getKey();
+        RefreshTokenKey refreshTokenKey = RefreshTokenKey.getInstance(appIdentifier, main);
         try {
             TYPE tokenType = getTypeFromToken(token);
 
-            // format of token is <encrypted part>.<nonce>.V1
+            // format of token is <encrypted part>.<nonce>.<version>
             String[] splittedToken = token.split("\\.");
             if (splittedToken.length != 3) {
                 throw new InvalidRefreshTokenFormatException(
                         "Refresh token split with dot yielded an array of length: " + splittedToken.length);
             }
             String nonce = splittedToken[1];
-            String decrypted = Utils.decrypt(splittedToken[0], key);
+            String decrypted;
+            if (tokenType == TYPE.FREE_OPTIMISED_DERIVED_KEY) {
+                decrypted = Utils.decryptWithKey(splittedToken[0], refreshTokenKey.getDerivedEncryptionKey());
+            } else {
+                // tokens created before FREE_OPTIMISED_DERIVED_KEY derive the key from the nonce of the encryption
+                decrypted = Utils.decrypt(splittedToken[0], refreshTokenKey.getKey());
+            }
             RefreshTokenPayload tokenPayload = new Gson().fromJson(decrypted, RefreshTokenPayload.class);
             if (tokenPayload.userId == null || tokenPayload.sessionHandle == null
                     || !nonce.equals(tokenPayload.nonce)) {
@@ -107,13 +114,14 @@ public class RefreshToken {
             throws NoSuchAlgorithmException, StorageQueryException, NoSuchPaddingException, InvalidKeyException,
             IllegalBlockSizeException, BadPaddingException, StorageTransactionLogicException,
             InvalidAlgorithmParameterException, InvalidKeySpecException, TenantOrAppNotFoundException {
-        String key = RefreshTokenKey.getInstance(tenantIdentifier.toAppIdentifier(), main).getKey();
+        SecretKey key = RefreshTokenKey.getInstance(tenantIdentifier.toAppIdentifier(), main)
+                .getDerivedEncryptionKey();
         String nonce = Utils.hashSHA256(UUID.randomUUID().toString());
         RefreshTokenPayload payload = new RefreshTokenPayload(sessionHandle, userId, parentRefreshTokenHash1, nonce,
                 antiCsrfToken, tenantIdentifier.getTenantId());
         String payloadSerialised = new Gson().toJson(payload);
-        String encryptedPayload = Utils.encrypt(payloadSerialised, key);
-        String token = encryptedPayload + "." + nonce + "." + TYPE.FREE_OPTIMISED.toString();
+        String encryptedPayload = Utils.encryptWithKey(payloadSerialised, key);
+        String token = encryptedPayload + "." + nonce + "." + TYPE.FREE_OPTIMISED_DERIVED_KEY.toString();
         long now = System.currentTimeMillis();
         return new TokenInfo(token,
                 now + Config.getConfig(tenantIdentifier, main).getRefreshTokenValidity(),
@@ -136,7 +144,9 @@ public class RefreshToken {
     }
 
     public enum TYPE {
-        FREE("V0"), PAID("V1"), FREE_OPTIMISED("V2");
+        FREE("V0"), PAID("V1"), FREE_OPTIMISED("V2"),
+        // Same as FREE_OPTIMISED, but encrypted with a key that is derived once per app instead of per token
+        FREE_OPTIMISED_DERIVED_KEY("V3");
 
         private String version;
 
@@ -35,18 +35,26 @@ import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.utils.Utils;
 import org.jetbrains.annotations.TestOnly;
 
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class RefreshTokenKey extends ResourceDistributor.SingletonResource {
 
     private static final String RESOURCE_KEY = "io.supertokens.session.refreshToken.RefreshTokenKey";
     private final Main main;
     private String key;
+    // AES key derived from key, used to encrypt refresh tokens of type FREE_OPTIMISED_DERIVED_KEY
+    private volatile SecretKey derivedEncryptionKey;
     private final AppIdentifier appIdentifier;
 
+    private static final byte[] DERIVED_ENCRYPTION_KEY_SALT = "supertokens-refresh-token-encryption-key".getBytes(
+            StandardCharsets.UTF_8);
+
     private RefreshTokenKey(AppIdentifier appIdentifier, Main main) throws
             TenantOrAppNotFoundException {
         this.main = main;
@@ -73,7 +81,7 @@ public class RefreshTokenKey extends ResourceDistributor.SingletonResource {
         }
     }
 
-    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, List<TenantIdentifier> tenantsThatChanged) {
+    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, Set<TenantIdentifier> tenantsThatChanged) {
         try {
             main.getResourceDistributor().withResourceDistributorLock(() -> {
                 Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> existingResources =
@@ -112,6 +120,19 @@ public class RefreshTokenKey extends ResourceDistributor.SingletonResource {
         return this.key;
     }
 
+    public SecretKey getDerivedEncryptionKey()
+            throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
+            NoSuchAlgorithmException, InvalidKeySpecException {
+        SecretKey derivedEncryptionKey = this.derivedEncryptionKey;
+        if (derivedEncryptionKey == null) {
+            // if multiple threads get here at the same time, they derive the same key, so it doesn't matter which
+            // one is kept
+            derivedEncryptionKey = Utils.deriveAESKey(getKey(), DERIVED_ENCRYPTION_KEY_SALT);
+            this.derivedEncryptionKey = derivedEncryptionKey;
+        }
+        return derivedEncryptionKey;
+    }
+
     private String maybeGenerateNewKeyAndUpdateInDb()
             throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException {
         SessionStorage storage = (SessionStorage) StorageLayer.getStorage(this.appIdentifier.getAsPublicTenantIdentifier(), main);
@@ -90,7 +90,7 @@ public class AccessTokenSigningKey extends ResourceDistributor.SingletonResource
         }
     }
 
-    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, List<TenantIdentifier> tenantsThatChanged) {
+    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, Set<TenantIdentifier> tenantsThatChanged) {
         try {
             main.getResourceDistributor().withResourceDistributorLock(() -> {
                 Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> existingResources =
@@ -350,6 +350,12 @@ public class AccessTokenSigningKey extends ResourceDistributor.SingletonResource
     @TestOnly()
     public void setDynamicSigningKeyOverlapMS(int overlap) {
         dynamicSigningKeyOverlapMS = overlap;
+        // the overlap is part of the cached signing key snapshot
+        try {
+            SigningKeys.getInstance(appIdentifier, main).invalidateSnapshot();
+        } catch (TenantOrAppNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     public int getDynamicSigningKeyOverlapMS() throws TenantOrAppNotFoundException {
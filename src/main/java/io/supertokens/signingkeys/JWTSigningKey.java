@@ -40,6 +40,7 @@ import org.jetbrains.annotations.TestOnly;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class JWTSigningKey extends ResourceDistributor.SingletonResource {
     public static final String RESOURCE_KEY = "io.supertokens.signingKeys.JWTSigningKey";
@@ -61,7 +62,7 @@ public class JWTSigningKey extends ResourceDistributor.SingletonResource {
         }
     }
 
-    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, List<TenantIdentifier> tenantsThatChanged)
+    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, Set<TenantIdentifier> tenantsThatChanged)
             throws UnsupportedJWTSigningAlgorithmException {
         try {
             main.getResourceDistributor().withResourceDistributorLock(() -> {
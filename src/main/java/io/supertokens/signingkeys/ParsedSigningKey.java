@@ -0,0 +1,143 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.signingkeys;
+
+import com.google.gson.JsonObject;
+import io.supertokens.pluginInterface.jwt.JWTAsymmetricSigningKeyInfo;
+import io.supertokens.pluginInterface.jwt.JWTSigningKeyInfo;
+import io.supertokens.utils.Utils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+
+/**
+ * A signing key whose key material has already been decoded into JCA key objects. Decoding the Base64 / X509 /
+ * PKCS8 encoded strings we get from storage is fairly expensive, so {@link SigningKeys} builds these once when the
+ * keys are loaded and reuses them for every sign / verify call.
+ */
+public class ParsedSigningKey {
+    @Nonnull
+    public final JWTSigningKeyInfo keyInfo;
+
+    @Nonnull
+    public final JWTSigningKey.SupportedAlgorithms algorithm;
+
+    // These are null for keys that are not RSA key pairs
+    @Nullable
+    public final RSAPublicKey publicKey;
+    @Nullable
+    public final RSAPrivateKey privateKey;
+
+    // The JWK representation of the public key, as returned by the JWKS endpoints. Must not be modified.
+    @Nullable
+    public final JsonObject jwk;
+
+    private ParsedSigningKey(@Nonnull JWTSigningKeyInfo keyInfo, @Nonnull JWTSigningKey.SupportedAlgorithms algorithm,
+                             @Nullable RSAPublicKey publicKey, @Nullable RSAPrivateKey privateKey,
+                             @Nullable JsonObject jwk) {
+        this.keyInfo = keyInfo;
+        this.algorithm = algorithm;
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        this.jwk = jwk;
+    }
+
+    public static ParsedSigningKey fromKeyInfo(@Nonnull JWTSigningKeyInfo keyInfo)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        JWTSigningKey.SupportedAlgorithms algorithm = JWTSigningKey.SupportedAlgorithms.valueOf(keyInfo.algorithm);
+
+        if (!(keyInfo instanceof JWTAsymmetricSigningKeyInfo)) {
+            return new ParsedSigningKey(keyInfo, algorithm, null, null, null);
+        }
+
+        // TODO: In the future with more asymmetric algorithms [ES256 for example] we will need a provider
+        // system for the public key + JWK - Nemi
+        PublicKey publicKey = Utils.getPublicKeyFromString(((JWTAsymmetricSigningKeyInfo) keyInfo).publicKey,
+                algorithm);
+        PrivateKey privateKey = Utils.getPrivateKeyFromString(((JWTAsymmetricSigningKeyInfo) keyInfo).privateKey,
+                algorithm);
+
+        if (!(publicKey instanceof RSAPublicKey)) {
+            return new ParsedSigningKey(keyInfo, algorithm, null, null, null);
+        }
+        RSAPublicKey rsaPublicKey = (RSAPublicKey) publicKey;
+
+        JsonObject jwk = new JsonObject();
+        // Most verifiers seem to expect kty and alg to be in upper case so forcing that here
+        jwk.addProperty("kty", algorithm.getAlgorithmType().toUpperCase());
+        jwk.addProperty("kid", keyInfo.keyId);
+        jwk.addProperty("n", Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(toBytesUnsigned(rsaPublicKey.getModulus())));
+        jwk.addProperty("e", Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(toBytesUnsigned(rsaPublicKey.getPublicExponent())));
+        jwk.addProperty("alg", keyInfo.algorithm.toUpperCase());
+        jwk.addProperty("use", "sig"); // We generate JWKs that are meant to be used for signature verification
+
+        return new ParsedSigningKey(keyInfo, algorithm, rsaPublicKey,
+                privateKey instanceof RSAPrivateKey ? (RSAPrivateKey) privateKey : null, jwk);
+    }
+
+    /**
+     * Returns a byte array representation of the specified big integer
+     * without the sign bit.
+     *
+     * @param bigInt The big integer to be converted. Must not be
+     *               {@code null}.
+     * @return A byte array representation of the big integer, without the
+     *         sign bit.
+     */
+    private static byte[] toBytesUnsigned(final BigInteger bigInt) {
+
+        // Copied from Apache Commons Codec 1.8
+
+        int bitlen = bigInt.bitLength();
+
+        // round bitlen
+        bitlen = ((bitlen + 7) >> 3) << 3;
+        final byte[] bigBytes = bigInt.toByteArray();
+
+        if (((bigInt.bitLength() % 8) != 0) && (((bigInt.bitLength() / 8) + 1) == (bitlen / 8))) {
+
+            return bigBytes;
+
+        }
+
+        // set up params for copying everything but sign bit
+        int startSrc = 0;
+        int len = bigBytes.length;
+
+        // if bigInt is exactly byte-aligned, just skip signbit in copy
+        if ((bigInt.bitLength() % 8) == 0) {
+
+            startSrc = 1;
+            len--;
+        }
+
+        final int startDst = bitlen / 8 - len; // to pad w/ nulls as per spec
+        final byte[] resizedBytes = new byte[bitlen / 8];
+        System.arraycopy(bigBytes, startSrc, resizedBytes, startDst, len);
+        return resizedBytes;
+    }
+}
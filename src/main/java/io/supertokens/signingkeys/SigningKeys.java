@@ -33,25 +33,23 @@ import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoun
 import io.supertokens.utils.Utils;
 import org.jetbrains.annotations.TestOnly;
 
-import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
-import java.security.PublicKey;
-import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static io.supertokens.utils.Utils.getPublicKeyFromString;
 
 public class SigningKeys extends ResourceDistributor.SingletonResource {
     private static final String RESOURCE_KEY = "io.supertokens.signingKeys.SigningKeys";
     private final Main main;
     private final AppIdentifier appIdentifier;
 
+    // These are only accessed while holding the lock on this object
     private List<KeyInfo> dynamicKeys;
     private List<JWTSigningKeyInfo> staticKeys;
 
+    // Rebuilt (while holding the lock on this object) whenever the keys are (re)loaded or the previous snapshot
+    // expires. The sign / verify paths only ever read this field.
+    private volatile SigningKeysSnapshot snapshot = null;
+
 
     public static SigningKeys getInstance(AppIdentifier appIdentifier, Main main)
             throws TenantOrAppNotFoundException {
@@ -68,7 +66,7 @@ public class SigningKeys extends ResourceDistributor.SingletonResource {
         }
     }
 
-    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, List<TenantIdentifier> tenantsThatChanged) {
+    public static void loadForAllTenants(Main main, List<AppIdentifier> apps, Set<TenantIdentifier> tenantsThatChanged) {
         try {
             main.getResourceDistributor().withResourceDistributorLock(() -> {
                 Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> existingResources =
@@ -103,58 +101,25 @@ public class SigningKeys extends ResourceDistributor.SingletonResource {
     public JWTSigningKeyInfo getSigningKeyById(String kid)
             throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
             UnsupportedJWTSigningAlgorithmException {
-        return this.getAllKeys().stream()
-                .filter(jwtSigningKeyInfo -> Objects.equals(jwtSigningKeyInfo.keyId, kid)).findAny()
-                .orElse(null);
+        return getSnapshot().getKeyById(kid);
     }
 
     public List<JWTSigningKeyInfo> getAllKeys()
             throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
             UnsupportedJWTSigningAlgorithmException {
-
-        return Stream.concat(
-                getDynamicKeys().stream().map(Utils::getJWTSigningKeyInfoFromKeyInfo),
-                getStaticKeys().stream()
-        ).collect(Collectors.toList());
+        return getSnapshot().allKeys;
     }
 
     public List<KeyInfo> getDynamicKeys()
             throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
             UnsupportedJWTSigningAlgorithmException {
-        CoreConfig config = Config.getConfig(this.appIdentifier.getAsPublicTenantIdentifier(), main);
-
-        if (this.dynamicKeys == null) {
-            this.dynamicKeys = AccessTokenSigningKey.getInstance(this.appIdentifier, main)
-                    .getOrCreateAndGetSigningKeys();
-        }
-
-        // This filters the list down to keys that can be used to verify tokens
-        List<KeyInfo> res = this.dynamicKeys.stream().filter(k -> k.expiryTime >= System.currentTimeMillis())
-                .collect(Collectors.toList());
-
-        // if we don't have any available keys
-        if (res.size() == 0 ||
-                // or if we should generate a key we can use after dynamicSigningKeyOverlapMS
-                System.currentTimeMillis() +
-                        AccessTokenSigningKey.getInstance(appIdentifier, main).getDynamicSigningKeyOverlapMS() >
-                        res.get(0).createdAtTime + config.getAccessTokenDynamicSigningKeyUpdateInterval()
-        ) {
-            updateKeyCacheIfNotChanged(
-                    res.stream().map(Utils::getJWTSigningKeyInfoFromKeyInfo).collect(Collectors.toList()));
-            return getDynamicKeys();
-        }
-
-        return res;
+        return getSnapshot().dynamicKeys;
     }
 
     public List<JWTSigningKeyInfo> getStaticKeys()
             throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
             UnsupportedJWTSigningAlgorithmException {
-        if (this.staticKeys == null) {
-            this.staticKeys = JWTSigningKey.getInstance(appIdentifier, main).getAllSigningKeys();
-        }
-
-        return this.staticKeys;
+        return getSnapshot().staticKeys;
     }
 
     public JWTSigningKeyInfo getStaticKeyForAlgorithm(JWTSigningKey.SupportedAlgorithms algorithm)
@@ -163,11 +128,11 @@ public class SigningKeys extends ResourceDistributor.SingletonResource {
         JWTSigningKeyInfo key = JWTSigningKey.getInstance(appIdentifier, main)
                 .getOrCreateAndGetKeyForAlgorithm(algorithm);
 
-        List<JWTSigningKeyInfo> keyCache = getAllKeys();
+        SigningKeysSnapshot snapshot = getSnapshot();
         // if the new key is not in the cache, we know we need to refresh it, except if something in the background
         // already refreshed it
-        if (keyCache.stream().noneMatch(k -> Objects.equals(k.keyId, key.keyId))) {
-            updateKeyCacheIfNotChanged(keyCache);
+        if (snapshot.getKeyById(key.keyId) == null) {
+            updateKeyCacheIfNotChanged(snapshot.allKeys);
         }
 
         return key;
@@ -176,30 +141,75 @@ public class SigningKeys extends ResourceDistributor.SingletonResource {
     public KeyInfo getLatestIssuedDynamicKey()
             throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
             UnsupportedJWTSigningAlgorithmException {
-        CoreConfig config = Config.getConfig(appIdentifier.getAsPublicTenantIdentifier(), main);
-        List<KeyInfo> dynamicKeys = getDynamicKeys();
-
-        KeyInfo latest = dynamicKeys.get(0);
-        if (dynamicKeys.size() > 1 && // if we have more than 1 available
-                latest.createdAtTime +
-                        AccessTokenSigningKey.getInstance(appIdentifier, main).getDynamicSigningKeyOverlapMS() >
-                        System.currentTimeMillis() &&  // the latest isn't old enough
-                System.currentTimeMillis() < dynamicKeys.get(1).createdAtTime +
-                        config.getAccessTokenDynamicSigningKeyUpdateInterval() // the one before can still be used to
-            // sign
-        ) {
-            return dynamicKeys.get(1);
-        } else {
-            return latest;
-        }
+        return getSnapshot().latestIssuedDynamicKey;
     }
 
     public long getDynamicSigningKeyExpiryTime()
             throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
             UnsupportedJWTSigningAlgorithmException {
-        long createdAtTime = getLatestIssuedDynamicKey().createdAtTime;
-        return createdAtTime + Config.getConfig(appIdentifier.getAsPublicTenantIdentifier(), main)
-                .getAccessTokenDynamicSigningKeyUpdateInterval();
+        return getSnapshot().dynamicSigningKeyExpiryTime;
+    }
+
+    /**
+     * Returns the current signing keys. This is a single volatile read in the common case, we only lock (and
+     * possibly go to the db) if the keys were never loaded or if the previous snapshot is no longer valid because
+     * of the passage of time.
+     */
+    public SigningKeysSnapshot getSnapshot()
+            throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
+            UnsupportedJWTSigningAlgorithmException {
+        SigningKeysSnapshot snapshot = this.snapshot;
+        if (snapshot != null && snapshot.isValidAt(System.currentTimeMillis())) {
+            return snapshot;
+        }
+        return refreshSnapshot();
+    }
+
+    private synchronized SigningKeysSnapshot refreshSnapshot()
+            throws StorageQueryException, StorageTransactionLogicException, TenantOrAppNotFoundException,
+            UnsupportedJWTSigningAlgorithmException {
+        // some other thread could have done this while we were waiting for the lock
+        SigningKeysSnapshot snapshot = this.snapshot;
+        if (snapshot != null && snapshot.isValidAt(System.currentTimeMillis())) {
+            return snapshot;
+        }
+
+        if (this.dynamicKeys == null) {
+            this.dynamicKeys = AccessTokenSigningKey.getInstance(this.appIdentifier, main)
+                    .getOrCreateAndGetSigningKeys();
+        }
+        if (this.staticKeys == null) {
+            this.staticKeys = JWTSigningKey.getInstance(appIdentifier, main).getAllSigningKeys();
+        }
+        snapshot = publishSnapshot();
+
+        while (snapshot.needsNewDynamicKey) {
+            List<JWTSigningKeyInfo> knownDynamicKeys = new ArrayList<>(snapshot.dynamicKeys.size());
+            for (KeyInfo keyInfo : snapshot.dynamicKeys) {
+                knownDynamicKeys.add(Utils.getJWTSigningKeyInfoFromKeyInfo(keyInfo));
+            }
+            // this publishes a new snapshot
+            updateKeyCacheIfNotChanged(knownDynamicKeys);
+            snapshot = this.snapshot;
+        }
+
+        return snapshot;
+    }
+
+    // Must be called while holding the lock on this object
+    private SigningKeysSnapshot publishSnapshot() throws TenantOrAppNotFoundException {
+        CoreConfig config = Config.getConfig(this.appIdentifier.getAsPublicTenantIdentifier(), main);
+        SigningKeysSnapshot snapshot = SigningKeysSnapshot.build(this.dynamicKeys, this.staticKeys,
+                config.getAccessTokenDynamicSigningKeyUpdateInterval(),
+                AccessTokenSigningKey.getInstance(appIdentifier, main).getDynamicSigningKeyOverlapMS(),
+                this.snapshot, System.currentTimeMillis());
+        this.snapshot = snapshot;
+        return snapshot;
+    }
+
+    @TestOnly
+    synchronized void invalidateSnapshot() {
+        this.snapshot = null;
     }
 
     // This function is synchronized because we only want a single function to clear (and refresh) the key cache.
@@ -236,6 +246,26 @@ public class SigningKeys extends ResourceDistributor.SingletonResource {
                     .addState(ProcessState.PROCESS_STATE.UPDATING_ACCESS_TOKEN_SIGNING_KEYS, null);
             this.staticKeys = JWTSigningKey.getInstance(appIdentifier, main).getAllSigningKeys();
         }
+
+        publishSnapshot();
+    }
+
+    /**
+     * Returns the key with its key material already decoded. Keys that are part of the current snapshot are
+     * decoded only once, when the snapshot is built, anything else is decoded on every call.
+     *
+     * @throws NoSuchAlgorithmException If there is an error when using Java's cryptography packages
+     * @throws InvalidKeySpecException  If the key stored in the database is not valid
+     */
+    public ParsedSigningKey getParsedSigningKey(JWTSigningKeyInfo keyInfo)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        SigningKeysSnapshot snapshot = this.snapshot;
+        ParsedSigningKey parsedKey = snapshot == null ? null : snapshot.getParsedKey(keyInfo);
+        if (parsedKey != null) {
+            return parsedKey;
+        }
+
+        return ParsedSigningKey.fromKeyInfo(keyInfo);
     }
 
     /**
@@ -258,27 +288,9 @@ public class SigningKeys extends ResourceDistributor.SingletonResource {
         for (JWTSigningKeyInfo currentKeyInfo : keys) {
             // We only use asymmetric keys
             if (currentKeyInfo instanceof JWTAsymmetricSigningKeyInfo) {
-                JWTSigningKey.SupportedAlgorithms algorithm = JWTSigningKey.SupportedAlgorithms
-                        .valueOf(currentKeyInfo.algorithm);
-                // TODO: In the future with more asymmetric algorithms [ES256 for example] we will need a provider
-                // system for the public key + JWK - Nemi
-                PublicKey publicKey = getPublicKeyFromString(((JWTAsymmetricSigningKeyInfo) currentKeyInfo).publicKey,
-                        algorithm);
-
-                if (publicKey instanceof RSAPublicKey) {
-                    JsonObject jwk = new JsonObject();
-
-                    // Most verifiers seem to expect kty and alg to be in upper case so forcing that here
-                    jwk.addProperty("kty", algorithm.getAlgorithmType().toUpperCase());
-                    jwk.addProperty("kid", currentKeyInfo.keyId);
-                    jwk.addProperty("n", Base64.getUrlEncoder().withoutPadding()
-                            .encodeToString(toBytesUnsigned(((RSAPublicKey) publicKey).getModulus())));
-                    jwk.addProperty("e", Base64.getUrlEncoder().withoutPadding()
-                            .encodeToString(toBytesUnsigned(((RSAPublicKey) publicKey).getPublicExponent())));
-                    jwk.addProperty("alg", currentKeyInfo.algorithm.toUpperCase());
-                    jwk.addProperty("use", "sig"); // We generate JWKs that are meant to be used for signature
-                    // verification
+                JsonObject jwk = getParsedSigningKey(currentKeyInfo).jwk;
 
+                if (jwk != null) {
                     jwks.add(jwk);
                 } else {
                     // we don't do anything here because there could be other keys in the array
@@ -334,46 +346,4 @@ public class SigningKeys extends ResourceDistributor.SingletonResource {
             return result;
         }
     }
-
-    /**
-     * Returns a byte array representation of the specified big integer
-     * without the sign bit.
-     *
-     * @param bigInt The big integer to be converted. Must not be
-     *               {@code null}.
-     * @return A byte array representation of the big integer, without the
-     *         sign bit.
-     */
-    private static byte[] toBytesUnsigned(final BigInteger bigInt) {
-
-        // Copied from Apache Commons Codec 1.8
-
-        int bitlen = bigInt.bitLength();
-
-        // round bitlen
-        bitlen = ((bitlen + 7) >> 3) << 3;
-        final byte[] bigBytes = bigInt.toByteArray();
-
-        if (((bigInt.bitLength() % 8) != 0) && (((bigInt.bitLength() / 8) + 1) == (bitlen / 8))) {
-
-            return bigBytes;
-
-        }
-
-        // set up params for copying everything but sign bit
-        int startSrc = 0;
-        int len = bigBytes.length;
-
-        // if bigInt is exactly byte-aligned, just skip signbit in copy
-        if ((bigInt.bitLength() % 8) == 0) {
-
-            startSrc = 1;
-            len--;
-        }
-
-        final int startDst = bitlen / 8 - len; // to pad w/ nulls as per spec
-        final byte[] resizedBytes = new byte[bitlen / 8];
-        System.arraycopy(bigBytes, startSrc, resizedBytes, startDst, len);
-        return resizedBytes;
-    }
 }
@@ -0,0 +1,173 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.signingkeys;
+
+import io.supertokens.pluginInterface.jwt.JWTSigningKeyInfo;
+import io.supertokens.utils.Utils;
+
+import javax.annotation.Nullable;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.*;
+
+/**
+ * An immutable view of the signing keys of an app at a point in time. {@link SigningKeys} publishes these through a
+ * volatile field, so that the verify / sign paths can read the keys without locking or allocating.
+ * <p>
+ * Which dynamic keys can be used (and which one should be used for signing) depends on the current time, so a
+ * snapshot is only valid until {@link #validUntil}. That is the first point in time at which any of the values
+ * below would change (a key expiring, a newer key becoming usable for signing or a new key having to be created).
+ */
+public class SigningKeysSnapshot {
+    // Dynamic keys that can be used to verify tokens, latest first
+    public final List<SigningKeys.KeyInfo> dynamicKeys;
+    public final List<JWTSigningKeyInfo> staticKeys;
+    // The dynamic keys followed by the static keys
+    public final List<JWTSigningKeyInfo> allKeys;
+
+    @Nullable
+    public final SigningKeys.KeyInfo latestIssuedDynamicKey;
+    public final long dynamicSigningKeyExpiryTime;
+
+    // This is set to the time of creation if we need to fetch / create a new dynamic key, so that such a snapshot
+    // is never used.
+    public final long validUntil;
+    final boolean needsNewDynamicKey;
+
+    private final Map<String, JWTSigningKeyInfo> keysById;
+    private final Map<String, ParsedSigningKey> parsedKeysById;
+
+    private SigningKeysSnapshot(List<SigningKeys.KeyInfo> dynamicKeys, List<JWTSigningKeyInfo> staticKeys,
+                                List<JWTSigningKeyInfo> allKeys, SigningKeys.KeyInfo latestIssuedDynamicKey,
+                                long dynamicSigningKeyExpiryTime, long validUntil, boolean needsNewDynamicKey,
+                                Map<String, JWTSigningKeyInfo> keysById,
+                                Map<String, ParsedSigningKey> parsedKeysById) {
+        this.dynamicKeys = dynamicKeys;
+        this.staticKeys = staticKeys;
+        this.allKeys = allKeys;
+        this.latestIssuedDynamicKey = latestIssuedDynamicKey;
+        this.dynamicSigningKeyExpiryTime = dynamicSigningKeyExpiryTime;
+        this.validUntil = validUntil;
+        this.needsNewDynamicKey = needsNewDynamicKey;
+        this.keysById = keysById;
+        this.parsedKeysById = parsedKeysById;
+    }
+
+    @Nullable
+    public JWTSigningKeyInfo getKeyById(String kid) {
+        return kid == null ? null : keysById.get(kid);
+    }
+
+    @Nullable
+    ParsedSigningKey getParsedKey(JWTSigningKeyInfo keyInfo) {
+        ParsedSigningKey parsedKey = parsedKeysById.get(keyInfo.keyId);
+        if (parsedKey != null && Objects.equals(parsedKey.keyInfo.keyString, keyInfo.keyString)) {
+            return parsedKey;
+        }
+        return null;
+    }
+
+    boolean isValidAt(long now) {
+        return now < validUntil;
+    }
+
+    /**
+     * @param allDynamicKeys      All loaded dynamic keys (including ones that have expired since), latest first
+     * @param staticKeys          All static keys
+     * @param updateIntervalMS    access_token_dynamic_signing_key_update_interval in milliseconds
+     * @param overlapMS           {@link AccessTokenSigningKey#getDynamicSigningKeyOverlapMS()}
+     * @param previous            The snapshot this one replaces. Keys that were already decoded in it are reused.
+     */
+    static SigningKeysSnapshot build(List<SigningKeys.KeyInfo> allDynamicKeys, List<JWTSigningKeyInfo> staticKeys,
+                                     long updateIntervalMS, long overlapMS, @Nullable SigningKeysSnapshot previous,
+                                     long now) {
+        // This filters the list down to keys that can be used to verify tokens
+        List<SigningKeys.KeyInfo> dynamicKeys = new ArrayList<>();
+        for (SigningKeys.KeyInfo key : allDynamicKeys) {
+            if (key.expiryTime >= now) {
+                dynamicKeys.add(key);
+            }
+        }
+
+        List<JWTSigningKeyInfo> allKeys = new ArrayList<>();
+        for (SigningKeys.KeyInfo key : dynamicKeys) {
+            allKeys.add(Utils.getJWTSigningKeyInfoFromKeyInfo(key));
+        }
+        allKeys.addAll(staticKeys);
+
+        Map<String, JWTSigningKeyInfo> keysById = new HashMap<>();
+        Map<String, ParsedSigningKey> parsedKeysById = new HashMap<>();
+        for (JWTSigningKeyInfo keyInfo : allKeys) {
+            // if there are duplicate ids (which shouldn't happen), we keep the first one to match the previous
+            // linear search
+            keysById.putIfAbsent(keyInfo.keyId, keyInfo);
+
+            ParsedSigningKey parsedKey = previous == null ? null : previous.getParsedKey(keyInfo);
+            if (parsedKey == null) {
+                try {
+                    parsedKey = ParsedSigningKey.fromKeyInfo(keyInfo);
+                } catch (NoSuchAlgorithmException | InvalidKeySpecException | IllegalArgumentException e) {
+                    // We leave this key out, so using it will try to decode it again and throw the error there.
+                    continue;
+                }
+            }
+            parsedKeysById.putIfAbsent(keyInfo.keyId, parsedKey);
+        }
+
+        // if we don't have any available keys
+        if (dynamicKeys.isEmpty() ||
+                // or if we should generate a key we can use after dynamicSigningKeyOverlapMS
+                now + overlapMS > dynamicKeys.get(0).createdAtTime + updateIntervalMS) {
+            return new SigningKeysSnapshot(Collections.unmodifiableList(dynamicKeys),
+                    Collections.unmodifiableList(staticKeys), Collections.unmodifiableList(allKeys), null, 0, now,
+                    true, keysById, parsedKeysById);
+        }
+
+        // All the conditions below only ever flip once as time moves forward, so the snapshot stays valid until the
+        // earliest of these points in time that is still in the future.
+        long validUntil = dynamicKeys.get(0).createdAtTime + updateIntervalMS - overlapMS + 1;
+        for (SigningKeys.KeyInfo key : dynamicKeys) {
+            if (key.expiryTime < Long.MAX_VALUE) {
+                validUntil = Math.min(validUntil, key.expiryTime + 1);
+            }
+        }
+
+        SigningKeys.KeyInfo latest = dynamicKeys.get(0);
+        SigningKeys.KeyInfo latestIssued = latest;
+        if (dynamicKeys.size() > 1) {
+            long latestIsOldEnoughAt = latest.createdAtTime + overlapMS;
+            long previousCannotSignAt = dynamicKeys.get(1).createdAtTime + updateIntervalMS;
+
+            if (latestIsOldEnoughAt > now && // the latest isn't old enough
+                    now < previousCannotSignAt // the one before can still be used to sign
+            ) {
+                latestIssued = dynamicKeys.get(1);
+            }
+
+            if (latestIsOldEnoughAt > now) {
+                validUntil = Math.min(validUntil, latestIsOldEnoughAt);
+            }
+            if (previousCannotSignAt > now) {
+                validUntil = Math.min(validUntil, previousCannotSignAt);
+            }
+        }
+
+        return new SigningKeysSnapshot(Collections.unmodifiableList(dynamicKeys),
+                Collections.unmodifiableList(staticKeys), Collections.unmodifiableList(allKeys), latestIssued,
+                latestIssued.createdAtTime + updateIntervalMS, validUntil, false, keysById, parsedKeysById);
+    }
+}
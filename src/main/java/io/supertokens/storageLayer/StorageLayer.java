@@ -39,6 +39,7 @@ import io.supertokens.useridmapping.UserIdType;
 import jakarta.servlet.ServletException;
 import org.jetbrains.annotations.TestOnly;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -50,6 +51,10 @@ public class StorageLayer extends ResourceDistributor.SingletonResource {
 
     public static final String RESOURCE_KEY = "io.supertokens.storageLayer.StorageLayer";
     private final Storage storage;
+    // the config of the tenant when this was loaded. If the tenant's config is still the same object, its storage
+    // doesn't need to be loaded again (see loadAllTenantStorage).
+    @Nullable
+    private final Config config;
     private static URLClassLoader ucl = null;
 
     public Storage getUnderlyingStorage() {
@@ -94,8 +99,9 @@ public class StorageLayer extends ResourceDistributor.SingletonResource {
         return result;
     }
 
-    private StorageLayer(Storage storage) {
+    private StorageLayer(Storage storage, @Nullable Config config) {
         this.storage = storage;
+        this.config = config;
     }
 
     private StorageLayer(Main main, String pluginFolderPath, JsonObject configJson, TenantIdentifier tenantIdentifier)
@@ -120,6 +126,7 @@ public class StorageLayer extends ResourceDistributor.SingletonResource {
         }
 
         this.storage = getNewStorageInstance(main, configJson, tenantIdentifier, false);
+        this.config = null;
 
         if (this.storage instanceof Start) {
             Logging.info(main, TenantIdentifier.BASE_TENANT, "Using in memory storage.", true);
@@ -200,16 +207,52 @@ public class StorageLayer extends ResourceDistributor.SingletonResource {
 
         ProcessState.getInstance(main).addState(ProcessState.PROCESS_STATE.LOADING_ALL_TENANT_STORAGE, null);
 
-        Map<ResourceDistributor.KeyClass, JsonObject> normalisedConfigs = Config.getNormalisedConfigsForAllTenants(
-                tenants,
-                Config.getBaseConfigAsJsonObject(main));
+        // The Config of a tenant is only created again when its config changes (see Config.loadAllTenantConfig), so
+        // if it's the same object that a tenant's storage was loaded with, we can keep using that storage without
+        // creating a new storage instance to find its userPoolId + connectionPoolId.
+        Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> loadedConfigs =
+                main.getResourceDistributor().getAllResourcesWithResourceKey(Config.RESOURCE_KEY);
+        Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> loadedStorages =
+                main.getResourceDistributor().getAllResourcesWithResourceKey(RESOURCE_KEY);
 
         Map<ResourceDistributor.KeyClass, Storage> resourceKeyToStorageMap = new HashMap<>();
+        Map<ResourceDistributor.KeyClass, Config> resourceKeyToConfigMap = new HashMap<>();
+        Set<TenantIdentifier> tenantsToLoad = new HashSet<>();
+        {
+            List<TenantIdentifier> tenantIdentifiers = new ArrayList<>(tenants.length + 1);
+            tenantIdentifiers.add(TenantIdentifier.BASE_TENANT);
+            for (TenantConfig tenant : tenants) {
+                if (!tenant.tenantIdentifier.equals(TenantIdentifier.BASE_TENANT)) {
+                    tenantIdentifiers.add(tenant.tenantIdentifier);
+                }
+            }
+            for (TenantIdentifier tenantIdentifier : tenantIdentifiers) {
+                ResourceDistributor.KeyClass key = new ResourceDistributor.KeyClass(tenantIdentifier, RESOURCE_KEY);
+                Config config = (Config) loadedConfigs.get(
+                        new ResourceDistributor.KeyClass(tenantIdentifier, Config.RESOURCE_KEY));
+                StorageLayer loadedStorage = (StorageLayer) loadedStorages.get(key);
+                resourceKeyToConfigMap.put(key, config);
+                if (config != null && loadedStorage != null && loadedStorage.config == config) {
+                    resourceKeyToStorageMap.put(key, loadedStorage.storage);
+                } else {
+                    tenantsToLoad.add(tenantIdentifier);
+                }
+            }
+        }
+
+        Map<ResourceDistributor.KeyClass, JsonObject> normalisedConfigs = Config.getNormalisedConfigsForTenants(
+                tenants,
+                Config.getBaseConfigAsJsonObject(main),
+                tenantsToLoad);
+
         {
             Map<String, Storage> idToStorageMap = new HashMap<>();
-            for (ResourceDistributor.KeyClass key : normalisedConfigs.keySet()) {
+            for (ResourceDistributor.KeyClass normalisedConfigKey : normalisedConfigs.keySet()) {
+                ResourceDistributor.KeyClass key = new ResourceDistributor.KeyClass(
+                        normalisedConfigKey.getTenantIdentifier(), RESOURCE_KEY);
                 // setting doNotLog to true so that plugin loading is not logged here
-                Storage storage = StorageLayer.getNewStorageInstance(main, normalisedConfigs.get(key), key.getTenantIdentifier(), true);
+                Storage storage = StorageLayer.getNewStorageInstance(main, normalisedConfigs.get(normalisedConfigKey),
+                        key.getTenantIdentifier(), true);
                 String userPoolId = storage.getUserPoolId();
                 String connectionPoolId = storage.getConnectionPoolId();
                 String uniqueId = userPoolId + "~" + connectionPoolId;
@@ -235,8 +278,13 @@ public class StorageLayer extends ResourceDistributor.SingletonResource {
                         main.getResourceDistributor()
                                 .getAllResourcesWithResourceKey(RESOURCE_KEY);
                 Map<String, StorageLayer> idToExistingStorageLayerMap = new HashMap<>();
+                // many tenants share the same storage, so we only look at each storage object once
+                Set<Storage> existingStorages = Collections.newSetFromMap(new IdentityHashMap<>());
                 for (ResourceDistributor.SingletonResource resource : existingStorageMap.values()) {
                     StorageLayer currStorageLayer = (StorageLayer) resource;
+                    if (!existingStorages.add(currStorageLayer.storage)) {
+                        continue;
+                    }
                     String userPoolId = currStorageLayer.storage.getUserPoolId();
                     String connectionPoolId = currStorageLayer.storage.getConnectionPoolId();
                     String uniqueId = userPoolId + "~" + connectionPoolId;
@@ -245,40 +293,43 @@ public class StorageLayer extends ResourceDistributor.SingletonResource {
                 main.getResourceDistributor().clearAllResourcesWithResourceKey(RESOURCE_KEY);
 
                 Set<String> userPoolsInUse = new HashSet<>();
+                Set<Storage> storagesInUse = Collections.newSetFromMap(new IdentityHashMap<>());
+                Set<LOG_LEVEL> logLevels = Config.getBaseConfig(main).getLogLevels(main);
 
                 for (ResourceDistributor.KeyClass key : resourceKeyToStorageMap.keySet()) {
                     Storage currStorage = resourceKeyToStorageMap.get(key);
                     String userPoolId = currStorage.getUserPoolId();
-                    String connectionPoolId = currStorage.getConnectionPoolId();
-                    String uniqueId = userPoolId + "~" + connectionPoolId;
-                    if (idToExistingStorageLayerMap.containsKey(uniqueId)) {
-                        // we reuse the existing storage layer
-                        resourceKeyToStorageMap.put(key, idToExistingStorageLayerMap.get(uniqueId).storage);
+                    if (tenantsToLoad.contains(key.getTenantIdentifier())) {
+                        String connectionPoolId = currStorage.getConnectionPoolId();
+                        String uniqueId = userPoolId + "~" + connectionPoolId;
+                        if (idToExistingStorageLayerMap.containsKey(uniqueId)) {
+                            // we reuse the existing storage layer
+                            resourceKeyToStorageMap.put(key, idToExistingStorageLayerMap.get(uniqueId).storage);
+                        }
                     }
 
-                    resourceKeyToStorageMap.get(key).setLogLevels(Config.getBaseConfig(main).getLogLevels(main));
+                    if (storagesInUse.add(resourceKeyToStorageMap.get(key))) {
+                        resourceKeyToStorageMap.get(key).setLogLevels(logLevels);
+                    }
 
                     main.getResourceDistributor().setResource(key.getTenantIdentifier(), RESOURCE_KEY,
-                            new StorageLayer(resourceKeyToStorageMap.get(key)));
+                            new StorageLayer(resourceKeyToStorageMap.get(key), resourceKeyToConfigMap.get(key)));
 
                     userPoolsInUse.add(userPoolId);
                 }
 
-                for (ResourceDistributor.KeyClass key : existingStorageMap.keySet()) {
-                    if (!userPoolsInUse.contains(((StorageLayer) existingStorageMap.get(key)).storage.getUserPoolId())) {
-                        ((StorageLayer) existingStorageMap.get(key)).storage.close();
-                        ((StorageLayer) existingStorageMap.get(key)).storage.stopLogging();
+                for (Storage storage : existingStorages) {
+                    if (!userPoolsInUse.contains(storage.getUserPoolId())) {
+                        storage.close();
+                        storage.stopLogging();
                     }
                 }
 
                 // we call init on all the newly saved storage objects.
-                Map<ResourceDistributor.KeyClass, ResourceDistributor.SingletonResource> resources =
-                        main.getResourceDistributor()
-                                .getAllResourcesWithResourceKey(RESOURCE_KEY);
-                for (ResourceDistributor.SingletonResource resource : resources.values()) {
+                for (Storage storage : storagesInUse) {
                     try {
-                        ((StorageLayer) resource).storage.initStorage(false);
-                        ((StorageLayer) resource).storage.initFileLogging(
+                        storage.initStorage(false);
+                        storage.initFileLogging(
                                 Config.getBaseConfig(main).getInfoLogPath(main),
                                 Config.getBaseConfig(main).getErrorLogPath(main));
                     } catch (DbInitException e) {
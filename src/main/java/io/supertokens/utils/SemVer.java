@@ -35,6 +35,7 @@ public class SemVer implements Comparable<SemVer> {
     public static final SemVer v3_0 = new SemVer("3.0");
     public static final SemVer v4_0 = new SemVer("4.0");
     public static final SemVer v5_0 = new SemVer("5.0");
+    public static final SemVer v5_1 = new SemVer("5.1");
 
     final private String version;
 
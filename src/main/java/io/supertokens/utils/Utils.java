@@ -58,6 +58,13 @@ import java.util.UUID;
 
 public class Utils {
 
+    // Creating these is relatively expensive, and none of them can be shared between threads
+    private static final ThreadLocal<SecureRandom> threadLocalSecureRandom = ThreadLocal.withInitial(SecureRandom::new);
+    private static final ThreadLocal<Cipher> threadLocalAESGCMCipher = new ThreadLocal<>();
+    private static final ThreadLocal<Mac> threadLocalHmacSHA256 = new ThreadLocal<>();
+
+    public static final int MESSAGE_KEY_SALT_LENGTH = 16;
+
     /**
      * Normalizes a phone number by trimming and formatting it according to the
      * E.164 standard.
@@ -263,6 +270,102 @@ public class Utils {
         return new String(cipher.doFinal(cipherBytes));
     }
 
+    /**
+     * Encrypts text with an already derived AES key. Each call picks a random 16 byte salt and encrypts with a
+     * subkey derived from the key and that salt (see {@link #deriveMessageKey}), so the AES-GCM usage limits of
+     * the given key are never reached no matter how often it is used. The output is base64 of the salt, the 12 byte
+     * nonce and the cipher text.
+     *
+     * @param plaintext - text to encrypt
+     * @param key       - AES key, for example from {@link #deriveAESKey}
+     * @return base64 encoded encrypted data
+     */
+    public static String encryptWithKey(String plaintext, SecretKey key)
+            throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
+            InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        byte[] saltAndIv = new byte[MESSAGE_KEY_SALT_LENGTH + 12];
+        threadLocalSecureRandom.get().nextBytes(saltAndIv);
+
+        Cipher cipher = getThreadLocalAESGCMCipher();
+        cipher.init(Cipher.ENCRYPT_MODE, deriveMessageKey(key, saltAndIv, 0),
+                new GCMParameterSpec(128, saltAndIv, MESSAGE_KEY_SALT_LENGTH, 12));
+
+        byte[] plaintextBytes = stringToBytes(plaintext);
+        byte[] output = new byte[saltAndIv.length + cipher.getOutputSize(plaintextBytes.length)];
+        System.arraycopy(saltAndIv, 0, output, 0, saltAndIv.length);
+        try {
+            cipher.doFinal(plaintextBytes, 0, plaintextBytes.length, output, saltAndIv.length);
+        } catch (ShortBufferException e) {
+            // getOutputSize gives us a large enough buffer, so this should never happen
+            throw new IllegalStateException(e);
+        }
+
+        return Base64.getEncoder().encodeToString(output);
+    }
+
+    /**
+     * Decrypts text encrypted by {@link #encryptWithKey}
+     *
+     * @param encdata - base64 encoded input data
+     * @param key     - key used to encrypt
+     * @return String decrypted (original) text
+     */
+    public static String decryptWithKey(String encdata, SecretKey key)
+            throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
+            InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        byte[] data = Base64.getDecoder().decode(encdata);
+        int headerLength = MESSAGE_KEY_SALT_LENGTH + 12;
+        if (data.length < headerLength) {
+            throw new IllegalBlockSizeException("Encrypted data is too short");
+        }
+
+        Cipher cipher = getThreadLocalAESGCMCipher();
+        cipher.init(Cipher.DECRYPT_MODE, deriveMessageKey(key, data, 0),
+                new GCMParameterSpec(128, data, MESSAGE_KEY_SALT_LENGTH, 12));
+
+        return new String(cipher.doFinal(data, headerLength, data.length - headerLength), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Derives the AES-256 key used by {@link #encryptWithKey} for a single message. This is one HKDF-Expand step
+     * (RFC 5869) with the key as the pseudorandom key and the salt of the message as the info, so it costs a single
+     * HMAC-SHA256.
+     *
+     * @param key    - key passed to {@link #encryptWithKey}
+     * @param salt   - array holding the salt of the message
+     * @param offset - offset of the {@link #MESSAGE_KEY_SALT_LENGTH} byte salt in the array
+     */
+    public static SecretKey deriveMessageKey(SecretKey key, byte[] salt, int offset)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = threadLocalHmacSHA256.get();
+        if (mac == null) {
+            mac = Mac.getInstance("HmacSHA256");
+            threadLocalHmacSHA256.set(mac);
+        }
+        mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+        mac.update(salt, offset, MESSAGE_KEY_SALT_LENGTH);
+        mac.update((byte) 1);
+        return new SecretKeySpec(mac.doFinal(), "AES");
+    }
+
+    /**
+     * Derives an AES-256 key from a master key. This is as expensive as the derivation done in {@link #encrypt}, so
+     * the result is meant to be cached.
+     */
+    public static SecretKey deriveAESKey(String masterKey, byte[] salt)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        return new SecretKeySpec(pbkdf2(masterKey.toCharArray(), salt, 100, 32 * 8), "AES");
+    }
+
+    private static Cipher getThreadLocalAESGCMCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = threadLocalAESGCMCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            threadLocalAESGCMCipher.set(cipher);
+        }
+        return cipher;
+    }
+
     public static byte[] pbkdf2(char[] text, byte[] salt, int iterationCount, int keyLength)
             throws NoSuchAlgorithmException, InvalidKeySpecException {
 
@@ -286,13 +389,18 @@ public class Utils {
 
     public static String signWithPrivateKey(String content, String privateKey, boolean urlEncode)
             throws NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException, SignatureException {
-        Signature sign = Signature.getInstance("SHA256withRSA");
         Base64.Decoder decoder = Base64.getDecoder();
         PKCS8EncodedKeySpec ks = new PKCS8EncodedKeySpec(decoder.decode(privateKey));
         KeyFactory kf = KeyFactory.getInstance("RSA");
         PrivateKey pvt = kf.generatePrivate(ks);
 
-        sign.initSign(pvt);
+        return signWithPrivateKey(content, pvt, urlEncode);
+    }
+
+    public static String signWithPrivateKey(String content, PrivateKey privateKey, boolean urlEncode)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        Signature sign = Signature.getInstance("SHA256withRSA");
+        sign.initSign(privateKey);
         sign.update(stringToBytes(content));
         Base64.Encoder encoder = urlEncode ? Base64.getUrlEncoder() : Base64.getEncoder();
         return encoder.encodeToString(sign.sign());
@@ -300,18 +408,48 @@ public class Utils {
 
     public static boolean verifyWithPublicKey(String content, String signature, String publicKey, boolean urlEncoded)
             throws NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException, SignatureException {
-        Signature sign = Signature.getInstance("SHA256withRSA");
         Base64.Decoder keyDecoder = Base64.getDecoder();
         X509EncodedKeySpec ks = new X509EncodedKeySpec(keyDecoder.decode(publicKey));
         KeyFactory kf = KeyFactory.getInstance("RSA");
         PublicKey pub = kf.generatePublic(ks);
 
+        return verifyWithPublicKey(content, signature, pub, urlEncoded);
+    }
+
+    public static boolean verifyWithPublicKey(String content, String signature, PublicKey publicKey,
+                                              boolean urlEncoded)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        Signature sign = Signature.getInstance("SHA256withRSA");
         Base64.Decoder decoder = urlEncoded ? Base64.getUrlDecoder() : Base64.getDecoder();
-        sign.initVerify(pub);
+        sign.initVerify(publicKey);
         sign.update(stringToBytes(content));
         return sign.verify(decoder.decode(signature));
     }
 
+    // Verifies the signature of the first length characters of content, without copying them into a new string or
+    // byte array. The signed content must be ASCII (like the base64 parts of a JWT), so any other character fails the
+    // verification.
+    public static boolean verifyWithPublicKey(String content, int length, String signature, PublicKey publicKey,
+                                              boolean urlEncoded)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        Signature sign = Signature.getInstance("SHA256withRSA");
+        Base64.Decoder decoder = urlEncoded ? Base64.getUrlDecoder() : Base64.getDecoder();
+        sign.initVerify(publicKey);
+        byte[] chunk = new byte[Math.min(length, 256)];
+        for (int start = 0; start < length; start += chunk.length) {
+            int chunkLength = Math.min(chunk.length, length - start);
+            for (int i = 0; i < chunkLength; i++) {
+                char c = content.charAt(start + i);
+                if (c > 0x7f) {
+                    return false;
+                }
+                chunk[i] = (byte) c;
+            }
+            sign.update(chunk, 0, chunkLength);
+        }
+        return sign.verify(decoder.decode(signature));
+    }
+
     public static class PubPriKey {
         public String publicKey;
         public String privateKey;
@@ -17,34 +17,64 @@
 package io.supertokens.webserver;
 
 import io.supertokens.Main;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Finds the API for a request path. The paths of the APIs are put in a map (lower cased) when they are added, and a
+ * request path is resolved by looking it up as is, and then with the optional /appid-<appId> and /<tenantId>
+ * segments at its start removed. The resulting {@link RouteMatch}, including the app and tenant ids, is attached to
+ * the request so that the API doesn't need to parse the path again.
+ */
 public class PathRouter extends WebserverAPI {
     private static final long serialVersionUID = -3199188474453935983L;
 
+    static final String ROUTE_MATCH_ATTRIBUTE = "io.supertokens.webserver.PathRouter.RouteMatch";
+
+    private static final String APP_ID_PREFIX = "appid-";
+
     List<WebserverAPI> apis;
 
+    // lower cased path (always starting with /) -> index of the API in apis. If two APIs only differ in case,
+    // the first one is used.
+    private final Map<String, Integer> apiIndexByPath = new HashMap<>();
+    private final Map<String, WebserverAPI> apisByExactPath = new HashMap<>();
+    @Nullable
+    private WebserverAPI rootAPI = null;
+
     public PathRouter(Main main) {
         super(main, "");
         this.apis = new ArrayList();
     }
 
     public void addAPI(WebserverAPI newApi) {
+        if (apisByExactPath.containsKey(newApi.getPath())) {
+            throw new IllegalStateException("APIs given to the router cannot have the same path");
+        }
         this.apis.add(newApi);
-        for (WebserverAPI api : this.apis) {
-            for (WebserverAPI api2 : this.apis) {
-                if (api != api2 && api.getPath().equals(api2.getPath())) {
-                    throw new IllegalStateException("APIs given to the router cannot have the same path");
-                }
-            }
+        apisByExactPath.put(newApi.getPath(), newApi);
+        apiIndexByPath.putIfAbsent(normalisePath(newApi.getPath()), this.apis.size() - 1);
+        if (rootAPI == null && newApi.getPath().equals("/")) {
+            rootAPI = newApi;
         }
     }
 
+    private static String normalisePath(String path) {
+        path = path.toLowerCase();
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        return path;
+    }
+
     @Override
     public String getPath() {
         return "/";
@@ -61,42 +91,159 @@ public class PathRouter extends WebserverAPI {
     }
 
     private WebserverAPI getAPIThatMatchesPath(HttpServletRequest req) {
+        Object cached = req.getAttribute(ROUTE_MATCH_ATTRIBUTE);
+        if (cached instanceof RouteMatch) {
+            return ((RouteMatch) cached).api;
+        }
         // getServletPath returns the path without the configured base path.
-        String requestPath = req.getServletPath().toLowerCase();
+        RouteMatch match = resolve(req.getServletPath());
+        req.setAttribute(ROUTE_MATCH_ATTRIBUTE, match);
+        return match.api;
+    }
+
+    RouteMatch resolve(String servletPath) {
+        String requestPath = servletPath.toLowerCase();
+        // a trailing / is ignored when matching
+        String path = requestPath.length() > 1 && requestPath.endsWith("/")
+                ? requestPath.substring(0, requestPath.length() - 1) : requestPath;
 
         // first we check for exact match
-        for (WebserverAPI api : this.apis) {
-            String apiPath = api.getPath().toLowerCase();
-            if (!apiPath.startsWith("/")) {
-                apiPath = "/" + apiPath;
+        Integer exactMatch = apiIndexByPath.get(path);
+        if (exactMatch != null) {
+            return new RouteMatch(apis.get(exactMatch), null, null);
+        }
+
+        // then we check if tenantId or appId is embedded in the URL. The path can start with /appid-<appId>,
+        // followed by /<tenantId>, both being optional. If more than one way of splitting the path matches an API,
+        // we pick the API that was added first.
+        int bestIndex = Integer.MAX_VALUE;
+        String bestAppId = null;
+        String bestTenantId = null;
+
+        int firstSegmentEnd = path.indexOf('/', 1);
+        if (firstSegmentEnd > 1) {
+            String firstSegment = path.substring(1, firstSegmentEnd);
+            boolean isAppIdSegment = firstSegment.startsWith(APP_ID_PREFIX)
+                    && isValidIdSegment(firstSegment, APP_ID_PREFIX.length());
+
+            // /<tenantId>/<api path> or /appid-<appId>/<api path>
+            if (isValidIdSegment(firstSegment, 0) && !startsWithTenantIdStopWord(firstSegment)) {
+                int index = getIndexOfAPI(path.substring(firstSegmentEnd));
+                if (index < bestIndex) {
+                    bestIndex = index;
+                    if (isAppIdSegment) {
+                        bestAppId = firstSegment.substring(APP_ID_PREFIX.length());
+                    } else {
+                        bestTenantId = firstSegment;
+                    }
+                }
             }
-            if (requestPath.equals(apiPath) || requestPath.equals(apiPath + "/")) {
-                return api;
+
+            if (isAppIdSegment) {
+                // /appid-<appId>/<tenantId>/<api path>
+                int secondSegmentEnd = path.indexOf('/', firstSegmentEnd + 1);
+                if (secondSegmentEnd < 0 && requestPath.length() > path.length()) {
+                    // for the root API, the path ends right after the tenant id and the trailing /
+                    secondSegmentEnd = path.length();
+                }
+                if (secondSegmentEnd > firstSegmentEnd + 1) {
+                    String secondSegment = path.substring(firstSegmentEnd + 1, secondSegmentEnd);
+                    if (isValidIdSegment(secondSegment, 0) && !startsWithTenantIdStopWord(secondSegment)) {
+                        int index = getIndexOfAPI(path.substring(secondSegmentEnd));
+                        if (index < bestIndex) {
+                            bestIndex = index;
+                            bestAppId = firstSegment.substring(APP_ID_PREFIX.length());
+                            bestTenantId = secondSegment;
+                        }
+                    }
+                }
             }
         }
 
-        // then we check if tenantId or appId is embedded in the URL.
-        for (WebserverAPI api : this.apis) {
-            String apiPath = api.getPath().toLowerCase();
-            if (!apiPath.startsWith("/")) {
-                apiPath = "/" + apiPath;
+        if (bestIndex != Integer.MAX_VALUE) {
+            WebserverAPI api = apis.get(bestIndex);
+            if (normalisePath(api.getPath()).equals("/")) {
+                // the root API is not tenant specific
+                return new RouteMatch(api, null, null);
             }
+            return new RouteMatch(api, normaliseAppId(bestAppId), normaliseTenantId(bestTenantId));
+        }
 
-            String tenantIdStopWords = String.join("|", Utils.INVALID_WORDS_FOR_TENANTID);
-            if (requestPath.matches("^(/appid-[a-z0-9-]*)?(/(?!" + tenantIdStopWords + ")[a-z0-9-]+)?" + apiPath + "/?$")) {
-                return api;
+        if (rootAPI != null) {
+            return new RouteMatch(rootAPI, null, null);
+        }
+        throw new RuntimeException("Should never come here");
+    }
+
+    private int getIndexOfAPI(String apiPath) {
+        if (apiPath.isEmpty()) {
+            // this happens for a path like /<tenantId>/, which matches the root API
+            apiPath = "/";
+        }
+        Integer index = apiIndexByPath.get(apiPath);
+        return index == null ? Integer.MAX_VALUE : index;
+    }
+
+    // Checks that all characters after start are in [a-z0-9-] (the path is already lower cased). The part after
+    // start must not be empty, unless start is not 0 (the app id can be empty).
+    private static boolean isValidIdSegment(String segment, int start) {
+        if (start == 0 && segment.isEmpty()) {
+            return false;
+        }
+        for (int i = start; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-')) {
+                return false;
             }
         }
-        for (WebserverAPI api : this.apis) {
-            if (api.getPath().equals("/")) {
-                return api;
+        return true;
+    }
+
+    private static boolean startsWithTenantIdStopWord(String segment) {
+        for (String stopWord : Utils.INVALID_WORDS_FOR_TENANTID) {
+            if (segment.startsWith(stopWord)) {
+                return true;
             }
         }
-        throw new RuntimeException("Should never come here");
+        return false;
+    }
+
+    @Nullable
+    private static String normaliseAppId(@Nullable String appId) {
+        if (appId == null || appId.equals(TenantIdentifier.DEFAULT_APP_ID)) {
+            return null;
+        }
+        return appId;
+    }
+
+    @Nullable
+    private static String normaliseTenantId(@Nullable String tenantId) {
+        if (tenantId == null || tenantId.equals(TenantIdentifier.DEFAULT_TENANT_ID)) {
+            return null;
+        }
+        return tenantId;
     }
 
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         getAPIThatMatchesPath(req).service(req, resp);
     }
+
+    /**
+     * The API that a request path resolved to, and the app and tenant ids in the path (null if the path doesn't
+     * have them, or they are the default ones).
+     */
+    static class RouteMatch {
+        final WebserverAPI api;
+        @Nullable
+        final String appId;
+        @Nullable
+        final String tenantId;
+
+        RouteMatch(WebserverAPI api, @Nullable String appId, @Nullable String tenantId) {
+            this.api = api;
+            this.appId = appId;
+            this.tenantId = tenantId;
+        }
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.webserver;
+
+import io.supertokens.Main;
+import io.supertokens.config.Config;
+import io.supertokens.config.CoreConfig;
+import io.supertokens.pluginInterface.Storage;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
+import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
+import io.supertokens.storageLayer.StorageLayer;
+import io.supertokens.utils.SemVer;
+import jakarta.servlet.ServletException;
+
+/**
+ * What a request resolves to: its tenant, the tenant's config and storage, and the cdi-version it asked for. The
+ * tenant is found when the context is created in {@link WebserverAPI#service}, and everything else the first time it
+ * is asked for, after which it is reused for the rest of the request. APIs get it through
+ * {@link WebserverAPI#getRequestContext}.
+ * <p>
+ * A request is handled by one thread, so this is not thread safe.
+ */
+public class RequestContext {
+
+    static final String ATTRIBUTE = "io.supertokens.webserver.RequestContext";
+
+    private final Main main;
+    // the path of the API the tenant was resolved for, since the app and tenant ids are found relative to it
+    final String apiPath;
+    private final TenantIdentifier tenantIdentifier;
+    private final String versionHeader;
+
+    private Storage storage = null;
+    private Storage[] storagesForApp = null;
+    private Storage publicTenantStorage = null;
+    private CoreConfig config = null;
+    private CoreConfig publicTenantConfig = null;
+    private CoreConfig baseConfig = null;
+    private SemVer maxCDIVersion = null;
+    private SemVer version = null;
+
+    RequestContext(Main main, String apiPath, TenantIdentifier tenantIdentifier, String versionHeader) {
+        this.main = main;
+        this.apiPath = apiPath;
+        this.tenantIdentifier = tenantIdentifier;
+        this.versionHeader = versionHeader;
+    }
+
+    public TenantIdentifier getTenantIdentifier() {
+        return tenantIdentifier;
+    }
+
+    public Storage getStorage() throws TenantOrAppNotFoundException {
+        if (storage == null) {
+            storage = StorageLayer.getStorage(tenantIdentifier, main);
+        }
+        return storage;
+    }
+
+    // All the storages of the tenant's app. Finding these goes through the storage of every loaded tenant.
+    public Storage[] getStoragesForApp() {
+        if (storagesForApp == null) {
+            storagesForApp = StorageLayer.getStoragesForApp(main, tenantIdentifier.toAppIdentifier());
+        }
+        return storagesForApp;
+    }
+
+    public Storage getPublicTenantStorage() throws TenantOrAppNotFoundException {
+        if (isPublicTenant()) {
+            return getStorage();
+        }
+        if (publicTenantStorage == null) {
+            publicTenantStorage = StorageLayer.getStorage(
+                    tenantIdentifier.toAppIdentifier().getAsPublicTenantIdentifier(), main);
+        }
+        return publicTenantStorage;
+    }
+
+    public CoreConfig getConfig() throws TenantOrAppNotFoundException {
+        if (config == null) {
+            config = Config.getConfig(tenantIdentifier, main);
+        }
+        return config;
+    }
+
+    public CoreConfig getPublicTenantConfig() throws TenantOrAppNotFoundException {
+        if (isPublicTenant()) {
+            return getConfig();
+        }
+        if (publicTenantConfig == null) {
+            publicTenantConfig = Config.getConfig(tenantIdentifier.toAppIdentifier().getAsPublicTenantIdentifier(),
+                    main);
+        }
+        return publicTenantConfig;
+    }
+
+    public CoreConfig getBaseConfig() {
+        if (baseConfig == null) {
+            baseConfig = Config.getBaseConfig(main);
+        }
+        return baseConfig;
+    }
+
+    // The highest cdi-version that the tenant's app allows
+    public SemVer getMaxCDIVersion() throws TenantOrAppNotFoundException {
+        if (maxCDIVersion == null) {
+            String maxCDIVersionStr = getPublicTenantConfig().getMaxCDIVersion();
+            maxCDIVersion = maxCDIVersionStr == null ? WebserverAPI.getLatestCDIVersion() :
+                    new SemVer(maxCDIVersionStr);
+        }
+        return maxCDIVersion;
+    }
+
+    // The cdi-version from the request's cdi-version header, or the max cdi-version if there is no header
+    public SemVer getVersion() throws ServletException, TenantOrAppNotFoundException {
+        if (version == null) {
+            SemVer maxCDIVersion = getMaxCDIVersion();
+            if (versionHeader == null) {
+                version = maxCDIVersion;
+            } else {
+                SemVer versionFromRequest = new SemVer(versionHeader);
+                if (versionFromRequest.greaterThan(maxCDIVersion)) {
+                    throw new ServletException(new WebserverAPI.BadRequestException(
+                            "cdi-version " + versionFromRequest + " not supported"));
+                }
+                version = versionFromRequest;
+            }
+        }
+        return version;
+    }
+
+    private boolean isPublicTenant() {
+        return tenantIdentifier.getTenantId().equals(TenantIdentifier.DEFAULT_TENANT_ID);
+    }
+}
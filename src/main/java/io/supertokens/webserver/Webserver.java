@@ -168,6 +168,7 @@ public class Webserver extends ResourceDistributor.SingletonResource {
         addAPI(new JWKSPublicAPI(main));
         addAPI(new SessionAPI(main));
         addAPI(new VerifySessionAPI(main));
+        addAPI(new VerifySessionBatchAPI(main));
         addAPI(new RefreshSessionAPI(main));
         addAPI(new SessionUserAPI(main));
         addAPI(new SessionDataAPI(main));
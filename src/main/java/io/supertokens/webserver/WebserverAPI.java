@@ -22,11 +22,12 @@ import io.supertokens.Main;
 import io.supertokens.TenantIdentifierWithStorageAndUserIdMapping;
 import io.supertokens.config.Config;
 import io.supertokens.config.CoreConfig;
+import io.supertokens.config.IpAccessRules;
+import io.supertokens.emailpassword.exceptions.PasswordHashingOverloadedException;
 import io.supertokens.exceptions.QuitProgramException;
 import io.supertokens.featureflag.exceptions.FeatureNotEnabledException;
 import io.supertokens.multitenancy.exception.BadPermissionException;
 import io.supertokens.output.Logging;
-import io.supertokens.pluginInterface.Storage;
 import io.supertokens.pluginInterface.emailpassword.exceptions.UnknownUserIdException;
 import io.supertokens.pluginInterface.exceptions.StorageQueryException;
 import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
@@ -37,20 +38,15 @@ import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoun
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.useridmapping.UserIdType;
 import io.supertokens.utils.SemVer;
-import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.ServletRequest;
-import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.catalina.filters.RemoteAddrFilter;
 import org.jetbrains.annotations.TestOnly;
 
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.PatternSyntaxException;
 
 public abstract class WebserverAPI extends HttpServlet {
 
@@ -78,21 +74,16 @@ public abstract class WebserverAPI extends HttpServlet {
         supportedVersions.add(SemVer.v3_0);
         supportedVersions.add(SemVer.v4_0);
         supportedVersions.add(SemVer.v5_0);
+        supportedVersions.add(SemVer.v5_1);
     }
 
     public static SemVer getLatestCDIVersion() {
-        return SemVer.v5_0;
+        return SemVer.v5_1;
     }
 
     public SemVer getLatestCDIVersionForRequest(HttpServletRequest req)
             throws ServletException, TenantOrAppNotFoundException {
-        SemVer maxCDIVersion = getLatestCDIVersion();
-        String maxCDIVersionStr = Config.getConfig(
-                getAppIdentifierWithStorage(req).getAsPublicTenantIdentifier(), main).getMaxCDIVersion();
-        if (maxCDIVersionStr != null) {
-            maxCDIVersion = new SemVer(maxCDIVersionStr);
-        }
-        return maxCDIVersion;
+        return getRequestContext(req).getMaxCDIVersion();
     }
 
     public WebserverAPI(Main main, String rid) {
@@ -170,11 +161,10 @@ public abstract class WebserverAPI extends HttpServlet {
     private void assertThatAPIKeyCheckPasses(HttpServletRequest req) throws ServletException,
             TenantOrAppNotFoundException {
         String apiKey = req.getHeader("api-key");
+        RequestContext context = getRequestContext(req);
 
         // first we try the normal API key
-        String[] keys = Config.getConfig(
-                new TenantIdentifier(getConnectionUriDomain(req), getAppId(req), getTenantId(req)),
-                this.main).getAPIKeys();
+        String[] keys = context.getConfig().getAPIKeys();
         if (keys != null) {
             if (apiKey == null) {
                 throw new ServletException(new APIKeyUnauthorisedException());
@@ -191,8 +181,7 @@ public abstract class WebserverAPI extends HttpServlet {
 
         // if the normal API key did not exist, or did not match the api key from the header, we try the
         // supertokens_saas_secret
-        String superTokensSaaSSecret = Config.getConfig(new TenantIdentifier(null, null, null), this.main)
-                .getSuperTokensSaaSSecret();
+        String superTokensSaaSSecret = context.getBaseConfig().getSuperTokensSaaSSecret();
         if (superTokensSaaSSecret != null) {
             if (apiKey == null) {
                 throw new ServletException(new APIKeyUnauthorisedException());
@@ -229,7 +218,22 @@ public abstract class WebserverAPI extends HttpServlet {
         return true;
     }
 
+    // The app and tenant ids that PathRouter found in the path when it routed the request to this API, if it did.
+    // Sub APIs of a RecipeRouter have the same path as it, so we compare paths and not the APIs.
+    private PathRouter.RouteMatch getRouteMatch(HttpServletRequest req) {
+        Object routeMatch = req.getAttribute(PathRouter.ROUTE_MATCH_ATTRIBUTE);
+        if (routeMatch instanceof PathRouter.RouteMatch
+                && ((PathRouter.RouteMatch) routeMatch).api.getPath().equals(getPath())) {
+            return (PathRouter.RouteMatch) routeMatch;
+        }
+        return null;
+    }
+
     private String getTenantId(HttpServletRequest req) {
+        PathRouter.RouteMatch routeMatch = getRouteMatch(req);
+        if (routeMatch != null) {
+            return routeMatch.tenantId;
+        }
         String path = req.getServletPath().toLowerCase();
         String apiPath = getPath().toLowerCase();
         if (!apiPath.startsWith("/")) {
@@ -262,6 +266,10 @@ public abstract class WebserverAPI extends HttpServlet {
     }
 
     private String getAppId(HttpServletRequest req) {
+        PathRouter.RouteMatch routeMatch = getRouteMatch(req);
+        if (routeMatch != null) {
+            return routeMatch.appId;
+        }
         String path = req.getServletPath().toLowerCase();
         String apiPath = getPath().toLowerCase();
         if (!apiPath.startsWith("/")) {
@@ -300,62 +308,69 @@ public abstract class WebserverAPI extends HttpServlet {
         return connectionUriDomain;
     }
 
+    /**
+     * The tenant, config and storage of this request, which are looked up once per request instead of every time an
+     * API asks for them. It is created the first time it is needed (which is in service) and kept as a request
+     * attribute.
+     */
+    protected RequestContext getRequestContext(HttpServletRequest req) throws ServletException {
+        Object context = req.getAttribute(RequestContext.ATTRIBUTE);
+        if (context instanceof RequestContext && ((RequestContext) context).apiPath.equals(getPath())) {
+            return (RequestContext) context;
+        }
+        RequestContext newContext = new RequestContext(main, getPath(),
+                new TenantIdentifier(this.getConnectionUriDomain(req), this.getAppId(req), this.getTenantId(req)),
+                req.getHeader("cdi-version"));
+        req.setAttribute(RequestContext.ATTRIBUTE, newContext);
+        return newContext;
+    }
+
     @TestOnly
     protected TenantIdentifier getTenantIdentifierFromRequest(HttpServletRequest req) throws ServletException {
-        return new TenantIdentifier(this.getConnectionUriDomain(req), this.getAppId(req), this.getTenantId(req));
+        return getRequestContext(req).getTenantIdentifier();
     }
 
     protected TenantIdentifierWithStorage getTenantIdentifierWithStorageFromRequest(HttpServletRequest req)
             throws TenantOrAppNotFoundException, ServletException {
-        TenantIdentifier tenantIdentifier = new TenantIdentifier(this.getConnectionUriDomain(req), this.getAppId(req),
-                this.getTenantId(req));
-        Storage storage = StorageLayer.getStorage(tenantIdentifier, main);
-        return tenantIdentifier.withStorage(storage);
+        RequestContext context = getRequestContext(req);
+        return context.getTenantIdentifier().withStorage(context.getStorage());
     }
 
     protected AppIdentifierWithStorage getAppIdentifierWithStorage(HttpServletRequest req)
             throws TenantOrAppNotFoundException, ServletException {
-        TenantIdentifier tenantIdentifier = new TenantIdentifier(this.getConnectionUriDomain(req), this.getAppId(req),
-                this.getTenantId(req));
-
-        Storage storage = StorageLayer.getStorage(tenantIdentifier, main);
-        Storage[] storages = StorageLayer.getStoragesForApp(main, tenantIdentifier.toAppIdentifier());
+        RequestContext context = getRequestContext(req);
+        TenantIdentifier tenantIdentifier = context.getTenantIdentifier();
 
         return new AppIdentifierWithStorage(tenantIdentifier.getConnectionUriDomain(), tenantIdentifier.getAppId(),
-                storage, storages);
+                context.getStorage(), context.getStoragesForApp());
     }
 
     protected AppIdentifierWithStorage getAppIdentifierWithStorageFromRequestAndEnforcePublicTenant(
             HttpServletRequest req)
             throws TenantOrAppNotFoundException, BadPermissionException, ServletException {
-        TenantIdentifier tenantIdentifier = new TenantIdentifier(this.getConnectionUriDomain(req), this.getAppId(req),
-                this.getTenantId(req));
+        RequestContext context = getRequestContext(req);
+        TenantIdentifier tenantIdentifier = context.getTenantIdentifier();
 
         if (!tenantIdentifier.getTenantId().equals(TenantIdentifier.DEFAULT_TENANT_ID)) {
             throw new BadPermissionException("Only public tenantId can query across tenants");
         }
 
-        Storage storage = StorageLayer.getStorage(tenantIdentifier, main);
-        Storage[] storages = StorageLayer.getStoragesForApp(main, tenantIdentifier.toAppIdentifier());
         return new AppIdentifierWithStorage(tenantIdentifier.getConnectionUriDomain(), tenantIdentifier.getAppId(),
-                storage, storages);
+                context.getStorage(), context.getStoragesForApp());
     }
 
     protected AppIdentifierWithStorage getPublicTenantStorage(HttpServletRequest req)
             throws ServletException, TenantOrAppNotFoundException {
-        AppIdentifier appIdentifier = new AppIdentifier(this.getConnectionUriDomain(req), this.getAppId(req));
-
-        Storage storage = StorageLayer.getStorage(appIdentifier.getAsPublicTenantIdentifier(), main);
-
-        return appIdentifier.withStorage(storage);
+        RequestContext context = getRequestContext(req);
+        AppIdentifier appIdentifier = context.getTenantIdentifier().toAppIdentifier();
 
+        return appIdentifier.withStorage(context.getPublicTenantStorage());
     }
 
     protected TenantIdentifierWithStorageAndUserIdMapping getTenantIdentifierWithStorageAndUserIdMappingFromRequest(
             HttpServletRequest req, String userId, UserIdType userIdType)
             throws StorageQueryException, TenantOrAppNotFoundException, UnknownUserIdException, ServletException {
-        TenantIdentifier tenantIdentifier = new TenantIdentifier(this.getConnectionUriDomain(req), this.getAppId(req),
-                this.getTenantId(req));
+        TenantIdentifier tenantIdentifier = getRequestContext(req).getTenantIdentifier();
         return StorageLayer.getTenantIdentifierWithStorageAndUserIdMappingForUser(main, tenantIdentifier, userId,
                 userIdType);
     }
@@ -372,40 +387,18 @@ public abstract class WebserverAPI extends HttpServlet {
 
     protected boolean checkIPAccess(HttpServletRequest req, HttpServletResponse resp)
             throws TenantOrAppNotFoundException, ServletException, IOException {
-        CoreConfig config = Config.getConfig(getTenantIdentifierWithStorageFromRequest(req), main);
-        String allow = config.getIpAllowRegex();
-        String deny = config.getIpDenyRegex();
-        if (allow == null && deny == null) {
-            return true;
-        }
-        RemoteAddrFilter filter = new RemoteAddrFilter();
-        if (allow != null) {
-            try {
-                filter.setAllow(allow);
-            } catch (PatternSyntaxException e) {
-                throw new RuntimeException("should never happen");
-            }
+        CoreConfig config = getRequestContext(req).getConfig();
+        IpAccessRules rules = config.getIpAccessRules();
+        if (rules == null) {
+            // the rules are built when the config is validated, so this should never happen. We fail closed instead
+            // of letting the request through, since the config may have ip_allow_* or ip_deny_* rules set.
+            throw new IllegalStateException("IP access rules were not built for this config");
         }
-        if (deny != null) {
-            try {
-                filter.setDeny(deny);
-            } catch (PatternSyntaxException e) {
-                throw new RuntimeException("should never happen");
-            }
+        if (rules.isEmpty() || rules.isAllowed(req.getRemoteAddr())) {
+            return true;
         }
-        filter.setDenyStatus(403);
-
-        final boolean[] isAllowed = {false};
-        FilterChain dummyFilterChain = new FilterChain() {
-            @Override
-            public void doFilter(ServletRequest request, ServletResponse response)
-                    throws IOException, ServletException {
-                isAllowed[0] = true;
-            }
-        };
-
-        filter.doFilter(req, resp, dummyFilterChain);
-        return isAllowed[0];
+        resp.sendError(403);
+        return false;
     }
 
     @Override
@@ -414,16 +407,12 @@ public abstract class WebserverAPI extends HttpServlet {
 
         TenantIdentifier tenantIdentifier = null;
         try {
-            try {
-                tenantIdentifier = getTenantIdentifierWithStorageFromRequest(req);
-            } catch (TenantOrAppNotFoundException e) {
-                // we do this so that the logs that are printed out have the right "Tenant(.." info in them,
-                // otherwise it will assume the base tenant (with "" CUD), which may not be the one querying
-                // this API right now.
-                tenantIdentifier = new TenantIdentifier(this.getConnectionUriDomain(req), this.getAppId(req),
-                        this.getTenantId(req));
-                throw e;
-            }
+            RequestContext context = getRequestContext(req);
+            // we set this before looking up the tenant's storage so that if the tenant is not found, the logs that
+            // are printed out have the right "Tenant(.." info in them, otherwise it will assume the base tenant
+            // (with "" CUD), which may not be the one querying this API right now.
+            tenantIdentifier = context.getTenantIdentifier();
+            context.getStorage();
 
             if (!this.checkIPAccess(req, resp)) {
                 // IP access denied and the filter has already sent the response
@@ -446,11 +435,12 @@ public abstract class WebserverAPI extends HttpServlet {
             if (this.versionNeeded(req)) {
                 assertThatVersionIsCompatible(version);
                 Logging.info(main, tenantIdentifier,
-                        "API called: " + req.getRequestURI() + ". Method: " + req.getMethod() + ". Version: " + version,
+                        () -> "API called: " + req.getRequestURI() + ". Method: " + req.getMethod() + ". Version: " +
+                                version,
                         false);
             } else {
                 Logging.info(main, tenantIdentifier,
-                        "API called: " + req.getRequestURI() + ". Method: " + req.getMethod(), false);
+                        () -> "API called: " + req.getRequestURI() + ". Method: " + req.getMethod(), false);
             }
             super.service(req, resp);
 
@@ -469,6 +459,8 @@ public abstract class WebserverAPI extends HttpServlet {
                 sendTextResponse(402, e.getMessage(), resp);
             } else if (e instanceof BadPermissionException) {
                 sendTextResponse(403, e.getMessage(), resp);
+            } else if (e instanceof PasswordHashingOverloadedException) {
+                sendTextResponse(503, e.getMessage(), resp);
             } else if (e instanceof ServletException) {
                 ServletException se = (ServletException) e;
                 Throwable rootCause = se.getRootCause();
@@ -484,6 +476,8 @@ public abstract class WebserverAPI extends HttpServlet {
                             resp);
                 } else if (rootCause instanceof BadPermissionException) {
                     sendTextResponse(403, rootCause.getMessage(), resp);
+                } else if (rootCause instanceof PasswordHashingOverloadedException) {
+                    sendTextResponse(503, rootCause.getMessage(), resp);
                 } else {
                     sendTextResponse(500, "Internal Error", resp);
                 }
@@ -491,8 +485,8 @@ public abstract class WebserverAPI extends HttpServlet {
                 sendTextResponse(500, "Internal Error", resp);
             }
         }
-        Logging.info(main, tenantIdentifier, "API ended: " + req.getRequestURI() + ". Method: " + req.getMethod(),
-                false);
+        Logging.info(main, tenantIdentifier,
+                () -> "API ended: " + req.getRequestURI() + ". Method: " + req.getMethod(), false);
         try {
             RequestStats.getInstance(main, tenantIdentifier.toAppIdentifier()).updateRequestStats();
         } catch (TenantOrAppNotFoundException e) {
@@ -506,21 +500,7 @@ public abstract class WebserverAPI extends HttpServlet {
 
     protected SemVer getVersionFromRequest(HttpServletRequest req) throws ServletException {
         try {
-            SemVer maxCDIVersion = getLatestCDIVersionForRequest(req);
-            String version = req.getHeader("cdi-version");
-
-            if (version != null) {
-                SemVer versionFromRequest = new SemVer(version);
-
-                if (versionFromRequest.greaterThan(maxCDIVersion)) {
-                    throw new ServletException(
-                            new BadRequestException("cdi-version " + versionFromRequest + " not supported"));
-                }
-
-                return versionFromRequest;
-            }
-
-            return maxCDIVersion;
+            return getRequestContext(req).getVersion();
         } catch (TenantOrAppNotFoundException e) {
             throw new ServletException(e);
         }
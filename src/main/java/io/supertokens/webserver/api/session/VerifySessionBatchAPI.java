@@ -0,0 +1,145 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.webserver.api.session;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.supertokens.Main;
+import io.supertokens.exceptions.AccessTokenPayloadError;
+import io.supertokens.exceptions.TryRefreshTokenException;
+import io.supertokens.exceptions.UnauthorisedException;
+import io.supertokens.jwt.exceptions.UnsupportedJWTSigningAlgorithmException;
+import io.supertokens.output.Logging;
+import io.supertokens.pluginInterface.RECIPE_ID;
+import io.supertokens.pluginInterface.exceptions.StorageQueryException;
+import io.supertokens.pluginInterface.exceptions.StorageTransactionLogicException;
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
+import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
+import io.supertokens.session.Session;
+import io.supertokens.session.info.SessionVerificationResult;
+import io.supertokens.utils.SemVer;
+import io.supertokens.utils.Utils;
+import io.supertokens.webserver.InputParser;
+import io.supertokens.webserver.WebserverAPI;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VerifySessionBatchAPI extends WebserverAPI {
+
+    private static final long serialVersionUID = 3722584395310424547L;
+
+    public static final int MAX_SESSIONS_PER_REQUEST = 100;
+
+    public VerifySessionBatchAPI(Main main) {
+        super(main, RECIPE_ID.SESSION.toString());
+    }
+
+    @Override
+    public String getPath() {
+        return "/recipe/session/verify/batch";
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException, ServletException {
+        if (super.getVersionFromRequest(req).lesserThan(SemVer.v5_1)) {
+            super.sendTextResponse(404, "Not found", resp);
+            return;
+        }
+
+        // API is app specific, but the sessions are fetched based on tenantId obtained from each accessToken
+        JsonObject input = InputParser.parseJsonObjectOrThrowError(req);
+        JsonArray sessions = InputParser.parseArrayOrThrowError(input, "sessions", false);
+        assert sessions != null;
+        Boolean doAntiCsrfCheck = InputParser.parseBooleanOrThrowError(input, "doAntiCsrfCheck", false);
+        assert doAntiCsrfCheck != null;
+        Boolean enableAntiCsrf = InputParser.parseBooleanOrThrowError(input, "enableAntiCsrf", false);
+        assert enableAntiCsrf != null;
+        boolean checkDatabase = Boolean.TRUE.equals(
+                InputParser.parseBooleanOrThrowError(input, "checkDatabase", false));
+
+        if (sessions.size() == 0 || sessions.size() > MAX_SESSIONS_PER_REQUEST) {
+            throw new ServletException(new BadRequestException(
+                    "'sessions' must contain between 1 and " + MAX_SESSIONS_PER_REQUEST + " items"));
+        }
+
+        List<String> accessTokens = new ArrayList<>(sessions.size());
+        List<String> antiCsrfTokens = new ArrayList<>(sessions.size());
+        for (JsonElement session : sessions) {
+            if (!session.isJsonObject()) {
+                throw new ServletException(
+                        new BadRequestException("Field name 'sessions' is invalid in JSON input"));
+            }
+            String accessToken = InputParser.parseStringOrThrowError(session.getAsJsonObject(), "accessToken",
+                    false);
+            assert accessToken != null;
+            accessTokens.add(accessToken);
+            antiCsrfTokens.add(InputParser.parseStringOrThrowError(session.getAsJsonObject(), "antiCsrfToken",
+                    true));
+        }
+
+        AppIdentifier appIdentifier;
+        try {
+            // We actually don't use the storage because tenantId is obtained from the accessToken,
+            // and appropriate storage is obtained later
+            appIdentifier = this.getAppIdentifierWithStorage(req);
+        } catch (TenantOrAppNotFoundException e) {
+            throw new ServletException(e);
+        }
+
+        try {
+            List<SessionVerificationResult> verificationResults = Session.getSessions(appIdentifier, main,
+                    accessTokens, antiCsrfTokens, enableAntiCsrf, doAntiCsrfCheck, checkDatabase);
+
+            JsonArray results = new JsonArray();
+            for (SessionVerificationResult verificationResult : verificationResults) {
+                JsonObject result;
+                if (verificationResult.sessionInfo != null) {
+                    result = verificationResult.sessionInfo.toJsonObject();
+                    result.addProperty("status", "OK");
+                } else {
+                    Logging.debug(main, appIdentifier.getAsPublicTenantIdentifier(),
+                            Utils.exceptionStacktraceToString(verificationResult.error));
+                    result = new JsonObject();
+                    if (verificationResult.error instanceof AccessTokenPayloadError) {
+                        result.addProperty("status", "INVALID_ACCESS_TOKEN_PAYLOAD");
+                    } else if (verificationResult.error instanceof UnauthorisedException) {
+                        result.addProperty("status", "UNAUTHORISED");
+                    } else {
+                        assert verificationResult.error instanceof TryRefreshTokenException;
+                        result.addProperty("status", "TRY_REFRESH_TOKEN");
+                    }
+                    result.addProperty("message", verificationResult.error.getMessage());
+                }
+                results.add(result);
+            }
+
+            JsonObject reply = new JsonObject();
+            reply.addProperty("status", "OK");
+            reply.add("sessions", results);
+            super.sendJsonResponse(200, reply, resp);
+        } catch (StorageQueryException | StorageTransactionLogicException | TenantOrAppNotFoundException |
+                 UnsupportedJWTSigningAlgorithmException e) {
+            throw new ServletException(e);
+        }
+    }
+}
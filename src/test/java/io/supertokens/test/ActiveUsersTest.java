@@ -4,9 +4,17 @@ import com.google.gson.JsonObject;
 import io.supertokens.ActiveUsers;
 import io.supertokens.Main;
 import io.supertokens.ProcessState;
+import io.supertokens.authRecipe.AuthRecipe;
+import io.supertokens.cronjobs.CronTaskTest;
+import io.supertokens.cronjobs.flushActiveUsers.FlushActiveUsers;
+import io.supertokens.emailpassword.EmailPassword;
 import io.supertokens.featureflag.EE_FEATURES;
 import io.supertokens.featureflag.FeatureFlagTestContent;
+import io.supertokens.pluginInterface.ActiveUsersStorage;
 import io.supertokens.pluginInterface.STORAGE_TYPE;
+import io.supertokens.pluginInterface.Storage;
+import io.supertokens.pluginInterface.authRecipe.AuthRecipeUserInfo;
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
 import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.test.httpRequest.HttpRequestForTesting;
@@ -21,6 +29,7 @@ import org.junit.rules.TestRule;
 
 import java.util.HashMap;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThrows;
 
@@ -70,6 +79,140 @@ public class ActiveUsersTest {
         assert ActiveUsers.countUsersActiveSince(main, now) == 2; // user1 and user2 are counted
     }
 
+    @Test
+    public void testThatLastActiveUpdatesAreBufferedAndWrittenOncePerUser() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        // so that only the test flushes the buffer
+        CronTaskTest.getInstance(process.getProcess()).setIntervalInSeconds(FlushActiveUsers.RESOURCE_KEY, 3600);
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        Main main = process.getProcess();
+        ActiveUsers activeUsers = ActiveUsers.getInstance(main);
+        activeUsers.setBufferingEnabledForTesting(true);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 100; i++) {
+            ActiveUsers.updateLastActive(main, "user1");
+        }
+        ActiveUsers.updateLastActive(main, "user2");
+
+        // nothing is written until the buffer is flushed
+        assertEquals(0, ActiveUsers.countUsersActiveSince(main, now));
+        assertEquals(2, activeUsers.getPendingUpdateCount());
+        assertEquals(99, activeUsers.getCoalescedUpdateCount());
+
+        ActiveUsers.flush(main);
+        assertEquals(2, ActiveUsers.countUsersActiveSince(main, now));
+        assertEquals(0, activeUsers.getPendingUpdateCount());
+        assertEquals(2, activeUsers.getWrittenUpdateCount());
+
+        // user1 was just written, so it's not written again
+        ActiveUsers.updateLastActive(main, "user1");
+        assertEquals(0, activeUsers.getPendingUpdateCount());
+        assertEquals(100, activeUsers.getCoalescedUpdateCount());
+
+        // the buffer is flushed when the core shuts down
+        ActiveUsers.updateLastActive(main, "user3");
+        assertEquals(1, activeUsers.getPendingUpdateCount());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+
+        assertEquals(0, activeUsers.getPendingUpdateCount());
+        assertEquals(3, activeUsers.getWrittenUpdateCount());
+    }
+
+    @Test
+    public void testThatDeletedLinkedUsersAreNotWrittenWhenTheBufferIsFlushed() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{
+                        EE_FEATURES.ACCOUNT_LINKING});
+        // so that only the test flushes the buffer
+        CronTaskTest.getInstance(process.getProcess()).setIntervalInSeconds(FlushActiveUsers.RESOURCE_KEY, 3600);
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        Main main = process.getProcess();
+        AuthRecipeUserInfo r1 = EmailPassword.signUp(main, "test@example.com", "pass123");
+        AuthRecipeUserInfo r2 = EmailPassword.signUp(main, "test2@example.com", "pass123");
+        AuthRecipe.createPrimaryUser(main, r2.getSupertokensUserId());
+        AuthRecipe.linkAccounts(main, r1.getSupertokensUserId(), r2.getSupertokensUserId());
+
+        ActiveUsers activeUsers = ActiveUsers.getInstance(main);
+        activeUsers.setBufferingEnabledForTesting(true);
+        long now = System.currentTimeMillis();
+
+        ActiveUsers.updateLastActive(main, r1.getSupertokensUserId());
+        ActiveUsers.updateLastActive(main, r2.getSupertokensUserId());
+        assertEquals(2, activeUsers.getPendingUpdateCount());
+
+        // deleting the primary user deletes the linked user as well, so neither of them must be written
+        AuthRecipe.deleteUser(main, r2.getSupertokensUserId());
+        assertEquals(0, activeUsers.getPendingUpdateCount());
+
+        ActiveUsers.flush(main);
+        assertEquals(0, ActiveUsers.countUsersActiveSince(main, now));
+        assertEquals(0, activeUsers.getWrittenUpdateCount());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testThatActiveUsersSinceEachDayAreTheSameAsCountingEachDay() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        Main main = process.getProcess();
+        Storage storage = StorageLayer.getStorage(main);
+        AppIdentifier appIdentifier = new AppIdentifier(null, null);
+        long now = System.currentTimeMillis();
+        long today = now - (now % (24 * 60 * 60 * 1000L));
+
+        for (int i = 0; i < 5; i++) {
+            ActiveUsers.updateLastActive(main, "user" + i);
+        }
+
+        int[] counts = ActiveUsers.countUsersActiveSinceEachDay(storage, appIdentifier, today, 30);
+        int[] mfaCounts = ActiveUsers.countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSinceEachDay(
+                storage, appIdentifier, today, 30);
+        int[] accountLinkingCounts = ActiveUsers.countUsersThatHaveMoreThanOneLoginMethodAndActiveSinceEachDay(
+                storage, appIdentifier, today, 30);
+        assertEquals(30, counts.length);
+        for (int i = 0; i < 30; i++) {
+            long timestamp = today - (i * 24 * 60 * 60 * 1000L);
+            assertEquals(5, counts[i]);
+            assertEquals(ActiveUsers.countUsersActiveSince(main, timestamp), counts[i]);
+            assertEquals(((ActiveUsersStorage) storage).countUsersThatHaveMoreThanOneLoginMethodOrTOTPEnabledAndActiveSince(
+                    appIdentifier, timestamp), mfaCounts[i]);
+            assertEquals(((ActiveUsersStorage) storage).countUsersThatHaveMoreThanOneLoginMethodAndActiveSince(
+                    appIdentifier, timestamp), accountLinkingCounts[i]);
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
     @Test
     public void activeUserCountAPITest() throws Exception {
         String[] args = {"../"};
@@ -42,6 +42,8 @@ import org.reflections.Reflections;
 import org.w3c.dom.css.Counter;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -212,7 +214,7 @@ public class CronjobTest {
             super("PerTenantCronjob", main, tenantsInfo, false);
         }
 
-        Set<TenantIdentifier> tenantIdentifiers = new HashSet<>();
+        Set<TenantIdentifier> tenantIdentifiers = ConcurrentHashMap.newKeySet();
 
         public static PerTenantCronjob getInstance(Main main, List<List<TenantIdentifier>> tenantsInfo) {
             try {
@@ -247,7 +249,7 @@ public class CronjobTest {
             super("PerTenantCronjob", main, tenantsInfo, true);
         }
 
-        Set<AppIdentifier> appIdentifiers = new HashSet<>();
+        Set<AppIdentifier> appIdentifiers = ConcurrentHashMap.newKeySet();
 
         public static PerAppCronjob getInstance(Main main, List<List<TenantIdentifier>> tenantsInfo) {
             try {
@@ -274,6 +276,65 @@ public class CronjobTest {
         }
     }
 
+    static class SlowPerAppCronjob extends CronTask {
+        private static final String RESOURCE_ID = "io.supertokens.test.CronjobTest.SlowPerAppCronjob";
+
+        private SlowPerAppCronjob(Main main, List<List<TenantIdentifier>> tenantsInfo) {
+            super("SlowPerAppCronjob", main, tenantsInfo, true);
+        }
+
+        Set<AppIdentifier> appIdentifiers = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxRunning = new AtomicInteger(0);
+        // if not null, the apps wait for it, ignoring interrupts
+        volatile CountDownLatch release = null;
+        volatile int sleepMs = 200;
+        List<AppIdentifier> startedApps = Collections.synchronizedList(new ArrayList<>());
+
+        public static SlowPerAppCronjob getInstance(Main main, List<List<TenantIdentifier>> tenantsInfo) {
+            try {
+                return (SlowPerAppCronjob) main.getResourceDistributor().getResource(new TenantIdentifier(null, null, null), RESOURCE_ID);
+            } catch (TenantOrAppNotFoundException e) {
+                return (SlowPerAppCronjob) main.getResourceDistributor()
+                        .setResource(new TenantIdentifier(null, null, null), RESOURCE_ID, new SlowPerAppCronjob(main, tenantsInfo));
+            }
+        }
+
+        @Override
+        public int getIntervalTimeSeconds() {
+            return 1;
+        }
+
+        @Override
+        public int getInitialWaitTimeSeconds() {
+            return 0;
+        }
+
+        @Override
+        protected void doTaskPerApp(AppIdentifier app) throws Exception {
+            startedApps.add(app);
+            int curr = running.incrementAndGet();
+            maxRunning.accumulateAndGet(curr, Math::max);
+            try {
+                CountDownLatch latch = release;
+                if (latch == null) {
+                    Thread.sleep(sleepMs);
+                } else {
+                    while (true) {
+                        try {
+                            latch.await();
+                            break;
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                }
+                appIdentifiers.add(app);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
     static class PerUserPoolCronjob extends CronTask {
         private static final String RESOURCE_ID = "io.supertokens.test.CronjobTest.NormalCronjob";
 
@@ -281,7 +342,7 @@ public class CronjobTest {
             super("PerTenantCronjob", main, tenantsInfo, false);
         }
 
-        Set<Storage> storages = new HashSet<>();
+        Set<Storage> storages = ConcurrentHashMap.newKeySet();
 
         public static PerUserPoolCronjob getInstance(Main main, List<List<TenantIdentifier>> tenantsInfo) {
             try {
@@ -705,6 +766,192 @@ public class CronjobTest {
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
     }
 
+    @Test
+    public void testThatAppsOfAPerAppCronTaskRunInParallelAndOverlappingRunsAreSkipped() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Multitenancy.addNewOrUpdateAppOrTenant(process.getProcess(), new TenantConfig(
+                    new TenantIdentifier(null, "a" + i, null),
+                    new EmailPasswordConfig(true),
+                    new ThirdPartyConfig(true, null),
+                    new PasswordlessConfig(true),
+                    null, null,
+                    new JsonObject()
+            ), false);
+        }
+
+        List<List<TenantIdentifier>> uniqueUserPoolIdsTenants = StorageLayer.getTenantsWithUniqueUserPoolId(process.getProcess());
+        SlowPerAppCronjob cronjob = SlowPerAppCronjob.getInstance(process.getProcess(), uniqueUserPoolIdsTenants);
+        assertEquals(-1, cronjob.getLastRunDurationMs());
+
+        // the 4 apps share the same db, so 2 of them run at a time
+        cronjob.run();
+        assertEquals(4, cronjob.appIdentifiers.size());
+        assertEquals(2, cronjob.maxRunning.get());
+        assertEquals(1, cronjob.getRunCount());
+        assertTrue(cronjob.getLastRunDurationMs() >= 400);
+
+        // the run waits for its apps for at most the interval of the task, and is then skipped till they are done
+        cronjob.appIdentifiers.clear();
+        CountDownLatch release = new CountDownLatch(1);
+        cronjob.release = release;
+        long start = System.currentTimeMillis();
+        cronjob.run();
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertEquals(2, cronjob.getRunCount());
+        assertEquals(2, cronjob.running.get());
+
+        cronjob.run();
+        assertEquals(2, cronjob.getRunCount());
+        assertEquals(1, cronjob.getSkippedRunCount());
+
+        release.countDown();
+        while (cronjob.running.get() > 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        cronjob.release = null;
+        cronjob.run();
+        assertEquals(3, cronjob.getRunCount());
+        assertEquals(4, cronjob.appIdentifiers.size());
+        assertTrue(cronjob.getTotalRunDurationMs() >= cronjob.getLastRunDurationMs());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testThatAppsLeftOutOfATimedOutRunAreRunFirstInTheNextRun() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Multitenancy.addNewOrUpdateAppOrTenant(process.getProcess(), new TenantConfig(
+                    new TenantIdentifier(null, "a" + i, null),
+                    new EmailPasswordConfig(true),
+                    new ThirdPartyConfig(true, null),
+                    new PasswordlessConfig(true),
+                    null, null,
+                    new JsonObject()
+            ), false);
+        }
+
+        List<List<TenantIdentifier>> uniqueUserPoolIdsTenants = StorageLayer.getTenantsWithUniqueUserPoolId(process.getProcess());
+        SlowPerAppCronjob cronjob = SlowPerAppCronjob.getInstance(process.getProcess(), uniqueUserPoolIdsTenants);
+
+        // 2 apps run at a time, so in the 1 second interval, the first 2 of the 4 apps finish and the next 2 are
+        // interrupted
+        cronjob.sleepMs = 600;
+        cronjob.run();
+        assertEquals(2, cronjob.appIdentifiers.size());
+        assertEquals(4, cronjob.startedApps.size());
+        Set<AppIdentifier> doneInFirstRun = new HashSet<>(cronjob.appIdentifiers);
+        while (cronjob.running.get() > 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+
+        // the apps that were not done go first in the next run, which also times out
+        cronjob.appIdentifiers.clear();
+        cronjob.startedApps.clear();
+        cronjob.run();
+        assertEquals(2, cronjob.getRunCount());
+        assertEquals(2, cronjob.appIdentifiers.size());
+        for (AppIdentifier app : cronjob.appIdentifiers) {
+            assertFalse(doneInFirstRun.contains(app));
+        }
+        assertFalse(doneInFirstRun.contains(cronjob.startedApps.get(0)));
+        assertFalse(doneInFirstRun.contains(cronjob.startedApps.get(1)));
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testThatATaskHoldingTheWorkersDoesNotStopOtherTasksFromRunning() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Multitenancy.addNewOrUpdateAppOrTenant(process.getProcess(), new TenantConfig(
+                    new TenantIdentifier(null, "a" + i, null),
+                    new EmailPasswordConfig(true),
+                    new ThirdPartyConfig(true, null),
+                    new PasswordlessConfig(true),
+                    null, null,
+                    new JsonObject()
+            ), false);
+        }
+
+        List<List<TenantIdentifier>> uniqueUserPoolIdsTenants = StorageLayer.getTenantsWithUniqueUserPoolId(process.getProcess());
+
+        // each slow task holds 2 workers till it is released, so together they hold all the workers
+        CountDownLatch release = new CountDownLatch(1);
+        List<SlowPerAppCronjob> slowTasks = new ArrayList<>();
+        List<Thread> slowTaskThreads = new ArrayList<>();
+        for (int i = 0; i < Cronjobs.NUMBER_OF_WORKERS; i++) {
+            SlowPerAppCronjob slowTask = new SlowPerAppCronjob(process.getProcess(), uniqueUserPoolIdsTenants);
+            slowTask.release = release;
+            slowTasks.add(slowTask);
+            Thread thread = new Thread(slowTask);
+            thread.start();
+            slowTaskThreads.add(thread);
+        }
+        while (slowTasks.stream().mapToInt(slowTask -> slowTask.running.get()).sum() < Cronjobs.NUMBER_OF_WORKERS) {
+            Thread.sleep(10);
+        }
+
+        PerAppCronjob task = PerAppCronjob.getInstance(process.getProcess(), uniqueUserPoolIdsTenants);
+        Thread taskThread = new Thread(task);
+        taskThread.start();
+
+        // the task waits for a worker for longer than its interval, without giving up on its apps
+        Thread.sleep(1500);
+        assertEquals(0, task.appIdentifiers.size());
+        assertTrue(taskThread.isAlive());
+
+        release.countDown();
+        taskThread.join();
+        assertEquals(4, task.appIdentifiers.size());
+        assertEquals(1, task.getRunCount());
+
+        for (Thread thread : slowTaskThreads) {
+            thread.join();
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
     @Test
     public void testPerUserPoolCronTask() throws Exception {
         String[] args = {"../"};
@@ -849,6 +1096,75 @@ public class CronjobTest {
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
     }
 
+    private static boolean isEmailPasswordEnabledInCore(TestingProcessManager.TestingProcess process,
+                                                        TenantIdentifier tenantIdentifier) {
+        return MultitenancyHelper.getInstance(process.getProcess()).getTenantRegistry()
+                .getTenant(tenantIdentifier).emailPasswordConfig.enabled;
+    }
+
+    @Test
+    public void testThatCoreOnlyReadsTenantsFromDbWhenTheTenantConfigVersionChanges() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        CronTaskTest.getInstance(process.getProcess()).setIntervalInSeconds(SyncCoreConfigWithDb.RESOURCE_KEY,
+                3);
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        if (StorageLayer.isInMemDb(process.getProcess())) {
+            return;
+        }
+
+        MultitenancyHelper.getInstance(process.getProcess()).setFullRefreshIntervalForTesting(3600 * 1000);
+
+        TenantIdentifier t1 = new TenantIdentifier(null, "a1", null);
+        Multitenancy.addNewOrUpdateAppOrTenant(process.getProcess(), new TenantConfig(
+                t1,
+                new EmailPasswordConfig(false),
+                new ThirdPartyConfig(false, null),
+                new PasswordlessConfig(false),
+                null, null,
+                new JsonObject()
+        ), false);
+        assertFalse(isEmailPasswordEnabledInCore(process, t1));
+
+        // changing the tenant directly in the db doesn't change the tenant config version
+        MultitenancyStorage storage = (MultitenancyStorage) StorageLayer.getStorage(process.getProcess());
+        storage.overwriteTenantConfig(new TenantConfig(
+                t1,
+                new EmailPasswordConfig(true),
+                new ThirdPartyConfig(false, null),
+                new PasswordlessConfig(false),
+                null, null,
+                new JsonObject()
+        ));
+
+        // so neither the cronjob, nor a lookup of a tenant that doesn't exist, reads the tenants again
+        Thread.sleep(3100);
+        try {
+            StorageLayer.getStorage(new TenantIdentifier(null, "doesnotexist", null), process.getProcess());
+            fail();
+        } catch (TenantOrAppNotFoundException ignored) {
+        }
+        assertFalse(isEmailPasswordEnabledInCore(process, t1));
+
+        // this is what a core does after it changes a tenant
+        MultitenancyHelper.getInstance(process.getProcess()).updateTenantConfigVersion();
+
+        Thread.sleep(3100);
+        assertTrue(isEmailPasswordEnabledInCore(process, t1));
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
     @Test
     public void testThatReAddingSameCronTaskDoesNotScheduleMoreExecutors() throws Exception {
         String[] args = {"../"};
@@ -947,7 +1263,7 @@ public class CronjobTest {
 
         {
             List<List<List<TenantIdentifier>>> tenantsInfos = Cronjobs.getInstance(process.getProcess()).getTenantInfos();
-            assertEquals(10, tenantsInfos.size());
+            assertEquals(11, tenantsInfos.size());
             int count = 0;
             for (List<List<TenantIdentifier>> tenantsInfo : tenantsInfos) {
                 if (tenantsInfo != null) {
@@ -973,7 +1289,7 @@ public class CronjobTest {
         // we expect the state of the tenantsInfo to be same after core restart
         {
             List<List<List<TenantIdentifier>>> tenantsInfos = Cronjobs.getInstance(process.getProcess()).getTenantInfos();
-            assertEquals(10, tenantsInfos.size());
+            assertEquals(11, tenantsInfos.size());
             int count = 0;
             for (List<List<TenantIdentifier>> tenantsInfo : tenantsInfos) {
                 if (tenantsInfo != null) {
@@ -1025,6 +1341,7 @@ public class CronjobTest {
         intervals.put("io.supertokens.cronjobs.deleteExpiredDashboardSessions.DeleteExpiredDashboardSessions", 43200);
         intervals.put("io.supertokens.cronjobs.telemetry.Telemetry", 86400);
         intervals.put("io.supertokens.cronjobs.deleteExpiredAccessTokenSigningKeys.DeleteExpiredAccessTokenSigningKeys", 86400);
+        intervals.put("io.supertokens.cronjobs.flushActiveUsers.FlushActiveUsers", 10);
 
         Map<String, Integer> delays = new HashMap<>();
         delays.put("io.supertokens.ee.cronjobs.EELicenseCheck", 86400);
@@ -1037,9 +1354,10 @@ public class CronjobTest {
         delays.put("io.supertokens.cronjobs.deleteExpiredDashboardSessions.DeleteExpiredDashboardSessions", 0);
         delays.put("io.supertokens.cronjobs.telemetry.Telemetry", 0);
         delays.put("io.supertokens.cronjobs.deleteExpiredAccessTokenSigningKeys.DeleteExpiredAccessTokenSigningKeys", 0);
+        delays.put("io.supertokens.cronjobs.flushActiveUsers.FlushActiveUsers", 10);
 
         List<CronTask> allTasks = Cronjobs.getInstance(process.getProcess()).getTasks();
-        assertEquals(10, allTasks.size());
+        assertEquals(11, allTasks.size());
 
         for (CronTask task : allTasks) {
             assertEquals(intervals.get(task.getClass().getName()).intValue(), task.getIntervalTimeSeconds());
@@ -0,0 +1,164 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.test;
+
+import io.supertokens.inmemorydb.Lock;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InMemoryDBLockTest {
+    @Rule
+    public TestRule watchman = Utils.getOnFailure();
+
+    @AfterClass
+    public static void afterTesting() {
+        Utils.afterTesting();
+    }
+
+    @Before
+    public void beforeEach() {
+        Utils.reset();
+    }
+
+    @Test
+    public void waitersGetTheKeyInTheOrderTheyAskedForIt() throws Exception {
+        Lock lock = new Lock();
+        lock.lock("key");
+
+        List<Integer> acquiredOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                lock.lock("key");
+                acquiredOrder.add(id);
+                lock.unlock("key");
+            });
+            thread.start();
+            threads.add(thread);
+            // we wait for the thread to be queued, so that the order of the queue is known
+            while (lock.getWaitingThreadCount() != i + 1) {
+                Thread.sleep(1);
+            }
+        }
+
+        // other keys are not blocked by the one that is locked
+        lock.lock("otherKey");
+        lock.unlock("otherKey");
+        assertTrue(acquiredOrder.isEmpty());
+
+        lock.unlock("key");
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertEquals(List.of(0, 1, 2), acquiredOrder);
+        assertEquals(0, lock.getWaitingThreadCount());
+        assertEquals(6, lock.getAcquisitionCount());
+        assertEquals(3, lock.getContendedAcquisitionCount());
+        assertEquals(3, lock.getMaxQueueDepth());
+        assertTrue(lock.getMaxWaitTimeNanos() > 0);
+        assertTrue(lock.getTotalWaitTimeNanos() >= lock.getMaxWaitTimeNanos());
+
+        List<Map.Entry<String, Long>> hottestKeys = lock.getHottestKeys(10);
+        assertEquals(1, hottestKeys.size());
+        assertEquals("key", hottestKeys.get(0).getKey());
+        assertEquals(3L, (long) hottestKeys.get(0).getValue());
+    }
+
+    @Test
+    public void unlockingAKeyThatIsNotLockedDoesNothing() {
+        Lock lock = new Lock();
+        lock.unlock("key");
+        lock.lock("key");
+        lock.unlock("key");
+        lock.lock("key");
+        lock.unlock("key");
+        assertEquals(2, lock.getAcquisitionCount());
+        assertEquals(0, lock.getContendedAcquisitionCount());
+    }
+
+    /**
+     * A small benchmark of lock / unlock throughput as the number of threads grows. Each thread works on keys that
+     * are mostly different from the ones of the other threads, which is what concurrent sign ups and session
+     * refreshes look like. The test checks that the locks were exclusive and that the contention stats are consistent.
+     */
+    @Test
+    public void lockThroughputWithIncreasingNumberOfThreads() throws Exception {
+        int operationsPerThread = 200000;
+        int keysPerThread = 256;
+
+        for (int numberOfThreads : new int[]{1, 2, 4, 8}) {
+            Lock lock = new Lock();
+            // a few keys are shared by all threads so that there is some contention
+            int[] sharedCounters = new int[4];
+            ExecutorService es = Executors.newFixedThreadPool(numberOfThreads);
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numberOfThreads; t++) {
+                int threadId = t;
+                futures.add(es.submit(() -> {
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        if (i % 64 == 0) {
+                            int shared = i % sharedCounters.length;
+                            lock.lock("shared" + shared);
+                            sharedCounters[shared]++;
+                            lock.unlock("shared" + shared);
+                        } else {
+                            String key = "thread" + threadId + "~" + (i % keysPerThread);
+                            lock.lock(key);
+                            lock.unlock(key);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            es.shutdown();
+            assertTrue(es.awaitTermination(1, TimeUnit.MINUTES));
+
+            int sharedTotal = 0;
+            for (int counter : sharedCounters) {
+                sharedTotal += counter;
+            }
+            assertEquals(numberOfThreads * ((operationsPerThread + 63) / 64), sharedTotal);
+            assertEquals((long) numberOfThreads * operationsPerThread, lock.getAcquisitionCount());
+
+            assertTrue(lock.getContendedAcquisitionCount() <= lock.getAcquisitionCount());
+            // a thread waits for at most all the other threads
+            assertTrue(lock.getMaxQueueDepth() <= numberOfThreads - 1);
+            if (numberOfThreads == 1) {
+                assertEquals(0, lock.getContendedAcquisitionCount());
+            }
+        }
+    }
+}
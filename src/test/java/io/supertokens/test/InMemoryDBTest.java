@@ -23,6 +23,7 @@ import io.supertokens.Main;
 import io.supertokens.ProcessState;
 import io.supertokens.exceptions.TryRefreshTokenException;
 import io.supertokens.exceptions.UnauthorisedException;
+import io.supertokens.inmemorydb.ConnectionPool;
 import io.supertokens.passwordless.Passwordless;
 import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
 import io.supertokens.pluginInterface.session.SessionStorage;
@@ -857,4 +858,50 @@ public class InMemoryDBTest {
         assertFalse(process.getProcess().isForceInMemoryDB());
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
     }
+
+    @Test
+    public void connectionsAndPreparedStatementsAreReused() throws Exception {
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        process.getProcess().setForceInMemoryDB();
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        ConnectionPool pool = ConnectionPool.getInstance(
+                (io.supertokens.inmemorydb.Start) StorageLayer.getStorage(process.getProcess()));
+        assertEquals(10, pool.getPoolSize());
+
+        long hitsBefore = pool.getStatementCacheHitCount();
+        for (int i = 0; i < 10; i++) {
+            SessionInformationHolder sessionInfo = Session.createNewSession(process.getProcess(), "userId",
+                    new JsonObject(), new JsonObject(), false, AccessToken.getLatestVersion(), false);
+            Session.getSession(process.getProcess(), sessionInfo.accessToken.token, null, false, false, true);
+        }
+
+        assertTrue(pool.getStatementCacheHitCount() > hitsBefore);
+        assertEquals(0, pool.getConnectionsInUse());
+        assertEquals(0, pool.getOverflowConnectionCount());
+        assertTrue(pool.getMaxConnectionsInUse() >= 1 && pool.getMaxConnectionsInUse() <= pool.getPoolSize());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void connectionPoolSizeCanBeConfigured() throws Exception {
+        Utils.setValueInConfig("sqlite_connection_pool_size", "3");
+
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        process.getProcess().setForceInMemoryDB();
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        ConnectionPool pool = ConnectionPool.getInstance(
+                (io.supertokens.inmemorydb.Start) StorageLayer.getStorage(process.getProcess()));
+        assertEquals(3, pool.getPoolSize());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
 }
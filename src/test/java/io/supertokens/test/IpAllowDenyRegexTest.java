@@ -20,6 +20,8 @@ import com.google.gson.JsonObject;
 import io.supertokens.ProcessState;
 import io.supertokens.ProcessState.PROCESS_STATE;
 import io.supertokens.config.Config;
+import io.supertokens.config.CoreConfig;
+import io.supertokens.config.IpAccessRules;
 import io.supertokens.exceptions.QuitProgramException;
 import io.supertokens.featureflag.EE_FEATURES;
 import io.supertokens.featureflag.FeatureFlagTestContent;
@@ -30,11 +32,19 @@ import io.supertokens.pluginInterface.STORAGE_TYPE;
 import io.supertokens.pluginInterface.multitenancy.*;
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.test.TestingProcessManager.TestingProcess;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.filters.RemoteAddrFilter;
 import org.junit.*;
 import org.junit.rules.TestRule;
 import org.mockito.Mockito;
 
 import java.io.*;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
 
 import static junit.framework.TestCase.assertEquals;
 import static org.junit.Assert.*;
@@ -455,4 +465,215 @@ public class IpAllowDenyRegexTest extends Mockito {
             assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
         }
     }
+
+    @Test
+    public void InvalidCidrErrorForIpAllowAndDeny() throws InterruptedException, IOException {
+        String[] values = new String[]{"\"127.0.0.1/33\"", "\"localhost\"", "\"10.0.0.0/x\"", "\"::1/129\""};
+        for (String config : new String[]{"ip_allow_cidr", "ip_deny_cidr"}) {
+            for (String value : values) {
+                Utils.reset();
+                String[] args = {"../"};
+                Utils.setValueInConfig(config, value);
+                TestingProcess process = TestingProcessManager.start(args);
+                ProcessState.EventAndException e = process.checkOrWaitForEvent(
+                        ProcessState.PROCESS_STATE.INIT_FAILURE);
+                assertNotNull(e);
+                assertTrue(e.exception.getMessage().contains("Invalid " + config + " config"));
+
+                process.kill();
+                assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+            }
+        }
+    }
+
+    @Test
+    public void CheckAllowAndDenyCidrWorks() throws Exception {
+        {
+            String[] args = {"../"};
+            Utils.setValueInConfig("ip_allow_cidr", "\"192.123.3.0/24\"");
+            TestingProcess process = TestingProcessManager.start(args);
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+            try {
+                HttpRequest.sendGETRequest(process.getProcess(), "", "http://localhost:3567/hello", null, 1000, 1000,
+                        null);
+                fail();
+            } catch (HttpResponseException e) {
+                assertEquals(e.statusCode, 403);
+            }
+
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+        }
+
+        Utils.reset();
+
+        {
+            String[] args = {"../"};
+            Utils.setValueInConfig("ip_allow_cidr", "\"192.123.3.0/24, 127.0.0.0/8, ::1\"");
+            TestingProcess process = TestingProcessManager.start(args);
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+            String response = HttpRequest.sendGETRequest(process.getProcess(), "", "http://localhost:3567/hello", null,
+                    1000, 1000, null);
+            Assert.assertEquals("Hello", response);
+
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+        }
+
+        Utils.reset();
+
+        {
+            // deny takes precedence over allow
+            String[] args = {"../"};
+            Utils.setValueInConfig("ip_allow_regex", "127\\\\.\\\\d+\\\\.\\\\d+\\\\.\\\\d+|::1|0:0:0:0:0:0:0:1");
+            Utils.setValueInConfig("ip_deny_cidr", "\"127.0.0.1/32, ::1/128\"");
+            TestingProcess process = TestingProcessManager.start(args);
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+            try {
+                HttpRequest.sendGETRequest(process.getProcess(), "", "http://localhost:3567/hello", null, 1000, 1000,
+                        null);
+                fail();
+            } catch (HttpResponseException e) {
+                assertEquals(e.statusCode, 403);
+            }
+
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+        }
+    }
+
+    @Test
+    public void CheckCidrMatching() throws Exception {
+        String[] args = {"../"};
+        Utils.setValueInConfig("ip_allow_cidr", "\"10.1.0.0/16, 172.16.5.4, 2001:db8::/33\"");
+        Utils.setValueInConfig("ip_deny_cidr", "\"10.1.255.0/25\"");
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        IpAccessRules rules = Config.getConfig(process.getProcess()).getIpAccessRules();
+        assertTrue(rules.isAllowed("10.1.0.0"));
+        assertTrue(rules.isAllowed("10.1.200.3"));
+        assertTrue(rules.isAllowed("10.1.255.128"));
+        assertFalse(rules.isAllowed("10.1.255.127"));
+        assertFalse(rules.isAllowed("10.2.0.1"));
+        assertTrue(rules.isAllowed("172.16.5.4"));
+        assertFalse(rules.isAllowed("172.16.5.5"));
+        assertTrue(rules.isAllowed("2001:db8:7fff::1"));
+        assertTrue(rules.isAllowed("2001:0db8:0:0:0:0:0:1"));
+        assertFalse(rules.isAllowed("2001:db8:8000::1"));
+        assertFalse(rules.isAllowed("0:0:0:0:0:0:0:1"));
+        // not an IP address, so it doesn't match any CIDR block (and isn't looked up)
+        assertFalse(rules.isAllowed("localhost"));
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void ipAccessCheckOverheadBenchmark() throws Exception {
+        int iterations = 200000;
+        String[] addresses = new String[]{"127.0.0.1", "10.3.4.5", "0:0:0:0:0:0:0:1", "192.168.1.1"};
+        String[] args = {"../"};
+
+        {
+            TestingProcess process = TestingProcessManager.start(args);
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+            IpAccessRules noRules = Config.getConfig(process.getProcess()).getIpAccessRules();
+            assertTrue(noRules.isEmpty());
+            for (String address : addresses) {
+                assertTrue(noRules.isAllowed(address));
+            }
+
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+        }
+
+        Utils.reset();
+
+        Utils.setValueInConfig("ip_allow_regex", "127\\\\.\\\\d+\\\\.\\\\d+\\\\.\\\\d+|::1|0:0:0:0:0:0:0:1");
+        Utils.setValueInConfig("ip_deny_regex", "10\\\\.\\\\d+\\\\.\\\\d+\\\\.\\\\d+");
+        Utils.setValueInConfig("ip_allow_cidr", "\"127.0.0.0/8, ::1\"");
+        Utils.setValueInConfig("ip_deny_cidr", "\"10.0.0.0/8\"");
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        CoreConfig config = Config.getConfig(process.getProcess());
+        String allow = config.getIpAllowRegex();
+        String deny = config.getIpDenyRegex();
+        IpAccessRules rules = config.getIpAccessRules();
+
+        Map<String, HttpServletRequest> requests = new HashMap<>();
+        for (String address : addresses) {
+            requests.put(address, requestFrom(address));
+        }
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+                IpAllowDenyRegexTest.class.getClassLoader(), new Class[]{HttpServletResponse.class},
+                (proxy, method, methodArgs) -> null);
+
+        // what the check used to do for each request: create a new filter, which compiles the regexes
+        long perRequestFilter = timePerCheckNanos(iterations, addresses,
+                address -> checkWithNewFilter(allow, deny, requests.get(address), response));
+        long cached = timePerCheckNanos(iterations, addresses, rules::isAllowed);
+
+        // compiling the regexes for each request is much slower than using the compiled rules
+        assertTrue(cached < perRequestFilter);
+
+        // the compiled rules must give the same result as the filter
+        for (String address : addresses) {
+            assertEquals(checkWithNewFilter(allow, deny, requests.get(address), response),
+                    rules.isAllowed(address));
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
+
+    private static volatile int benchmarkSink;
+
+    private static long timePerCheckNanos(int iterations, String[] addresses,
+                                          Predicate<String> check) {
+        int allowed = 0;
+        // warm up
+        for (int i = 0; i < iterations / 10; i++) {
+            if (check.test(addresses[i % addresses.length])) {
+                allowed++;
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (check.test(addresses[i % addresses.length])) {
+                allowed++;
+            }
+        }
+        long timeTaken = System.nanoTime() - start;
+        // so that the checks are not optimised away
+        benchmarkSink = allowed;
+        return timeTaken / iterations;
+    }
+
+    private static boolean checkWithNewFilter(String allow, String deny, HttpServletRequest req,
+                                              HttpServletResponse resp) {
+        RemoteAddrFilter filter = new RemoteAddrFilter();
+        filter.setAllow(allow);
+        filter.setDeny(deny);
+        filter.setDenyStatus(403);
+        final boolean[] isAllowed = {false};
+        try {
+            filter.doFilter(req, resp, (request, response) -> isAllowed[0] = true);
+        } catch (IOException | ServletException e) {
+            throw new RuntimeException(e);
+        }
+        return isAllowed[0];
+    }
+
+    // a request that only has a remote address, without the overhead of a mock
+    private static HttpServletRequest requestFrom(String remoteAddr) {
+        return (HttpServletRequest) Proxy.newProxyInstance(IpAllowDenyRegexTest.class.getClassLoader(),
+                new Class[]{HttpServletRequest.class},
+                (proxy, method, methodArgs) -> method.getName().equals("getRemoteAddr") ? remoteAddr : null);
+    }
 }
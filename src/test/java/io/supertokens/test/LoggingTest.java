@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Scanner;
 
 import static org.junit.Assert.*;
@@ -181,6 +182,122 @@ public class LoggingTest {
         }
     }
 
+    @Test
+    public void testThatLogsAreWrittenByTheBackgroundThreadIfAsyncLoggingIsEnabled() throws Exception {
+        try {
+            String[] args = {"../"};
+
+            Utils.setValueInConfig("info_log_path", "\"tempLogging/info.log\"");
+            Utils.setValueInConfig("error_log_path", "\"tempLogging/error.log\"");
+            Utils.setValueInConfig("log_async_enabled", "true");
+
+            TestingProcess process = TestingProcessManager.start(args);
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+            long queuedBefore = Logging.getQueuedLogEventCount(process.getProcess());
+            assertTrue(queuedBefore > 0);
+
+            Logging.info(process.getProcess(), TenantIdentifier.BASE_TENANT, () -> "From async test", false);
+            Logging.error(process.getProcess(), TenantIdentifier.BASE_TENANT, "From async test", false);
+
+            // other threads can log at the same time
+            assertTrue(Logging.getQueuedLogEventCount(process.getProcess()) >= queuedBefore + 2);
+            assertEquals(0, Logging.getDroppedLogEventCount(process.getProcess()));
+
+            File infoLog = new File(Config.getConfig(process.getProcess()).getInfoLogPath(process.getProcess()));
+            File errorLog = new File(Config.getConfig(process.getProcess()).getErrorLogPath(process.getProcess()));
+
+            // stopping the process writes all the queued log lines
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+
+            assertTrue(new String(Files.readAllBytes(infoLog.toPath()), StandardCharsets.UTF_8)
+                    .contains("From async test"));
+            assertTrue(new String(Files.readAllBytes(errorLog.toPath()), StandardCharsets.UTF_8)
+                    .contains("From async test"));
+        } finally {
+            FileUtils.deleteDirectory(new File("tempLogging"));
+        }
+    }
+
+    @Test
+    public void testThatLogsAreDroppedWhenTheAsyncQueueIsFullWithTheDropPolicy() throws Exception {
+        try {
+            String[] args = {"../"};
+
+            Utils.setValueInConfig("info_log_path", "\"tempLogging/info.log\"");
+            Utils.setValueInConfig("error_log_path", "\"tempLogging/error.log\"");
+            Utils.setValueInConfig("log_async_enabled", "true");
+            Utils.setValueInConfig("log_async_queue_size", "1");
+            Utils.setValueInConfig("log_async_drop_policy", "DROP");
+
+            TestingProcess process = TestingProcessManager.start(args);
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+            for (int i = 0; i < 10000; i++) {
+                Logging.info(process.getProcess(), TenantIdentifier.BASE_TENANT, "Info from drop test " + i, false);
+            }
+            long droppedAfterInfo = Logging.getDroppedLogEventCount(process.getProcess());
+            assertTrue(droppedAfterInfo > 0);
+
+            // with this policy, errors are dropped as well
+            for (int i = 0; i < 10000; i++) {
+                Logging.error(process.getProcess(), TenantIdentifier.BASE_TENANT, "Error from drop test " + i,
+                        false);
+            }
+            assertTrue(Logging.getDroppedLogEventCount(process.getProcess()) > droppedAfterInfo);
+
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+        } finally {
+            FileUtils.deleteDirectory(new File("tempLogging"));
+        }
+    }
+
+    @Test
+    public void testThatOnlyInfoAndDebugLogsAreDroppedWhenTheAsyncQueueIsFullByDefault() throws Exception {
+        try {
+            String[] args = {"../"};
+
+            Utils.setValueInConfig("info_log_path", "\"tempLogging/info.log\"");
+            Utils.setValueInConfig("error_log_path", "\"tempLogging/error.log\"");
+            Utils.setValueInConfig("log_async_enabled", "true");
+            Utils.setValueInConfig("log_async_queue_size", "1");
+
+            TestingProcess process = TestingProcessManager.start(args);
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+            for (int i = 0; i < 10000; i++) {
+                Logging.info(process.getProcess(), TenantIdentifier.BASE_TENANT, "Info from drop test " + i, false);
+            }
+            assertTrue(Logging.getDroppedLogEventCount(process.getProcess()) > 0);
+
+            int numberOfErrors = 1000;
+            for (int i = 0; i < numberOfErrors; i++) {
+                Logging.error(process.getProcess(), TenantIdentifier.BASE_TENANT, "Error from drop test " + i,
+                        false);
+            }
+
+            File errorLog = new File(Config.getConfig(process.getProcess()).getErrorLogPath(process.getProcess()));
+
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+
+            // none of the errors were dropped
+            int errorsWritten = 0;
+            try (Scanner scanner = new Scanner(errorLog, StandardCharsets.UTF_8)) {
+                while (scanner.hasNextLine()) {
+                    if (scanner.nextLine().contains("Error from drop test ")) {
+                        errorsWritten++;
+                    }
+                }
+            }
+            assertEquals(numberOfErrors, errorsWritten);
+        } finally {
+            FileUtils.deleteDirectory(new File("tempLogging"));
+        }
+    }
+
     @Test
     public void confirmLoggerClosed() throws Exception {
 
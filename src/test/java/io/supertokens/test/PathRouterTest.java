@@ -2875,4 +2875,89 @@ public class PathRouterTest extends Mockito {
         process.kill();
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
     }
+
+    @Test
+    public void tenantAndAppIdAreResolvedOnceWithMixedCaseAndTrailingSlashTest()
+            throws InterruptedException, IOException, HttpResponseException, InvalidProviderConfigException,
+            StorageQueryException, FeatureNotEnabledException, TenantOrAppNotFoundException, InvalidConfigException,
+            CannotModifyBaseConfigException, BadPermissionException {
+        String[] args = {"../"};
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        Multitenancy.addNewOrUpdateAppOrTenant(
+                process.getProcess(),
+                new TenantConfig(
+                        new TenantIdentifier(null, null, "t1"),
+                        new EmailPasswordConfig(false),
+                        new ThirdPartyConfig(false, null),
+                        new PasswordlessConfig(false),
+                        null, null, new JsonObject()
+                ),
+                false
+        );
+
+        String[] paths = new String[]{"/test", "/recipe/test", "/t1/test"};
+
+        for (String p : paths) {
+            Webserver.getInstance(process.getProcess()).addAPI(new WebserverAPI(process.getProcess(), "") {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public boolean checkAPIKey(HttpServletRequest req) {
+                    return false;
+                }
+
+                @Override
+                public String getPath() {
+                    return p;
+                }
+
+                @Override
+                protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                        throws IOException, ServletException {
+                    super.sendTextResponse(200,
+                            p + "," + this.getTenantIdentifierFromRequest(req).getAppId() + "," +
+                                    this.getTenantIdentifierFromRequest(req).getTenantId(), resp);
+                }
+            });
+        }
+
+        // request path -> api path, app id, tenant id
+        String[][] cases = new String[][]{
+                {"/TEST/", "/test,public,public"},
+                {"/appid-public/test/", "/test,public,public"},
+                {"/APPID-PUBLIC/T1/TEST", "/test,public,t1"},
+                {"/appid-public/t1/recipe/test/", "/recipe/test,public,t1"},
+                {"/t1/recipe/test", "/recipe/test,public,t1"},
+                // an exact match is preferred over treating the first segment as the tenant id
+                {"/t1/test", "/t1/test,public,public"},
+                {"/t1/t1/test/", "/t1/test,public,t1"},
+                {"/appid-public/t1/t1/test", "/t1/test,public,t1"},
+        };
+
+        for (String[] c : cases) {
+            String response = HttpRequestForTesting.sendGETRequest(process.getProcess(), "",
+                    "http://localhost:3567" + c[0], new HashMap<>(), 1000, 1000, null,
+                    Utils.getCdiVersionStringLatestForTests(), "");
+            assertEquals(c[0], c[1], response);
+        }
+
+        try {
+            HttpRequestForTesting.sendGETRequest(process.getProcess(), "",
+                    "http://localhost:3567/recipe/recipe/test", new HashMap<>(), 1000, 1000, null,
+                    Utils.getCdiVersionStringLatestForTests(), "");
+            fail();
+        } catch (HttpResponseException e) {
+            assertEquals(e.statusCode, 404);
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
 }
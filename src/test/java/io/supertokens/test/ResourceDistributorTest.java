@@ -29,6 +29,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestRule;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.*;
 
 public class ResourceDistributorTest {
@@ -104,4 +107,197 @@ public class ResourceDistributorTest {
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
 
     }
+
+    @Test
+    public void testLookupsOfUnknownTenantsDoNotCheckTheDbAgainWithinTheTtl() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        ResourceDistributor resourceDistributor = process.getProcess().getResourceDistributor();
+        resourceDistributor.setUnknownTenantTtlForTesting(60000);
+        TenantIdentifier unknown = new TenantIdentifier(null, "doesnotexist", null);
+
+        for (int i = 0; i < 10; i++) {
+            try {
+                resourceDistributor.getResource(unknown, ResourceA.RESOURCE_ID);
+                fail();
+            } catch (TenantOrAppNotFoundException ignored) {
+            }
+        }
+        // only the first lookup checked the db
+        assertEquals(9, resourceDistributor.getSuppressedTenantRefreshCount());
+
+        // unknown tenants are forgotten when the resources change (like when tenants are loaded)
+        resourceDistributor.setResource(new AppIdentifier(null, "a1"), ResourceA.RESOURCE_ID, new ResourceA());
+        try {
+            resourceDistributor.getResource(unknown, ResourceA.RESOURCE_ID);
+            fail();
+        } catch (TenantOrAppNotFoundException ignored) {
+        }
+        assertEquals(9, resourceDistributor.getSuppressedTenantRefreshCount());
+
+        // and once the TTL is over
+        resourceDistributor.setUnknownTenantTtlForTesting(100);
+        try {
+            resourceDistributor.getResource(new TenantIdentifier(null, "doesnotexist2", null), ResourceA.RESOURCE_ID);
+            fail();
+        } catch (TenantOrAppNotFoundException ignored) {
+        }
+        Thread.sleep(200);
+        try {
+            resourceDistributor.getResource(new TenantIdentifier(null, "doesnotexist2", null), ResourceA.RESOURCE_ID);
+            fail();
+        } catch (TenantOrAppNotFoundException ignored) {
+        }
+        assertEquals(9, resourceDistributor.getSuppressedTenantRefreshCount());
+
+        // existing tenants are still found
+        assertTrue(resourceDistributor.getResource(new AppIdentifier(null, "a1"),
+                ResourceA.RESOURCE_ID) instanceof ResourceA);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testLookupsOfAnUnknownTenantWithinTheTtlDoNotExtendIt() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        ResourceDistributor resourceDistributor = process.getProcess().getResourceDistributor();
+        resourceDistributor.setUnknownTenantTtlForTesting(500);
+        TenantIdentifier unknown = new TenantIdentifier(null, "doesnotexist", null);
+
+        // the tenant is looked up more often than the TTL, for longer than the TTL, and the db is still checked
+        // again once the TTL is over
+        for (int i = 0; i < 9; i++) {
+            try {
+                resourceDistributor.getResource(unknown, ResourceA.RESOURCE_ID);
+                fail();
+            } catch (TenantOrAppNotFoundException ignored) {
+            }
+            Thread.sleep(100);
+        }
+        assertTrue(resourceDistributor.getSuppressedTenantRefreshCount() < 8);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testWritesInsideLockArePublishedTogetherAndDoNotBlockReads() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        ResourceDistributor distributor = process.getProcess().getResourceDistributor();
+        AppIdentifier a1 = new AppIdentifier(null, "a1");
+        TenantIdentifier t1 = new TenantIdentifier(null, "a1", "t1");
+        distributor.setResource(a1, ResourceA.RESOURCE_ID, new ResourceA());
+
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch checkedFromOtherThread = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                distributor.withResourceDistributorLock(() -> {
+                    distributor.setResource(a1, ResourceB.RESOURCE_ID, new ResourceB());
+                    distributor.setResource(t1, ResourceB.RESOURCE_ID, new ResourceB());
+                    // the thread doing the writes sees them right away
+                    assertNotNull(distributor.getAllResourcesWithResourceKey(ResourceB.RESOURCE_ID).get(
+                            new ResourceDistributor.KeyClass(t1, ResourceB.RESOURCE_ID)));
+                    written.countDown();
+                    try {
+                        checkedFromOtherThread.await();
+                    } catch (InterruptedException e) {
+                        throw new ResourceDistributor.FuncException(e);
+                    }
+                    return null;
+                });
+            } catch (ResourceDistributor.FuncException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        written.await();
+
+        // reads are not blocked by the lock, and don't see the writes until the lock is released
+        assertTrue(distributor.getResource(a1, ResourceA.RESOURCE_ID) instanceof ResourceA);
+        assertEquals(0, distributor.getAllResourcesWithResourceKey(ResourceB.RESOURCE_ID).size());
+        checkedFromOtherThread.countDown();
+        writer.join();
+
+        assertTrue(distributor.getResource(a1, ResourceB.RESOURCE_ID) instanceof ResourceB);
+        assertTrue(distributor.getResource(t1, ResourceB.RESOURCE_ID) instanceof ResourceB);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testLookupsDoNotWaitForTheDistributorLock() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        ResourceDistributor distributor = process.getProcess().getResourceDistributor();
+        TenantIdentifier[] tenants = new TenantIdentifier[100];
+        for (int i = 0; i < tenants.length; i++) {
+            tenants[i] = new TenantIdentifier(null, "a" + (i % 10), "t" + i);
+            distributor.setResource(tenants[i], ResourceA.RESOURCE_ID, new ResourceA());
+        }
+
+        CountDownLatch lockHeld = new CountDownLatch(1);
+        CountDownLatch lookupsDone = new CountDownLatch(1);
+        Thread lockHolder = new Thread(() -> {
+            synchronized (distributor) {
+                lockHeld.countDown();
+                try {
+                    lookupsDone.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        lockHolder.start();
+        lockHeld.await();
+
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                try {
+                    assertNotNull(distributor.getResource(tenants[i % tenants.length], ResourceA.RESOURCE_ID));
+                } catch (TenantOrAppNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            assertEquals(tenants.length, distributor.getAllResourcesWithResourceKey(ResourceA.RESOURCE_ID).size());
+            lookupsDone.countDown();
+        });
+        reader.start();
+
+        // the reader finishes while the lock is held (which the lock holder only releases after the reader is done,
+        // or after 10 seconds)
+        assertTrue(lookupsDone.await(5, TimeUnit.SECONDS));
+        reader.join();
+        lockHolder.join();
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
 }
@@ -20,10 +20,12 @@ import com.google.gson.JsonObject;
 import io.supertokens.ProcessState;
 import io.supertokens.ProcessState.EventAndException;
 import io.supertokens.ProcessState.PROCESS_STATE;
+import io.supertokens.ResourceDistributor;
 import io.supertokens.config.Config;
 import io.supertokens.exceptions.QuitProgramException;
 import io.supertokens.httpRequest.HttpRequest;
 import io.supertokens.httpRequest.HttpResponseException;
+import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.test.TestingProcessManager.TestingProcess;
 import io.supertokens.test.httpRequest.HttpRequestForTesting;
@@ -34,6 +36,7 @@ import io.supertokens.webserver.Webserver;
 import io.supertokens.webserver.WebserverAPI;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -286,6 +289,81 @@ public class WebserverTest extends Mockito {
         assertEquals(response, Utils.getCdiVersionStringLatestForTests());
     }
 
+    @Test
+    public void testThatTheTenantConfigAndStorageAreLookedUpOncePerRequest() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        final int calls = 1000;
+        Webserver.getInstance(process.getProcess()).addAPI(new WebserverAPI(process.getProcess(), "") {
+            private static final long serialVersionUID = -6180209366011296398L;
+
+            @Override
+            public String getPath() {
+                return "/testRequestContext";
+            }
+
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                    throws IOException, ServletException {
+                // a request that doesn't keep attributes, so that every call looks everything up again, which is
+                // what happened before the request context
+                HttpServletRequest reqWithoutContext = new HttpServletRequestWrapper(req) {
+                    @Override
+                    public Object getAttribute(String name) {
+                        return null;
+                    }
+
+                    @Override
+                    public void setAttribute(String name, Object o) {
+                    }
+                };
+                try {
+                    // service has already looked up everything, except the storages of the app
+                    lookUpEverything(req);
+
+                    ResourceDistributor resourceDistributor = main.getResourceDistributor();
+                    long lookupsBefore = resourceDistributor.getLookupCount();
+                    for (int i = 0; i < calls; i++) {
+                        lookUpEverything(req);
+                    }
+                    long lookupsWithContext = resourceDistributor.getLookupCount() - lookupsBefore;
+
+                    lookupsBefore = resourceDistributor.getLookupCount();
+                    for (int i = 0; i < calls; i++) {
+                        lookUpEverything(reqWithoutContext);
+                    }
+                    long lookupsWithoutContext = resourceDistributor.getLookupCount() - lookupsBefore;
+
+                    sendTextResponse(200, lookupsWithContext + "," + lookupsWithoutContext, resp);
+                } catch (TenantOrAppNotFoundException e) {
+                    throw new ServletException(e);
+                }
+            }
+
+            private void lookUpEverything(HttpServletRequest req)
+                    throws TenantOrAppNotFoundException, ServletException {
+                getTenantIdentifierWithStorageFromRequest(req);
+                getAppIdentifierWithStorage(req);
+                getPublicTenantStorage(req);
+                getVersionFromRequest(req);
+            }
+        });
+
+        String response = HttpRequestForTesting.sendGETRequest(process.getProcess(), "",
+                "http://localhost:3567/testRequestContext", null, 1000, 10000, null,
+                Utils.getCdiVersionStringLatestForTests(), "");
+        String[] lookups = response.split(",");
+        assertEquals(0, Long.parseLong(lookups[0]));
+        // finding the connectionUriDomain takes two config lookups, and each helper does at least one more
+        assertTrue(Long.parseLong(lookups[1]) >= 4 * 3 * calls);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
+
     @Test
     public void testInvalidJSONBadInput() throws Exception {
         String[] args = {"../"};
@@ -733,7 +733,7 @@ public class MultitenantTest {
                             @Override
                             public void execute(Main main) throws Exception {
                                 TenantIdentifierWithStorage t1WithStorage = t1.withStorage(StorageLayer.getStorage(t1, main));
-                                AuthRecipe.deleteUser(t1WithStorage.toAppIdentifierWithStorage(), TestCase.users.get(1).getSupertokensUserId());
+                                AuthRecipe.deleteUser(t1WithStorage.toAppIdentifierWithStorage(), main, TestCase.users.get(1).getSupertokensUserId());
                             }
                         },
                         new TestCaseStep() {
@@ -22,11 +22,13 @@ import io.supertokens.config.CoreConfig;
 import io.supertokens.emailpassword.EmailPassword;
 import io.supertokens.emailpassword.ParsedFirebaseSCryptResponse;
 import io.supertokens.emailpassword.PasswordHashing;
+import io.supertokens.emailpassword.exceptions.PasswordHashingOverloadedException;
 import io.supertokens.emailpassword.exceptions.WrongCredentialsException;
 import io.supertokens.inmemorydb.Start;
 import io.supertokens.pluginInterface.STORAGE_TYPE;
 import io.supertokens.pluginInterface.authRecipe.AuthRecipeUserInfo;
 import io.supertokens.pluginInterface.exceptions.StorageQueryException;
+import io.supertokens.pluginInterface.multitenancy.AppIdentifier;
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.test.TestingProcessManager;
 import io.supertokens.test.Utils;
@@ -35,12 +37,14 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestRule;
+import org.mindrot.jbcrypt.BCrypt;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -897,4 +901,190 @@ public class PasswordHashingTest {
         process.kill();
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
     }
+
+    @Test
+    public void testThatHashingFailsFastWhenThePoolIsBusyForLongerThanTheMaxWaitTime() throws Exception {
+        String[] args = {"../"};
+
+        Utils.setValueInConfig("bcrypt_log_rounds", "14");
+        Utils.setValueInConfig("bcrypt_hashing_pool_size", "1");
+        Utils.setValueInConfig("password_hashing_max_wait_time_ms", "10");
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        PasswordHashing passwordHashing = PasswordHashing.getInstance(process.getProcess());
+        PasswordHashing.HashingPool bcryptPool = passwordHashing.getBcryptPool();
+        assertEquals(0, bcryptPool.getInProgressCount());
+
+        ExecutorService ex = Executors.newSingleThreadExecutor();
+        ex.execute(() -> passwordHashing.createHashWithSalt("somePassword"));
+        while (bcryptPool.getInProgressCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        try {
+            passwordHashing.createHashWithSalt("somePassword");
+            fail();
+        } catch (PasswordHashingOverloadedException ignored) {
+        }
+        assertEquals(1, bcryptPool.getRejectedCount());
+
+        ex.shutdown();
+        assertTrue(ex.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(0, bcryptPool.getInProgressCount());
+        assertEquals(0, bcryptPool.getQueueDepth());
+        assertEquals(1, bcryptPool.getHashCount());
+        assertTrue(bcryptPool.getTotalHashTimeMs() > 0);
+
+        // the other algorithms have their own pools
+        assertEquals(0, passwordHashing.getArgon2Pool().getHashCount());
+        assertEquals(0, passwordHashing.getFirebaseSCryptPool().getHashCount());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testThatAnInterruptedSignInIsNotReportedAsWrongCredentials() throws Exception {
+        String[] args = {"../"};
+
+        Utils.setValueInConfig("bcrypt_log_rounds", "14");
+        Utils.setValueInConfig("bcrypt_hashing_pool_size", "1");
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        EmailPassword.signUp(process.getProcess(), "test@example.com", "somePassword");
+
+        PasswordHashing passwordHashing = PasswordHashing.getInstance(process.getProcess());
+        PasswordHashing.HashingPool bcryptPool = passwordHashing.getBcryptPool();
+
+        // we keep the only bcrypt slot busy, so that the sign in waits for it
+        ExecutorService ex = Executors.newSingleThreadExecutor();
+        ex.execute(() -> passwordHashing.createHashWithSalt("somePassword"));
+        while (bcryptPool.getInProgressCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        AtomicReference<Exception> signInException = new AtomicReference<>();
+        AtomicBoolean interruptFlagRestored = new AtomicBoolean(false);
+        Thread signInThread = new Thread(() -> {
+            try {
+                EmailPassword.signIn(process.getProcess(), "test@example.com", "somePassword");
+            } catch (Exception e) {
+                signInException.set(e);
+            }
+            interruptFlagRestored.set(Thread.currentThread().isInterrupted());
+        });
+        signInThread.start();
+        while (bcryptPool.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        signInThread.interrupt();
+        signInThread.join();
+
+        assertTrue(signInException.get() instanceof PasswordHashingOverloadedException);
+        assertTrue(interruptFlagRestored.get());
+
+        ex.shutdown();
+        assertTrue(ex.awaitTermination(1, TimeUnit.MINUTES));
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testThatLegacyHashesAreReplacedOnSignInIfEnabled() throws Exception {
+        String[] args = {"../"};
+
+        Utils.setValueInConfig("firebase_password_hashing_signer_key",
+                "gRhC3eDeQOdyEn4bMd9c6kxguWVmcIVq/SKa0JDPFeM6TcEevkaW56sIWfx88OHbJKnCXdWscZx0l2WbCJ1wbg==");
+        Utils.setValueInConfig("password_rehash_on_sign_in_enabled", "true");
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        PasswordHashing passwordHashing = PasswordHashing.getInstance(process.getProcess());
+        AppIdentifier appIdentifier = new AppIdentifier(null, null);
+        assertTrue(passwordHashing.isHashUsingCurrentConfig(appIdentifier,
+                BCrypt.hashpw("somePassword", BCrypt.gensalt(11))));
+        assertFalse(passwordHashing.isHashUsingCurrentConfig(appIdentifier,
+                BCrypt.hashpw("somePassword", BCrypt.gensalt(10))));
+
+        String email = "test@example.com";
+        String password = "testPass123";
+        String combinedPasswordHash = "$" + ParsedFirebaseSCryptResponse.FIREBASE_SCRYPT_PREFIX
+                + "$qZM035es5AXYqavsKD6/rhtxg7t5PhcyRgv5blc3doYbChX8keMfQLq1ra96O2Pf2TP/eZrR5xtPCYN6mX3ESA=="
+                + "$/cj0jC1br5o4+w==$m=14$r=8$s=Bw==";
+        assertFalse(passwordHashing.isHashUsingCurrentConfig(appIdentifier, combinedPasswordHash));
+
+        EmailPassword.importUserWithPasswordHash(process.main, email, combinedPasswordHash,
+                CoreConfig.PASSWORD_HASHING_ALG.FIREBASE_SCRYPT);
+
+        AuthRecipeUserInfo user = EmailPassword.signIn(process.main, email, password);
+        assertEquals(combinedPasswordHash, user.loginMethods[0].passwordHash);
+        assertEquals(1, passwordHashing.getLegacyHashSignInEventCount());
+
+        long start = System.currentTimeMillis();
+        while (passwordHashing.getRehashedCount() == 0 && System.currentTimeMillis() - start < 10000) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, passwordHashing.getRehashedCount());
+        assertEquals(0, passwordHashing.getUsersWithLegacyHashNotRehashedCount());
+
+        // the user now signs in with a bcrypt hash
+        user = EmailPassword.signIn(process.main, email, password);
+        assertTrue(user.loginMethods[0].passwordHash.startsWith("$2a$11$"));
+        assertEquals(1, passwordHashing.getCurrentHashSignInEventCount());
+        assertEquals(1, passwordHashing.getLegacyHashSignInEventCount());
+        assertEquals(0, passwordHashing.getRehashConflictCount());
+
+        try {
+            EmailPassword.signIn(process.main, email, "wrongPassword");
+            fail();
+        } catch (WrongCredentialsException ignored) {
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testThatUsersWithLegacyHashesAreCountedOnce() throws Exception {
+        String[] args = {"../"};
+
+        Utils.setValueInConfig("firebase_password_hashing_signer_key",
+                "gRhC3eDeQOdyEn4bMd9c6kxguWVmcIVq/SKa0JDPFeM6TcEevkaW56sIWfx88OHbJKnCXdWscZx0l2WbCJ1wbg==");
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        PasswordHashing passwordHashing = PasswordHashing.getInstance(process.getProcess());
+
+        String email = "test@example.com";
+        String password = "testPass123";
+        String combinedPasswordHash = "$" + ParsedFirebaseSCryptResponse.FIREBASE_SCRYPT_PREFIX
+                + "$qZM035es5AXYqavsKD6/rhtxg7t5PhcyRgv5blc3doYbChX8keMfQLq1ra96O2Pf2TP/eZrR5xtPCYN6mX3ESA=="
+                + "$/cj0jC1br5o4+w==$m=14$r=8$s=Bw==";
+        EmailPassword.importUserWithPasswordHash(process.main, email, combinedPasswordHash,
+                CoreConfig.PASSWORD_HASHING_ALG.FIREBASE_SCRYPT);
+
+        // rehashing is disabled, so the user keeps the legacy hash
+        for (int i = 0; i < 3; i++) {
+            EmailPassword.signIn(process.main, email, password);
+        }
+        assertEquals(3, passwordHashing.getLegacyHashSignInEventCount());
+        assertEquals(1, passwordHashing.getUsersWithLegacyHashNotRehashedCount());
+        assertEquals(0, passwordHashing.getRehashedCount());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
 }
@@ -242,10 +242,10 @@ public class AppTenantUserTest {
             // Disassociate user
             Multitenancy.removeUserIdFromTenant(process.getProcess(), tenantWithStorage, userId, null);
 
-            assertFalse(AuthRecipe.deleteNonAuthRecipeUser(tenantWithStorage,
+            assertFalse(AuthRecipe.deleteNonAuthRecipeUser(process.getProcess(), tenantWithStorage,
                     userId)); // Nothing deleted indicates that the non auth recipe user data was deleted already
 
-            AuthRecipe.deleteUser(appWithStorage.toAppIdentifierWithStorage(), userId);
+            AuthRecipe.deleteUser(appWithStorage.toAppIdentifierWithStorage(), process.getProcess(), userId);
         }
 
         process.kill();
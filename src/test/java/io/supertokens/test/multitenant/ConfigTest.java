@@ -55,7 +55,7 @@ import org.junit.rules.TestRule;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.util.HashSet;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
@@ -157,7 +157,7 @@ public class ConfigTest {
                 new TenantConfig(new TenantIdentifier("abc", null, null), new EmailPasswordConfig(false),
                         new ThirdPartyConfig(false, new ThirdPartyConfig.Provider[0]),
                         new PasswordlessConfig(false),
-                        null, null, tenantConfig)}, new ArrayList<>());
+                        null, null, tenantConfig)}, new HashSet<>());
 
         Assert.assertEquals(Config.getConfig(process.getProcess()).getRefreshTokenValidity(),
                 (long) 144001 * 60 * 1000);
@@ -209,7 +209,7 @@ public class ConfigTest {
                     new TenantConfig(new TenantIdentifier("abc", null, null), new EmailPasswordConfig(false),
                             new ThirdPartyConfig(false, new ThirdPartyConfig.Provider[0]),
                             new PasswordlessConfig(false),
-                            null, null, tenantConfig)}, new ArrayList<>());
+                            null, null, tenantConfig)}, new HashSet<>());
             fail();
         } catch (InvalidConfigException e) {
             assert (e.getMessage()
@@ -245,7 +245,7 @@ public class ConfigTest {
                     new TenantConfig(new TenantIdentifier(null, null, "abc"), new EmailPasswordConfig(false),
                             new ThirdPartyConfig(false, new ThirdPartyConfig.Provider[0]),
                             new PasswordlessConfig(false),
-                            null, null, tenantConfig)}, new ArrayList<>());
+                            null, null, tenantConfig)}, new HashSet<>());
             fail();
         } catch (InvalidConfigException e) {
             assert (e.getMessage()
@@ -295,7 +295,7 @@ public class ConfigTest {
                     new TenantConfig(new TenantIdentifier("abc", null, null), new EmailPasswordConfig(false),
                             new ThirdPartyConfig(false, new ThirdPartyConfig.Provider[0]),
                             new PasswordlessConfig(false),
-                            null, null, tenantConfig)}, new ArrayList<>());
+                            null, null, tenantConfig)}, new HashSet<>());
 
         }
 
@@ -376,7 +376,7 @@ public class ConfigTest {
                     null, null, tenantConfig);
         }
 
-        Config.loadAllTenantConfig(process.getProcess(), tenants, new ArrayList<>());
+        Config.loadAllTenantConfig(process.getProcess(), tenants, new HashSet<>());
 
         Assert.assertEquals(Config.getConfig(new TenantIdentifier(null, null, null), process.getProcess())
                         .getEmailVerificationTokenLifetime(),
@@ -454,7 +454,7 @@ public class ConfigTest {
         }
 
         try {
-            Config.loadAllTenantConfig(process.getProcess(), tenants, new ArrayList<>());
+            Config.loadAllTenantConfig(process.getProcess(), tenants, new HashSet<>());
             fail();
         } catch (InvalidConfigException e) {
             assert (e.getMessage()
@@ -1979,9 +1979,13 @@ public class ConfigTest {
                 "refresh_token_validity",
                 "access_token_signing_key_dynamic",
                 "access_token_dynamic_signing_key_update_interval",
+                "access_token_verification_cache_size",
+                "access_token_verification_cache_max_memory_mb",
+                "session_revocation_index_enabled",
                 "api_keys",
                 "disable_telemetry",
                 "password_hashing_alg",
+                "password_rehash_on_sign_in_enabled",
                 "firebase_password_hashing_signer_key",
                 "supertokens_max_cdi_version",
         };
@@ -1991,9 +1995,13 @@ public class ConfigTest {
                 new Object[]{60 * 2400, 61 * 2400}, // refresh_token_validity
                 new Object[]{true, false}, // access_token_signing_key_dynamic
                 new Object[]{168, 169}, // access_token_dynamic_signing_key_update_interval
+                new Object[]{0, 1000}, // access_token_verification_cache_size
+                new Object[]{32, 64}, // access_token_verification_cache_max_memory_mb
+                new Object[]{false, true}, // session_revocation_index_enabled
                 new Object[]{"abcd1234abcd1234abcd1234abcd1234", "qwer1234qwer1234qwer1234qwer1234"}, // api_keys
                 new Object[]{true, false}, // disable_telemetry
                 new Object[]{"BCRYPT", "ARGON2"}, // password_hashing_alg
+                new Object[]{false, true}, // password_rehash_on_sign_in_enabled
                 new Object[]{"abcd1234abcd1234abcd1234abcd1234", "qwer1234qwer1234qwer1234qwer1234"}, // firebase_password_hashing_signer_key
                 new Object[]{"2.21", "3.0"} // supertokens_max_cdi_version
         };
@@ -0,0 +1,186 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.test.multitenant;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import io.supertokens.ProcessState;
+import io.supertokens.config.Config;
+import io.supertokens.featureflag.EE_FEATURES;
+import io.supertokens.featureflag.FeatureFlagTestContent;
+import io.supertokens.pluginInterface.STORAGE_TYPE;
+import io.supertokens.pluginInterface.multitenancy.*;
+import io.supertokens.storageLayer.StorageLayer;
+import io.supertokens.test.TestingProcessManager;
+import io.supertokens.test.Utils;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IncrementalTenantReloadTest {
+    @Rule
+    public TestRule watchman = Utils.getOnFailure();
+
+    @AfterClass
+    public static void afterTesting() {
+        Utils.afterTesting();
+    }
+
+    @Before
+    public void beforeEach() {
+        Utils.reset();
+    }
+
+    private static TenantConfig tenant(TenantIdentifier tenantIdentifier, long emailVerificationTokenLifetime) {
+        JsonObject coreConfig = new JsonObject();
+        coreConfig.add("email_verification_token_lifetime", new JsonPrimitive(emailVerificationTokenLifetime));
+        return new TenantConfig(tenantIdentifier, new EmailPasswordConfig(true),
+                new ThirdPartyConfig(true, null), new PasswordlessConfig(true),
+                null, null, coreConfig);
+    }
+
+    private static void reload(TestingProcessManager.TestingProcess process, TenantConfig[] tenants,
+                               Set<TenantIdentifier> tenantsThatChanged) throws Exception {
+        Config.loadAllTenantConfig(process.getProcess(), tenants, tenantsThatChanged);
+        StorageLayer.loadAllTenantStorage(process.getProcess(), tenants);
+    }
+
+    @Test
+    public void testOnlyTenantsAffectedByAChangeAreReloaded() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        TenantConfig[] tenants = new TenantConfig[]{
+                tenant(new TenantIdentifier(null, "a1", null), 100001),
+                tenant(new TenantIdentifier(null, "a1", "t1"), 100002),
+                tenant(new TenantIdentifier(null, "a2", null), 100003),
+                tenant(new TenantIdentifier(null, "a2", "t1"), 100004),
+        };
+        reload(process, tenants, new HashSet<>());
+
+        Map<TenantIdentifier, Config> configsBefore = new HashMap<>();
+        for (TenantConfig tenant : tenants) {
+            configsBefore.put(tenant.tenantIdentifier,
+                    Config.getInstance(tenant.tenantIdentifier, process.getProcess()));
+        }
+        Config baseConfigBefore = Config.getInstance(TenantIdentifier.BASE_TENANT, process.getProcess());
+
+        // a change in the app's config affects all the tenants of the app, but no other app
+        tenants[0] = tenant(new TenantIdentifier(null, "a1", null), 200001);
+        tenants[1] = new TenantConfig(new TenantIdentifier(null, "a1", "t1"), new EmailPasswordConfig(true),
+                new ThirdPartyConfig(true, null), new PasswordlessConfig(true),
+                null, null, new JsonObject());
+        Set<TenantIdentifier> tenantsThatChanged = Config.getTenantsAffectedByChangesIn(tenants,
+                Collections.singleton(new TenantIdentifier(null, "a1", null)));
+        assertEquals(new HashSet<>(Arrays.asList(new TenantIdentifier(null, "a1", null),
+                new TenantIdentifier(null, "a1", "t1"))), tenantsThatChanged);
+
+        reload(process, tenants, tenantsThatChanged);
+
+        assertNotSame(configsBefore.get(new TenantIdentifier(null, "a1", null)),
+                Config.getInstance(new TenantIdentifier(null, "a1", null), process.getProcess()));
+        assertNotSame(configsBefore.get(new TenantIdentifier(null, "a1", "t1")),
+                Config.getInstance(new TenantIdentifier(null, "a1", "t1"), process.getProcess()));
+        assertSame(configsBefore.get(new TenantIdentifier(null, "a2", null)),
+                Config.getInstance(new TenantIdentifier(null, "a2", null), process.getProcess()));
+        assertSame(configsBefore.get(new TenantIdentifier(null, "a2", "t1")),
+                Config.getInstance(new TenantIdentifier(null, "a2", "t1"), process.getProcess()));
+        assertSame(baseConfigBefore, Config.getInstance(TenantIdentifier.BASE_TENANT, process.getProcess()));
+
+        // t1 now inherits the value from its app
+        assertEquals(200001, Config.getConfig(new TenantIdentifier(null, "a1", "t1"), process.getProcess())
+                .getEmailVerificationTokenLifetime());
+        assertEquals(100004, Config.getConfig(new TenantIdentifier(null, "a2", "t1"), process.getProcess())
+                .getEmailVerificationTokenLifetime());
+
+        // all the tenants still point to the same db, so they keep sharing the same storage
+        for (TenantConfig tenant : tenants) {
+            assertSame(StorageLayer.getBaseStorage(process.getProcess()),
+                    StorageLayer.getStorage(tenant.tenantIdentifier, process.getProcess()));
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void testReloadTimeScalesWithTheNumberOfChangedTenants() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        int numberOfApps = 100;
+        int tenantsPerApp = 100;
+        TenantConfig[] tenants = new TenantConfig[numberOfApps * tenantsPerApp];
+        for (int i = 0; i < tenants.length; i++) {
+            tenants[i] = tenant(new TenantIdentifier(null, "a" + (i / tenantsPerApp), "t" + (i % tenantsPerApp)),
+                    100000 + i);
+        }
+
+        reload(process, tenants, new HashSet<>());
+
+        TenantIdentifier untouched = tenants[tenants.length - 1].tenantIdentifier;
+        Config untouchedConfig = Config.getInstance(untouched, process.getProcess());
+
+        for (int numberChanged : new int[]{1, 10, 100}) {
+            Set<TenantIdentifier> tenantsThatChanged = new HashSet<>();
+            for (int i = 0; i < numberChanged; i++) {
+                tenants[i] = tenant(tenants[i].tenantIdentifier, 200000 + numberChanged + i);
+                tenantsThatChanged.add(tenants[i].tenantIdentifier);
+            }
+            reload(process, tenants, tenantsThatChanged);
+
+            assertEquals(200000 + numberChanged, Config.getConfig(tenants[0].tenantIdentifier, process.getProcess())
+                    .getEmailVerificationTokenLifetime());
+            assertSame(untouchedConfig, Config.getInstance(untouched, process.getProcess()));
+        }
+
+        // reloading every tenant, like it was done before, creates new configs for all of them
+        Set<TenantIdentifier> allTenants = new HashSet<>();
+        for (TenantConfig tenant : tenants) {
+            allTenants.add(tenant.tenantIdentifier);
+        }
+        reload(process, tenants, allTenants);
+        assertNotSame(untouchedConfig, Config.getInstance(untouched, process.getProcess()));
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+}
@@ -47,6 +47,7 @@ import org.junit.rules.TestRule;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -130,7 +131,7 @@ public class SigningKeysTest {
             apps.add(t.tenantIdentifier.toAppIdentifier());
         }
         apps.add(new AppIdentifier(null, null)); // Add base app
-        AccessTokenSigningKey.loadForAllTenants(process.getProcess(), apps, new ArrayList<>());
+        AccessTokenSigningKey.loadForAllTenants(process.getProcess(), apps, new HashSet<>());
 
         assertEquals(
                 SigningKeys.getInstance(new AppIdentifier(null, null), process.main).getDynamicKeys()
@@ -205,7 +206,7 @@ public class SigningKeysTest {
             apps.add(t.tenantIdentifier.toAppIdentifier());
         }
         apps.add(new AppIdentifier(null, null)); // Add base app
-        AccessTokenSigningKey.loadForAllTenants(process.getProcess(), apps, new ArrayList<>());
+        AccessTokenSigningKey.loadForAllTenants(process.getProcess(), apps, new HashSet<>());
 
         assertEquals(
                 SigningKeys.getInstance(new AppIdentifier(null, null), process.main).getDynamicKeys()
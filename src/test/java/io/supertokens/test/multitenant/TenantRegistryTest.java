@@ -0,0 +1,129 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.test.multitenant;
+
+import com.google.gson.JsonObject;
+import io.supertokens.ProcessState;
+import io.supertokens.featureflag.EE_FEATURES;
+import io.supertokens.featureflag.FeatureFlagTestContent;
+import io.supertokens.multitenancy.Multitenancy;
+import io.supertokens.multitenancy.MultitenancyHelper;
+import io.supertokens.multitenancy.TenantRegistry;
+import io.supertokens.pluginInterface.STORAGE_TYPE;
+import io.supertokens.pluginInterface.multitenancy.*;
+import io.supertokens.storageLayer.StorageLayer;
+import io.supertokens.test.TestingProcessManager;
+import io.supertokens.test.Utils;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import static org.junit.Assert.*;
+
+public class TenantRegistryTest {
+    @Rule
+    public TestRule watchman = Utils.getOnFailure();
+
+    @AfterClass
+    public static void afterTesting() {
+        Utils.afterTesting();
+    }
+
+    @Before
+    public void beforeEach() {
+        Utils.reset();
+    }
+
+    private static void createTenant(TestingProcessManager.TestingProcess process, TenantIdentifier tenantIdentifier)
+            throws Exception {
+        Multitenancy.addNewOrUpdateAppOrTenant(process.getProcess(), new TenantConfig(
+                tenantIdentifier,
+                new EmailPasswordConfig(true), new ThirdPartyConfig(true, null), new PasswordlessConfig(true),
+                null, null, new JsonObject()
+        ), false);
+    }
+
+    @Test
+    public void testTenantsAreIndexedByTenantAppAndConnectionUriDomain() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args, false);
+        FeatureFlagTestContent.getInstance(process.getProcess())
+                .setKeyValue(FeatureFlagTestContent.ENABLED_FEATURES, new EE_FEATURES[]{EE_FEATURES.MULTI_TENANCY});
+        process.startProcess();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        createTenant(process, new TenantIdentifier(null, "a1", null));
+        createTenant(process, new TenantIdentifier(null, "a1", "t1"));
+        createTenant(process, new TenantIdentifier(null, "a1", "t2"));
+        createTenant(process, new TenantIdentifier(null, "a2", null));
+        createTenant(process, new TenantIdentifier("127.0.0.1", null, null));
+
+        TenantRegistry registry = MultitenancyHelper.getInstance(process.getProcess()).getTenantRegistry();
+        assertEquals(6, registry.size());
+
+        TenantConfig t1 = Multitenancy.getTenantInfo(process.getProcess(), new TenantIdentifier(null, "a1", "t1"));
+        assertNotNull(t1);
+        assertEquals(new TenantIdentifier(null, "a1", "t1"), t1.tenantIdentifier);
+        assertNull(Multitenancy.getTenantInfo(process.getProcess(), new TenantIdentifier(null, "a1", "t3")));
+        assertNull(Multitenancy.getTenantInfo(process.getProcess(), new TenantIdentifier(null, "a3", null)));
+
+        assertEquals(3, registry.getTenantsForApp(new AppIdentifier(null, "a1")).size());
+        assertEquals(1, registry.getTenantsForApp(new AppIdentifier(null, "a2")).size());
+        assertEquals(0, registry.getTenantsForApp(new AppIdentifier(null, "a3")).size());
+        assertEquals(3, Multitenancy.getAllTenantsForApp(new AppIdentifier(null, "a1"), process.getProcess()).length);
+
+        assertEquals(5, Multitenancy.getAllAppsAndTenantsForConnectionUriDomain(null, process.getProcess()).length);
+        assertEquals(1,
+                Multitenancy.getAllAppsAndTenantsForConnectionUriDomain("127.0.0.1", process.getProcess()).length);
+
+        // public app, a1 and a2 for the default connectionUriDomain, and the public app for 127.0.0.1
+        assertEquals(4, registry.getApps().size());
+
+        try {
+            registry.getAllTenants().clear();
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+        try {
+            registry.getTenantsForApp(new AppIdentifier(null, "a1")).remove(0);
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+
+        // the registry is replaced when a tenant is added or removed
+        createTenant(process, new TenantIdentifier(null, "a2", "t1"));
+        TenantRegistry newRegistry = MultitenancyHelper.getInstance(process.getProcess()).getTenantRegistry();
+        assertNotSame(registry, newRegistry);
+        assertEquals(6, registry.size());
+        assertEquals(7, newRegistry.size());
+        assertEquals(2, newRegistry.getTenantsForApp(new AppIdentifier(null, "a2")).size());
+
+        Multitenancy.deleteTenant(new TenantIdentifier(null, "a1", "t2"), process.getProcess());
+        assertNull(Multitenancy.getTenantInfo(process.getProcess(), new TenantIdentifier(null, "a1", "t2")));
+        assertEquals(2, Multitenancy.getAllTenantsForApp(new AppIdentifier(null, "a1"), process.getProcess()).length);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+}
@@ -16,6 +16,7 @@
 
 package io.supertokens.test.session;
 
+import com.google.gson.JsonObject;
 import io.supertokens.ProcessState.EventAndException;
 import io.supertokens.ProcessState.PROCESS_STATE;
 import io.supertokens.jwt.exceptions.UnsupportedJWTSigningAlgorithmException;
@@ -29,7 +30,9 @@ import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
 import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoundException;
 import io.supertokens.pluginInterface.session.SessionStorage;
 import io.supertokens.signingkeys.AccessTokenSigningKey;
+import io.supertokens.signingkeys.ParsedSigningKey;
 import io.supertokens.signingkeys.SigningKeys;
+import io.supertokens.signingkeys.SigningKeysSnapshot;
 import io.supertokens.signingkeys.SigningKeys.KeyInfo;
 import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.test.TestingProcessManager;
@@ -207,4 +210,71 @@ public class AccessTokenSigningKeyTest {
         process.kill();
         assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
     }
+
+    @Test
+    public void parsedSigningKeysAreReusedAcrossCalls() throws Exception {
+        String[] args = {"../"};
+        TestingProcess process = TestingProcessManager.start(args);
+
+        EventAndException e = process.checkOrWaitForEvent(PROCESS_STATE.STARTED);
+        assertNotNull(e);
+
+        SigningKeys signingKeys = SigningKeys.getInstance(process.getProcess());
+        List<JWTSigningKeyInfo> keys = signingKeys.getAllKeys();
+        assertTrue(keys.size() > 0);
+
+        for (JWTSigningKeyInfo keyInfo : keys) {
+            ParsedSigningKey parsedKey = signingKeys.getParsedSigningKey(keyInfo);
+            assertNotNull(parsedKey.publicKey);
+            assertNotNull(parsedKey.privateKey);
+            assertNotNull(parsedKey.jwk);
+            assertEquals(keyInfo.keyId, parsedKey.jwk.get("kid").getAsString());
+
+            // the key material should only be decoded once
+            assertSame(parsedKey, signingKeys.getParsedSigningKey(keyInfo));
+        }
+
+        // the JWKS are served from the already decoded keys as well
+        List<JsonObject> jwks = signingKeys.getJWKS();
+        assertEquals(keys.size(), jwks.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertSame(signingKeys.getParsedSigningKey(keys.get(i)).jwk, jwks.get(i));
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void signingKeySnapshotIsReusedUntilKeysRotate() throws Exception {
+        Utils.setValueInConfig("access_token_dynamic_signing_key_update_interval", "0.00027"); // 1 seconds
+
+        String[] args = {"../"};
+        TestingProcess process = TestingProcessManager.start(args);
+
+        EventAndException e = process.checkOrWaitForEvent(PROCESS_STATE.STARTED);
+        assertNotNull(e);
+
+        SigningKeys signingKeys = SigningKeys.getInstance(process.getProcess());
+        SigningKeysSnapshot snapshot = signingKeys.getSnapshot();
+        assertTrue(snapshot.validUntil > System.currentTimeMillis());
+        assertSame(snapshot, signingKeys.getSnapshot());
+        assertSame(snapshot.allKeys, signingKeys.getAllKeys());
+
+        for (JWTSigningKeyInfo keyInfo : snapshot.allKeys) {
+            assertSame(keyInfo, signingKeys.getSigningKeyById(keyInfo.keyId));
+        }
+        assertNull(signingKeys.getSigningKeyById("d-0"));
+
+        // Wait for access_token_dynamic_signing_key_update_interval + margin
+        Thread.sleep(1500);
+
+        SigningKeysSnapshot newSnapshot = signingKeys.getSnapshot();
+        assertNotSame(snapshot, newSnapshot);
+        assertNotEquals(snapshot.latestIssuedDynamicKey.id, newSnapshot.dynamicKeys.get(0).id);
+        assertEquals(newSnapshot.latestIssuedDynamicKey.id, signingKeys.getLatestIssuedDynamicKey().id);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
 }
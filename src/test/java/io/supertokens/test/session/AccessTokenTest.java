@@ -31,6 +31,7 @@ import io.supertokens.pluginInterface.multitenancy.exceptions.TenantOrAppNotFoun
 import io.supertokens.session.Session;
 import io.supertokens.session.accessToken.AccessToken;
 import io.supertokens.session.accessToken.AccessToken.AccessTokenInfo;
+import io.supertokens.session.accessToken.VerifiedAccessTokenCache;
 import io.supertokens.session.info.SessionInformationHolder;
 import io.supertokens.session.info.TokenInfo;
 import io.supertokens.session.jwt.JWT;
@@ -555,4 +556,79 @@ public class AccessTokenTest {
         JWT.JWTPreParseInfo info = JWT.preParseJWTInfo(jwt);
         assert info.version == AccessToken.getLatestVersion();
     }
+
+    @Test
+    public void verifiedAccessTokensAreCachedWithinBounds() throws Exception {
+        String[] args = {"../"};
+
+        Utils.setValueInConfig("access_token_verification_cache_size", "2");
+
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        VerifiedAccessTokenCache cache = VerifiedAccessTokenCache.getInstance(process.getProcess());
+        assertTrue(cache.isEnabled());
+
+        String[] tokens = new String[3];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = Session.createNewSession(process.getProcess(), "userId" + i, new JsonObject(),
+                    new JsonObject()).accessToken.token;
+        }
+
+        AccessTokenInfo first = AccessToken.getInfoFromAccessToken(process.getProcess(), tokens[0], false);
+        AccessTokenInfo second = AccessToken.getInfoFromAccessToken(process.getProcess(), tokens[0], false);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(first.sessionHandle, second.sessionHandle);
+
+        // each request gets its own copy, so changing one doesn't change what the others get
+        assertNotSame(first, second);
+        second.userData.addProperty("changed", true);
+        assertNull(AccessToken.getInfoFromAccessToken(process.getProcess(), tokens[0], false).userData
+                .get("changed"));
+        assertEquals(2, cache.getHitCount());
+
+        // the anti-csrf check is still done for cached tokens
+        try {
+            AccessToken.getInfoFromAccessToken(process.getProcess(), tokens[0], true);
+            fail();
+        } catch (TryRefreshTokenException ignored) {
+        }
+
+        AccessToken.getInfoFromAccessToken(process.getProcess(), tokens[1], false);
+        AccessToken.getInfoFromAccessToken(process.getProcess(), tokens[2], false);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // the oldest token was evicted, so it is verified again
+        long missesBefore = cache.getMissCount();
+        AccessTokenInfo afterEviction = AccessToken.getInfoFromAccessToken(process.getProcess(), tokens[0], false);
+        assertEquals(missesBefore + 1, cache.getMissCount());
+        assertEquals(first.sessionHandle, afterEviction.sessionHandle);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void verifiedAccessTokenCacheIsDisabledByDefault() throws Exception {
+        String[] args = {"../"};
+
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        VerifiedAccessTokenCache cache = VerifiedAccessTokenCache.getInstance(process.getProcess());
+        assertFalse(cache.isEnabled());
+
+        String token = Session.createNewSession(process.getProcess(), "userId", new JsonObject(),
+                new JsonObject()).accessToken.token;
+        AccessToken.getInfoFromAccessToken(process.getProcess(), token, false);
+        AccessToken.getInfoFromAccessToken(process.getProcess(), token, false);
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
 }
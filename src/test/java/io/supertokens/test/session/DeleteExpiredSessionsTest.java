@@ -16,8 +16,14 @@
 
 package io.supertokens.test.session;
 
+import com.google.gson.JsonObject;
 import io.supertokens.ProcessState;
+import io.supertokens.cronjobs.BatchDeletionStorage;
 import io.supertokens.cronjobs.deleteExpiredSessions.DeleteExpiredSessions;
+import io.supertokens.pluginInterface.multitenancy.TenantIdentifier;
+import io.supertokens.pluginInterface.session.SessionStorage;
+import io.supertokens.session.Session;
+import io.supertokens.storageLayer.StorageLayer;
 import io.supertokens.test.TestingProcessManager;
 import io.supertokens.test.Utils;
 import org.junit.AfterClass;
@@ -55,4 +61,42 @@ public class DeleteExpiredSessionsTest {
         process.kill();
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
     }
+
+    @Test
+    public void testThatExpiredSessionsAreDeletedInBatches() throws Exception {
+        Utils.setValueInConfig("refresh_token_validity", "" + 1.0 / 60.0);
+        Utils.setValueInConfig("expired_rows_deletion_batch_size", "2");
+        Utils.setValueInConfig("expired_rows_deletion_batch_pause_ms", "0");
+
+        String[] args = { "../" };
+
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (!(StorageLayer.getStorage(process.getProcess()) instanceof BatchDeletionStorage)) {
+            process.kill();
+            assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+            return;
+        }
+
+        for (int i = 0; i < 5; i++) {
+            Session.createNewSession(process.getProcess(), "userId" + i, new JsonObject(), new JsonObject());
+        }
+        Thread.sleep(1500);
+
+        DeleteExpiredSessions cronjob = DeleteExpiredSessions.getInstance(process.getProcess());
+        long deletedBefore = cronjob.getDeletedRowCount();
+        long batchesBefore = cronjob.getDeletionBatchCount();
+
+        cronjob.run();
+
+        assertEquals(0, ((SessionStorage) StorageLayer.getStorage(process.getProcess()))
+                .getNumberOfSessions(new TenantIdentifier(null, null, null)));
+        assertEquals(5, cronjob.getDeletedRowCount() - deletedBefore);
+        // batches of 2, 2 and 1 sessions
+        assertEquals(3, cronjob.getDeletionBatchCount() - batchesBefore);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
 }
@@ -98,6 +98,87 @@ public class JWTTest {
         }
     }
 
+    @Test
+    public void preParseRejectsTokensWithoutExactlyThreeParts() throws Exception {
+        io.supertokens.utils.Utils.PubPriKey rsa = io.supertokens.utils.Utils.generateNewPubPriKey();
+        String token = JWT.createAndSignLegacyAccessToken(new Gson().toJsonTree(new TestInput("value")),
+                rsa.privateKey, AccessToken.VERSION.V2);
+        String[] parts = token.split("\\.");
+
+        String[] invalidTokens = new String[]{
+                "",
+                parts[0],
+                parts[0] + "." + parts[1],
+                parts[0] + "." + parts[1] + ".",
+                token + ".",
+                token + "." + parts[2],
+                parts[0] + ".." + parts[2],
+                "." + parts[1] + "." + parts[2],
+        };
+        for (String invalidToken : invalidTokens) {
+            try {
+                JWT.preParseJWTInfo(invalidToken);
+                fail(invalidToken);
+            } catch (JWTException e) {
+                assertEquals("Invalid JWT", e.getMessage());
+            }
+        }
+
+        JWT.JWTPreParseInfo info = JWT.preParseJWTInfo(token);
+        assertEquals(parts[0], info.header);
+        assertEquals(parts[1], info.getPayload());
+        assertEquals(parts[2], info.signature);
+        assertEquals(AccessToken.VERSION.V2, info.version);
+    }
+
+    @Test
+    public void payloadIsDecodedFromBothBase64Alphabets() throws Exception {
+        io.supertokens.utils.Utils.PubPriKey rsa = io.supertokens.utils.Utils.generateNewPubPriKey();
+        String[] parts = JWT.createAndSignLegacyAccessToken(new Gson().toJsonTree(new TestInput("value")),
+                rsa.privateKey, AccessToken.VERSION.V2).split("\\.");
+
+        // "??>" encodes to characters that differ between the two alphabets, and the lengths give all the padding
+        // cases
+        for (String value : new String[]{"??>", "??>a", "??>ab"}) {
+            String json = new Gson().toJson(new TestInput(value));
+            String base64 = io.supertokens.utils.Utils.convertToBase64(json);
+            String base64Url = io.supertokens.utils.Utils.convertToBase64Url(json);
+            String base64UrlWithoutPadding = base64Url.replace("=", "");
+
+            for (String payload : new String[]{base64, base64Url, base64UrlWithoutPadding}) {
+                String token = parts[0] + "." + payload + "." + parts[2];
+                assertEquals(new TestInput(value),
+                        new Gson().fromJson(JWT.getPayloadWithoutVerifying(token).payload, TestInput.class));
+            }
+        }
+
+        try {
+            JWT.getPayloadWithoutVerifying(parts[0] + ".e30*." + parts[2]);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void tamperedPayloadFailsVerification() throws Exception {
+        io.supertokens.utils.Utils.PubPriKey rsa = io.supertokens.utils.Utils.generateNewPubPriKey();
+        String token = JWT.createAndSignLegacyAccessToken(new Gson().toJsonTree(new TestInput("value")),
+                rsa.privateKey, AccessToken.VERSION.V2);
+        String[] parts = token.split("\\.");
+        String tamperedToken = parts[0] + "."
+                + io.supertokens.utils.Utils.convertToBase64(new Gson().toJson(new TestInput("value2"))) + "."
+                + parts[2];
+
+        assertEquals(new TestInput("value2"),
+                new Gson().fromJson(JWT.getPayloadWithoutVerifying(tamperedToken).payload, TestInput.class));
+        try {
+            JWT.verifyJWTAndGetPayload(JWT.preParseJWTInfo(tamperedToken), rsa.publicKey);
+            fail();
+        } catch (JWTException e) {
+            assertEquals("JWT verification failed", e.getMessage());
+        }
+    }
+
     @Test
     public void signingSuccess()
             throws NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException, SignatureException {
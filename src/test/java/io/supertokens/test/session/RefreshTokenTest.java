@@ -16,6 +16,7 @@
 
 package io.supertokens.test.session;
 
+import com.google.gson.JsonObject;
 import io.supertokens.ProcessState.PROCESS_STATE;
 import io.supertokens.config.Config;
 import io.supertokens.exceptions.UnauthorisedException;
@@ -25,6 +26,7 @@ import io.supertokens.session.info.TokenInfo;
 import io.supertokens.session.refreshToken.RefreshToken;
 import io.supertokens.session.refreshToken.RefreshToken.RefreshTokenInfo;
 import io.supertokens.session.refreshToken.RefreshToken.TYPE;
+import io.supertokens.session.refreshToken.RefreshTokenKey;
 import io.supertokens.test.TestingProcessManager;
 import io.supertokens.test.TestingProcessManager.TestingProcess;
 import io.supertokens.test.Utils;
@@ -37,12 +39,18 @@ import org.junit.rules.TestRule;
 
 import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.Base64;
 
 import static org.junit.Assert.*;
 
@@ -93,9 +101,11 @@ public class RefreshTokenTest {
         assertEquals("V0", TYPE.FREE.toString());
         assertEquals("V1", TYPE.PAID.toString());
         assertEquals("V2", TYPE.FREE_OPTIMISED.toString());
+        assertEquals("V3", TYPE.FREE_OPTIMISED_DERIVED_KEY.toString());
         assertSame(TYPE.fromString("V0"), TYPE.FREE);
         assertSame(TYPE.fromString("V1"), TYPE.PAID);
         assertSame(TYPE.fromString("V2"), TYPE.FREE_OPTIMISED);
+        assertSame(TYPE.fromString("V3"), TYPE.FREE_OPTIMISED_DERIVED_KEY);
         assertNull(TYPE.fromString("random"));
     }
 
@@ -128,7 +138,7 @@ public class RefreshTokenTest {
         assertEquals("sessionHandle", infoFromToken.sessionHandle);
         assertEquals("antiCsrfToken", infoFromToken.antiCsrfToken);
         assertNull(infoFromToken.parentRefreshTokenHash2);
-        assertSame(infoFromToken.type, TYPE.FREE_OPTIMISED);
+        assertSame(infoFromToken.type, TYPE.FREE_OPTIMISED_DERIVED_KEY);
         // -5000 for some grace period for creation and checking above
         assertTrue(tokenInfo.expiry > System.currentTimeMillis()
                 + Config.getConfig(process.getProcess()).getRefreshTokenValidity() - 5000);
@@ -167,4 +177,81 @@ public class RefreshTokenTest {
         fail();
     }
 
+
+    @Test
+    public void refreshTokensEncryptedWithTheLegacyKeyDerivationCanStillBeRead() throws Exception {
+        String[] args = {"../"};
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        String nonce = io.supertokens.utils.Utils.hashSHA256("nonce");
+        JsonObject payload = new JsonObject();
+        payload.addProperty("sessionHandle", "sessionHandle");
+        payload.addProperty("userId", "userId");
+        payload.addProperty("parentRefreshTokenHash1", "parentRefreshTokenHash1");
+        payload.addProperty("nonce", nonce);
+        payload.addProperty("antiCsrfToken", "antiCsrfToken");
+        String legacyToken = io.supertokens.utils.Utils.encrypt(payload.toString(),
+                RefreshTokenKey.getInstance(process.getProcess()).getKey()) + "." + nonce + "."
+                + TYPE.FREE_OPTIMISED;
+
+        RefreshTokenInfo infoFromToken = RefreshToken.getInfoFromRefreshToken(process.getProcess(), legacyToken);
+        assertEquals("sessionHandle", infoFromToken.sessionHandle);
+        assertEquals("userId", infoFromToken.userId);
+        assertEquals("parentRefreshTokenHash1", infoFromToken.parentRefreshTokenHash1);
+        assertEquals("antiCsrfToken", infoFromToken.antiCsrfToken);
+        assertSame(TYPE.FREE_OPTIMISED, infoFromToken.type);
+
+        // a legacy token can't be read as a new one and vice versa
+        try {
+            RefreshToken.getInfoFromRefreshToken(process.getProcess(),
+                    legacyToken.substring(0, legacyToken.length() - 2) + TYPE.FREE_OPTIMISED_DERIVED_KEY);
+            fail();
+        } catch (UnauthorisedException ignored) {
+        }
+        TokenInfo newToken = RefreshToken.createNewRefreshToken(process.getProcess(), "sessionHandle", "userId",
+                null, null);
+        try {
+            RefreshToken.getInfoFromRefreshToken(process.getProcess(),
+                    newToken.token.substring(0, newToken.token.length() - 2) + TYPE.FREE_OPTIMISED);
+            fail();
+        } catch (UnauthorisedException ignored) {
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void refreshTokensWithTheSamePayloadAreEncryptedWithDifferentKeys() throws Exception {
+        String[] args = {"../"};
+        TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STARTED));
+
+        SecretKey appKey = RefreshTokenKey.getInstance(process.getProcess()).getDerivedEncryptionKey();
+        String plaintext = "{\"sessionHandle\":\"sessionHandle\",\"userId\":\"userId\"}";
+        byte[] first = Base64.getDecoder().decode(io.supertokens.utils.Utils.encryptWithKey(plaintext, appKey));
+        byte[] second = Base64.getDecoder().decode(io.supertokens.utils.Utils.encryptWithKey(plaintext, appKey));
+
+        SecretKey firstKey = io.supertokens.utils.Utils.deriveMessageKey(appKey, first, 0);
+        SecretKey secondKey = io.supertokens.utils.Utils.deriveMessageKey(appKey, second, 0);
+        assertFalse(Arrays.equals(firstKey.getEncoded(), secondKey.getEncoded()));
+        assertFalse(Arrays.equals(appKey.getEncoded(), firstKey.getEncoded()));
+
+        // each token can only be decrypted with its own key
+        int saltLength = io.supertokens.utils.Utils.MESSAGE_KEY_SALT_LENGTH;
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, firstKey, new GCMParameterSpec(128, first, saltLength, 12));
+        assertEquals(plaintext, new String(
+                cipher.doFinal(first, saltLength + 12, first.length - saltLength - 12), StandardCharsets.UTF_8));
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, secondKey, new GCMParameterSpec(128, first, saltLength, 12));
+            cipher.doFinal(first, saltLength + 12, first.length - saltLength - 12);
+            fail();
+        } catch (AEADBadTagException ignored) {
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(PROCESS_STATE.STOPPED));
+    }
 }
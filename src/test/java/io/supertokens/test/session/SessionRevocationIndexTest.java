@@ -0,0 +1,236 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.test.session;
+
+import com.google.gson.JsonObject;
+import io.supertokens.ProcessState;
+import io.supertokens.authRecipe.AuthRecipe;
+import io.supertokens.emailpassword.EmailPassword;
+import io.supertokens.exceptions.UnauthorisedException;
+import io.supertokens.pluginInterface.STORAGE_TYPE;
+import io.supertokens.pluginInterface.authRecipe.AuthRecipeUserInfo;
+import io.supertokens.session.Session;
+import io.supertokens.session.SessionRevocationIndex;
+import io.supertokens.session.accessToken.AccessToken;
+import io.supertokens.session.info.SessionInformationHolder;
+import io.supertokens.storageLayer.StorageLayer;
+import io.supertokens.test.TestingProcessManager;
+import io.supertokens.test.Utils;
+import org.junit.*;
+import org.junit.rules.TestRule;
+
+import static org.junit.Assert.*;
+
+public class SessionRevocationIndexTest {
+
+    @Rule
+    public TestRule watchman = Utils.getOnFailure();
+
+    @AfterClass
+    public static void afterTesting() {
+        Utils.afterTesting();
+    }
+
+    @Before
+    public void beforeEach() {
+        Utils.reset();
+    }
+
+    @Test
+    public void revokedSessionsAreUnauthorisedWithoutQueryingTheDb() throws Exception {
+        Utils.setValueInConfig("session_revocation_index_enabled", "true");
+
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        // the creation time of access tokens is in seconds, and tokens created in the same second as the index are
+        // checked in the db
+        Thread.sleep(1000);
+
+        JsonObject userDataInJWT = new JsonObject();
+        userDataInJWT.addProperty("key", "value");
+
+        SessionInformationHolder revokedSession = Session.createNewSession(process.getProcess(), "userId",
+                userDataInJWT, new JsonObject(), false, AccessToken.getLatestVersion(), false);
+        SessionInformationHolder otherSession = Session.createNewSession(process.getProcess(), "userId2",
+                userDataInJWT, new JsonObject(), false, AccessToken.getLatestVersion(), false);
+
+        SessionRevocationIndex index = SessionRevocationIndex.getInstance(process.getProcess());
+        assertTrue(index.isEnabled());
+
+        String[] revoked = Session.revokeSessionUsingSessionHandles(process.getProcess(),
+                new String[]{revokedSession.session.handle});
+        assertEquals(1, revoked.length);
+        assertEquals(1, index.size());
+
+        try {
+            Session.getSession(process.getProcess(), revokedSession.accessToken.token, null, false, false, true);
+            fail();
+        } catch (UnauthorisedException ignored) {
+        }
+        assertEquals(1, index.getRevokedHitCount());
+
+        SessionInformationHolder verified = Session.getSession(process.getProcess(),
+                otherSession.accessToken.token, null, false, false, true);
+        assertEquals(otherSession.session.handle, verified.session.handle);
+        assertNull(verified.accessToken);
+        assertEquals(1, index.getStorageQueriesSkippedCount());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void revokingAllSessionsOfAUserAddsThemToTheIndex() throws Exception {
+        Utils.setValueInConfig("session_revocation_index_enabled", "true");
+
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        SessionInformationHolder session1 = Session.createNewSession(process.getProcess(), "userId",
+                new JsonObject(), new JsonObject(), false, AccessToken.getLatestVersion(), false);
+        SessionInformationHolder session2 = Session.createNewSession(process.getProcess(), "userId",
+                new JsonObject(), new JsonObject(), false, AccessToken.getLatestVersion(), false);
+
+        assertEquals(2, Session.revokeAllSessionsForUser(process.getProcess(), "userId").length);
+
+        SessionRevocationIndex index = SessionRevocationIndex.getInstance(process.getProcess());
+        assertEquals(SessionRevocationIndex.STATUS.REVOKED, index.getStatus(session1.session.handle));
+        assertEquals(SessionRevocationIndex.STATUS.REVOKED, index.getStatus(session2.session.handle));
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void deletingAUserAddsItsSessionsToTheIndex() throws Exception {
+        Utils.setValueInConfig("session_revocation_index_enabled", "true");
+
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        if (StorageLayer.getStorage(process.getProcess()).getType() != STORAGE_TYPE.SQL) {
+            return;
+        }
+
+        AuthRecipeUserInfo user = EmailPassword.signUp(process.getProcess(), "test@example.com", "password");
+        SessionInformationHolder sessionInfo = Session.createNewSession(process.getProcess(),
+                user.getSupertokensUserId(), new JsonObject(), new JsonObject(), false,
+                AccessToken.getLatestVersion(), false);
+        SessionInformationHolder otherSession = Session.createNewSession(process.getProcess(), "userId2",
+                new JsonObject(), new JsonObject(), false, AccessToken.getLatestVersion(), false);
+
+        AuthRecipe.deleteUser(process.getProcess(), user.getSupertokensUserId());
+
+        SessionRevocationIndex index = SessionRevocationIndex.getInstance(process.getProcess());
+        assertEquals(SessionRevocationIndex.STATUS.REVOKED, index.getStatus(sessionInfo.session.handle));
+        assertNotEquals(SessionRevocationIndex.STATUS.REVOKED, index.getStatus(otherSession.session.handle));
+        try {
+            Session.getSession(process.getProcess(), sessionInfo.accessToken.token, null, false, false, true);
+            fail();
+        } catch (UnauthorisedException ignored) {
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void sessionsWithAnUpdatedPayloadAreStillCheckedInTheDb() throws Exception {
+        Utils.setValueInConfig("session_revocation_index_enabled", "true");
+
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        JsonObject userDataInJWT = new JsonObject();
+        userDataInJWT.addProperty("key", "value");
+        SessionInformationHolder sessionInfo = Session.createNewSession(process.getProcess(), "userId",
+                userDataInJWT, new JsonObject(), false, AccessToken.getLatestVersion(), false);
+
+        JsonObject newUserDataInJWT = new JsonObject();
+        newUserDataInJWT.addProperty("key", "value2");
+        Session.updateSession(process.getProcess(), sessionInfo.session.handle, null, newUserDataInJWT,
+                AccessToken.getLatestVersion());
+
+        SessionRevocationIndex index = SessionRevocationIndex.getInstance(process.getProcess());
+        assertEquals(SessionRevocationIndex.STATUS.CHECK_STORAGE, index.getStatus(sessionInfo.session.handle));
+
+        // the old access token gets a new one with the updated payload, same as without the index
+        SessionInformationHolder verified = Session.getSession(process.getProcess(),
+                sessionInfo.accessToken.token, null, false, false, true);
+        assertNotNull(verified.accessToken);
+        assertEquals(newUserDataInJWT, verified.session.userDataInJWT);
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void accessTokensCreatedBeforeTheIndexAreCheckedInTheDb() throws Exception {
+        Utils.setValueInConfig("session_revocation_index_enabled", "true");
+
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        SessionRevocationIndex index = SessionRevocationIndex.getInstance(process.getProcess());
+        long now = System.currentTimeMillis();
+
+        // the session may have been revoked before the core started (or through another core), which the index
+        // doesn't know about
+        assertEquals(SessionRevocationIndex.STATUS.CHECK_STORAGE, index.getStatus("sessionHandle", now - 60000));
+        assertEquals(1, index.getStorageCheckCount());
+
+        assertEquals(SessionRevocationIndex.STATUS.NOT_REVOKED, index.getStatus("sessionHandle", now + 1000));
+        assertEquals(1, index.getStorageQueriesSkippedCount());
+
+        // what the index knows still applies to older tokens
+        index.markRevoked(new String[]{"sessionHandle"});
+        assertEquals(SessionRevocationIndex.STATUS.REVOKED, index.getStatus("sessionHandle", now - 60000));
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void revocationIndexIsDisabledByDefault() throws Exception {
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        SessionInformationHolder sessionInfo = Session.createNewSession(process.getProcess(), "userId",
+                new JsonObject(), new JsonObject(), false, AccessToken.getLatestVersion(), false);
+        Session.revokeSessionUsingSessionHandles(process.getProcess(), new String[]{sessionInfo.session.handle});
+
+        SessionRevocationIndex index = SessionRevocationIndex.getInstance(process.getProcess());
+        assertFalse(index.isEnabled());
+        assertEquals(0, index.size());
+
+        try {
+            Session.getSession(process.getProcess(), sessionInfo.accessToken.token, null, false, false, true);
+            fail();
+        } catch (UnauthorisedException ignored) {
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+}
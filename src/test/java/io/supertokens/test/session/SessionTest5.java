@@ -33,7 +33,14 @@ import org.junit.*;
 import org.junit.rules.TestRule;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static junit.framework.TestCase.*;
 import static org.junit.Assert.assertNotEquals;
@@ -383,4 +390,53 @@ public class SessionTest5 {
         assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
 
     }
+
+    @Test
+    public void concurrentRefreshesOfTheSameUserAllSucceed() throws Exception {
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        String userId = "userId";
+        int numberOfSessions = 5;
+        int refreshesPerSession = 10;
+
+        // We refresh each session once, so that the concurrent refreshes below have to promote the child refresh
+        // token before creating new tokens.
+        String[] childRefreshTokens = new String[numberOfSessions];
+        for (int i = 0; i < numberOfSessions; i++) {
+            SessionInformationHolder sessionInfo = Session.createNewSession(process.getProcess(), userId,
+                    new JsonObject(), new JsonObject());
+            childRefreshTokens[i] = Session.refreshSession(process.getProcess(), sessionInfo.refreshToken.token,
+                    null, false, AccessToken.getLatestVersion()).refreshToken.token;
+        }
+
+        ExecutorService es = Executors.newFixedThreadPool(16);
+        AtomicInteger successes = new AtomicInteger(0);
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < numberOfSessions; i++) {
+            String refreshToken = childRefreshTokens[i];
+            for (int j = 0; j < refreshesPerSession; j++) {
+                es.execute(() -> {
+                    try {
+                        SessionInformationHolder refreshed = Session.refreshSession(process.getProcess(),
+                                refreshToken, null, false, AccessToken.getLatestVersion());
+                        assertNotNull(refreshed.accessToken);
+                        assertNotNull(refreshed.refreshToken);
+                        successes.incrementAndGet();
+                    } catch (Exception e) {
+                        errors.add(e);
+                    }
+                });
+            }
+        }
+        es.shutdown();
+        assertTrue(es.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(numberOfSessions * refreshesPerSession, successes.get());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
 }
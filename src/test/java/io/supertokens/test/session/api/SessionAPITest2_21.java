@@ -228,7 +228,7 @@ public class SessionAPITest2_21 {
         Base64.getUrlDecoder().decode(preParseInfo.signature);
 
 
-        JsonObject payload = new JsonParser().parse(new String(Base64.getUrlDecoder().decode(preParseInfo.payload), StandardCharsets.UTF_8)).getAsJsonObject();
+        JsonObject payload = new JsonParser().parse(new String(Base64.getUrlDecoder().decode(preParseInfo.getPayload()), StandardCharsets.UTF_8)).getAsJsonObject();
         assertFalse(payload.has("userData"));
 
         for (Map.Entry<String, JsonElement> entry : userDataInJWT.entrySet()) {
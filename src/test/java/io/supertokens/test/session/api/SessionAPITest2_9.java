@@ -405,11 +405,11 @@ public class SessionAPITest2_9 {
         assertEquals(preParseInfo.version, AccessToken.VERSION.V2);
         assertNull(preParseInfo.kid);
         Base64.getDecoder().decode(preParseInfo.header);
-        Base64.getDecoder().decode(preParseInfo.payload);
+        Base64.getDecoder().decode(preParseInfo.getPayload());
         Base64.getDecoder().decode(preParseInfo.signature);
 
 
-        JsonObject payload = new JsonParser().parse(io.supertokens.utils.Utils.convertFromBase64(preParseInfo.payload)).getAsJsonObject();
+        JsonObject payload = new JsonParser().parse(io.supertokens.utils.Utils.convertFromBase64(preParseInfo.getPayload())).getAsJsonObject();
         assertTrue(payload.has("userData"));
         assertEquals(payload.get("userData").getAsJsonObject().toString(), userDataInJWT.toString());
     }
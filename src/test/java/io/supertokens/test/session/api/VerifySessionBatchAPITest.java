@@ -0,0 +1,177 @@
+/*
+ *    Copyright (c) 2023, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ *    This software is licensed under the Apache License, Version 2.0 (the
+ *    "License") as published by the Apache Software Foundation.
+ *
+ *    You may not use this file except in compliance with the License. You may
+ *    obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ */
+
+package io.supertokens.test.session.api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.supertokens.ProcessState;
+import io.supertokens.session.Session;
+import io.supertokens.session.info.SessionInformationHolder;
+import io.supertokens.test.TestingProcessManager;
+import io.supertokens.test.Utils;
+import io.supertokens.test.httpRequest.HttpRequestForTesting;
+import io.supertokens.test.httpRequest.HttpResponseException;
+import io.supertokens.utils.SemVer;
+import io.supertokens.webserver.api.session.VerifySessionBatchAPI;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import static org.junit.Assert.*;
+
+public class VerifySessionBatchAPITest {
+    @Rule
+    public TestRule watchman = Utils.getOnFailure();
+
+    @AfterClass
+    public static void afterTesting() {
+        Utils.afterTesting();
+    }
+
+    @Before
+    public void beforeEach() {
+        Utils.reset();
+    }
+
+    private static JsonObject sessionInput(String accessToken) {
+        JsonObject session = new JsonObject();
+        session.addProperty("accessToken", accessToken);
+        return session;
+    }
+
+    @Test
+    public void returnsAResultPerAccessToken() throws Exception {
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        SessionInformationHolder session1 = Session.createNewSession(process.getProcess(), "user1",
+                new JsonObject(), new JsonObject());
+        SessionInformationHolder session2 = Session.createNewSession(process.getProcess(), "user2",
+                new JsonObject(), new JsonObject());
+        Session.revokeSessionUsingSessionHandles(process.getProcess(), new String[]{session2.session.handle});
+
+        JsonArray sessions = new JsonArray();
+        sessions.add(sessionInput(session1.accessToken.token));
+        sessions.add(sessionInput(session2.accessToken.token));
+        sessions.add(sessionInput("invalidToken"));
+        // the same session twice is only fetched once from the db, but still gets its own result
+        sessions.add(sessionInput(session1.accessToken.token));
+
+        JsonObject request = new JsonObject();
+        request.add("sessions", sessions);
+        request.addProperty("doAntiCsrfCheck", false);
+        request.addProperty("enableAntiCsrf", false);
+        request.addProperty("checkDatabase", true);
+        JsonObject response = HttpRequestForTesting.sendJsonPOSTRequest(process.getProcess(), "",
+                "http://localhost:3567/recipe/session/verify/batch", request, 1000, 1000, null,
+                SemVer.v5_1.get(), "session");
+
+        assertEquals("OK", response.get("status").getAsString());
+        JsonArray results = response.get("sessions").getAsJsonArray();
+        assertEquals(4, results.size());
+
+        JsonObject first = results.get(0).getAsJsonObject();
+        assertEquals("OK", first.get("status").getAsString());
+        assertEquals(session1.session.handle,
+                first.get("session").getAsJsonObject().get("handle").getAsString());
+        assertEquals("user1", first.get("session").getAsJsonObject().get("userId").getAsString());
+
+        assertEquals("UNAUTHORISED", results.get(1).getAsJsonObject().get("status").getAsString());
+        assertEquals("TRY_REFRESH_TOKEN", results.get(2).getAsJsonObject().get("status").getAsString());
+        assertEquals(first, results.get(3).getAsJsonObject());
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void badInputGivesBadRequest() throws Exception {
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        JsonArray tooManySessions = new JsonArray();
+        for (int i = 0; i <= VerifySessionBatchAPI.MAX_SESSIONS_PER_REQUEST; i++) {
+            tooManySessions.add(sessionInput("token" + i));
+        }
+
+        JsonObject request = new JsonObject();
+        request.add("sessions", tooManySessions);
+        request.addProperty("doAntiCsrfCheck", false);
+        request.addProperty("enableAntiCsrf", false);
+        request.addProperty("checkDatabase", false);
+        try {
+            HttpRequestForTesting.sendJsonPOSTRequest(process.getProcess(), "",
+                    "http://localhost:3567/recipe/session/verify/batch", request, 1000, 1000, null,
+                    SemVer.v5_1.get(), "session");
+            fail();
+        } catch (HttpResponseException e) {
+            assertEquals(400, e.statusCode);
+            assertEquals("Http error. Status Code: 400. Message: 'sessions' must contain between 1 and "
+                    + VerifySessionBatchAPI.MAX_SESSIONS_PER_REQUEST + " items", e.getMessage());
+        }
+
+        JsonArray invalidSessions = new JsonArray();
+        invalidSessions.add(new JsonObject());
+        request.add("sessions", invalidSessions);
+        try {
+            HttpRequestForTesting.sendJsonPOSTRequest(process.getProcess(), "",
+                    "http://localhost:3567/recipe/session/verify/batch", request, 1000, 1000, null,
+                    SemVer.v5_1.get(), "session");
+            fail();
+        } catch (HttpResponseException e) {
+            assertEquals(400, e.statusCode);
+            assertEquals("Http error. Status Code: 400. Message: Field name 'accessToken' is invalid in JSON input",
+                    e.getMessage());
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+
+    @Test
+    public void notFoundForOlderCDIVersions() throws Exception {
+        String[] args = {"../"};
+        TestingProcessManager.TestingProcess process = TestingProcessManager.start(args);
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STARTED));
+
+        SessionInformationHolder session = Session.createNewSession(process.getProcess(), "user1",
+                new JsonObject(), new JsonObject());
+        JsonArray sessions = new JsonArray();
+        sessions.add(sessionInput(session.accessToken.token));
+
+        JsonObject request = new JsonObject();
+        request.add("sessions", sessions);
+        request.addProperty("doAntiCsrfCheck", false);
+        request.addProperty("enableAntiCsrf", false);
+        request.addProperty("checkDatabase", false);
+        try {
+            HttpRequestForTesting.sendJsonPOSTRequest(process.getProcess(), "",
+                    "http://localhost:3567/recipe/session/verify/batch", request, 1000, 1000, null,
+                    SemVer.v5_0.get(), "session");
+            fail();
+        } catch (HttpResponseException e) {
+            assertEquals(404, e.statusCode);
+        }
+
+        process.kill();
+        assertNotNull(process.checkOrWaitForEvent(ProcessState.PROCESS_STATE.STOPPED));
+    }
+}